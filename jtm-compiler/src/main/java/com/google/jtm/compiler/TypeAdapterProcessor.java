@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jtm.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a straight-line {@code TypeAdapter} for every class annotated with
+ * {@code com.google.jtm.annotations.GenerateAdapter}.
+ *
+ * <p>The adapter of {@code p.Outer.Inner} is {@code p.Outer_Inner_TypeAdapter}, which
+ * {@code GeneratedTypeAdapterFactory} looks up at runtime. It extends
+ * {@code GeneratedTypeAdapter}, lists the bound fields in {@code FIELD_CLASSES} and
+ * {@code FIELD_NAMES} and reads and writes them with plain field accesses. JSON names and
+ * exclusions are resolved by the Gson at runtime, so the generated code only refers to fields by
+ * their index; see {@code GeneratedTypeAdapter} for the contract.</p>
+ *
+ * <p>The processor only depends on the JDK, annotations and runtime classes are referred to by
+ * name.</p>
+ */
+public final class TypeAdapterProcessor extends AbstractProcessor {
+  static final String ANNOTATION = "com.google.jtm.annotations.GenerateAdapter";
+  static final String ADAPTER_SUFFIX = "_TypeAdapter";
+
+  /** How a field is read and written. */
+  private enum Kind {
+    /** A primitive or string whose built-in adapter is replaced by direct reader calls. */
+    DIRECT,
+    /** A primitive always bound through its adapter; a JSON null keeps the default value. */
+    PRIMITIVE,
+    /** Any other type, bound through its adapter. */
+    OBJECT
+  }
+
+  private static final class BoundField {
+    final TypeElement declaringClass;
+    final String name;
+    final TypeMirror type;
+    final Kind kind;
+
+    BoundField(TypeElement declaringClass, String name, TypeMirror type, Kind kind) {
+      this.declaringClass = declaringClass;
+      this.name = name;
+      this.type = type;
+      this.kind = kind;
+    }
+  }
+
+  private Elements elements;
+  private Types types;
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(ANNOTATION);
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    elements = processingEnv.getElementUtils();
+    types = processingEnv.getTypeUtils();
+    for (TypeElement annotation : annotations) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        if (element.getKind() != ElementKind.CLASS) {
+          error(element, "@GenerateAdapter only applies to classes");
+          continue;
+        }
+        TypeElement type = (TypeElement) element;
+        if (!checkClass(type)) {
+          continue;
+        }
+        List<BoundField> fields = getBoundFields(type);
+        if (fields == null) {
+          continue;
+        }
+        try {
+          writeAdapter(type, fields);
+        } catch (IOException e) {
+          error(type, "Cannot write the adapter of " + type + ": " + e);
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Checks that the generated adapter can instantiate the class, reports an error otherwise. */
+  private boolean checkClass(TypeElement type) {
+    boolean valid = true;
+    if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+      error(type, "@GenerateAdapter class " + type + " must not be abstract");
+      valid = false;
+    }
+    if (!type.getTypeParameters().isEmpty()) {
+      error(type, "@GenerateAdapter class " + type + " must not be generic");
+      valid = false;
+    }
+    for (Element e = type; e.getKind().isClass() || e.getKind().isInterface();
+        e = e.getEnclosingElement()) {
+      TypeElement enclosing = (TypeElement) e;
+      if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+        error(type, "@GenerateAdapter class " + type + " must not be private or nested in a"
+            + " private class");
+        valid = false;
+        break;
+      }
+      if (enclosing.getNestingKind() == NestingKind.MEMBER
+          && !enclosing.getModifiers().contains(Modifier.STATIC)
+          && enclosing.getEnclosingElement().getKind() != ElementKind.INTERFACE) {
+        error(type, "@GenerateAdapter class " + type + " must not be an inner class, make it"
+            + " static");
+        valid = false;
+        break;
+      }
+      if (enclosing.getNestingKind() == NestingKind.LOCAL
+          || enclosing.getNestingKind() == NestingKind.ANONYMOUS) {
+        error(type, "@GenerateAdapter class " + type + " must not be a local class");
+        valid = false;
+        break;
+      }
+    }
+    boolean constructor = false;
+    for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE)) {
+        constructor = true;
+      }
+    }
+    if (!constructor) {
+      error(type, "@GenerateAdapter class " + type + " needs a non-private no-args constructor");
+      valid = false;
+    }
+    return valid;
+  }
+
+  /**
+   * Returns the instance fields of the class and its superclasses in the order the reflective
+   * binding visits them, or null if one of them cannot be accessed from the generated adapter.
+   */
+  private List<BoundField> getBoundFields(TypeElement type) {
+    DeclaredType declaredType = (DeclaredType) type.asType();
+    String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+    List<BoundField> fields = new ArrayList<BoundField>();
+    boolean valid = true;
+    TypeElement current = type;
+    while (current != null && !current.getQualifiedName().contentEquals("java.lang.Object")) {
+      boolean samePackage = elements.getPackageOf(current).getQualifiedName()
+          .contentEquals(packageName);
+      for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+        Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.STATIC)) {
+          continue;
+        }
+        if (modifiers.contains(Modifier.PRIVATE) && modifiers.contains(Modifier.TRANSIENT)) {
+          continue; // excluded by the default modifiers, not worth an error
+        }
+        if (modifiers.contains(Modifier.PRIVATE)
+            || !samePackage && !modifiers.contains(Modifier.PUBLIC)) {
+          error(field, "Field " + current + "." + field.getSimpleName() + " is not accessible"
+              + " from the adapter generated in " + packageName + ", make it package-private"
+              + " or public");
+          valid = false;
+          continue;
+        }
+        if (modifiers.contains(Modifier.FINAL)) {
+          error(field, "Field " + current + "." + field.getSimpleName() + " must not be final"
+              + " to be bound by a generated adapter");
+          valid = false;
+          continue;
+        }
+        // Resolves type variables of generic superclasses, e.g. T in Base<T>.
+        TypeMirror fieldType = types.asMemberOf(declaredType, field);
+        fields.add(new BoundField(current, field.getSimpleName().toString(), fieldType,
+            kindOf(fieldType)));
+      }
+      TypeMirror superclass = current.getSuperclass();
+      current = superclass.getKind() == TypeKind.DECLARED
+          ? (TypeElement) types.asElement(superclass) : null;
+    }
+    return valid ? fields : null;
+  }
+
+  private static Kind kindOf(TypeMirror type) {
+    switch (type.getKind()) {
+      case INT:
+      case LONG:
+      case DOUBLE:
+      case BOOLEAN:
+        return Kind.DIRECT;
+      case BYTE:
+      case SHORT:
+      case CHAR:
+      case FLOAT:
+        return Kind.PRIMITIVE;
+      case DECLARED:
+        return type.toString().equals("java.lang.String") ? Kind.DIRECT : Kind.OBJECT;
+      default:
+        return Kind.OBJECT;
+    }
+  }
+
+  private void writeAdapter(TypeElement type, List<BoundField> fields) throws IOException {
+    String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+    String binaryName = elements.getBinaryName(type).toString();
+    String simpleName = (packageName.isEmpty()
+        ? binaryName : binaryName.substring(packageName.length() + 1)).replace('$', '_')
+        + ADAPTER_SUFFIX;
+    String className = type.getQualifiedName().toString();
+
+    StringBuilder out = new StringBuilder();
+    out.append("// Generated by ").append(TypeAdapterProcessor.class.getName())
+        .append(". Do not edit.\n");
+    if (!packageName.isEmpty()) {
+      out.append("package ").append(packageName).append(";\n");
+    }
+    out.append("\n")
+        .append("import com.google.jtm.Gson;\n")
+        .append("import com.google.jtm.JsonSyntaxException;\n")
+        .append("import com.google.jtm.TypeAdapter;\n")
+        .append("import com.google.jtm.internal.bind.GeneratedTypeAdapter;\n")
+        .append("import com.google.jtm.reflect.TypeToken;\n")
+        .append("import com.google.jtm.stream.JsonReader;\n")
+        .append("import com.google.jtm.stream.JsonToken;\n")
+        .append("import com.google.jtm.stream.JsonWriter;\n")
+        .append("import java.io.IOException;\n")
+        .append("\n")
+        .append("public final class ").append(simpleName)
+        .append(" extends GeneratedTypeAdapter<").append(className).append("> {\n");
+
+    out.append("  public static final Class<?>[] FIELD_CLASSES = {");
+    for (int i = 0; i < fields.size(); i++) {
+      out.append(i == 0 ? "" : ", ").append(fields.get(i).declaringClass.getQualifiedName())
+          .append(".class");
+    }
+    out.append("};\n");
+    out.append("  public static final String[] FIELD_NAMES = {");
+    for (int i = 0; i < fields.size(); i++) {
+      out.append(i == 0 ? "" : ", ").append('"').append(fields.get(i).name).append('"');
+    }
+    out.append("};\n\n");
+
+    for (int i = 0; i < fields.size(); i++) {
+      BoundField field = fields.get(i);
+      out.append("  private final TypeAdapter<").append(boxedName(field.type)).append("> adapter")
+          .append(i).append(";\n");
+      if (field.kind == Kind.DIRECT) {
+        out.append("  private final boolean direct").append(i).append(";\n");
+      }
+      if (field.type.getKind() == TypeKind.DOUBLE) {
+        out.append("  private final boolean finite").append(i).append(";\n");
+      }
+    }
+
+    writeConstructor(out, simpleName, fields);
+    writeRead(out, className, fields);
+    writeWrite(out, className, fields);
+    out.append("}\n");
+
+    JavaFileObject file = processingEnv.getFiler().createSourceFile(
+        packageName.isEmpty() ? simpleName : packageName + "." + simpleName, type);
+    Writer writer = file.openWriter();
+    try {
+      writer.write(out.toString());
+    } finally {
+      writer.close();
+    }
+  }
+
+  private void writeConstructor(StringBuilder out, String simpleName, List<BoundField> fields) {
+    out.append("\n  public ").append(simpleName).append("(Gson gson, Binding binding) {\n")
+        .append("    super(binding);\n");
+    for (int i = 0; i < fields.size(); i++) {
+      BoundField field = fields.get(i);
+      String boxed = boxedName(field.type);
+      String typeExpression;
+      if (isClassLiteral(field.type)) {
+        typeExpression = types.erasure(field.type) + ".class";
+        out.append("    TypeAdapter<").append(boxed).append("> delegate").append(i)
+            .append(" = gson.getAdapter(").append(typeExpression).append(");\n");
+      } else {
+        out.append("    TypeToken<").append(boxed).append("> token").append(i)
+            .append(" = new TypeToken<").append(boxed).append(">() {};\n");
+        out.append("    TypeAdapter<").append(boxed).append("> delegate").append(i)
+            .append(" = gson.getAdapter(token").append(i).append(");\n");
+        typeExpression = "token" + i + ".getType()";
+      }
+      if (field.kind == Kind.DIRECT) {
+        out.append("    direct").append(i).append(" = isBuiltIn(delegate").append(i).append(", ")
+            .append(typeExpression).append(");\n");
+      }
+      if (field.type.getKind() == TypeKind.DOUBLE) {
+        out.append("    finite").append(i).append(" = isFinite(delegate").append(i)
+            .append(");\n");
+      }
+      out.append("    adapter").append(i).append(" = runtimeTypeAdapter(gson, delegate").append(i)
+          .append(", ").append(typeExpression).append(");\n");
+    }
+    out.append("  }\n");
+  }
+
+  private void writeRead(StringBuilder out, String className, List<BoundField> fields) {
+    out.append("\n  @Override\n")
+        .append("  public ").append(className).append(" read(JsonReader in) throws IOException {\n")
+        .append("    if (in.peek() == JsonToken.NULL) {\n")
+        .append("      in.nextNull();\n")
+        .append("      return null;\n")
+        .append("    }\n")
+        .append("    ").append(className).append(" value = new ").append(className).append("();\n")
+        .append("    try {\n")
+        .append("      in.beginObject();\n")
+        .append("      int hint = 0;\n")
+        .append("      while (in.hasNext()) {\n")
+        .append("        int index = fieldIndex(in.nextName(), hint);\n")
+        .append("        switch (index) {\n");
+    for (int i = 0; i < fields.size(); i++) {
+      BoundField field = fields.get(i);
+      String target = "value." + field.name;
+      out.append("          case ").append(i).append(":\n");
+      if (field.kind == Kind.OBJECT) {
+        out.append("            ").append(target).append(" = adapter").append(i)
+            .append(".read(in);\n");
+      } else if (field.kind == Kind.PRIMITIVE) {
+        appendBoxedRead(out, field, i, "            ");
+      } else if (field.type.getKind() == TypeKind.DECLARED) {
+        // String, a JSON null is stored like the reflective binding does.
+        out.append("            ").append(target).append(" = direct").append(i)
+            .append(" ? nextString(in) : adapter").append(i).append(".read(in);\n");
+      } else {
+        out.append("            if (!direct").append(i).append(") {\n");
+        appendBoxedRead(out, field, i, "              ");
+        out.append("            } else if (in.peek() == JsonToken.NULL) {\n")
+            .append("              in.nextNull();\n")
+            .append("            } else {\n")
+            .append("              ").append(target).append(" = ").append(directRead(field.type))
+            .append(";\n")
+            .append("            }\n");
+      }
+      out.append("            break;\n");
+    }
+    out.append("          default:\n")
+        .append("            in.skipValue();\n")
+        .append("            continue;\n")
+        .append("        }\n")
+        .append("        hint = index + 1;\n")
+        .append("      }\n")
+        .append("    } catch (IllegalStateException e) {\n")
+        .append("      throw new JsonSyntaxException(e);\n")
+        .append("    }\n")
+        .append("    in.endObject();\n")
+        .append("    return value;\n")
+        .append("  }\n");
+  }
+
+  /** Reads a primitive through its adapter; a JSON null keeps the field's default value. */
+  private void appendBoxedRead(StringBuilder out, BoundField field, int i, String indent) {
+    out.append(indent).append(boxedName(field.type)).append(" value").append(i)
+        .append(" = adapter").append(i).append(".read(in);\n")
+        .append(indent).append("if (value").append(i).append(" != null) {\n")
+        .append(indent).append("  value.").append(field.name).append(" = value").append(i)
+        .append(";\n")
+        .append(indent).append("}\n");
+  }
+
+  private void writeWrite(StringBuilder out, String className, List<BoundField> fields) {
+    out.append("\n  @Override\n")
+        .append("  public void write(JsonWriter out, ").append(className)
+        .append(" value) throws IOException {\n")
+        .append("    if (value == null) {\n")
+        .append("      out.nullValue();\n")
+        .append("      return;\n")
+        .append("    }\n")
+        .append("    out.beginObject();\n");
+    for (int i = 0; i < fields.size(); i++) {
+      BoundField field = fields.get(i);
+      String source = "value." + field.name;
+      out.append("    if (serialized[").append(i).append("]) {\n")
+          .append("      out.name(names[").append(i).append("]);\n");
+      if (field.kind == Kind.DIRECT) {
+        String direct = field.type.getKind() == TypeKind.DOUBLE
+            ? "writeDouble(out, " + source + ", finite" + i + ")"
+            : "out.value(" + source + ")";
+        out.append("      if (direct").append(i).append(") {\n")
+            .append("        ").append(direct).append(";\n")
+            .append("      } else {\n")
+            .append("        adapter").append(i).append(".write(out, ").append(source)
+            .append(");\n")
+            .append("      }\n");
+      } else {
+        out.append("      adapter").append(i).append(".write(out, ").append(source)
+            .append(");\n");
+      }
+      out.append("    }\n");
+    }
+    out.append("    out.endObject();\n")
+        .append("  }\n");
+  }
+
+  private static String directRead(TypeMirror type) {
+    switch (type.getKind()) {
+      case INT:
+        return "nextInt(in)";
+      case LONG:
+        return "nextLong(in)";
+      case DOUBLE:
+        return "in.nextDouble()";
+      case BOOLEAN:
+        return "nextBoolean(in)";
+      default:
+        throw new IllegalArgumentException(type.toString());
+    }
+  }
+
+  /** Returns whether the type has no type arguments, so a class literal describes it fully. */
+  private boolean isClassLiteral(TypeMirror type) {
+    return type.getKind().isPrimitive() || types.isSameType(type, types.erasure(type));
+  }
+
+  private String boxedName(TypeMirror type) {
+    if (type.getKind().isPrimitive()) {
+      return types.boxedClass((javax.lang.model.type.PrimitiveType) type).getQualifiedName()
+          .toString();
+    }
+    return type.toString();
+  }
+
+  private void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+}
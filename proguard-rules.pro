@@ -28,4 +28,11 @@
 
 # Gson specific classes
 -keep class sun.misc.Unsafe { *; }
--keep class com.google.gson.stream.** { *; }
\ No newline at end of file
+-keep class com.google.gson.stream.** { *; }
+# Adapters generated by jtm-compiler are looked up by name and bind fields by name
+-keepnames @com.google.jtm.annotations.GenerateAdapter class *
+-keepclassmembernames @com.google.jtm.annotations.GenerateAdapter class * { <fields>; }
+-keep class **_TypeAdapter extends com.google.jtm.internal.bind.GeneratedTypeAdapter {
+    public static final <fields>;
+    public <init>(com.google.jtm.Gson, com.google.jtm.internal.bind.GeneratedTypeAdapter$Binding);
+}
@@ -0,0 +1,195 @@
+package com.eva.orm;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 在设备上保存、读取10000行的耗时，对比TableMapper之前的反射实现：每个对象重新取字段列表，
+ * 逐个字段反射读写、装箱放进ContentValues，读取时每行每列都getColumnIndex一次。
+ *
+ * 保存分别测反射ContentValues、TableMapper的ContentValues(save(T))和预编译语句(save(List))，
+ * 都在一个事务里。每种做3轮取最快的一次，结果用logcat输出，tag为TableMapperBenchmark。
+ *
+ * 用./gradlew connectedAndroidTest运行，耗时只在同一台设备上有可比性
+ */
+public class TableMapperBenchmark extends AndroidTestCase {
+  private static final String TAG = "TableMapperBenchmark";
+  private static final String DB_NAME = "orm-benchmark.db";
+  private static final int ROWS = 10000;
+  private static final int ROUNDS = 3;
+
+  /** 和业务里常见的表结构类似 */
+  @Table(name = "bench_row")
+  public static class Row extends BaseTable {
+    String title;
+    int count;
+    long time;
+    double score;
+    boolean read;
+
+    public Row() {
+    }
+  }
+
+  static class Helper extends BaseDataBaseHelper {
+    Helper(Context context) {
+      super(context, DB_NAME, 1);
+    }
+
+    @Override public List<Class<? extends BaseTable>> getTableClasses() {
+      List<Class<? extends BaseTable>> tables = new ArrayList<Class<? extends BaseTable>>();
+      tables.add(Row.class);
+      return tables;
+    }
+  }
+
+  private Helper mHelper;
+
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+    getContext().deleteDatabase(DB_NAME);
+    mHelper = new Helper(getContext());
+  }
+
+  @Override protected void tearDown() throws Exception {
+    mHelper.close();
+    getContext().deleteDatabase(DB_NAME);
+    super.tearDown();
+  }
+
+  private static List<Row> createRows() {
+    List<Row> rows = new ArrayList<Row>(ROWS);
+    for (int i = 0; i < ROWS; i++) {
+      Row row = new Row();
+      row.title = "第" + i + "条 title";
+      row.count = i;
+      row.time = 1500000000000L + i;
+      row.score = i * 0.5;
+      row.read = i % 3 == 0;
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  public void testSaveAndLoad() throws Exception {
+    String table = OrmUtil.getTableName(Row.class);
+    SQLiteDatabase db = mHelper.getWritableDatabase();
+    List<Long> oldSave = new ArrayList<Long>();
+    List<Long> mapperSave = new ArrayList<Long>();
+    List<Long> batchSave = new ArrayList<Long>();
+    List<Long> oldLoad = new ArrayList<Long>();
+    List<Long> mapperLoad = new ArrayList<Long>();
+    for (int round = 0; round < ROUNDS; round++) {
+      db.delete(table, null, null);
+      long start = System.nanoTime();
+      oldSave(db, table, createRows());
+      oldSave.add(System.nanoTime() - start);
+
+      db.delete(table, null, null);
+      List<Row> rows = createRows();
+      start = System.nanoTime();
+      db.beginTransaction();
+      try {
+        for (Row row : rows) {
+          mHelper.save(row);
+        }
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+      }
+      mapperSave.add(System.nanoTime() - start);
+
+      db.delete(table, null, null);
+      rows = createRows();
+      start = System.nanoTime();
+      mHelper.save(rows);
+      batchSave.add(System.nanoTime() - start);
+
+      start = System.nanoTime();
+      List<Row> old = oldLoad(db, table);
+      oldLoad.add(System.nanoTime() - start);
+      start = System.nanoTime();
+      List<Row> loaded = mHelper.find(Row.class, null, null, null, "_ID ASC", null);
+      mapperLoad.add(System.nanoTime() - start);
+
+      assertRowsEqual(old, loaded);
+    }
+    report("save, reflective ContentValues", oldSave, oldSave);
+    report("save(T), TableMapper", oldSave, mapperSave);
+    report("save(List), compiled statement", oldSave, batchSave);
+    report("load, reflective", oldLoad, oldLoad);
+    report("find, TableMapper", oldLoad, mapperLoad);
+  }
+
+  private static void assertRowsEqual(List<Row> expected, List<Row> actual) {
+    assertEquals(ROWS, expected.size());
+    assertEquals(ROWS, actual.size());
+    for (int i = 0; i < ROWS; i++) {
+      Row e = expected.get(i);
+      Row a = actual.get(i);
+      assertEquals(e._getDataBaseId(), a._getDataBaseId());
+      assertEquals(e.title, a.title);
+      assertEquals(e.count, a.count);
+      assertEquals(e.time, a.time);
+      assertEquals(e.score, a.score);
+      assertEquals(e.read, a.read);
+    }
+  }
+
+  private static void report(String name, List<Long> baseline, List<Long> times) {
+    long best = Collections.min(times);
+    Log.i(TAG, String.format("%-32s %7.1f ms  x%.2f", name, best / 1000000.0,
+        (double) Collections.min(baseline) / best));
+  }
+
+  /** TableMapper之前的save(List)：每个对象反射生成ContentValues后insertWithOnConflict */
+  private static void oldSave(SQLiteDatabase db, String table, List<Row> rows) {
+    db.beginTransaction();
+    try {
+      for (Row row : rows) {
+        List<Field> columns = OrmUtil.getTableFields(row.getClass());
+        ContentValues values = new ContentValues(columns.size());
+        for (Field column : columns) {
+          OrmUtil.addFieldValueToColumn(values, column, row);
+        }
+        long id = db.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        row._setDataBaseId(id);
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  /** TableMapper之前的find：每行反射创建对象，逐个字段按列名查找位置后读取 */
+  private static List<Row> oldLoad(SQLiteDatabase db, String table) throws Exception {
+    List<Row> rows = new ArrayList<Row>();
+    Cursor c = db.query(table, null, null, null, null, null, "_ID ASC", null);
+    try {
+      while (c.moveToNext()) {
+        Row row = Row.class.getDeclaredConstructor().newInstance();
+        for (Field field : OrmUtil.getTableFields(row.getClass())) {
+          field.setAccessible(true);
+          if (OrmUtil.isIdColumn(field)) {
+            row._setDataBaseId(c.getLong(c.getColumnIndex("_ID")));
+          } else {
+            OrmUtil.setFieldValueFromCursor(c, field, row);
+          }
+        }
+        rows.add(row);
+      }
+    } finally {
+      c.close();
+    }
+    return rows;
+  }
+}
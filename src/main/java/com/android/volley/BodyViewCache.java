@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+/**
+ * A {@link Cache} that can hand out its entries without copying their data. Caches that
+ * don't implement it are read with {@link Cache#get(String)} instead.
+ */
+public interface BodyViewCache extends Cache {
+    /**
+     * Retrieves an entry from the cache without copying its data: {@link Entry#data} is left
+     * null and {@link Entry#body} views the cached bytes instead. Large entries may be
+     * memory mapped.
+     * @param key Cache key
+     * @return An {@link com.android.volley.Cache.Entry} or null in the event of a cache miss
+     */
+    public Entry getBody(String key);
+}
@@ -16,6 +16,7 @@
 
 package com.android.volley;
 
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Map;
 
@@ -68,6 +69,12 @@ public interface Cache {
         /** The data returned from cache. */
         public byte[] data;
 
+        /**
+         * View of the data for entries returned by {@link BodyViewCache#getBody(String)}, null
+         * otherwise. Must not be modified; read through {@link ByteBuffer#duplicate()}.
+         */
+        public ByteBuffer body;
+
         /** ETag for cache coherency. */
         public String etag;
 
@@ -83,6 +90,19 @@ public interface Cache {
         /** Immutable response headers as received from server; must be non-null. */
         public Map<String, String> responseHeaders = Collections.emptyMap();
 
+        /**
+         * Returns {@link #data}, first copying it out of {@link #body} if only the view
+         * was read.
+         */
+        public byte[] ensureData() {
+            if (data == null && body != null) {
+                ByteBuffer view = body.duplicate();
+                data = new byte[view.remaining()];
+                view.get(data);
+            }
+            return data;
+        }
+
         /** True if the entry is expired. */
         public boolean isExpired() {
             return this.ttl < System.currentTimeMillis();
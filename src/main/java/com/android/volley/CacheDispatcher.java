@@ -98,12 +98,18 @@ public class CacheDispatcher extends Thread {
                     continue;
                 }
                 long begin = SystemClock.elapsedRealtime();
-                // Attempt to retrieve this item from cache.
-                Cache.Entry entry = mCache.get(request.getCacheKey());
+                // Attempt to retrieve this item from cache, without copying the body if the
+                // request can parse it in place.
+                Cache cache = mCache instanceof PartitioningCache
+                        ? ((PartitioningCache) mCache).getPartition(request) : mCache;
+                Cache.Entry entry = request.canParseBody() && cache instanceof BodyViewCache
+                        ? ((BodyViewCache) cache).getBody(request.getCacheKey())
+                        : cache.get(request.getCacheKey());
                 request.logLong(Request.LOG_CACHE_DURATION,SystemClock.elapsedRealtime() - begin);
                 if (entry == null) {
                     request.addMarker("cache-miss");
                     // Cache miss; send off to the network dispatcher.
+                    request.markNetworkQueued();
                     mNetworkQueue.put(request);
                     continue;
                 }
@@ -112,6 +118,7 @@ public class CacheDispatcher extends Thread {
                 if (entry.isExpired()) {
                     request.addMarker("cache-hit-expired");
                     request.setCacheEntry(entry);
+                    request.markNetworkQueued();
                     mNetworkQueue.put(request);
                     continue;
                 }
@@ -119,8 +126,9 @@ public class CacheDispatcher extends Thread {
                 // We have a cache hit; parse its data for delivery back to the request.
                 request.addMarker("cache-hit");
                 begin = SystemClock.elapsedRealtime();
-                Response<?> response = request.parseNetworkResponse(
-                        new NetworkResponse(entry.data, entry.responseHeaders));
+                Response<?> response = request.parseNetworkResponse(entry.data != null
+                        ? new NetworkResponse(entry.data, entry.responseHeaders)
+                        : new NetworkResponse(entry.body.duplicate(), entry.responseHeaders));
                 request.logLong(Request.LOG_PARSE,SystemClock.elapsedRealtime() - begin);
                 request.addMarker("cache-hit-parsed");
 
@@ -143,6 +151,7 @@ public class CacheDispatcher extends Thread {
                         @Override
                         public void run() {
                             try {
+                                request.markNetworkQueued();
                                 mNetworkQueue.put(request);
                             } catch (InterruptedException e) {
                                 // Not much we can do about this.
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.volley;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Decides how requests waiting in the network queue of a {@link RequestQueue} are executed.
+ *
+ * Engines must take requests from the queue in its natural order, which is
+ * {@link Request#compareTo(Request)} priority and FIFO order, and hand each of them to the
+ * {@link NetworkProcessor}.
+ */
+@SuppressWarnings("rawtypes")
+public interface DispatchEngine {
+    /**
+     * Starts draining the given queue. Called by {@link RequestQueue#start()}.
+     * @param queue The network queue shared with the cache dispatcher
+     * @param processor Performs a single request on the calling thread
+     */
+    public void start(BlockingQueue<Request> queue, NetworkProcessor processor);
+
+    /**
+     * Stops dispatching. Requests still in the queue are not guaranteed to be processed.
+     */
+    public void stop();
+
+    /**
+     * Returns the maximum number of requests this engine performs at the same time.
+     */
+    public int getMaxConcurrency();
+}
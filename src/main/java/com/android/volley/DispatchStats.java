@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.volley;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregated network queue wait time, i.e. how long requests sat in the network queue
+ * before a dispatcher picked them up.
+ *
+ * Samples are kept in a fixed set of buckets, so recording is lock-free and percentiles
+ * are reported as the upper bound of the bucket they fall into.
+ */
+public class DispatchStats {
+    /** Upper bounds (inclusive, in ms) of the histogram buckets; the last bucket is unbounded. */
+    private static final long[] BUCKET_BOUNDS_MS = new long[] {
+            0, 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000
+    };
+
+    private final AtomicIntegerArray mBuckets = new AtomicIntegerArray(BUCKET_BOUNDS_MS.length + 1);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotalMs = new AtomicLong();
+    private final AtomicLong mMaxMs = new AtomicLong();
+
+    /**
+     * Records the queue wait time of one request.
+     */
+    public void record(long waitMs) {
+        if (waitMs < 0) {
+            waitMs = 0;
+        }
+        mBuckets.incrementAndGet(bucketOf(waitMs));
+        mCount.incrementAndGet();
+        mTotalMs.addAndGet(waitMs);
+        long max;
+        while (waitMs > (max = mMaxMs.get())) {
+            if (mMaxMs.compareAndSet(max, waitMs)) {
+                break;
+            }
+        }
+    }
+
+    /** Number of recorded requests. */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /** Mean wait time in ms, 0 if nothing was recorded. */
+    public long getMeanWaitMs() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mTotalMs.get() / count;
+    }
+
+    /** Longest wait time in ms. */
+    public long getMaxWaitMs() {
+        return mMaxMs.get();
+    }
+
+    /**
+     * Returns the wait time under which the given fraction of requests were dispatched.
+     * @param percentile A value in [0, 1], e.g. 0.99 for p99
+     */
+    public long getPercentileWaitMs(double percentile) {
+        long count = 0;
+        int[] snapshot = new int[mBuckets.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = mBuckets.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 1));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= target && snapshot[i] > 0) {
+                return i < BUCKET_BOUNDS_MS.length ? BUCKET_BOUNDS_MS[i] : mMaxMs.get();
+            }
+        }
+        return mMaxMs.get();
+    }
+
+    /** Clears all recorded samples. */
+    public void reset() {
+        for (int i = 0; i < mBuckets.length(); i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mTotalMs.set(0);
+        mMaxMs.set(0);
+    }
+
+    private static int bucketOf(long waitMs) {
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            if (waitMs <= BUCKET_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MS.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "[count=%d] [mean=%d] [p50=%d] [p90=%d] [p99=%d] [max=%d]",
+                getCount(), getMeanWaitMs(), getPercentileWaitMs(0.5), getPercentileWaitMs(0.9),
+                getPercentileWaitMs(0.99), getMaxWaitMs());
+    }
+}
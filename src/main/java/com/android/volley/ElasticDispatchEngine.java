@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.volley;
+
+import android.net.Uri;
+import android.os.Process;
+import android.text.TextUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A dispatch engine backed by a bounded, elastic thread pool.
+ *
+ * <p>A single coordinator thread takes requests off the network queue in priority/FIFO order,
+ * but only once a worker slot is free, so the queue keeps ordering everything that is still
+ * waiting. Worker threads are created on demand up to {@code maxThreads} and exit again after
+ * being idle for the keep alive time, so the pool follows the queue depth.</p>
+ *
+ * <p>Requests for a host that already has {@code maxPerHost} requests in flight are parked and
+ * put back into the network queue as soon as one of them finishes, keeping their original
+ * sequence number and therefore their place in line.</p>
+ */
+@SuppressWarnings("rawtypes")
+public class ElasticDispatchEngine implements DispatchEngine {
+    /** Default maximum number of concurrent requests. */
+    public static final int DEFAULT_MAX_THREADS = 6;
+    /** Default maximum number of concurrent requests to a single host. */
+    public static final int DEFAULT_MAX_PER_HOST = 4;
+    /** Default time an idle worker thread waits for new work before exiting. */
+    public static final long DEFAULT_KEEP_ALIVE_MS = 30 * 1000;
+
+    private final int mMaxThreads;
+    private final int mMaxPerHost;
+    private final long mKeepAliveMs;
+
+    /** Guards mActivePerHost and mParked. */
+    private final Object mHostLock = new Object();
+    /** Number of in flight requests per host. */
+    private final Map<String, Integer> mActivePerHost = new HashMap<String, Integer>();
+    /** Requests waiting for their host to drop below the per host limit. */
+    private final Map<String, PriorityQueue<Request>> mParked = new HashMap<String, PriorityQueue<Request>>();
+
+    private BlockingQueue<Request> mQueue;
+    private NetworkProcessor mProcessor;
+    private Semaphore mSlots;
+    private ThreadPoolExecutor mExecutor;
+    private Coordinator mCoordinator;
+
+    public ElasticDispatchEngine() {
+        this(DEFAULT_MAX_THREADS, DEFAULT_MAX_PER_HOST, DEFAULT_KEEP_ALIVE_MS);
+    }
+
+    /**
+     * @param maxThreads Maximum number of requests performed at the same time
+     * @param maxPerHost Maximum number of requests performed at the same time for one host,
+     *                   values less than 1 disable the limit
+     * @param keepAliveMs How long an idle worker thread is kept around
+     */
+    public ElasticDispatchEngine(int maxThreads, int maxPerHost, long keepAliveMs) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be positive");
+        }
+        mMaxThreads = maxThreads;
+        mMaxPerHost = maxPerHost;
+        mKeepAliveMs = keepAliveMs;
+    }
+
+    @Override
+    public synchronized void start(BlockingQueue<Request> queue, NetworkProcessor processor) {
+        stop();
+        mQueue = queue;
+        mProcessor = processor;
+        mSlots = new Semaphore(mMaxThreads);
+        // core == max together with allowCoreThreadTimeOut gives a pool that grows on demand
+        // and shrinks back to zero when idle, the slots semaphore bounds what is submitted.
+        mExecutor = new ThreadPoolExecutor(mMaxThreads, mMaxThreads, mKeepAliveMs,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new DispatchThreadFactory("Volley-Network-"));
+        mExecutor.allowCoreThreadTimeOut(true);
+        mCoordinator = new Coordinator();
+        mCoordinator.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (mCoordinator != null) {
+            mCoordinator.quit();
+            mCoordinator = null;
+        }
+        if (mExecutor != null) {
+            // Let in flight requests finish, just like quitting a NetworkDispatcher does.
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
+        synchronized (mHostLock) {
+            // Hand parked requests back so that a restarted engine picks them up.
+            if (mQueue != null) {
+                for (PriorityQueue<Request> parked : mParked.values()) {
+                    mQueue.addAll(parked);
+                }
+            }
+            mParked.clear();
+            mActivePerHost.clear();
+        }
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return mMaxThreads;
+    }
+
+    /**
+     * Returns the number of requests currently being performed.
+     */
+    public int getActiveCount() {
+        Semaphore slots = mSlots;
+        return slots == null ? 0 : mMaxThreads - slots.availablePermits();
+    }
+
+    /**
+     * Returns the number of live worker threads.
+     */
+    public int getPoolSize() {
+        ThreadPoolExecutor executor = mExecutor;
+        return executor == null ? 0 : executor.getPoolSize();
+    }
+
+    /**
+     * Returns the key requests are grouped by for the per host limit.
+     */
+    protected String getHostKey(Request request) {
+        return hostOf(request);
+    }
+
+    /**
+     * Returns the host of the request URL, or "" if it has none.
+     */
+    static String hostOf(Request request) {
+        String url = request.getUrl();
+        if (TextUtils.isEmpty(url)) {
+            return "";
+        }
+        try {
+            String host = Uri.parse(url).getHost();
+            return host == null ? "" : host;
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /**
+     * Marks a request for the given host as in flight.
+     * @return false if the host is at its limit, in which case the request was parked
+     */
+    private boolean acquireHost(String host, Request request) {
+        if (mMaxPerHost < 1) {
+            return true;
+        }
+        synchronized (mHostLock) {
+            Integer active = mActivePerHost.get(host);
+            int count = active == null ? 0 : active;
+            if (count >= mMaxPerHost) {
+                PriorityQueue<Request> parked = mParked.get(host);
+                if (parked == null) {
+                    parked = new PriorityQueue<Request>();
+                    mParked.put(host, parked);
+                }
+                parked.add(request);
+                request.addMarker("network-host-parked");
+                return false;
+            }
+            mActivePerHost.put(host, count + 1);
+            return true;
+        }
+    }
+
+    /**
+     * Releases a host slot and re-queues the best parked request for that host, if any.
+     */
+    private void releaseHost(String host, BlockingQueue<Request> queue) {
+        if (mMaxPerHost < 1) {
+            return;
+        }
+        synchronized (mHostLock) {
+            Integer active = mActivePerHost.get(host);
+            int count = active == null ? 0 : active - 1;
+            if (count <= 0) {
+                mActivePerHost.remove(host);
+            } else {
+                mActivePerHost.put(host, count);
+            }
+            PriorityQueue<Request> parked = mParked.get(host);
+            if (parked != null) {
+                Request next = parked.poll();
+                if (parked.isEmpty()) {
+                    mParked.remove(host);
+                }
+                if (next != null) {
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes requests off the network queue whenever a worker slot is available.
+     */
+    private class Coordinator extends Thread {
+        private volatile boolean mQuit = false;
+
+        Coordinator() {
+            super("Volley-NetworkCoordinator");
+        }
+
+        void quit() {
+            mQuit = true;
+            interrupt();
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            final BlockingQueue<Request> queue = mQueue;
+            final Semaphore slots = mSlots;
+            final ThreadPoolExecutor executor = mExecutor;
+            final NetworkProcessor processor = mProcessor;
+            while (true) {
+                Request request;
+                try {
+                    slots.acquire();
+                } catch (InterruptedException e) {
+                    if (mQuit) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    request = queue.take();
+                } catch (InterruptedException e) {
+                    slots.release();
+                    if (mQuit) {
+                        return;
+                    }
+                    continue;
+                }
+
+                String host = getHostKey(request);
+                if (!acquireHost(host, request)) {
+                    slots.release();
+                    continue;
+                }
+                try {
+                    executor.execute(new Task(request, host, processor, queue, slots));
+                } catch (RuntimeException e) {
+                    // The executor was shut down under us, give the request back.
+                    releaseHost(host, queue);
+                    slots.release();
+                    queue.add(request);
+                    return;
+                }
+            }
+        }
+    }
+
+    private class Task implements Runnable {
+        private final Request mRequest;
+        private final String mHost;
+        private final NetworkProcessor mTaskProcessor;
+        private final BlockingQueue<Request> mTaskQueue;
+        private final Semaphore mTaskSlots;
+
+        Task(Request request, String host, NetworkProcessor processor,
+                BlockingQueue<Request> queue, Semaphore slots) {
+            mRequest = request;
+            mHost = host;
+            mTaskProcessor = processor;
+            mTaskQueue = queue;
+            mTaskSlots = slots;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mTaskProcessor.process(mRequest);
+            } finally {
+                releaseHost(mHost, mTaskQueue);
+                mTaskSlots.release();
+            }
+        }
+    }
+}
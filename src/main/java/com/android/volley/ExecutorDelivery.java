@@ -19,6 +19,7 @@ package com.android.volley;
 import android.os.Handler;
 import android.util.Log;
 
+import java.util.List;
 import java.util.concurrent.Executor;
 
 /**
@@ -81,6 +82,37 @@ public class ExecutorDelivery implements ResponseDelivery {
         });
     }
 
+    @Override
+    public void postUploadProgress(final Request<?> request, final long fileSize, final long uploadedSize) {
+        request.addMarker("post-uploadprogress");
+        mResponsePoster.execute(new Runnable() {
+            @Override
+            public void run() {
+                request.deliverUploadProgress(fileSize, uploadedSize);
+            }
+        });
+    }
+
+    @Override
+    public void postElements(final Request<?> request, final List<?> elements) {
+        // Only the first parse delivers elements, a retry would repeat them.
+        if (request.hasHadElementsDelivered()) {
+            return;
+        }
+        request.markElementsDelivered();
+        request.addMarker("post-elements");
+        mResponsePoster.execute(new Runnable() {
+            @Override
+            public void run() {
+                // A canceled request or one that already has its response gets no partial delivery.
+                if (request.isCanceled() || request.hasHadResponseDelivered()) {
+                    return;
+                }
+                request.deliverElements(elements);
+            }
+        });
+    }
+
     @Override
     public void postCancel(final Request<?> request) {
         request.addMarker("post-cancel");
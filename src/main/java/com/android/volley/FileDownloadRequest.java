@@ -56,8 +56,9 @@ public class FileDownloadRequest extends Request<Void> {
 		// the response header "Content-Range" will return "bytes */[actual length]", that's wrong.
 		addHeader("Range", "bytes=" + mTemporaryFile.length() + "-");
 
-//		Suppress the HttpStack accept gzip encoding, avoid the progress calculate wrong problem.
-//		addHeader("Accept-Encoding", "identity");
+		// Suppress the HttpStack accept gzip encoding, avoid the progress calculate wrong problem,
+		// Range offsets also refer to the encoded content.
+		addHeader("Accept-Encoding", "identity");
 	}
 
 	/** Ignore the response content, just rename the TemporaryFile to StoreFile. */
@@ -131,8 +132,8 @@ public class FileDownloadRequest extends Request<Void> {
 	 */
 	@Override
 	public byte[] handleResponse(HttpResponse response, ResponseDelivery delivery) throws IOException, ServerError {
-		// Content-Length might be negative when use HttpURLConnection because it default header Accept-Encoding is gzip,
-		// we can force set the Accept-Encoding as identity in prepare() method to slove this problem but also disable gzip response.
+		// Content-Length might be negative when the response is gzip decoded by the HttpStack,
+		// we force set the Accept-Encoding as identity in prepare() method to slove this problem but also disable gzip response.
 		HttpEntity entity = response.getEntity();
 		long fileSize = entity.getContentLength();
 		if (fileSize <= 0) {
@@ -215,4 +216,9 @@ public class FileDownloadRequest extends Request<Void> {
 	public Priority getPriority() {
 		return Priority.LOW;
 	}
+
+	@Override
+	public Lane getLane() {
+		return Lane.DOWNLOAD;
+	}
 }
\ No newline at end of file
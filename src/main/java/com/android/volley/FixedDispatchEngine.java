@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.volley;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The classic engine: a fixed number of {@link NetworkDispatcher} threads blocking on the
+ * network queue.
+ */
+@SuppressWarnings("rawtypes")
+public class FixedDispatchEngine implements DispatchEngine {
+    /** The network dispatchers. */
+    private final NetworkDispatcher[] mDispatchers;
+
+    /**
+     * @param threadPoolSize Number of network dispatcher threads to create
+     */
+    public FixedDispatchEngine(int threadPoolSize) {
+        mDispatchers = new NetworkDispatcher[threadPoolSize];
+    }
+
+    @Override
+    public void start(BlockingQueue<Request> queue, NetworkProcessor processor) {
+        stop();
+        // Create network dispatchers (and corresponding threads) up to the pool size.
+        for (int i = 0; i < mDispatchers.length; i++) {
+            NetworkDispatcher networkDispatcher = new NetworkDispatcher(queue, processor);
+            mDispatchers[i] = networkDispatcher;
+            networkDispatcher.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        for (int i = 0; i < mDispatchers.length; i++) {
+            if (mDispatchers[i] != null) {
+                mDispatchers[i].quit();
+                mDispatchers[i] = null;
+            }
+        }
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return mDispatchers.length;
+    }
+}
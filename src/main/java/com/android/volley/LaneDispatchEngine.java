@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.volley;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A dispatch engine that schedules each {@link Request.Lane} against its own concurrency budget.
+ *
+ * <p>Requests are moved from the network queue into one priority queue per lane, so
+ * {@link Request#compareTo(Request)} ordering still applies inside a lane, while a lane that is
+ * busy streaming large bodies (downloads, uploads) cannot take the threads of another lane.</p>
+ *
+ * <p>On top of the lane budgets a few slots are reserved for {@link Request.Priority#IMMEDIATE}
+ * requests of the {@link Request.Lane#API} and {@link Request.Lane#IMAGE} lanes; they are only
+ * used once the lane's own budget is exhausted.</p>
+ *
+ * <p>Like {@link ElasticDispatchEngine}, no more than {@code maxPerHost} requests run against
+ * one host at a time, across all lanes. A request whose host is at the limit is parked and
+ * put back into its lane, keeping its place in line, when a request to that host finishes.</p>
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class LaneDispatchEngine implements DispatchEngine {
+    public static final int DEFAULT_API_THREADS = 4;
+    public static final int DEFAULT_IMAGE_THREADS = 3;
+    public static final int DEFAULT_DOWNLOAD_THREADS = 2;
+    public static final int DEFAULT_UPLOAD_THREADS = 1;
+    public static final int DEFAULT_RESERVED_IMMEDIATE_THREADS = 2;
+    /**
+     * Default maximum number of concurrent requests to a single host. Higher than
+     * {@link ElasticDispatchEngine#DEFAULT_MAX_PER_HOST} as this engine runs more threads in total.
+     */
+    public static final int DEFAULT_MAX_PER_HOST = 6;
+
+    /** Default time an idle worker thread waits for new work before exiting. */
+    public static final long DEFAULT_KEEP_ALIVE_MS = 30 * 1000;
+
+    private static final Request.Lane[] LANES = Request.Lane.values();
+
+    /** Concurrency budget of every lane, indexed by ordinal. */
+    private final int[] mBudgets;
+    /** Slots only IMMEDIATE requests of the API and IMAGE lanes may use. */
+    private final int mReservedImmediate;
+    private final int mMaxPerHost;
+    private final long mKeepAliveMs;
+
+    /** Guards the lane queues and the active counters. */
+    private final Object mLock = new Object();
+    private final PriorityQueue<Request>[] mLaneQueues;
+    private final int[] mActive;
+    private int mReservedActive;
+    /** Number of in flight requests per host. */
+    private final Map<String, Integer> mActivePerHost = new HashMap<String, Integer>();
+    /** Requests waiting for their host to drop below the per host limit. */
+    private final Map<String, PriorityQueue<Request>> mParked = new HashMap<String, PriorityQueue<Request>>();
+    private final DispatchStats[] mLaneStats;
+
+    private BlockingQueue<Request> mQueue;
+    private NetworkProcessor mProcessor;
+    private ThreadPoolExecutor mExecutor;
+    private Coordinator mCoordinator;
+
+    public LaneDispatchEngine() {
+        this(DEFAULT_API_THREADS, DEFAULT_IMAGE_THREADS, DEFAULT_DOWNLOAD_THREADS,
+                DEFAULT_UPLOAD_THREADS, DEFAULT_RESERVED_IMMEDIATE_THREADS, DEFAULT_MAX_PER_HOST);
+    }
+
+    public LaneDispatchEngine(int apiThreads, int imageThreads, int downloadThreads,
+            int uploadThreads, int reservedImmediate) {
+        this(apiThreads, imageThreads, downloadThreads, uploadThreads, reservedImmediate,
+                DEFAULT_MAX_PER_HOST);
+    }
+
+    /**
+     * @param apiThreads Concurrency budget of the {@link Request.Lane#API} lane
+     * @param imageThreads Concurrency budget of the {@link Request.Lane#IMAGE} lane
+     * @param downloadThreads Concurrency budget of the {@link Request.Lane#DOWNLOAD} lane
+     * @param uploadThreads Concurrency budget of the {@link Request.Lane#UPLOAD} lane
+     * @param reservedImmediate Extra slots reserved for IMMEDIATE API and image requests
+     * @param maxPerHost Maximum number of requests performed at the same time for one host,
+     *                   values less than 1 disable the limit
+     */
+    public LaneDispatchEngine(int apiThreads, int imageThreads, int downloadThreads,
+            int uploadThreads, int reservedImmediate, int maxPerHost) {
+        mBudgets = new int[LANES.length];
+        mBudgets[Request.Lane.API.ordinal()] = apiThreads;
+        mBudgets[Request.Lane.IMAGE.ordinal()] = imageThreads;
+        mBudgets[Request.Lane.DOWNLOAD.ordinal()] = downloadThreads;
+        mBudgets[Request.Lane.UPLOAD.ordinal()] = uploadThreads;
+        for (int budget : mBudgets) {
+            if (budget < 1) {
+                throw new IllegalArgumentException("every lane needs at least one thread");
+            }
+        }
+        mReservedImmediate = Math.max(reservedImmediate, 0);
+        mMaxPerHost = maxPerHost;
+        mKeepAliveMs = DEFAULT_KEEP_ALIVE_MS;
+        mLaneQueues = new PriorityQueue[LANES.length];
+        mActive = new int[LANES.length];
+        mLaneStats = new DispatchStats[LANES.length];
+        for (int i = 0; i < LANES.length; i++) {
+            mLaneQueues[i] = new PriorityQueue<Request>();
+            mLaneStats[i] = new DispatchStats();
+        }
+    }
+
+    @Override
+    public synchronized void start(BlockingQueue<Request> queue, NetworkProcessor processor) {
+        stop();
+        mQueue = queue;
+        mProcessor = processor;
+        int maxThreads = getMaxConcurrency();
+        mExecutor = new ThreadPoolExecutor(maxThreads, maxThreads, mKeepAliveMs,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new DispatchThreadFactory("Volley-Lane-"));
+        mExecutor.allowCoreThreadTimeOut(true);
+        mCoordinator = new Coordinator(queue);
+        mCoordinator.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (mCoordinator != null) {
+            mCoordinator.quit();
+            mCoordinator = null;
+        }
+        synchronized (mLock) {
+            if (mExecutor != null) {
+                // Let in flight requests finish, just like quitting a NetworkDispatcher does.
+                mExecutor.shutdown();
+                mExecutor = null;
+            }
+            // Hand waiting requests back so that a restarted engine picks them up.
+            for (PriorityQueue<Request> laneQueue : mLaneQueues) {
+                if (mQueue != null) {
+                    mQueue.addAll(laneQueue);
+                }
+                laneQueue.clear();
+            }
+            for (PriorityQueue<Request> parked : mParked.values()) {
+                if (mQueue != null) {
+                    mQueue.addAll(parked);
+                }
+            }
+            mParked.clear();
+            mActivePerHost.clear();
+        }
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        int max = mReservedImmediate;
+        for (int budget : mBudgets) {
+            max += budget;
+        }
+        return max;
+    }
+
+    /**
+     * Returns the concurrency budget of the given lane, not counting reserved slots.
+     */
+    public int getBudget(Request.Lane lane) {
+        return mBudgets[lane.ordinal()];
+    }
+
+    /**
+     * Returns the number of requests of the given lane waiting for a thread.
+     */
+    public int getQueueDepth(Request.Lane lane) {
+        synchronized (mLock) {
+            return mLaneQueues[lane.ordinal()].size();
+        }
+    }
+
+    /**
+     * Returns the number of requests of the given lane being performed, reserved slots excluded.
+     */
+    public int getActiveCount(Request.Lane lane) {
+        synchronized (mLock) {
+            return mActive[lane.ordinal()];
+        }
+    }
+
+    /**
+     * Returns the number of reserved IMMEDIATE slots in use.
+     */
+    public int getReservedActiveCount() {
+        synchronized (mLock) {
+            return mReservedActive;
+        }
+    }
+
+    /**
+     * Returns the number of requests being performed for the given host.
+     */
+    public int getActiveCount(String host) {
+        synchronized (mLock) {
+            Integer active = mActivePerHost.get(host);
+            return active == null ? 0 : active;
+        }
+    }
+
+    /**
+     * Returns the key requests are grouped by for the per host limit.
+     */
+    protected String getHostKey(Request request) {
+        return ElasticDispatchEngine.hostOf(request);
+    }
+
+    /**
+     * Returns the queue wait time statistics of the given lane.
+     */
+    public DispatchStats getLaneStats(Request.Lane lane) {
+        return mLaneStats[lane.ordinal()];
+    }
+
+    private void enqueue(Request request) {
+        Request.Lane lane = laneOf(request);
+        synchronized (mLock) {
+            mLaneQueues[lane.ordinal()].add(request);
+        }
+        schedule();
+    }
+
+    /**
+     * Starts as many waiting requests as the lane budgets and reserved slots allow.
+     */
+    private void schedule() {
+        synchronized (mLock) {
+            if (mExecutor == null) {
+                return;
+            }
+            for (int i = 0; i < LANES.length; i++) {
+                PriorityQueue<Request> laneQueue = mLaneQueues[i];
+                while (mActive[i] < mBudgets[i] && peekRunnable(i) != null) {
+                    mActive[i]++;
+                    launch(laneQueue.poll(), i, false);
+                }
+            }
+            while (mReservedActive < mReservedImmediate) {
+                int best = -1;
+                for (int i = 0; i < LANES.length; i++) {
+                    if (!canUseReserved(LANES[i])) {
+                        continue;
+                    }
+                    Request head = peekRunnable(i);
+                    if (head == null || head.getPriority() != Request.Priority.IMMEDIATE) {
+                        continue;
+                    }
+                    if (best == -1 || head.compareTo(mLaneQueues[best].peek()) < 0) {
+                        best = i;
+                    }
+                }
+                if (best == -1) {
+                    break;
+                }
+                mReservedActive++;
+                launch(mLaneQueues[best].poll(), best, true);
+            }
+        }
+    }
+
+    /**
+     * Returns the head of the lane queue after parking the requests in front of it whose
+     * host is at its limit. The caller holds mLock.
+     */
+    private Request peekRunnable(int lane) {
+        PriorityQueue<Request> laneQueue = mLaneQueues[lane];
+        Request head;
+        while ((head = laneQueue.peek()) != null && mMaxPerHost > 0) {
+            String host = getHostKey(head);
+            Integer active = mActivePerHost.get(host);
+            if (active == null || active < mMaxPerHost) {
+                break;
+            }
+            laneQueue.poll();
+            PriorityQueue<Request> parked = mParked.get(host);
+            if (parked == null) {
+                parked = new PriorityQueue<Request>();
+                mParked.put(host, parked);
+            }
+            parked.add(head);
+            head.addMarker("network-host-parked");
+        }
+        return head;
+    }
+
+    /**
+     * Releases a host slot and puts the best parked request for that host back into its
+     * lane. The caller holds mLock.
+     */
+    private void releaseHost(String host) {
+        if (mMaxPerHost < 1) {
+            return;
+        }
+        Integer active = mActivePerHost.get(host);
+        int count = active == null ? 0 : active - 1;
+        if (count <= 0) {
+            mActivePerHost.remove(host);
+        } else {
+            mActivePerHost.put(host, count);
+        }
+        PriorityQueue<Request> parked = mParked.get(host);
+        if (parked != null) {
+            Request next = parked.poll();
+            if (parked.isEmpty()) {
+                mParked.remove(host);
+            }
+            if (next != null) {
+                mLaneQueues[laneOf(next).ordinal()].add(next);
+            }
+        }
+    }
+
+    private static Request.Lane laneOf(Request request) {
+        Request.Lane lane = request.getLane();
+        return lane == null ? Request.Lane.API : lane;
+    }
+
+    private static boolean canUseReserved(Request.Lane lane) {
+        return lane == Request.Lane.API || lane == Request.Lane.IMAGE;
+    }
+
+    private void launch(Request request, int lane, boolean reserved) {
+        long queuedTime = request.getNetworkQueuedTime();
+        if (queuedTime > 0) {
+            mLaneStats[lane].record(SystemClock.elapsedRealtime() - queuedTime);
+        }
+        if (reserved) {
+            request.addMarker("network-lane-reserved");
+        }
+        String host = getHostKey(request);
+        if (mMaxPerHost > 0) {
+            Integer active = mActivePerHost.get(host);
+            mActivePerHost.put(host, active == null ? 1 : active + 1);
+        }
+        mExecutor.execute(new Task(request, lane, reserved, host, mProcessor));
+    }
+
+    private void onTaskFinished(int lane, boolean reserved, String host) {
+        synchronized (mLock) {
+            releaseHost(host);
+            if (reserved) {
+                mReservedActive--;
+            } else {
+                mActive[lane]--;
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * Moves requests from the shared network queue into their lanes.
+     */
+    private class Coordinator extends Thread {
+        private final BlockingQueue<Request> mSource;
+        private volatile boolean mQuit = false;
+
+        Coordinator(BlockingQueue<Request> source) {
+            super("Volley-LaneCoordinator");
+            mSource = source;
+        }
+
+        void quit() {
+            mQuit = true;
+            interrupt();
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            while (true) {
+                Request request;
+                try {
+                    request = mSource.take();
+                } catch (InterruptedException e) {
+                    if (mQuit) {
+                        return;
+                    }
+                    continue;
+                }
+                if (mQuit) {
+                    // Raced with stop(), give the request back.
+                    mSource.add(request);
+                    return;
+                }
+                enqueue(request);
+            }
+        }
+    }
+
+    private class Task implements Runnable {
+        private final Request mRequest;
+        private final int mLane;
+        private final boolean mReserved;
+        private final String mHost;
+        private final NetworkProcessor mTaskProcessor;
+
+        Task(Request request, int lane, boolean reserved, String host, NetworkProcessor processor) {
+            mRequest = request;
+            mLane = lane;
+            mReserved = reserved;
+            mHost = host;
+            mTaskProcessor = processor;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mTaskProcessor.process(mRequest);
+            } finally {
+                onTaskFinished(mLane, mReserved, mHost);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+/**
+ * A {@link Cache} that can refresh the metadata of an entry without rewriting its data.
+ * Caches that don't implement it get the whole entry put again after a revalidation.
+ */
+public interface MetadataCache extends Cache {
+    /**
+     * Replaces the metadata of an entry (ETag, server date, TTLs and response headers)
+     * without rewriting its data, e.g. after a 304 revalidation. Does nothing if the
+     * entry is not cached.
+     * @param key Cache key
+     * @param entry The new metadata; its data is ignored
+     */
+    public void updateMetadata(String key, Entry entry);
+}
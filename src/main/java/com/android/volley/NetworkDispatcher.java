@@ -16,10 +16,7 @@
 
 package com.android.volley;
 
-import android.net.TrafficStats;
-import android.os.Build;
 import android.os.Process;
-import android.os.SystemClock;
 
 import java.util.concurrent.BlockingQueue;
 
@@ -36,12 +33,8 @@ import java.util.concurrent.BlockingQueue;
 public class NetworkDispatcher extends Thread {
     /** The queue of requests to service. */
     private final BlockingQueue<Request> mQueue;
-    /** The network interface for processing requests. */
-    private final Network mNetwork;
-    /** The cache to write to. */
-    private final Cache mCache;
-    /** For posting responses and errors. */
-    private final ResponseDelivery mDelivery;
+    /** Performs the requests taken from the queue. */
+    private final NetworkProcessor mProcessor;
     /** Used for telling us to die. */
     private volatile boolean mQuit = false;
 
@@ -57,10 +50,19 @@ public class NetworkDispatcher extends Thread {
     public NetworkDispatcher(BlockingQueue<Request> queue,
             Network network, Cache cache,
             ResponseDelivery delivery) {
+        this(queue, new NetworkProcessor(network, cache, delivery, null));
+    }
+
+    /**
+     * Creates a new network dispatcher thread sharing the given processor.  You must
+     * call {@link #start()} in order to begin processing.
+     *
+     * @param queue Queue of incoming requests for triage
+     * @param processor Processor that performs each request
+     */
+    public NetworkDispatcher(BlockingQueue<Request> queue, NetworkProcessor processor) {
         mQueue = queue;
-        mNetwork = network;
-        mCache = cache;
-        mDelivery = delivery;
+        mProcessor = processor;
     }
 
     /**
@@ -87,65 +89,7 @@ public class NetworkDispatcher extends Thread {
                 }
                 continue;
             }
-
-            try {
-                request.addMarker("network-queue-take");
-
-                // If the request was cancelled already, do not perform the
-                // network request.
-                if (request.isCanceled()) {
-                    request.finish("network-discard-cancelled");
-                    continue;
-                }
-
-                // Tag the request (if API >= 14)
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
-                    TrafficStats.getThreadStatsTag();
-                    TrafficStats.setThreadStatsTag(request.getTrafficStatsTag());
-                }
-
-                // Perform the network request.
-                NetworkResponse networkResponse = mNetwork.performRequest(request);
-                request.addMarker("network-http-complete");
-
-                // If the server returned 304 AND we delivered a response already,
-                // we're done -- don't deliver a second identical response.
-                if (networkResponse.notModified && request.hasHadResponseDelivered()) {
-                    request.finish("not-modified");
-                    continue;
-                }
-                long begin = SystemClock.elapsedRealtime();
-                // Parse the response here on the worker thread.
-                Response<?> response = request.parseNetworkResponse(networkResponse);
-                if(response.error != null && response.error instanceof ResponseContentError){
-                    request.logLong(Request.LOG_ERROR_NO,((ResponseContentError) response.error).getErrorCode().getErrorNo());
-                }
-                if(!networkResponse.notModified){
-                    request.logLong(Request.LOG_RECV_SIZE,networkResponse.data != null ?networkResponse.data.length:0);
-                }
-                request.logLong(Request.LOG_PARSE,SystemClock.elapsedRealtime() -begin);
-                request.addMarker("network-parse-complete");
-
-                // Post the response back.
-                request.markDelivered();
-                mDelivery.postResponse(request, response);
-                // Write to cache if applicable.
-                // TODO: Only update cache metadata instead of entire record for 304s.
-                if (request.shouldCache() && response.cacheEntry != null) {
-                    mCache.put(request.getCacheKey(), response.cacheEntry);
-                    request.addMarker("network-cache-written");
-                }
-            } catch (VolleyError volleyError) {
-                parseAndDeliverNetworkError(request, volleyError);
-            } catch (Exception e) {
-                VolleyLog.e(e, "Unhandled exception %s", e.toString());
-                mDelivery.postError(request, new VolleyError(e));
-            }
+            mProcessor.process(request);
         }
     }
-
-    private void parseAndDeliverNetworkError(Request<?> request, VolleyError error) {
-        error = request.parseNetworkError(error);
-        mDelivery.postError(request, error);
-    }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+import android.net.TrafficStats;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Performs a single request against the network on the calling thread.
+ *
+ * Responses are committed to cache, if eligible, using a specified {@link com.android.volley.Cache}
+ * interface. Valid responses and errors are posted back to the caller via a
+ * {@link com.android.volley.ResponseDelivery}. This is the unit of work shared by every
+ * {@link DispatchEngine}, so engines only decide <em>when</em> and <em>where</em> a request runs.
+ */
+@SuppressWarnings("rawtypes")
+public class NetworkProcessor {
+    /** The network interface for processing requests. */
+    private final Network mNetwork;
+    /** The cache to write to. */
+    private final Cache mCache;
+    /** For posting responses and errors. */
+    private final ResponseDelivery mDelivery;
+    /** Collects queue wait time of processed requests. */
+    private final DispatchStats mStats;
+
+    /**
+     * @param network Network interface to use for performing requests
+     * @param cache Cache interface to use for writing responses to cache
+     * @param delivery Delivery interface to use for posting responses
+     * @param stats Where to record queue wait time, may be null
+     */
+    public NetworkProcessor(Network network, Cache cache, ResponseDelivery delivery,
+            DispatchStats stats) {
+        mNetwork = network;
+        mCache = cache;
+        mDelivery = delivery;
+        mStats = stats;
+    }
+
+    /**
+     * Processes a request that was just taken off the network queue.
+     */
+    public void process(Request request) {
+        try {
+            request.addMarker("network-queue-take");
+            long queuedTime = request.getNetworkQueuedTime();
+            if (queuedTime > 0) {
+                long waitMs = SystemClock.elapsedRealtime() - queuedTime;
+                request.logLong(Request.LOG_QUEUE_WAIT, waitMs);
+                if (mStats != null) {
+                    mStats.record(waitMs);
+                }
+            }
+
+            // If the request was cancelled already, do not perform the
+            // network request.
+            if (request.isCanceled()) {
+                request.finish("network-discard-cancelled");
+                return;
+            }
+
+            // Tag the request (if API >= 14)
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+                TrafficStats.getThreadStatsTag();
+                TrafficStats.setThreadStatsTag(request.getTrafficStatsTag());
+            }
+
+            // Perform the network request.
+            NetworkResponse networkResponse = mNetwork.performRequest(request);
+            request.addMarker("network-http-complete");
+
+            // If the server returned 304 AND we delivered a response already,
+            // we're done -- don't deliver a second identical response.
+            // The entry is still fresh though, so its metadata is refreshed all the same.
+            if (networkResponse.notModified && request.hasHadResponseDelivered()) {
+                Cache.Entry entry = request.shouldCache()
+                        ? HttpHeaderParser.parseCacheHeaders(networkResponse) : null;
+                if (entry != null) {
+                    refreshMetadata(cacheOf(request), request.getCacheKey(), entry,
+                            networkResponse);
+                    request.addMarker("network-cache-refreshed");
+                }
+                request.finish("not-modified");
+                return;
+            }
+            Response<?> response;
+            if (networkResponse.parsedResponse != null) {
+                // Already parsed while streaming, sizes and parse time are logged by the request.
+                response = networkResponse.parsedResponse;
+            } else {
+                long begin = SystemClock.elapsedRealtime();
+                // Parse the response here on the worker thread.
+                response = request.parseNetworkResponse(networkResponse);
+                if(!networkResponse.notModified){
+                    request.logLong(Request.LOG_RECV_SIZE,networkResponse.data != null ?networkResponse.data.length:0);
+                }
+                request.logLong(Request.LOG_PARSE,SystemClock.elapsedRealtime() -begin);
+            }
+            if(response.error != null && response.error instanceof ResponseContentError){
+                request.logLong(Request.LOG_ERROR_NO,((ResponseContentError) response.error).getErrorCode().getErrorNo());
+            }
+            request.addMarker("network-parse-complete");
+
+            // Post the response back.
+            request.markDelivered();
+            mDelivery.postResponse(request, response);
+            // Write to cache if applicable; a 304 only refreshes the metadata of the entry.
+            if (request.shouldCache() && response.cacheEntry != null) {
+                Cache cache = cacheOf(request);
+                if (networkResponse.notModified) {
+                    refreshMetadata(cache, request.getCacheKey(), response.cacheEntry,
+                            networkResponse);
+                    request.addMarker("network-cache-refreshed");
+                } else {
+                    cache.put(request.getCacheKey(), response.cacheEntry);
+                    request.addMarker("network-cache-written");
+                }
+            }
+        } catch (VolleyError volleyError) {
+            parseAndDeliverNetworkError(request, volleyError);
+        } catch (Exception e) {
+            VolleyLog.e(e, "Unhandled exception %s", e.toString());
+            mDelivery.postError(request, new VolleyError(e));
+        }
+    }
+
+    /** Returns the partition holding the responses of the request, or the whole cache. */
+    private Cache cacheOf(Request<?> request) {
+        return mCache instanceof PartitioningCache
+                ? ((PartitioningCache) mCache).getPartition(request) : mCache;
+    }
+
+    /**
+     * Refreshes a cached entry after a 304. Caches that can't update metadata alone get the
+     * entry put again, with the body of the revalidated response as its data.
+     */
+    private static void refreshMetadata(Cache cache, String key, Cache.Entry entry,
+            NetworkResponse networkResponse) {
+        if (cache instanceof MetadataCache) {
+            ((MetadataCache) cache).updateMetadata(key, entry);
+            return;
+        }
+        if (entry.data == null && networkResponse.body != null) {
+            ByteBuffer body = networkResponse.body.duplicate();
+            entry.data = new byte[body.remaining()];
+            body.get(entry.data);
+        }
+        if (entry.data != null) {
+            cache.put(key, entry);
+        }
+    }
+
+    private void parseAndDeliverNetworkError(Request<?> request, VolleyError error) {
+        error = request.parseNetworkError(error);
+        mDelivery.postError(request, error);
+    }
+}
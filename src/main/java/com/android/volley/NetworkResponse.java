@@ -18,6 +18,7 @@ package com.android.volley;
 
 import org.apache.http.HttpStatus;
 
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Map;
 
@@ -38,6 +39,43 @@ public class NetworkResponse {
         this.data = data;
         this.headers = headers;
         this.notModified = notModified;
+        this.parsedResponse = null;
+        this.body = null;
+    }
+
+    /**
+     * Creates a network response whose body was parsed while it was being read.
+     * @param statusCode the HTTP status code
+     * @param headers Headers returned with this response, or null for none
+     * @param parsedResponse The response returned by
+     *        {@link Request#handleStreamingResponse(org.apache.http.HttpResponse, NetworkResponse)}
+     */
+    public NetworkResponse(int statusCode, Map<String, String> headers, Response<?> parsedResponse) {
+        this.statusCode = statusCode;
+        this.data = null;
+        this.headers = headers;
+        this.notModified = false;
+        this.parsedResponse = parsedResponse;
+        this.body = null;
+    }
+
+    /**
+     * Creates a response for a cache hit read without copying, see {@link Request#canParseBody()}.
+     * @param body View of the cached body
+     * @param headers Headers returned with this response, or null for none
+     * @param notModified True for a 304 answered from the cached body, false for a plain hit
+     */
+    public NetworkResponse(ByteBuffer body, Map<String, String> headers, boolean notModified) {
+        this.statusCode = notModified ? HttpStatus.SC_NOT_MODIFIED : HttpStatus.SC_OK;
+        this.data = null;
+        this.headers = headers;
+        this.notModified = notModified;
+        this.parsedResponse = null;
+        this.body = body;
+    }
+
+    public NetworkResponse(ByteBuffer body, Map<String, String> headers) {
+        this(body, headers, false);
     }
 
     public NetworkResponse(byte[] data) {
@@ -59,4 +97,16 @@ public class NetworkResponse {
 
     /** True if the server returned a 304 (Not Modified). */
     public final boolean notModified;
+
+    /**
+     * The already parsed response for requests using {@link Request#isStreamingResponse()};
+     * {@link #data} is null in that case.
+     */
+    public final Response<?> parsedResponse;
+
+    /**
+     * View of the body for cache hits of requests using {@link Request#canParseBody()};
+     * {@link #data} is null in that case. Must not be modified.
+     */
+    public final ByteBuffer body;
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+/**
+ * A {@link Cache} split into partitions that hold the responses of different requests.
+ * The dispatchers read and write the responses of a request through its partition; caches
+ * that don't implement it are used as a whole.
+ */
+public interface PartitioningCache extends Cache {
+    /**
+     * Returns the cache that holds the responses of the given request.
+     */
+    public Cache getPartition(Request<?> request);
+}
@@ -23,13 +23,21 @@ import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.android.volley.VolleyLog.MarkerLog;
+import com.android.volley.toolbox.ByteArrayPool;
 import com.android.volley.toolbox.HttpStack;
+import com.android.volley.toolbox.PoolingByteArrayOutputStream;
+import com.android.volley.toolbox.TeeInputStream;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.net.ssl.SSLHandshakeException;
@@ -87,6 +95,12 @@ public abstract class Request<T> implements Comparable<Request<T>> {
     /** Whether or not a response has been delivered for this request yet. */
     private boolean mResponseDelivered = false;
 
+    /** Whether or not the leading elements of a list response have been posted yet. */
+    private boolean mElementsDelivered = false;
+
+    /** When this request was last put on the network queue, used to measure queue wait time. */
+    private volatile long mNetworkQueuedTime = 0;
+
     // A cheap variant of request tracing used to dump slow requests.
     private long mRequestBirthTime = 0;
 
@@ -116,7 +130,8 @@ public abstract class Request<T> implements Comparable<Request<T>> {
             "U","",
             "CD","0",
             "HC","0",
-            "EX",""
+            "EX","",
+            "QW","0"
     };
     public static final int LOG_SOCKET_DURATION = 0;
     public static final int LOG_HTTP_DURATION = 1;
@@ -132,6 +147,10 @@ public abstract class Request<T> implements Comparable<Request<T>> {
      * 扩展字段，可以提交一些额外的内容，如错误原因等
      */
     public static final int LOG_EXTRA = 10;
+    /**
+     * 在网络队列中等待调度的时间
+     */
+    public static final int LOG_QUEUE_WAIT = 11;
 
     /** The additional headers. */
     private HashMap<String, String> mHashHeaders;
@@ -289,6 +308,21 @@ public abstract class Request<T> implements Comparable<Request<T>> {
         return mSequence;
     }
 
+    /**
+     * Marks that this request was just put on the network queue.  Used by {@link RequestQueue}
+     * and {@link CacheDispatcher}.
+     */
+    void markNetworkQueued() {
+        mNetworkQueuedTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Returns when this request was put on the network queue, 0 if it never was.
+     */
+    public long getNetworkQueuedTime() {
+        return mNetworkQueuedTime;
+    }
+
     /**
      * Returns the URL of this request.
      */
@@ -477,6 +511,36 @@ public abstract class Request<T> implements Comparable<Request<T>> {
         return null;
     }
 
+    /**
+     * Returns true if the body should be streamed to the connection with {@link #writeBody(OutputStream)}
+     * instead of being built as a whole by {@link #getBody()}. Only stacks supporting it, like
+     * {@link com.android.volley.toolbox.HurlStack} in high throughput mode, use this; others still
+     * call {@link #getBody()}.
+     */
+    public boolean hasStreamingBody() {
+        return false;
+    }
+
+    /**
+     * Returns the length of the body written by {@link #writeBody(OutputStream)}, or -1 if it is
+     * unknown and the body has to be sent chunked.
+     */
+    public long getBodyLength() {
+        return -1;
+    }
+
+    /**
+     * Writes the body to the connection, see {@link #hasStreamingBody()}.
+     *
+     * @throws AuthFailureError in the event of auth failure
+     */
+    public void writeBody(OutputStream out) throws IOException, AuthFailureError {
+        byte[] body = getBody();
+        if (body != null) {
+            out.write(body);
+        }
+    }
+
     /**
      * Converts <code>params</code> into an application/x-www-form-urlencoded encoded string.
      */
@@ -538,6 +602,24 @@ public abstract class Request<T> implements Comparable<Request<T>> {
         return Priority.NORMAL;
     }
 
+    /**
+     * Traffic classes used by {@link LaneDispatchEngine} to give each kind of request its
+     * own concurrency budget, so long transfers cannot starve short API calls.
+     */
+    public enum Lane {
+        API,
+        IMAGE,
+        DOWNLOAD,
+        UPLOAD
+    }
+
+    /**
+     * Returns the {@link com.android.volley.Request.Lane} of this request; {@link com.android.volley.Request.Lane#API} by default.
+     */
+    public Lane getLane() {
+        return Lane.API;
+    }
+
     /**
      * Returns the socket timeout in milliseconds per retry attempt. (This value can be changed
      * per retry attempt if a backoff is specified via backoffTimeout()). If there are no retry
@@ -569,6 +651,21 @@ public abstract class Request<T> implements Comparable<Request<T>> {
         return mResponseDelivered;
     }
 
+    /**
+     * Mark this request as having its leading elements posted. A retry parses the
+     * response again and must not hand the same elements to the listener twice.
+     */
+    public void markElementsDelivered() {
+        mElementsDelivered = true;
+    }
+
+    /**
+     * Returns true if the leading elements of this request have been posted.
+     */
+    public boolean hasHadElementsDelivered() {
+        return mElementsDelivered;
+    }
+
     /**
      * Subclasses must implement this to parse the raw network response
      * and return an appropriate response type. This method will be
@@ -604,6 +701,14 @@ public abstract class Request<T> implements Comparable<Request<T>> {
     public void deliverDownloadProgress(long fileSize, long downloadedSize) {
     }
 
+    /** Delivers when upload request body progress change to the Listener. */
+    public void deliverUploadProgress(long fileSize, long uploadedSize) {
+    }
+
+    /** Delivers the leading elements of a list response that is still being parsed. */
+    public void deliverElements(List<?> elements) {
+    }
+
     /** Delivers request has truly cancelled to the Listener. */
     public void deliverCancel() {
     }
@@ -637,6 +742,98 @@ public abstract class Request<T> implements Comparable<Request<T>> {
         }
     }
 
+    /**
+     * Returns true if this request parses its response body while it is read from the connection,
+     * see {@link #parseNetworkResponse(NetworkResponse, InputStream)}. Only successful (200)
+     * responses are streamed; errors, 304s and cache hits still go through
+     * {@link #parseNetworkResponse(NetworkResponse)}.
+     */
+    public boolean isStreamingResponse() {
+        return false;
+    }
+
+    /**
+     * Returns true if {@link #parseNetworkResponse(NetworkResponse)} can handle a response whose
+     * data is null and whose {@link NetworkResponse#body} views the cached bytes. Cache hits of
+     * such requests are parsed straight from the cache file without copying the body.
+     */
+    public boolean canParseBody() {
+        return false;
+    }
+
+    /**
+     * Subclasses using {@link #isStreamingResponse()} override this to parse the response body
+     * straight from the connection. The default reads the whole body and hands it to
+     * {@link #parseNetworkResponse(NetworkResponse)}. This method will be called from a worker
+     * thread.
+     * @param response Status and headers of the response, its data is null
+     * @param content The live response body, closed by the caller
+     * @return The parsed response, or null in the case of an error
+     */
+    protected Response<T> parseNetworkResponse(NetworkResponse response, InputStream content) throws IOException {
+        ByteArrayPool pool = ByteArrayPool.get();
+        PoolingByteArrayOutputStream bytes = new PoolingByteArrayOutputStream(pool);
+        byte[] buffer = pool.getBuf(1024);
+        try {
+            int count;
+            while ((count = content.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            return parseNetworkResponse(new NetworkResponse(response.statusCode, bytes.toByteArray(),
+                    response.headers, false));
+        } finally {
+            pool.returnBuf(buffer);
+            bytes.close();
+        }
+    }
+
+    /**
+     * Handle the response of a streaming request: the body is handed to
+     * {@link #parseNetworkResponse(NetworkResponse, InputStream)} without being buffered. Only if
+     * {@link #shouldCache()} is set a copy of the bytes is kept, to be written to the cache.
+     */
+    public Response<T> handleStreamingResponse(HttpResponse response, NetworkResponse headers) throws IOException, ServerError {
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return parseNetworkResponse(headers, new ByteArrayInputStream(new byte[0]));
+        }
+        PoolingByteArrayOutputStream copy = null;
+        try {
+            InputStream in = entity.getContent();
+            if (in == null) {
+                throw new ServerError("response content is null");
+            }
+            if (shouldCache()) {
+                copy = new PoolingByteArrayOutputStream(ByteArrayPool.get(), (int) entity.getContentLength());
+            }
+            TeeInputStream content = new TeeInputStream(in, copy);
+            long begin = SystemClock.elapsedRealtime();
+            Response<T> result = parseNetworkResponse(headers, content);
+            logLong(LOG_PARSE, SystemClock.elapsedRealtime() - begin);
+            if (copy != null) {
+                // The parser may stop before the end of the body, the cache needs all of it.
+                content.drain();
+                if (result != null && result.cacheEntry != null) {
+                    result.cacheEntry.data = copy.toByteArray();
+                }
+            }
+            logLong(LOG_RECV_SIZE, content.getCount());
+            return result;
+        } finally {
+            try {
+                // Close the InputStream and release the resources by "consuming the content".
+                entity.consumeContent();
+            } catch (IOException e) {
+                // This can happen if there was an exception above that left the entity in
+                // an invalid state.
+                VolleyLog.v("Error occured when calling consumingContent");
+            }
+            if (copy != null) {
+                copy.close();
+            }
+        }
+    }
+
     /**
      * Our comparator sorts from high to low priority, and secondarily by
      * sequence number to provide FIFO ordering.
@@ -81,8 +81,14 @@ public class RequestQueue {
     /** Response delivery mechanism. */
     private final ResponseDelivery mDelivery;
 
-    /** The network dispatchers. */
-    private NetworkDispatcher[] mDispatchers;
+    /** Runs the requests of the network queue. */
+    private final DispatchEngine mEngine;
+
+    /** Performs a single network request, shared by the engine's threads. */
+    private final NetworkProcessor mNetworkProcessor;
+
+    /** Time requests spend in the network queue before being dispatched. */
+    private final DispatchStats mDispatchStats = new DispatchStats();
 
     /** The cache dispatcher. */
     private CacheDispatcher mCacheDispatcher;
@@ -92,18 +98,44 @@ public class RequestQueue {
      *
      * @param cache A Cache to use for persisting responses to disk
      * @param network A Network interface for performing HTTP requests
-     * @param threadPoolSize Number of network dispatcher threads to create
+     * @param engine The engine running requests that go out to the network
      * @param delivery A ResponseDelivery interface for posting responses and errors
      */
-    public RequestQueue(Cache cache, Network network, int threadPoolSize,
+    public RequestQueue(Cache cache, Network network, DispatchEngine engine,
             ResponseDelivery delivery) {
         mCache = cache;
         mNetwork = network;
-        mDispatchers = new NetworkDispatcher[threadPoolSize];
+        mEngine = engine;
         mDelivery = delivery;
+        mNetworkProcessor = new NetworkProcessor(network, cache, delivery, mDispatchStats);
         network.setDelivery(delivery);
     }
 
+    /**
+     * Creates the worker pool. Processing will not begin until {@link #start()} is called.
+     *
+     * @param cache A Cache to use for persisting responses to disk
+     * @param network A Network interface for performing HTTP requests
+     * @param engine The engine running requests that go out to the network
+     */
+    public RequestQueue(Cache cache, Network network, DispatchEngine engine) {
+        this(cache, network, engine,
+                new ExecutorDelivery(new Handler(Looper.getMainLooper())));
+    }
+
+    /**
+     * Creates the worker pool. Processing will not begin until {@link #start()} is called.
+     *
+     * @param cache A Cache to use for persisting responses to disk
+     * @param network A Network interface for performing HTTP requests
+     * @param threadPoolSize Number of network dispatcher threads to create
+     * @param delivery A ResponseDelivery interface for posting responses and errors
+     */
+    public RequestQueue(Cache cache, Network network, int threadPoolSize,
+            ResponseDelivery delivery) {
+        this(cache, network, new FixedDispatchEngine(threadPoolSize), delivery);
+    }
+
     /**
      * Creates the worker pool. Processing will not begin until {@link #start()} is called.
      *
@@ -127,10 +159,24 @@ public class RequestQueue {
     }
 
     /**
-     * Gets the thread pool size.
+     * Gets the thread pool size, i.e. the maximum number of concurrent network requests.
      */
     public int getThreadPoolSize() {
-        return mDispatchers.length;
+        return mEngine.getMaxConcurrency();
+    }
+
+    /**
+     * Gets the engine running the network requests.
+     */
+    public DispatchEngine getDispatchEngine() {
+        return mEngine;
+    }
+
+    /**
+     * Gets the network queue wait time statistics.
+     */
+    public DispatchStats getDispatchStats() {
+        return mDispatchStats;
     }
 
     public ResponseDelivery getDelivery() {
@@ -146,13 +192,8 @@ public class RequestQueue {
         mCacheDispatcher = new CacheDispatcher(mCacheQueue, mNetworkQueue, mCache, mDelivery);
         mCacheDispatcher.start();
 
-        // Create network dispatchers (and corresponding threads) up to the pool size.
-        for (int i = 0; i < mDispatchers.length; i++) {
-            NetworkDispatcher networkDispatcher = new NetworkDispatcher(mNetworkQueue, mNetwork,
-                    mCache, mDelivery);
-            mDispatchers[i] = networkDispatcher;
-            networkDispatcher.start();
-        }
+        // Start draining the network queue.
+        mEngine.start(mNetworkQueue, mNetworkProcessor);
     }
 
     /**
@@ -162,11 +203,7 @@ public class RequestQueue {
         if (mCacheDispatcher != null) {
             mCacheDispatcher.quit();
         }
-        for (int i = 0; i < mDispatchers.length; i++) {
-            if (mDispatchers[i] != null) {
-                mDispatchers[i].quit();
-            }
-        }
+        mEngine.stop();
     }
 
     /**
@@ -239,6 +276,7 @@ public class RequestQueue {
 
         // If the request is uncacheable, skip the cache queue and go straight to the network.
         if (!request.shouldCache()) {
+            request.markNetworkQueued();
             mNetworkQueue.add(request);
             return request;
         }
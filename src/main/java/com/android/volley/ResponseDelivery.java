@@ -16,6 +16,8 @@
 
 package com.android.volley;
 
+import java.util.List;
+
 public interface ResponseDelivery {
     /**
      * Parses a response from the network or cache and delivers it.
@@ -38,4 +40,15 @@ public interface ResponseDelivery {
 
     /** Posts file download progress stat. */
     void postDownloadProgress(Request<?> request, long fileSize, long downloadedSize);
+
+    /** Posts request body upload progress stat. */
+    void postUploadProgress(Request<?> request, long fileSize, long uploadedSize);
+
+    /**
+     * Posts the leading elements of a list response that is still being parsed.
+     * The final response is still delivered through {@link #postResponse}.
+     * Only the first call for a request posts, a retry that parses the response
+     * again must not deliver the same elements twice.
+     */
+    void postElements(Request<?> request, List<?> elements);
 }
@@ -26,6 +26,7 @@ import com.android.volley.NetworkError;
 import com.android.volley.NetworkResponse;
 import com.android.volley.NoConnectionError;
 import com.android.volley.Request;
+import com.android.volley.Response;
 import com.android.volley.ResponseDelivery;
 import com.android.volley.RetryPolicy;
 import com.android.volley.ServerError;
@@ -91,8 +92,23 @@ public class BasicNetwork implements Network {
                 responseHeaders = convertHeaders(httpResponse.getAllHeaders());//OutOfMemoryError
                 // Handle cache validation.
                 if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+                    Cache.Entry entry = request.getCacheEntry();
+                    // A 304 may carry only the headers that changed, keep the cached ones too.
+                    Map<String, String> combinedHeaders = new HashMap<String, String>(entry.responseHeaders);
+                    combinedHeaders.putAll(responseHeaders);
+                    if (entry.data == null && entry.body != null) {
+                        return new NetworkResponse(entry.body.duplicate(), combinedHeaders, true);
+                    }
                     return new NetworkResponse(HttpStatus.SC_NOT_MODIFIED,
-                            request.getCacheEntry().data, responseHeaders, true);
+                            entry.data, combinedHeaders, true);
+                }
+
+                if (statusCode == HttpStatus.SC_OK && request.isStreamingResponse()) {
+                    // Parse straight from the connection, the body is never buffered as a whole.
+                    Response<?> parsed = request.handleStreamingResponse(httpResponse,
+                            new NetworkResponse(statusCode, null, responseHeaders, false));
+                    logSlowRequests(SystemClock.elapsedRealtime() - requestStart, request, null, statusLine);
+                    return new NetworkResponse(statusCode, responseHeaders, parsed);
                 }
 
                 responseContents = request.handleResponse(httpResponse, mDelivery);
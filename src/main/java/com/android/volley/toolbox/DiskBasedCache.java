@@ -16,37 +16,67 @@
 
 package com.android.volley.toolbox;
 
-import android.graphics.drawable.Drawable;
 import android.os.SystemClock;
 
+import com.android.volley.BodyViewCache;
 import com.android.volley.Cache;
+import com.android.volley.DispatchStats;
+import com.android.volley.MetadataCache;
 import com.android.volley.VolleyLog;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Cache implementation that caches files directly onto the hard disk in the specified
- * directory. The default disk usage size is 5MB, but is configurable.
+ * directory. The default disk usage size is 5MB, but is configurable. Which entries are
+ * pruned when it is full is up to an {@link EvictionPolicy}, least recently used by default.
+ *
+ * <p>The LRU index is kept in an append-only journal next to the cache files, so
+ * {@link #initialize()} restores it with one sequential read instead of opening every
+ * cache file. Directories written by older versions without a journal are scanned once
+ * and a journal is written for them.
+ *
+ * <p>File reads and writes are guarded by striped per-key locks, so a large write only
+ * blocks lookups of keys in the same stripe. The in-memory index is locked only for the
+ * short time needed to look up or update a header. Entries evicted by a put leave the
+ * index right away; their files are deleted on a background thread.
  */
-public class DiskBasedCache implements Cache {
+public class DiskBasedCache implements BodyViewCache, MetadataCache {
 
-    /** Map of the Key, CacheHeader pairs */
+    /** Map of the Key, CacheHeader pairs, guarded by itself. */
     private final Map<String, CacheHeader> mEntries =
             new LinkedHashMap<String, CacheHeader>(16, .75f, true);
 
-    /** Total amount of space currently used by the cache in bytes. */
+    /** Picks the entries to prune, guarded by mEntries. */
+    private final EvictionPolicy mPolicy;
+
+    /** Total amount of space currently used by the cache in bytes, guarded by mEntries. */
     private long mTotalSize = 0;
 
     /** The root directory to use for the cache. */
@@ -55,6 +85,45 @@ public class DiskBasedCache implements Cache {
     /** The maximum size of the cache in bytes. */
     private int mMaxCacheSizeInBytes;
 
+    /**
+     * Held for reading by per-entry operations and for writing while the whole cache is
+     * reinitialized or cleared.
+     */
+    private final ReentrantReadWriteLock mStateLock = new ReentrantReadWriteLock();
+
+    /** Per-key locks guarding the cache files. */
+    private final ReentrantLock[] mKeyLocks = new ReentrantLock[LOCK_STRIPES];
+
+    /** Guards the journal stream and record count. */
+    private final Object mJournalLock = new Object();
+
+    /** Appends records to the journal, null if it could not be opened. */
+    private OutputStream mJournal;
+
+    /** Number of records in the journal, used to decide when to compact it. */
+    private int mJournalRecords;
+
+    /** Whether a compaction is queued on the prune executor. Guarded by mJournalLock. */
+    private boolean mCompactionScheduled;
+
+    /**
+     * Records appended while a compaction writes the new journal, which gets them before
+     * it is swapped in. Null when no compaction is running. Guarded by mJournalLock.
+     */
+    private ByteArrayOutputStream mPendingRecords;
+
+    /** Number of records in {@link #mPendingRecords}. */
+    private int mPendingRecordCount;
+
+    /** Time the last {@link #initialize()} took, in ms. */
+    private volatile long mInitializeTimeMs;
+
+    /** Latency of {@link #get(String)}, in ms. */
+    private final DispatchStats mLookupStats = new DispatchStats();
+
+    /** Deletes the files of pruned entries for all caches, off the thread that wrote. */
+    private static ExecutorService sPruneExecutor;
+
     /** Default maximum disk usage in bytes. */
     private static final int DEFAULT_DISK_USAGE_BYTES = 5 * 1024 * 1024;
 
@@ -64,14 +133,57 @@ public class DiskBasedCache implements Cache {
     /** Magic number for current version of cache file format. */
     private static final int CACHE_MAGIC = 0x20120504;
 
+    /** Magic number for current version of journal format. */
+    private static final int JOURNAL_MAGIC = 0x20160301;
+
+    private static final String JOURNAL_FILE = "journal";
+    private static final String JOURNAL_FILE_TMP = "journal.tmp";
+
+    /** Suffix of a cache file while it is being written. */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** Entries at least this large are memory mapped by {@link #getBody(String)}. */
+    private static final int MAP_THRESHOLD_BYTES = 128 * 1024;
+
+    /** How much of a cache file {@link #get(String)} reads before it knows the header length. */
+    private static final int HEAD_READ_BYTES = 8 * 1024;
+
+    /** Journal record types. */
+    private static final int OP_PUT = 1;
+    private static final int OP_REMOVE = 2;
+    private static final int OP_READ = 3;
+
+    /** The journal is compacted once it has this many records and twice as many as entries. */
+    private static final int COMPACT_MIN_RECORDS = 2000;
+
+    private static final int LOCK_STRIPES = 32;
+
+    private static final int JOURNAL_BUFFER_SIZE = 64 * 1024;
+
     /**
      * Constructs an instance of the DiskBasedCache at the specified directory.
      * @param rootDirectory The root directory of the cache.
      * @param maxCacheSizeInBytes The maximum size of the cache in bytes.
+     * @param policy Picks the entries to prune when the cache is full.
      */
-    public DiskBasedCache(File rootDirectory, int maxCacheSizeInBytes) {
+    public DiskBasedCache(File rootDirectory, int maxCacheSizeInBytes, EvictionPolicy policy) {
         mRootDirectory = rootDirectory;
         mMaxCacheSizeInBytes = maxCacheSizeInBytes;
+        mPolicy = policy;
+        mPolicy.setCapacity(maxCacheSizeInBytes);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            mKeyLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Constructs an instance of the DiskBasedCache at the specified directory that prunes
+     * the least recently used entries.
+     * @param rootDirectory The root directory of the cache.
+     * @param maxCacheSizeInBytes The maximum size of the cache in bytes.
+     */
+    public DiskBasedCache(File rootDirectory, int maxCacheSizeInBytes) {
+        this(rootDirectory, maxCacheSizeInBytes, new LruEvictionPolicy());
     }
 
     /**
@@ -88,104 +200,249 @@ public class DiskBasedCache implements Cache {
      * @param rootDirectory The root directory of the cache.
      * @param maxCacheSizeInBytes The maximum size of the cache in bytes.
      */
-    public synchronized void switchCache(File rootDirectory,int maxCacheSizeInBytes){
-        mRootDirectory = rootDirectory;
-        this.mMaxCacheSizeInBytes = maxCacheSizeInBytes;
-        initialize();
+    public void switchCache(File rootDirectory,int maxCacheSizeInBytes){
+        mStateLock.writeLock().lock();
+        try {
+            mRootDirectory = rootDirectory;
+            this.mMaxCacheSizeInBytes = maxCacheSizeInBytes;
+            synchronized (mEntries) {
+                mPolicy.setCapacity(maxCacheSizeInBytes);
+            }
+            initialize();
+        } finally {
+            mStateLock.writeLock().unlock();
+        }
     }
     /**
      * Switch to another cache directory，using default cache size {@link DiskBasedCache#DEFAULT_DISK_USAGE_BYTES}
      * @param rootDirectory The root directory of the cache.
      */
-    public synchronized void switchCache(File rootDirectory){
+    public void switchCache(File rootDirectory){
         switchCache(rootDirectory,DEFAULT_DISK_USAGE_BYTES);
     }
     /**
      * Clears the cache. Deletes all cached files from disk.
      */
     @Override
-    public synchronized void clear() {
-        File[] files = mRootDirectory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                file.delete();
+    public void clear() {
+        mStateLock.writeLock().lock();
+        try {
+            closeJournal();
+            File[] files = mRootDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
             }
+            synchronized (mEntries) {
+                mEntries.clear();
+                mTotalSize = 0;
+                mPolicy.clear();
+            }
+            synchronized (mJournalLock) {
+                rewriteJournal();
+            }
+            VolleyLog.d("Cache cleared.");
+        } finally {
+            mStateLock.writeLock().unlock();
         }
-        mEntries.clear();
-        mTotalSize = 0;
-        VolleyLog.d("Cache cleared.");
     }
 
     /**
      * Returns the cache entry with the specified key if it exists, null otherwise.
      */
     @Override
-    public synchronized Entry get(String key) {
-        CacheHeader entry = mEntries.get(key);
-        // if the entry does not exist, return.
-        if (entry == null) {
-            return null;
-        }
+    public Entry get(String key) {
+        return get(key, false);
+    }
+
+    /**
+     * Returns the cache entry with the specified key if it exists, null otherwise. Its body
+     * views the cache file: entries of at least {@link #MAP_THRESHOLD_BYTES} are memory
+     * mapped, smaller ones are read in one go and the body is an array-backed slice of it.
+     */
+    @Override
+    public Entry getBody(String key) {
+        return get(key, true);
+    }
 
-        File file = getFileForKey(key);
-        CountingInputStream cis = null;
+    private Entry get(String key, boolean view) {
+        long begin = SystemClock.elapsedRealtime();
+        mStateLock.readLock().lock();
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
         try {
-            cis = new CountingInputStream(new FileInputStream(file));
-            CacheHeader.readHeader(cis); // eat header
-            byte[] data = streamToBytes(cis, (int) (file.length() - cis.bytesRead));
-            return entry.toCacheEntry(data);
-        } catch (IOException e) {
-            VolleyLog.d("%s: %s", file.getAbsolutePath(), e.toString());
-            remove(key);
-            return null;
+            CacheHeader entry;
+            synchronized (mEntries) {
+                entry = mEntries.get(key);
+                mPolicy.onAccess(key);
+            }
+            // if the entry does not exist, return.
+            if (entry == null) {
+                return null;
+            }
+            appendJournal(OP_READ, key, null);
+
+            File file = getFileForKey(key);
+            try {
+                return readEntry(entry, file, view);
+            } catch (IOException e) {
+                VolleyLog.d("%s: %s", file.getAbsolutePath(), e.toString());
+                removeLocked(key);
+                return null;
+            }
         } finally {
-            if (cis != null) {
-                try {
-                    cis.close();
-                } catch (IOException ioe) {
-                    return null;
+            lock.unlock();
+            mStateLock.readLock().unlock();
+            mLookupStats.record(SystemClock.elapsedRealtime() - begin);
+        }
+    }
+
+    /**
+     * Reads the data of a cache file through its channel; the header values come from the
+     * index, the header in the file is only skipped.
+     */
+    private static Entry readEntry(CacheHeader header, File file, boolean view) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Cache file too large: " + size);
+            }
+            if (view) {
+                ByteBuffer buffer;
+                if (size >= MAP_THRESHOLD_BYTES) {
+                    // The mapping stays valid after the channel is closed and, since files are
+                    // replaced by rename, after the entry is rewritten or deleted.
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                } else {
+                    buffer = ByteBuffer.allocate((int) size);
+                    readFully(channel, buffer);
+                    buffer.flip();
                 }
+                if (!skipHeader(buffer)) {
+                    throw new EOFException();
+                }
+                Entry e = header.toCacheEntry(null);
+                e.body = buffer.slice();
+                return e;
+            }
+
+            // Read the start of the file, then the rest of the body straight into its array.
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(size, HEAD_READ_BYTES));
+            readFully(channel, head);
+            head.flip();
+            if (!skipHeader(head)) {
+                head = ByteBuffer.allocate((int) size);
+                channel.position(0);
+                readFully(channel, head);
+                head.flip();
+                if (!skipHeader(head)) {
+                    throw new EOFException();
+                }
+            }
+            byte[] data = new byte[head.remaining() + (int) (size - head.limit())];
+            int buffered = head.remaining();
+            head.get(data, 0, buffered);
+            readFully(channel, ByteBuffer.wrap(data, buffered, data.length - buffered));
+            return header.toCacheEntry(data);
+        } catch (OutOfMemoryError e) {
+            throw new IOException("Error read content");
+        } finally {
+            try {
+                fis.close();
+            } catch (IOException ignored) { }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                throw new EOFException();
             }
         }
     }
 
     /**
-     * Initializes the DiskBasedCache by scanning for all files currently in the
-     * specified root directory. Creates the root directory if necessary.
+     * Moves the position of the buffer past the cache header at its position, without
+     * decoding any strings.
+     * @return False if the buffer ends inside the header
+     * @throws IOException If the buffer does not start with a cache header
      */
-    @Override
-    public synchronized void initialize() {
-        if (!mRootDirectory.exists()) {
-            if (!mRootDirectory.mkdirs()) {
-                VolleyLog.e("Unable to create cache dir %s", mRootDirectory.getAbsolutePath());
+    private static boolean skipHeader(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != CACHE_MAGIC) {
+                throw new IOException("Bad cache magic");
             }
-            return;
+            skipString(buffer); // key
+            skipString(buffer); // etag
+            buffer.position(buffer.position() + 3 * 8); // serverDate, ttl, softTtl
+            int headers = buffer.getInt();
+            if (headers < 0) {
+                throw new IOException("Error cache header");
+            }
+            for (int i = 0; i < 2 * headers; i++) {
+                skipString(buffer);
+            }
+            return true;
+        } catch (BufferUnderflowException e) {
+            return false;
+        } catch (IllegalArgumentException e) {
+            // A position past the limit.
+            return false;
         }
+    }
 
-        File[] files = mRootDirectory.listFiles();
-        if (files == null) {
-            return;
+    private static void skipString(ByteBuffer buffer) throws IOException {
+        long length = buffer.getLong();
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Bad string length " + length);
         }
-        int totalSize = 0;
-        for (File file : files) {
-            FileInputStream fis = null;
-            try {
-                fis = new FileInputStream(file);
-                CacheHeader entry = CacheHeader.readHeader(fis);
-                entry.size = file.length();
-                totalSize += entry.size;
-                putEntry(entry.key, entry);
-            } catch (IOException e) {
-                if (file != null) {
-                   file.delete();
+        buffer.position(buffer.position() + (int) length);
+    }
+
+    /**
+     * Initializes the DiskBasedCache from its journal, or by scanning for all files
+     * currently in the specified root directory if there is no usable journal.
+     * Creates the root directory if necessary.
+     */
+    @Override
+    public void initialize() {
+        mStateLock.writeLock().lock();
+        try {
+            long begin = SystemClock.elapsedRealtime();
+            closeJournal();
+            synchronized (mEntries) {
+                mEntries.clear();
+                mTotalSize = 0;
+                mPolicy.clear();
+            }
+            if (!mRootDirectory.exists()) {
+                if (!mRootDirectory.mkdirs()) {
+                    VolleyLog.e("Unable to create cache dir %s", mRootDirectory.getAbsolutePath());
+                    return;
                 }
-            } finally {
-                try {
-                    if (fis != null) {
-                        fis.close();
-                    }
-                } catch (IOException ignored) { }
             }
+
+            int records = readJournal();
+            synchronized (mJournalLock) {
+                if (records < 0) {
+                    scanFiles();
+                    rewriteJournal();
+                } else if (needsCompaction(records)) {
+                    rewriteJournal();
+                    deleteOrphans();
+                } else {
+                    openJournal(records);
+                }
+            }
+            mInitializeTimeMs = SystemClock.elapsedRealtime() - begin;
+            VolleyLog.d("Cache initialized with %d entries in %d ms",
+                    mEntries.size(), mInitializeTimeMs);
+        } finally {
+            mStateLock.writeLock().unlock();
         }
     }
 
@@ -195,46 +452,132 @@ public class DiskBasedCache implements Cache {
      * @param fullExpire True to fully expire the entry, false to soft expire
      */
     @Override
-    public synchronized void invalidate(String key, boolean fullExpire) {
-        Entry entry = get(key);
-        if (entry != null) {
-            entry.softTtl = 0;
-            if (fullExpire) {
-                entry.ttl = 0;
+    public void invalidate(String key, boolean fullExpire) {
+        // Same lock order as get and put, which take both locks again reentrantly.
+        mStateLock.readLock().lock();
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            CacheHeader header;
+            synchronized (mEntries) {
+                header = mEntries.get(key);
             }
-            put(key, entry);
+            if (header != null) {
+                Entry entry = header.toCacheEntry(null);
+                entry.softTtl = 0;
+                if (fullExpire) {
+                    entry.ttl = 0;
+                }
+                updateMetadata(key, entry);
+            }
+        } finally {
+            lock.unlock();
+            mStateLock.readLock().unlock();
         }
+    }
 
+    /**
+     * Replaces the metadata of an entry in the index and journals it; the cache file keeps
+     * its data and its original header. Only without a working journal, where the index
+     * would be rebuilt from the file headers, is the whole file rewritten.
+     */
+    @Override
+    public void updateMetadata(String key, Entry entry) {
+        mStateLock.readLock().lock();
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            CacheHeader header;
+            synchronized (mEntries) {
+                CacheHeader old = mEntries.get(key);
+                if (old == null) {
+                    return;
+                }
+                header = old.withMetadata(entry);
+                putEntry(key, header);
+            }
+            if (appendJournal(OP_PUT, key, header)) {
+                return;
+            }
+            File file = getFileForKey(key);
+            try {
+                put(key, readEntry(header, file, false));
+            } catch (IOException e) {
+                VolleyLog.d("%s: %s", file.getAbsolutePath(), e.toString());
+                removeLocked(key);
+            }
+        } finally {
+            lock.unlock();
+            mStateLock.readLock().unlock();
+        }
     }
 
     /**
      * Puts the entry with the specified key into the cache.
      */
     @Override
-    public synchronized void put(String key, Entry entry) {
-        pruneIfNeeded(entry.data.length);
-        File file = getFileForKey(key);
-        FileOutputStream fos = null;
+    public void put(String key, Entry entry) {
+        final List<CacheHeader> pruned;
+        mStateLock.readLock().lock();
         try {
-            fos = new FileOutputStream(file);
-            CacheHeader e = new CacheHeader(key, entry);
-            e.writeHeader(fos);
-            fos.write(entry.data);
-            putEntry(key, e);
-            return;
-        } catch (IOException e) {
-        }finally{
-            if(fos != null){
+            ReentrantLock lock = lockFor(key);
+            lock.lock();
+            try {
+                File file = getFileForKey(key);
+                // Written next to the file and renamed over it, so a reader that mapped
+                // the old file never sees it truncated.
+                File tmp = new File(mRootDirectory, file.getName() + TMP_SUFFIX);
+                OutputStream fos = null;
+                entry.ensureData();
+                CacheHeader e = new CacheHeader(key, entry);
+                boolean success = false;
                 try {
+                    fos = new BufferedOutputStream(new FileOutputStream(tmp));
+                    e.writeTo(fos);
+                    fos.write(entry.data);
                     fos.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                    fos = null;
+                    success = tmp.renameTo(file) || (file.delete() && tmp.renameTo(file));
+                } catch (IOException ioe) {
+                    VolleyLog.d("%s: %s", file.getAbsolutePath(), ioe.toString());
+                } finally {
+                    if (fos != null) {
+                        try {
+                            fos.close();
+                        } catch (IOException ignored) { }
+                    }
                 }
+                if (!success) {
+                    boolean deleted = tmp.delete();
+                    if (!deleted) {
+                        VolleyLog.d("Could not clean up file %s", tmp.getAbsolutePath());
+                    }
+                    return;
+                }
+                synchronized (mEntries) {
+                    putEntry(key, e);
+                    pruned = pruneIfNeeded(key);
+                }
+                appendJournal(OP_PUT, key, e);
+                if (pruned != null) {
+                    for (CacheHeader old : pruned) {
+                        appendJournal(OP_REMOVE, old.key, null);
+                    }
+                }
+            } finally {
+                lock.unlock();
             }
+        } finally {
+            mStateLock.readLock().unlock();
         }
-        boolean deleted = file.delete();
-        if (!deleted) {
-            VolleyLog.d("Could not clean up file %s", file.getAbsolutePath());
+        // The index is already within budget, only the file deletes are left to do.
+        if (pruned != null) {
+            getPruneExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    deletePruned(pruned);
+                }
+            });
         }
     }
 
@@ -242,15 +585,56 @@ public class DiskBasedCache implements Cache {
      * Removes the specified key from the cache if it exists.
      */
     @Override
-    public synchronized void remove(String key) {
+    public void remove(String key) {
+        mStateLock.readLock().lock();
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            removeLocked(key);
+        } finally {
+            lock.unlock();
+            mStateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Time the last {@link #initialize()} took, in ms.
+     */
+    public long getInitializeTimeMs() {
+        return mInitializeTimeMs;
+    }
+
+    /**
+     * Latency of {@link #get(String)} including the file read, in ms.
+     */
+    public DispatchStats getLookupStats() {
+        return mLookupStats;
+    }
+
+    /**
+     * Removes the entry and its file; the caller holds the key lock.
+     */
+    private void removeLocked(String key) {
         boolean deleted = getFileForKey(key).delete();
-        removeEntry(key);
+        boolean removed;
+        synchronized (mEntries) {
+            removed = removeEntry(key);
+        }
+        if (removed) {
+            appendJournal(OP_REMOVE, key, null);
+        }
         if (!deleted) {
             VolleyLog.d("Could not delete cache entry for key=%s, filename=%s",
                     key, getFilenameForKey(key));
         }
     }
 
+    private ReentrantLock lockFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return mKeyLocks[h & (LOCK_STRIPES - 1)];
+    }
+
     /**
      * Creates a pseudo-unique filename for the specified cache key.
      * @param key The key to generate a file name for.
@@ -271,46 +655,98 @@ public class DiskBasedCache implements Cache {
     }
 
     /**
-     * Prunes the cache to fit the amount of bytes specified.
-     * @param neededSpace The amount of bytes we are trying to fit into the cache.
+     * Removes the entries picked by the eviction policy from the index until the cache
+     * fits. The entry just written may be picked too, unless it is the only one left.
+     * The caller holds mEntries and deletes the returned files.
+     * @param keep The key that was just written.
+     * @return The removed entries, or null if nothing had to be pruned.
      */
-    private void pruneIfNeeded(int neededSpace) {
-        if ((mTotalSize + neededSpace) < mMaxCacheSizeInBytes) {
-            return;
+    private List<CacheHeader> pruneIfNeeded(String keep) {
+        if (mTotalSize < mMaxCacheSizeInBytes) {
+            return null;
         }
         if (VolleyLog.DEBUG) {
             VolleyLog.v("Pruning old cache entries.");
         }
 
-        long before = mTotalSize;
-        int prunedFiles = 0;
-        long startTime = SystemClock.elapsedRealtime();
-
-        Iterator<Map.Entry<String, CacheHeader>> iterator = mEntries.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<String, CacheHeader> entry = iterator.next();
-            CacheHeader e = entry.getValue();
-            boolean deleted = getFileForKey(e.key).delete();
-            if (deleted) {
-                mTotalSize -= e.size;
-            } else {
-               VolleyLog.d("Could not delete cache entry for key=%s, filename=%s",
-                       e.key, getFilenameForKey(e.key));
+        List<CacheHeader> pruned = new ArrayList<CacheHeader>();
+        while (mTotalSize >= mMaxCacheSizeInBytes * HYSTERESIS_FACTOR) {
+            String key = mPolicy.evict();
+            if (key == null) {
+                break;
             }
-            iterator.remove();
-            prunedFiles++;
-
-            if ((mTotalSize + neededSpace) < mMaxCacheSizeInBytes * HYSTERESIS_FACTOR) {
+            if (key.equals(keep) && mEntries.size() == 1) {
+                // An entry larger than the whole cache stays until the next put.
+                mPolicy.onAdd(key, mEntries.get(key).size);
                 break;
             }
+            CacheHeader e = mEntries.remove(key);
+            if (e != null) {
+                mTotalSize -= e.size;
+                pruned.add(e);
+            }
         }
+        return pruned;
+    }
 
+    /**
+     * Deletes the files of pruned entries on the prune thread. A key that was put again in
+     * the meantime is back in the index and keeps its file.
+     */
+    private void deletePruned(List<CacheHeader> pruned) {
+        long startTime = SystemClock.elapsedRealtime();
+        long size = 0;
+        mStateLock.readLock().lock();
+        try {
+            for (CacheHeader e : pruned) {
+                if (deletePrunedFile(e)) {
+                    size += e.size;
+                }
+            }
+        } finally {
+            mStateLock.readLock().unlock();
+        }
         if (VolleyLog.DEBUG) {
             VolleyLog.v("pruned %d files, %d bytes, %d ms",
-                    prunedFiles, (mTotalSize - before), SystemClock.elapsedRealtime() - startTime);
+                    pruned.size(), size, SystemClock.elapsedRealtime() - startTime);
         }
     }
 
+    private boolean deletePrunedFile(CacheHeader e) {
+        ReentrantLock lock = lockFor(e.key);
+        lock.lock();
+        try {
+            synchronized (mEntries) {
+                if (mEntries.containsKey(e.key)) {
+                    return false;
+                }
+            }
+            if (getFileForKey(e.key).delete()) {
+                return true;
+            }
+            VolleyLog.d("Could not delete cache entry for key=%s, filename=%s",
+                    e.key, getFilenameForKey(e.key));
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static synchronized ExecutorService getPruneExecutor() {
+        if (sPruneExecutor == null) {
+            sPruneExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "volley-cache-prune");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return sPruneExecutor;
+    }
+
     /**
      * Puts the entry with the specified key into the cache.
      * @param key The key to identify the entry by.
@@ -324,17 +760,369 @@ public class DiskBasedCache implements Cache {
             mTotalSize += (entry.size - oldEntry.size);
         }
         mEntries.put(key, entry);
+        mPolicy.onAdd(key, entry.size);
     }
 
     /**
      * Removes the entry identified by 'key' from the cache.
+     * @return True if the entry was in the cache.
      */
-    private void removeEntry(String key) {
-        CacheHeader entry = mEntries.get(key);
+    private boolean removeEntry(String key) {
+        CacheHeader entry = mEntries.remove(key);
         if (entry != null) {
             mTotalSize -= entry.size;
-            mEntries.remove(key);
+            mPolicy.onRemove(key);
+            return true;
         }
+        return false;
+    }
+
+    /**
+     * Rebuilds the index by reading the header of every cache file, for directories
+     * without a journal.
+     */
+    private void scanFiles() {
+        File[] files = mRootDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (isJournalFile(file)) {
+                continue;
+            }
+            if (file.getName().endsWith(TMP_SUFFIX)) {
+                // Left over by a write that did not finish.
+                file.delete();
+                continue;
+            }
+            InputStream fis = null;
+            try {
+                fis = new BufferedInputStream(new FileInputStream(file));
+                CacheHeader entry = CacheHeader.readHeader(fis);
+                entry.size = file.length();
+                synchronized (mEntries) {
+                    putEntry(entry.key, entry);
+                }
+            } catch (IOException e) {
+                file.delete();
+            } finally {
+                try {
+                    if (fis != null) {
+                        fis.close();
+                    }
+                } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    /**
+     * Replays the journal into the index.
+     * @return The number of records read, or -1 if there is no usable journal. A
+     *     journal with a torn tail is replayed up to the tear and reported as
+     *     needing compaction.
+     */
+    private int readJournal() {
+        File journal = new File(mRootDirectory, JOURNAL_FILE);
+        if (!journal.exists()) {
+            return -1;
+        }
+        InputStream in = null;
+        int records = 0;
+        try {
+            in = new BufferedInputStream(new FileInputStream(journal), JOURNAL_BUFFER_SIZE);
+            if (readInt(in) != JOURNAL_MAGIC) {
+                return -1;
+            }
+            int op;
+            while ((op = in.read()) != -1) {
+                switch (op) {
+                    case OP_PUT:
+                        CacheHeader entry = CacheHeader.readHeader(in);
+                        entry.size = readLong(in);
+                        synchronized (mEntries) {
+                            putEntry(entry.key, entry);
+                        }
+                        break;
+                    case OP_REMOVE:
+                        String removed = readString(in);
+                        synchronized (mEntries) {
+                            removeEntry(removed);
+                        }
+                        break;
+                    case OP_READ:
+                        String read = readString(in);
+                        synchronized (mEntries) {
+                            mEntries.get(read);
+                            mPolicy.onAccess(read);
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unknown journal record " + op);
+                }
+                records++;
+            }
+            return records;
+        } catch (IOException e) {
+            VolleyLog.d("Journal %s ends after %d records: %s",
+                    journal.getAbsolutePath(), records, e.toString());
+            return records == 0 ? -1 : Integer.MAX_VALUE;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    private boolean needsCompaction(int records) {
+        synchronized (mEntries) {
+            return records >= COMPACT_MIN_RECORDS && records > 2 * mEntries.size();
+        }
+    }
+
+    /**
+     * Opens the journal for appending. The caller holds mJournalLock.
+     */
+    private void openJournal(int records) {
+        try {
+            mJournal = new BufferedOutputStream(new FileOutputStream(
+                    new File(mRootDirectory, JOURNAL_FILE), true));
+            mJournalRecords = records;
+        } catch (IOException e) {
+            VolleyLog.d("Could not open journal: %s", e.toString());
+            mJournal = null;
+        }
+    }
+
+    private void closeJournal() {
+        synchronized (mJournalLock) {
+            if (mJournal != null) {
+                try {
+                    mJournal.close();
+                } catch (IOException ignored) { }
+                mJournal = null;
+            }
+        }
+    }
+
+    /**
+     * Writes a journal holding one PUT per entry in LRU order and swaps it in. The caller
+     * holds mJournalLock, so appends wait until the new journal is open; entries changed
+     * after the snapshot are appended again, which replays to the same state.
+     */
+    private void rewriteJournal() {
+        List<CacheHeader> snapshot;
+        synchronized (mEntries) {
+            snapshot = new ArrayList<CacheHeader>(mEntries.values());
+        }
+        OutputStream out = writeSnapshot(snapshot);
+        if (out != null) {
+            swapJournal(out, snapshot.size());
+        } else {
+            discardSnapshot(null);
+        }
+    }
+
+    /**
+     * Rewrites the journal on the prune executor. Only the snapshot and the swap hold
+     * mJournalLock, so {@link #get(String)} and {@link #put(String, Entry)} keep appending
+     * while the new journal is written; those records are kept in mPendingRecords and
+     * copied to the new journal before it replaces the old one.
+     */
+    private void compactJournal() {
+        // initialize, clear and switchCache replace the journal under the write lock
+        mStateLock.readLock().lock();
+        try {
+            List<CacheHeader> snapshot;
+            synchronized (mJournalLock) {
+                mCompactionScheduled = false;
+                if (mJournal != null && !needsCompaction(mJournalRecords)) {
+                    return;
+                }
+                synchronized (mEntries) {
+                    snapshot = new ArrayList<CacheHeader>(mEntries.values());
+                }
+                mPendingRecords = new ByteArrayOutputStream();
+                mPendingRecordCount = 0;
+            }
+            OutputStream out = writeSnapshot(snapshot);
+            synchronized (mJournalLock) {
+                ByteArrayOutputStream pending = mPendingRecords;
+                int pendingCount = mPendingRecordCount;
+                mPendingRecords = null;
+                if (out == null) {
+                    discardSnapshot(null);
+                    return;
+                }
+                try {
+                    pending.writeTo(out);
+                } catch (IOException e) {
+                    VolleyLog.d("Could not write journal: %s", e.toString());
+                    discardSnapshot(out);
+                    return;
+                }
+                swapJournal(out, snapshot.size() + pendingCount);
+            }
+        } finally {
+            mStateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the entries to the temporary journal file. Needs no lock, the file is only
+     * written by the prune executor or under the write lock.
+     * @return The open stream to append further records to, or null if writing failed.
+     */
+    private OutputStream writeSnapshot(List<CacheHeader> snapshot) {
+        File tmp = new File(mRootDirectory, JOURNAL_FILE_TMP);
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmp), JOURNAL_BUFFER_SIZE);
+            writeInt(out, JOURNAL_MAGIC);
+            for (CacheHeader e : snapshot) {
+                out.write(OP_PUT);
+                e.writeTo(out);
+                writeLong(out, e.size);
+            }
+            return out;
+        } catch (IOException e) {
+            VolleyLog.d("Could not write journal: %s", e.toString());
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) { }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the temporary journal after a failed rewrite. The caller holds mJournalLock.
+     */
+    private void discardSnapshot(OutputStream out) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) { }
+        }
+        new File(mRootDirectory, JOURNAL_FILE_TMP).delete();
+        if (mJournal == null) {
+            // Without a journal the next start falls back to scanning the files.
+            new File(mRootDirectory, JOURNAL_FILE).delete();
+        }
+    }
+
+    /**
+     * Closes the temporary journal, replaces the journal with it and reopens it for
+     * appending. The caller holds mJournalLock.
+     */
+    private void swapJournal(OutputStream out, int records) {
+        if (mJournal != null) {
+            try {
+                mJournal.close();
+            } catch (IOException ignored) { }
+            mJournal = null;
+        }
+        File tmp = new File(mRootDirectory, JOURNAL_FILE_TMP);
+        File journal = new File(mRootDirectory, JOURNAL_FILE);
+        try {
+            out.close();
+            if (!tmp.renameTo(journal)) {
+                journal.delete();
+                if (!tmp.renameTo(journal)) {
+                    throw new IOException("Could not rename " + tmp.getAbsolutePath());
+                }
+            }
+        } catch (IOException e) {
+            VolleyLog.d("Could not write journal: %s", e.toString());
+            discardSnapshot(null);
+            return;
+        }
+        openJournal(records);
+    }
+
+    /**
+     * Appends a record to the journal and schedules a compaction on the prune executor
+     * when it has grown too long or could not be written.
+     * READ records only keep the LRU order and are not flushed eagerly.
+     * @return True if the index, including this record, is backed by a journal.
+     */
+    private boolean appendJournal(int op, String key, CacheHeader header) {
+        synchronized (mJournalLock) {
+            if (mPendingRecords != null) {
+                try {
+                    writeRecord(mPendingRecords, op, key, header);
+                    mPendingRecordCount++;
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+            if (mJournal != null) {
+                try {
+                    writeRecord(mJournal, op, key, header);
+                    if (op != OP_READ) {
+                        mJournal.flush();
+                    }
+                    mJournalRecords++;
+                } catch (IOException e) {
+                    VolleyLog.d("Could not append to journal: %s", e.toString());
+                    try {
+                        mJournal.close();
+                    } catch (IOException ignored) { }
+                    mJournal = null;
+                }
+            }
+            if (!mCompactionScheduled && mPendingRecords == null
+                    && (mJournal == null || needsCompaction(mJournalRecords))) {
+                mCompactionScheduled = true;
+                getPruneExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        compactJournal();
+                    }
+                });
+            }
+            return mJournal != null;
+        }
+    }
+
+    private static void writeRecord(OutputStream out, int op, String key, CacheHeader header)
+            throws IOException {
+        out.write(op);
+        if (op == OP_PUT) {
+            header.writeTo(out);
+            writeLong(out, header.size);
+        } else {
+            writeString(out, key);
+        }
+    }
+
+    /**
+     * Deletes cache files the index does not know about, e.g. written right before a
+     * crash or left over by a pruning that had not run yet.
+     */
+    private void deleteOrphans() {
+        String[] names = mRootDirectory.list();
+        if (names == null) {
+            return;
+        }
+        Set<String> known = new HashSet<String>();
+        synchronized (mEntries) {
+            for (String key : mEntries.keySet()) {
+                known.add(getFilenameForKey(key));
+            }
+        }
+        for (String name : names) {
+            if (!known.contains(name) && !JOURNAL_FILE.equals(name) && !JOURNAL_FILE_TMP.equals(name)) {
+                new File(mRootDirectory, name).delete();
+            }
+        }
+    }
+
+    private static boolean isJournalFile(File file) {
+        String name = file.getName();
+        return JOURNAL_FILE.equals(name) || JOURNAL_FILE_TMP.equals(name);
     }
 
     /**
@@ -404,6 +1192,22 @@ public class DiskBasedCache implements Cache {
             this.responseHeaders = entry.responseHeaders;
         }
 
+        /**
+         * Returns a copy of this header with the metadata of the given entry, keeping the
+         * key and size.
+         */
+        CacheHeader withMetadata(Entry entry) {
+            CacheHeader header = new CacheHeader();
+            header.key = key;
+            header.size = size;
+            header.etag = entry.etag;
+            header.serverDate = entry.serverDate;
+            header.ttl = entry.ttl;
+            header.softTtl = entry.softTtl;
+            header.responseHeaders = entry.responseHeaders;
+            return header;
+        }
+
         /**
          * Reads the header off of an InputStream and returns a CacheHeader object.
          * @param is The InputStream to read from.
@@ -448,13 +1252,7 @@ public class DiskBasedCache implements Cache {
          */
         public boolean writeHeader(OutputStream os) {
             try {
-                writeInt(os, CACHE_MAGIC);
-                writeString(os, key);
-                writeString(os, etag == null ? "" : etag);
-                writeLong(os, serverDate);
-                writeLong(os, ttl);
-                writeLong(os, softTtl);
-                writeStringStringMap(responseHeaders, os);
+                writeTo(os);
                 os.flush();
                 return true;
             } catch (IOException e) {
@@ -463,32 +1261,19 @@ public class DiskBasedCache implements Cache {
             }
         }
 
-    }
-
-    private static class CountingInputStream extends FilterInputStream {
-        int bytesRead = 0;
-
-        CountingInputStream(InputStream in) {
-            super(in);
-        }
-
-        @Override
-        public int read() throws IOException {
-            int result = super.read();
-            if (result != -1) {
-                bytesRead++;
-            }
-            return result;
+        /**
+         * Writes the contents of this CacheHeader without flushing the stream.
+         */
+        void writeTo(OutputStream os) throws IOException {
+            writeInt(os, CACHE_MAGIC);
+            writeString(os, key);
+            writeString(os, etag == null ? "" : etag);
+            writeLong(os, serverDate);
+            writeLong(os, ttl);
+            writeLong(os, softTtl);
+            writeStringStringMap(responseHeaders, os);
         }
 
-        @Override
-        public int read(byte[] buffer, int offset, int count) throws IOException {
-            int result = super.read(buffer, offset, count);
-            if (result != -1) {
-                bytesRead += result;
-            }
-            return result;
-        }
     }
 
     /*
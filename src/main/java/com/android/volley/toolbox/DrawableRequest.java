@@ -49,6 +49,13 @@ public class DrawableRequest extends Request<Drawable> {
          */
         String getId();
     }
+
+    /**
+     * 能解析data为null、数据在{@link NetworkResponse#body}中的缓存命中的Creator，
+     * 实现这个接口的Creator缓存命中时不再复制数据
+     */
+    public interface BodyDrawableCreator extends DrawableCreator {
+    }
     private final Response.Listener<Drawable> mListener;
     private DrawableCreator mCreator;
     /** Decoding lock so that we don't decode more than one image at a time (to avoid OOM's) */
@@ -79,6 +86,11 @@ public class DrawableRequest extends Request<Drawable> {
         return Priority.LOW;
     }
 
+    @Override
+    public Lane getLane() {
+        return Lane.IMAGE;
+    }
+
     @Override
     public Map<String, String> getHeaders() throws AuthFailureError {
         HashMap<String,String> headerMap = new HashMap<String, String>();
@@ -86,6 +98,11 @@ public class DrawableRequest extends Request<Drawable> {
         return headerMap;
     }
 
+    @Override
+    public boolean canParseBody() {
+        return mCreator instanceof BodyDrawableCreator;
+    }
+
     @Override
     protected Response<Drawable> parseNetworkResponse(NetworkResponse response) {
         // Serialize all decode on a global lock to reduce concurrent heap usage.
@@ -93,7 +110,8 @@ public class DrawableRequest extends Request<Drawable> {
             try {
                 return doParse(response);
             } catch (OutOfMemoryError e) {
-                VolleyLog.e("Caught OOM for %d byte image, url=%s", response.data.length, getUrl());
+                VolleyLog.e("Caught OOM for %d byte image, url=%s",
+                        response.data != null ? response.data.length : response.body.remaining(), getUrl());
                 return Response.error(new ParseError(e));
             }
         }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+/**
+ * Decides which entries a size-bounded cache evicts, see {@link DiskBasedCache}.
+ *
+ * <p>The cache tells the policy about every entry it adds, reads or removes, and asks it
+ * for victims while it is over budget. Implementations need not be thread safe; the cache
+ * calls them while holding its index lock.</p>
+ */
+public interface EvictionPolicy {
+    /**
+     * Sets the capacity of the cache in bytes.
+     */
+    public void setCapacity(long bytes);
+
+    /**
+     * Records a lookup of the key, whether or not the cache holds it.
+     */
+    public void onAccess(String key);
+
+    /**
+     * Records that an entry was added, or replaced with one of the given size.
+     */
+    public void onAdd(String key, long size);
+
+    /**
+     * Records that the cache removed an entry on its own, e.g. on a remove or a read error.
+     */
+    public void onRemove(String key);
+
+    /**
+     * Picks the next entry to evict and stops tracking it.
+     * @return The key of the victim, or null if no entries are tracked
+     */
+    public String evict();
+
+    /**
+     * Forgets all entries.
+     */
+    public void clear();
+}
@@ -4,6 +4,8 @@ import android.os.Looper;
 import android.util.Log;
 
 import com.android.volley.FileDownloadRequest;
+import com.android.volley.LaneDispatchEngine;
+import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.VolleyError;
 
@@ -21,17 +23,19 @@ public class FileDownloader {
 	private final LinkedList<DownloadController> mTaskQueue;
 
 	public FileDownloader(RequestQueue queue) {
-		this(queue, Math.max(queue.getThreadPoolSize() - 2, 2));
+		this(queue, defaultParallelTaskCount(queue));
 	}
 	/**
 	 * Construct Downloader and init the Task Queue.
 	 * @param queue The RequestQueue for dispatching Download task.
 	 * @param parallelTaskCount
 	 * 				Allows parallel task count,
-	 * 				don't forget the value must less than ThreadPoolSize of the RequestQueue.
+	 * 				don't forget the value must less than ThreadPoolSize of the RequestQueue,
+	 * 				unless the queue runs a {@link LaneDispatchEngine}, which keeps downloads in their own lane.
 	 */
 	public FileDownloader(RequestQueue queue, int parallelTaskCount) {
-		if (parallelTaskCount >= queue.getThreadPoolSize()) {
+		if (!(queue.getDispatchEngine() instanceof LaneDispatchEngine)
+				&& parallelTaskCount >= queue.getThreadPoolSize()) {
 			throw new IllegalArgumentException("parallelTaskCount[" + parallelTaskCount
 					+ "] must less than threadPoolSize[" + queue.getThreadPoolSize() + "] of the RequestQueue.");
 		}
@@ -41,6 +45,17 @@ public class FileDownloader {
 		mRequestQueue = queue;
 	}
 
+	/**
+	 * Downloads run in their own lane with a {@link LaneDispatchEngine}, so they can use the whole
+	 * lane budget; otherwise leave some dispatcher threads to the other requests.
+	 */
+	private static int defaultParallelTaskCount(RequestQueue queue) {
+		if (queue.getDispatchEngine() instanceof LaneDispatchEngine) {
+			return ((LaneDispatchEngine) queue.getDispatchEngine()).getBudget(Request.Lane.DOWNLOAD);
+		}
+		return Math.max(queue.getThreadPoolSize() - 2, 2);
+	}
+
 	/**
 	 * Create a new download request, this request might not run immediately because the parallel task limitation,
 	 * you can check the status by the {@link DownloadController} which you got after invoke this method.
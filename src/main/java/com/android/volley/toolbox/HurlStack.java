@@ -17,6 +17,7 @@
 package com.android.volley.toolbox;
 
 import android.content.res.AssetManager;
+import android.os.SystemClock;
 
 import com.android.volley.AuthFailureError;
 import com.android.volley.Request;
@@ -33,10 +34,13 @@ import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.message.BasicStatusLine;
 
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URISyntaxException;
@@ -46,6 +50,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.zip.GZIPInputStream;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
@@ -56,7 +61,16 @@ import javax.net.ssl.SSLSocketFactory;
 public class HurlStack implements HttpStack {
 
     private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+
+    /** Buffer size used when streaming request bodies to the connection. */
+    private static final int BODY_BUFFER_SIZE = 8 * 1024;
+
     private Proxy mProxy;
+    private volatile boolean mHighThroughput;
 
     /**
      * An interface for transforming URLs before use.
@@ -98,13 +112,40 @@ public class HurlStack implements HttpStack {
         mProxy = proxy;
     }
 
+    /**
+     * Enables or disables the high throughput mode. In this mode the stack:
+     * <ul>
+     * <li>asks for keep-alive and hands every connection back to the platform pool, see
+     * below;</li>
+     * <li>asks for gzip unless the request sets its own Accept-Encoding, and decodes it
+     * transparently;</li>
+     * <li>streams request bodies in fixed-length or chunked mode, see
+     * {@link Request#hasStreamingBody()};</li>
+     * <li>logs the connect time (including the TLS handshake) into
+     * {@link Request#LOG_SOCKET_DURATION} and the time to first byte plus transfer time into
+     * {@link Request#LOG_HTTP_DURATION}.</li>
+     * </ul>
+     *
+     * <p>Connection reuse is left to the platform's keep-alive pool as it is configured for
+     * the process; this stack does not change the process-wide {@code http.keepAlive} or
+     * {@code http.maxConnections} properties, which would also affect every other client in
+     * the app. A connection only goes back to the pool once its response body was read to the
+     * end or closed, which {@link Request} does when it consumes the entity. Apps that need a
+     * larger pool should set those properties themselves at startup, before the first
+     * connection is made.</p>
+     */
+    public void setHighThroughputMode(boolean enabled) {
+        mHighThroughput = enabled;
+    }
+
+    public boolean isHighThroughputMode() {
+        return mHighThroughput;
+    }
+
     @Override
     public HttpResponse performRequest(Request<?> request, Map<String, String> additionalHeaders)
             throws IOException, AuthFailureError {
         String url = request.getUrl();
-        HashMap<String, String> map = new HashMap<String, String>();
-        map.putAll(request.getHeaders());
-        map.putAll(additionalHeaders);
         if (mUrlRewriter != null) {
             String rewritten = mUrlRewriter.rewriteUrl(url);
             if (rewritten == null) {
@@ -137,7 +178,13 @@ public class HurlStack implements HttpStack {
             entity.setContent(is);
             entity.setContentLength(length);
             response.setEntity(entity);
+        } else if (mHighThroughput) {
+            response = performHighThroughputRequest(openConnection(parsedUrl, request), request,
+                    additionalHeaders);
         } else{
+            HashMap<String, String> map = new HashMap<String, String>();
+            map.putAll(request.getHeaders());
+            map.putAll(additionalHeaders);
             HttpURLConnection connection = openConnection(parsedUrl, request);
             for (String headerName : map.keySet()) {
                 connection.addRequestProperty(headerName, map.get(headerName));
@@ -165,6 +212,193 @@ public class HurlStack implements HttpStack {
         return response;
     }
 
+    private HttpResponse performHighThroughputRequest(HttpURLConnection connection,
+            Request<?> request, Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+        long start = SystemClock.elapsedRealtime();
+        // Additional headers are set last so they override the request's own, like the map merge.
+        for (Entry<String, String> header : request.getHeaders().entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        for (Entry<String, String> header : additionalHeaders.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        // Setting Accept-Encoding ourselves turns off the platform's transparent gzip, which
+        // hides Content-Length; requests asking for another encoding (downloads) keep theirs.
+        boolean acceptGzip = connection.getRequestProperty(HEADER_ACCEPT_ENCODING) == null;
+        if (acceptGzip) {
+            connection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+        }
+        connection.setRequestProperty("Connection", "Keep-Alive");
+
+        // Method and streaming mode must be set before connecting, the body is written after.
+        byte[] body = prepareStreamingRequest(connection, request);
+        connection.connect();
+        long connected = SystemClock.elapsedRealtime();
+        request.logLong(Request.LOG_SOCKET_DURATION, connected - start);
+
+        if (body != null || request.hasStreamingBody() && connection.getDoOutput()) {
+            OutputStream out = new BufferedOutputStream(connection.getOutputStream(), BODY_BUFFER_SIZE);
+            try {
+                if (body != null) {
+                    out.write(body);
+                } else {
+                    request.writeBody(out);
+                }
+            } finally {
+                out.close();
+            }
+        }
+
+        int responseCode = connection.getResponseCode();
+        if (responseCode == -1) {
+            throw new IOException("Could not retrieve response code from HttpUrlConnection.");
+        }
+        request.addMarker("http-ttfb-" + (SystemClock.elapsedRealtime() - connected));
+
+        StatusLine responseStatus = new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1),
+                responseCode, connection.getResponseMessage());
+        BasicHttpResponse response = new BasicHttpResponse(responseStatus);
+        InputStream inputStream;
+        try {
+            inputStream = connection.getInputStream();
+        } catch (IOException ioe) {
+            inputStream = connection.getErrorStream();
+        }
+        // 204 and 304 have no body, GZIPInputStream would fail reading the gzip header.
+        boolean gzipped = acceptGzip && inputStream != null
+                && responseCode != HttpURLConnection.HTTP_NO_CONTENT
+                && responseCode != HttpURLConnection.HTTP_NOT_MODIFIED
+                && ENCODING_GZIP.equalsIgnoreCase(connection.getContentEncoding());
+        BasicHttpEntity entity = new BasicHttpEntity();
+        if (gzipped) {
+            // The decoded length is unknown, report it the way the platform's transparent gzip does.
+            entity.setContent(new TimingInputStream(new GZIPInputStream(inputStream), request, connected));
+            entity.setContentLength(-1);
+        } else {
+            entity.setContent(inputStream == null ? null : new TimingInputStream(inputStream, request, connected));
+            entity.setContentLength(connection.getContentLength());
+            entity.setContentEncoding(connection.getContentEncoding());
+        }
+        entity.setContentType(connection.getContentType());
+        response.setEntity(entity);
+        for (Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            String name = header.getKey();
+            if (name == null || gzipped && (HEADER_CONTENT_ENCODING.equalsIgnoreCase(name)
+                    || HEADER_CONTENT_LENGTH.equalsIgnoreCase(name))) {
+                continue;
+            }
+            response.addHeader(new BasicHeader(name, header.getValue().get(0)));
+        }
+        return response;
+    }
+
+    /**
+     * Sets the method and streaming mode of the connection.
+     *
+     * @return the body to write after connecting, or null if there is none or the request
+     * streams it by itself
+     */
+    @SuppressWarnings("deprecation")
+    private static byte[] prepareStreamingRequest(HttpURLConnection connection, Request<?> request)
+            throws IOException, AuthFailureError {
+        switch (request.getMethod()) {
+            case Method.DEPRECATED_GET_OR_POST:
+                byte[] postBody = request.getPostBody();
+                if (postBody != null) {
+                    connection.setRequestMethod("POST");
+                    connection.setRequestProperty(HEADER_CONTENT_TYPE, request.getPostBodyContentType());
+                    connection.setDoOutput(true);
+                    connection.setFixedLengthStreamingMode(postBody.length);
+                }
+                return postBody;
+            case Method.GET:
+                connection.setRequestMethod("GET");
+                return null;
+            case Method.DELETE:
+                connection.setRequestMethod("DELETE");
+                return null;
+            case Method.POST:
+                connection.setRequestMethod("POST");
+                return prepareStreamingBody(connection, request);
+            case Method.PUT:
+                connection.setRequestMethod("PUT");
+                return prepareStreamingBody(connection, request);
+            default:
+                throw new IllegalStateException("Unknown method type.");
+        }
+    }
+
+    private static byte[] prepareStreamingBody(HttpURLConnection connection, Request<?> request)
+            throws AuthFailureError {
+        if (request.hasStreamingBody()) {
+            long length = request.getBodyLength();
+            connection.setDoOutput(true);
+            connection.setRequestProperty(HEADER_CONTENT_TYPE, request.getBodyContentType());
+            if (length >= 0 && length <= Integer.MAX_VALUE) {
+                connection.setFixedLengthStreamingMode((int) length);
+            } else {
+                connection.setChunkedStreamingMode(0);
+            }
+            return null;
+        }
+        byte[] body = request.getBody();
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty(HEADER_CONTENT_TYPE, request.getBodyContentType());
+            connection.setFixedLengthStreamingMode(body.length);
+        }
+        return body;
+    }
+
+    /**
+     * Logs the time from connected to the end of the response body into
+     * {@link Request#LOG_HTTP_DURATION}, once the body is fully read or closed. Reading to the
+     * end is also what lets the platform return the connection to the keep-alive pool.
+     */
+    private static class TimingInputStream extends FilterInputStream {
+        private final Request<?> mRequest;
+        private final long mConnected;
+        private boolean mLogged;
+
+        TimingInputStream(InputStream in, Request<?> request, long connected) {
+            super(in);
+            mRequest = request;
+            mConnected = connected;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                logDuration();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int n = super.read(buffer, offset, count);
+            if (n == -1) {
+                logDuration();
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            logDuration();
+            super.close();
+        }
+
+        private void logDuration() {
+            if (!mLogged) {
+                mLogged = true;
+                mRequest.logLong(Request.LOG_HTTP_DURATION, SystemClock.elapsedRealtime() - mConnected);
+            }
+        }
+    }
+
     /**
      * Initializes an {@link org.apache.http.HttpEntity} from the given {@link java.net.HttpURLConnection}.
      * @param connection
@@ -12,12 +12,13 @@ import com.cylee.androidlib.net.GifDrawable;
 import com.cylee.androidlib.net.RecyclingBitmapDrawable;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Created by sn on 13-11-4.
  * 一个能够处理JPG,PNG,GIF图片格式的DrawableCreator
  */
-public class ImageDrawableCreator implements DrawableRequest.DrawableCreator{
+public class ImageDrawableCreator implements DrawableRequest.BodyDrawableCreator{
     private static String TAG = "ImageDrawableCreator";
 
     /**
@@ -41,10 +42,10 @@ public class ImageDrawableCreator implements DrawableRequest.DrawableCreator{
         String contentType = response.headers.get("Content-Type");
         //当有transformer的时候，把gif当做bitmap直接处理
         if(contentType != null && contentType.toLowerCase().equals("image/gif") && mTransformer == null){
-            return parseGif(response.data);
+            return parseGif(response);
         }
         else{
-            return parseBitmap(response.data);
+            return parseBitmap(response);
         }
     }
     @Override
@@ -56,19 +57,19 @@ public class ImageDrawableCreator implements DrawableRequest.DrawableCreator{
     }
     /**
      * 处理jpg,png等静态图片
-     * @param data
+     * @param response
      * @return
      */
-    private BitmapDrawable parseBitmap(byte[] data){
+    private BitmapDrawable parseBitmap(NetworkResponse response){
         BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
         Bitmap bitmap;
         decodeOptions.inPreferredConfig = mDecodeConfig;
         if (mMaxWidth == 0 && mMaxHeight == 0) {
-            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+            bitmap = decode(response, decodeOptions);
         } else {
             // If we have to resize this image, first get the natural bounds.
             decodeOptions.inJustDecodeBounds = true;
-            BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+            decode(response, decodeOptions);
             int actualWidth = decodeOptions.outWidth;
             int actualHeight = decodeOptions.outHeight;
 
@@ -84,8 +85,7 @@ public class ImageDrawableCreator implements DrawableRequest.DrawableCreator{
             // decodeOptions.inPreferQualityOverSpeed = PREFER_QUALITY_OVER_SPEED;
             decodeOptions.inSampleSize =
                     findBestSampleSize(actualWidth, actualHeight, desiredWidth, desiredHeight);
-            Bitmap tempBitmap =
-                    BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+            Bitmap tempBitmap = decode(response, decodeOptions);
 
             // If necessary, scale down to the maximal acceptable size.
             if (desiredWidth>0&&desiredHeight>0&&tempBitmap != null && (tempBitmap.getWidth() > desiredWidth ||
@@ -100,6 +100,19 @@ public class ImageDrawableCreator implements DrawableRequest.DrawableCreator{
 
         return bitmap2Drawable(bitmap);
     }
+    /**
+     * 缓存命中时数据在response.body中，有数组时直接解码数组中的一段，内存映射的大文件通过流解码
+     */
+    private static Bitmap decode(NetworkResponse response, BitmapFactory.Options options){
+        if(response.data != null){
+            return BitmapFactory.decodeByteArray(response.data, 0, response.data.length, options);
+        }
+        ByteBuffer body = response.body;
+        if(body.hasArray()){
+            return BitmapFactory.decodeByteArray(body.array(), body.arrayOffset() + body.position(), body.remaining(), options);
+        }
+        return BitmapFactory.decodeStream(new ByteBufferInputStream(body), null, options);
+    }
     private BitmapDrawable bitmap2Drawable(Bitmap bitmap){
         if (bitmap == null) {
             return null;
@@ -118,12 +131,19 @@ public class ImageDrawableCreator implements DrawableRequest.DrawableCreator{
     }
     /**
      * 处理GIF动态图片
-     * @param data
+     * @param response
      * @return
      */
-    private static GifDrawable parseGif(byte[] data){
+    private static GifDrawable parseGif(NetworkResponse response){
         try {
-            return new GifDrawable(data);
+            if(response.data != null){
+                return new GifDrawable(response.data);
+            }
+            ByteBuffer body = response.body;
+            if(body.hasArray()){
+                return new GifDrawable(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            }
+            return new GifDrawable(new ByteBufferInputStream(body), body.remaining());
         } catch (IOException e) {
             e.printStackTrace();
             return null;
@@ -107,6 +107,11 @@ public class ImageRequest extends Request<Bitmap> {
         return Priority.HIGH;
     }
 
+    @Override
+    public Lane getLane() {
+        return Lane.IMAGE;
+    }
+
     /**
      * Scales one side of a rectangle to fit aspect ratio.
      *
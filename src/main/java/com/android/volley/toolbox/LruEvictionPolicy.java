@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts the least recently used entry. The default policy of {@link DiskBasedCache}.
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+    private final LinkedHashMap<String, Long> mEntries =
+            new LinkedHashMap<String, Long>(16, .75f, true);
+
+    @Override
+    public void setCapacity(long bytes) {
+    }
+
+    @Override
+    public void onAccess(String key) {
+        mEntries.get(key);
+    }
+
+    @Override
+    public void onAdd(String key, long size) {
+        mEntries.put(key, size);
+    }
+
+    @Override
+    public void onRemove(String key) {
+        mEntries.remove(key);
+    }
+
+    @Override
+    public String evict() {
+        Iterator<String> iterator = mEntries.keySet().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        String key = iterator.next();
+        iterator.remove();
+        return key;
+    }
+
+    @Override
+    public void clear() {
+        mEntries.clear();
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import com.android.volley.BodyViewCache;
+import com.android.volley.Cache;
+import com.android.volley.MetadataCache;
+import com.android.volley.PartitioningCache;
+import com.android.volley.Request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache split into named partitions, each backed by its own {@link Cache} with its own
+ * directory, size budget and eviction, so e.g. images cannot evict API responses.
+ *
+ * <p>Requests are routed by their {@link Request.Lane}; lanes without a partition of their
+ * own use the default partition. Operations that only have a key and no request read from
+ * the first partition holding the key, write to the default partition and invalidate or
+ * remove the key everywhere.</p>
+ */
+public class PartitionedCache implements BodyViewCache, MetadataCache, PartitioningCache {
+    private static final Request.Lane[] LANES = Request.Lane.values();
+
+    private final Partition mDefault;
+    private final List<Partition> mPartitions = new ArrayList<Partition>();
+    /** Partition of every lane, indexed by ordinal. */
+    private final Partition[] mRoutes = new Partition[LANES.length];
+
+    /**
+     * @param name Name of the default partition, used in stats
+     * @param cache The cache of requests whose lane has no partition of its own
+     */
+    public PartitionedCache(String name, Cache cache) {
+        mDefault = new Partition(name, cache);
+        mPartitions.add(mDefault);
+        for (int i = 0; i < LANES.length; i++) {
+            mRoutes[i] = mDefault;
+        }
+    }
+
+    /**
+     * Adds a partition for the given lanes. Must be called before the cache is handed to a
+     * {@link com.android.volley.RequestQueue}.
+     * @param name Name of the partition, used in stats
+     * @param cache The cache holding the responses of these lanes
+     * @param lanes The lanes routed to this partition
+     * @return This cache, for chaining
+     */
+    public PartitionedCache addPartition(String name, Cache cache, Request.Lane... lanes) {
+        Partition partition = new Partition(name, cache);
+        mPartitions.add(partition);
+        for (Request.Lane lane : lanes) {
+            mRoutes[lane.ordinal()] = partition;
+        }
+        return this;
+    }
+
+    /**
+     * Returns the partitions, the default one first.
+     */
+    public List<Partition> getPartitions() {
+        return Collections.unmodifiableList(mPartitions);
+    }
+
+    @Override
+    public Cache getPartition(Request<?> request) {
+        return mRoutes[request.getLane().ordinal()];
+    }
+
+    @Override
+    public Entry get(String key) {
+        for (Partition partition : mPartitions) {
+            Entry entry = partition.mCache.get(key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Entry getBody(String key) {
+        for (Partition partition : mPartitions) {
+            Entry entry = getBody(partition.mCache, key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /** Reads a view of the entry if the cache can hand one out, a copy otherwise. */
+    private static Entry getBody(Cache cache, String key) {
+        return cache instanceof BodyViewCache
+                ? ((BodyViewCache) cache).getBody(key) : cache.get(key);
+    }
+
+    @Override
+    public void put(String key, Entry entry) {
+        mDefault.mCache.put(key, entry);
+    }
+
+    @Override
+    public void updateMetadata(String key, Entry entry) {
+        for (Partition partition : mPartitions) {
+            partition.updateMetadata(key, entry);
+        }
+    }
+
+    @Override
+    public void invalidate(String key, boolean fullExpire) {
+        for (Partition partition : mPartitions) {
+            partition.mCache.invalidate(key, fullExpire);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        for (Partition partition : mPartitions) {
+            partition.mCache.remove(key);
+        }
+    }
+
+    @Override
+    public void initialize() {
+        for (Partition partition : mPartitions) {
+            partition.mCache.initialize();
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Partition partition : mPartitions) {
+            partition.mCache.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Partition partition : mPartitions) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(partition);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * One partition. Lookups of routed requests go through it, so it counts their hits and
+     * misses; key-only lookups on the {@link PartitionedCache} itself are not counted.
+     */
+    public static class Partition implements BodyViewCache, MetadataCache {
+        private final String mName;
+        private final Cache mCache;
+        private final AtomicLong mHits = new AtomicLong();
+        private final AtomicLong mMisses = new AtomicLong();
+
+        Partition(String name, Cache cache) {
+            mName = name;
+            mCache = cache;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /** The cache backing this partition. */
+        public Cache getCache() {
+            return mCache;
+        }
+
+        /** Lookups that found an entry, fresh or expired. */
+        public long getHitCount() {
+            return mHits.get();
+        }
+
+        public long getMissCount() {
+            return mMisses.get();
+        }
+
+        /** Share of lookups that found an entry, 0 if there were none. */
+        public float getHitRate() {
+            long hits = mHits.get();
+            long total = hits + mMisses.get();
+            return total == 0 ? 0 : (float) hits / total;
+        }
+
+        /** Clears the hit and miss counts. */
+        public void resetStats() {
+            mHits.set(0);
+            mMisses.set(0);
+        }
+
+        @Override
+        public Entry get(String key) {
+            return count(mCache.get(key));
+        }
+
+        @Override
+        public Entry getBody(String key) {
+            return count(PartitionedCache.getBody(mCache, key));
+        }
+
+        private Entry count(Entry entry) {
+            (entry != null ? mHits : mMisses).incrementAndGet();
+            return entry;
+        }
+
+        @Override
+        public void put(String key, Entry entry) {
+            mCache.put(key, entry);
+        }
+
+        /**
+         * Backing caches that can't update metadata alone get the cached data put again with
+         * the new metadata; nothing happens if the entry is not cached.
+         */
+        @Override
+        public void updateMetadata(String key, Entry entry) {
+            if (mCache instanceof MetadataCache) {
+                ((MetadataCache) mCache).updateMetadata(key, entry);
+                return;
+            }
+            Entry cached = mCache.get(key);
+            if (cached != null) {
+                cached.etag = entry.etag;
+                cached.serverDate = entry.serverDate;
+                cached.ttl = entry.ttl;
+                cached.softTtl = entry.softTtl;
+                cached.responseHeaders = entry.responseHeaders;
+                mCache.put(key, cached);
+            }
+        }
+
+        @Override
+        public void invalidate(String key, boolean fullExpire) {
+            mCache.invalidate(key, fullExpire);
+        }
+
+        @Override
+        public void remove(String key) {
+            mCache.remove(key);
+        }
+
+        @Override
+        public void initialize() {
+            mCache.initialize();
+        }
+
+        @Override
+        public void clear() {
+            mCache.clear();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "[%s hits=%d misses=%d rate=%.2f]",
+                    mName, getHitCount(), getMissCount(), getHitRate());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.volley.toolbox;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An {@link java.io.InputStream} that counts the bytes read through it and optionally copies
+ * them to an {@link java.io.OutputStream}, e.g. to keep a cacheable copy of a response body
+ * that is parsed while it is being downloaded.
+ */
+public class TeeInputStream extends FilterInputStream {
+    private final OutputStream mCopy;
+    private long mCount = 0;
+
+    /**
+     * @param in The stream to read from
+     * @param copy Where to copy the bytes read, may be null
+     */
+    public TeeInputStream(InputStream in, OutputStream copy) {
+        super(in);
+        mCopy = copy;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            mCount++;
+            if (mCopy != null) {
+                mCopy.write(b);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        int result = super.read(buffer, offset, count);
+        if (result > 0) {
+            mCount += result;
+            if (mCopy != null) {
+                mCopy.write(buffer, offset, result);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+        // Skipped bytes must still reach the copy, so read them instead.
+        byte[] buffer = new byte[(int) Math.min(byteCount, 1024)];
+        long skipped = 0;
+        while (skipped < byteCount) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, byteCount - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Reads the rest of the stream, so that the copy holds the complete body.
+     */
+    public void drain() throws IOException {
+        byte[] buffer = ByteArrayPool.get().getBuf(1024);
+        try {
+            while (read(buffer, 0, buffer.length) != -1) {
+                // Keep reading.
+            }
+        } finally {
+            ByteArrayPool.get().returnBuf(buffer);
+        }
+    }
+
+    /**
+     * Returns the number of bytes read so far.
+     */
+    public long getCount() {
+        return mCount;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A W-TinyLFU eviction policy: a one-off scan of new keys cannot flush entries that are
+ * read again and again.
+ *
+ * <p>New entries enter a small LRU window. When the window is over its share of the
+ * capacity its oldest entry becomes a candidate for the main space, which is a segmented
+ * LRU of a probation and a protected part; an entry read while on probation is promoted
+ * to protected. If the main space is full the candidate is only admitted when a
+ * {@link FrequencySketch} of recent lookups has seen it more often than the victim it
+ * would displace; otherwise the candidate itself is evicted. The victim is the least
+ * frequent of the few oldest entries on probation, the larger one on a tie, so a single
+ * eviction frees as much space as possible.</p>
+ *
+ * <p>Sizes are in bytes. Frequencies are not persisted. After a restart the sketch
+ * starts from the hits replayed from the journal's READ records, misses are not
+ * journaled and a compaction drops the READ records.</p>
+ */
+public class TinyLfuEvictionPolicy implements EvictionPolicy {
+    /** Default share of the capacity for the admission window. */
+    public static final float DEFAULT_WINDOW_FRACTION = 0.01f;
+
+    /** Share of the main space for the protected segment. */
+    private static final float PROTECTED_FRACTION = 0.8f;
+
+    /** Number of the oldest probation entries considered when picking a victim. */
+    private static final int VICTIM_SAMPLE = 4;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final float mWindowFraction;
+    private final FrequencySketch mSketch = new FrequencySketch();
+    private final Map<String, Node> mNodes = new HashMap<String, Node>();
+    /** The regions in LRU order, least recently used first. */
+    private final LinkedHashMap<String, Node> mWindow = new LinkedHashMap<String, Node>();
+    private final LinkedHashMap<String, Node> mProbation = new LinkedHashMap<String, Node>();
+    private final LinkedHashMap<String, Node> mProtected = new LinkedHashMap<String, Node>();
+    private final long[] mBytes = new long[3];
+    private long mCapacity;
+
+    private static class Node {
+        final String key;
+        long size;
+        int region;
+
+        Node(String key, long size) {
+            this.key = key;
+            this.size = size;
+        }
+    }
+
+    public TinyLfuEvictionPolicy() {
+        this(DEFAULT_WINDOW_FRACTION);
+    }
+
+    /**
+     * @param windowFraction Share of the capacity for the admission window, in (0, 1)
+     */
+    public TinyLfuEvictionPolicy(float windowFraction) {
+        if (windowFraction <= 0 || windowFraction >= 1) {
+            throw new IllegalArgumentException("windowFraction: " + windowFraction);
+        }
+        mWindowFraction = windowFraction;
+    }
+
+    @Override
+    public void setCapacity(long bytes) {
+        mCapacity = bytes;
+    }
+
+    @Override
+    public void onAccess(String key) {
+        mSketch.increment(key);
+        Node node = mNodes.get(key);
+        if (node != null) {
+            touch(node);
+        }
+    }
+
+    @Override
+    public void onAdd(String key, long size) {
+        Node node = mNodes.get(key);
+        if (node != null) {
+            mBytes[node.region] += size - node.size;
+            node.size = size;
+            touch(node);
+            return;
+        }
+        node = new Node(key, size);
+        mNodes.put(key, node);
+        link(node, WINDOW);
+        mSketch.ensureCapacity(mNodes.size());
+    }
+
+    @Override
+    public void onRemove(String key) {
+        Node node = mNodes.remove(key);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    @Override
+    public String evict() {
+        long windowMax = (long) (mCapacity * mWindowFraction);
+        while (!mNodes.isEmpty()) {
+            if (mBytes[WINDOW] > windowMax && !mWindow.isEmpty()) {
+                Node candidate = first(mWindow);
+                Node victim = selectVictim();
+                if (victim == null
+                        || mBytes[PROBATION] + mBytes[PROTECTED] + candidate.size <= mCapacity - windowMax) {
+                    // The main space still has room, the candidate moves in without a contest.
+                    move(candidate, PROBATION);
+                    continue;
+                }
+                if (mSketch.frequency(candidate.key) > mSketch.frequency(victim.key)) {
+                    move(candidate, PROBATION);
+                    return remove(victim);
+                }
+                return remove(candidate);
+            }
+            Node victim = selectVictim();
+            return remove(victim != null ? victim : first(mWindow));
+        }
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        mNodes.clear();
+        mWindow.clear();
+        mProbation.clear();
+        mProtected.clear();
+        for (int i = 0; i < mBytes.length; i++) {
+            mBytes[i] = 0;
+        }
+        mSketch.clear();
+    }
+
+    /**
+     * Picks the victim in the main space: the least frequent of the oldest entries on
+     * probation, or the oldest protected entry if probation is empty.
+     */
+    private Node selectVictim() {
+        if (mProbation.isEmpty()) {
+            return mProtected.isEmpty() ? null : first(mProtected);
+        }
+        Node victim = null;
+        int victimFrequency = Integer.MAX_VALUE;
+        Iterator<Node> iterator = mProbation.values().iterator();
+        for (int i = 0; i < VICTIM_SAMPLE && iterator.hasNext(); i++) {
+            Node node = iterator.next();
+            int frequency = mSketch.frequency(node.key);
+            if (frequency < victimFrequency
+                    || (frequency == victimFrequency && node.size > victim.size)) {
+                victim = node;
+                victimFrequency = frequency;
+            }
+        }
+        return victim;
+    }
+
+    /** Moves a read entry to the most recently used end, promoting it off probation. */
+    private void touch(Node node) {
+        if (node.region == PROBATION) {
+            move(node, PROTECTED);
+            long protectedMax = (long) ((mCapacity - (long) (mCapacity * mWindowFraction))
+                    * PROTECTED_FRACTION);
+            while (mBytes[PROTECTED] > protectedMax && mProtected.size() > 1) {
+                move(first(mProtected), PROBATION);
+            }
+        } else {
+            move(node, node.region);
+        }
+    }
+
+    private String remove(Node node) {
+        mNodes.remove(node.key);
+        unlink(node);
+        return node.key;
+    }
+
+    private void move(Node node, int region) {
+        unlink(node);
+        link(node, region);
+    }
+
+    private void link(Node node, int region) {
+        node.region = region;
+        regionOf(region).put(node.key, node);
+        mBytes[region] += node.size;
+    }
+
+    private void unlink(Node node) {
+        regionOf(node.region).remove(node.key);
+        mBytes[node.region] -= node.size;
+    }
+
+    private LinkedHashMap<String, Node> regionOf(int region) {
+        switch (region) {
+            case WINDOW:
+                return mWindow;
+            case PROBATION:
+                return mProbation;
+            default:
+                return mProtected;
+        }
+    }
+
+    private static Node first(LinkedHashMap<String, Node> region) {
+        return region.values().iterator().next();
+    }
+}
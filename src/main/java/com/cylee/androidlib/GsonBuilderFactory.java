@@ -1,5 +1,8 @@
 package com.cylee.androidlib;
 
+import com.cylee.androidlib.base.Callback;
+import com.cylee.androidlib.util.Log;
+import com.cylee.androidlib.util.TaskUtils;
 import com.google.jtm.Gson;
 import com.google.jtm.GsonBuilder;
 import com.google.jtm.TypeAdapter;
@@ -10,6 +13,8 @@ import com.google.jtm.stream.JsonToken;
 import com.google.jtm.stream.JsonWriter;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Created by fanxi on 13-12-9.
@@ -17,7 +22,9 @@ import java.io.IOException;
  * json 格式处理工具集
  */
 public class GsonBuilderFactory {
+    private static final String TAG = "GsonBuilderFactory";
     private static volatile Gson instance;
+    private static volatile Gson entityInstance;
     /**
      * 创建可解析泛型与boolean 类型转化的GsonBuilder
      * @return GsonBuilder
@@ -79,6 +86,70 @@ public class GsonBuilderFactory {
         return instance;
     }
 
+    /**
+     * 本地持久化实体用的Gson，和以前每次new Gson()写出的格式一致：枚举按名字保存，
+     * 加入或调整枚举值后旧文件仍然能正确读取。网络数据仍然用{@link #createBuilder()}，枚举按序号解析。
+     * boolean额外兼容按0/1保存的旧数据
+     * @return Gson
+     */
+    public static Gson createEntityGson() {
+        if (entityInstance == null) {
+            synchronized (GsonBuilderFactory.class) {
+                if (entityInstance == null) {
+                    GsonBuilder builder = new GsonBuilder();
+                    builder.registerTypeAdapter(Boolean.class, booleanAsIntAdapter);
+                    builder.registerTypeAdapter(boolean.class, booleanAsIntAdapter);
+                    entityInstance = builder.create();
+                }
+            }
+        }
+        return entityInstance;
+    }
+
+    /**
+     * 在后台线程预先生成这些类型的TypeAdapter，避免第一次解析时在关键路径上反射生成
+     *
+     * @param types 需要预热的实体类型
+     */
+    public static void warmUp(Class<?>... types) {
+        warmUp(null, types);
+    }
+
+    /**
+     * 在后台线程预先生成这些类型的TypeAdapter，完成后在主线程回调每个类型生成耗时
+     *
+     * @param callback 参数为类型到生成耗时(纳秒)的映射，已经缓存的类型为0，生成失败的类型为-1；可以为null
+     * @param types    需要预热的实体类型
+     */
+    public static void warmUp(final Callback<Map<Class<?>, Long>> callback, final Class<?>... types) {
+        TaskUtils.doRapidWork(new TaskUtils.AsyncWorker<Map<Class<?>, Long>>() {
+            @Override
+            public Map<Class<?>, Long> work() {
+                Gson gson = createBuilder();
+                Map<Class<?>, Long> costs = new LinkedHashMap<Class<?>, Long>(types.length);
+                for (Class<?> type : types) {
+                    long cost;
+                    try {
+                        cost = gson.prewarm(TypeToken.get(type));
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                        cost = -1;
+                    }
+                    costs.put(type, cost);
+                    Log.d(TAG, "warm up " + type.getName() + " cost " + cost / 1000 + "us");
+                }
+                return costs;
+            }
+
+            @Override
+            public void post(Map<Class<?>, Long> costs) {
+                if (callback != null) {
+                    callback.callback(costs);
+                }
+            }
+        });
+    }
+
     private static final TypeAdapter<Boolean> booleanAsIntAdapter = new TypeAdapter<Boolean>() {
         @Override
         public void write(JsonWriter jsonWriter, Boolean aBoolean) throws IOException {
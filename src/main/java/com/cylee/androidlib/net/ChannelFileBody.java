@@ -0,0 +1,50 @@
+package com.cylee.androidlib.net;
+
+import org.apache.http.entity.mime.content.FileBody;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 通过FileChannel分块读取文件的FileBody，每次只占用一个固定大小的缓冲区，
+ * 文件内容直接写到连接的输出流，不在内存中保留完整的文件
+ */
+class ChannelFileBody extends FileBody {
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    ChannelFileBody(File file) {
+        super(file);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        FileInputStream in = new FileInputStream(getFile());
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            int count;
+            while ((count = channel.read(buffer)) != -1) {
+                if (count > 0) {
+                    out.write(buffer.array(), 0, count);
+                }
+                buffer.clear();
+            }
+            out.flush();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void writeTo(OutputStream out, int mode) throws IOException {
+        writeTo(out);
+    }
+}
@@ -0,0 +1,219 @@
+package com.cylee.androidlib.net;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+
+import com.cylee.androidlib.base.Callback;
+import com.cylee.androidlib.util.DirectoryManager;
+import com.cylee.androidlib.util.FileUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 第一页实体缓存，两级：内存中序列化好的json字节LRU，后面是DIR.ENTITY目录下的文件。
+ *
+ * 保存时立即把实体序列化成快照，之后调用方再修改这个对象不会影响缓存；网络返回的实体在解析线程上
+ * 就生成了快照，见{@link HWRequest.EntityListener}。每次读取都从快照解析出一个新对象，调用方之间
+ * 也不会共享同一个可变实例。
+ * 磁盘读写和异步读取的解析都在一个单独的线程上串行执行，同一个key在写入前多次保存只写最后一次，
+ * 不会在主线程做磁盘IO或者解析
+ */
+class EntityCache {
+    /** 内存中最多保留的序列化实体字节数 */
+    private static final int MEMORY_MAX_BYTES = 2 * 1024 * 1024;
+
+    private static EntityCache sInstance;
+
+    private final LruCache<String, byte[]> mMemory = new LruCache<String, byte[]>(MEMORY_MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, byte[] value) {
+            return value.length;
+        }
+    };
+    /** 等待写入磁盘的实体，key对应最后一次保存的值，由this保护 */
+    private final Map<String, PendingWrite> mPendingWrites = new HashMap<String, PendingWrite>();
+    private final ExecutorService mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private static class PendingWrite {
+        /** 保存时的序列化快照，null表示删除 */
+        byte[] data;
+        /** 只有磁盘上已有缓存时才写入，所有合并的保存都是条件保存时才为true */
+        boolean onlyIfExists;
+        final List<Callback<Boolean>> callbacks = new ArrayList<Callback<Boolean>>(1);
+    }
+
+    static synchronized EntityCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new EntityCache();
+        }
+        return sInstance;
+    }
+
+    private EntityCache() {
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "entity-cache");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 同步读取，内存未命中时读取磁盘，不要在主线程调用
+     */
+    <T> T read(String key, Class<T> clazz) {
+        byte[] data = getDataFromMemory(key);
+        if (data == null) {
+            data = FileUtils.readEntityData(getFile(key).getAbsolutePath());
+            if (data == null) {
+                return null;
+            }
+            mMemory.put(key, data);
+        }
+        return FileUtils.parseEntity(clazz, data);
+    }
+
+    private byte[] getDataFromMemory(String key) {
+        synchronized (this) {
+            PendingWrite pending = mPendingWrites.get(key);
+            if (pending != null && !pending.onlyIfExists) {
+                return pending.data;
+            }
+        }
+        return mMemory.get(key);
+    }
+
+    /**
+     * 异步读取，内存命中时也在后台解析，回调到主线程
+     */
+    <T> void readAsync(final String key, final Class<T> clazz, final Callback<T> callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final T value = read(key, clazz);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.callback(value);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 异步保存，value为null时删除缓存。value在这里就序列化成快照，调用返回后可以继续修改
+     *
+     * @param onlyIfExists 只有已经有缓存时才保存，用于替换已有的第一页缓存
+     * @param callback 写入完成后在主线程回调，可以为null
+     */
+    void save(String key, Object value, boolean onlyIfExists, final Callback<Boolean> callback) {
+        byte[] data = value != null ? FileUtils.serializeEntity(value) : null;
+        if (value != null && data == null) {
+            // 序列化失败，保留原来的缓存
+            if (callback != null) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.callback(false);
+                    }
+                });
+            }
+            return;
+        }
+        saveData(key, data, onlyIfExists, callback);
+    }
+
+    /**
+     * 异步保存已经序列化好的快照，参数见{@link #save(String, Object, boolean, Callback)}
+     *
+     * @param data {@link FileUtils#serializeEntity(Object)}的结果，之后不能再修改，为null时删除缓存
+     */
+    void saveData(final String key, byte[] data, boolean onlyIfExists, Callback<Boolean> callback) {
+        boolean schedule;
+        synchronized (this) {
+            PendingWrite pending = mPendingWrites.get(key);
+            schedule = pending == null;
+            if (schedule) {
+                pending = new PendingWrite();
+                pending.onlyIfExists = onlyIfExists;
+                mPendingWrites.put(key, pending);
+            } else {
+                pending.onlyIfExists &= onlyIfExists;
+            }
+            pending.data = data;
+            if (callback != null) {
+                pending.callbacks.add(callback);
+            }
+        }
+        if (!onlyIfExists || mMemory.get(key) != null) {
+            if (data != null) {
+                mMemory.put(key, data);
+            } else {
+                mMemory.remove(key);
+            }
+        }
+        if (schedule) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    write(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * 是否有缓存，内存未命中时会检查磁盘，不要在主线程调用
+     */
+    boolean exists(String key) {
+        return getDataFromMemory(key) != null || getFile(key).exists();
+    }
+
+    private void write(String key) {
+        PendingWrite pending;
+        synchronized (this) {
+            pending = mPendingWrites.remove(key);
+        }
+        if (pending == null) {
+            return;
+        }
+        File cacheFile = getFile(key);
+        final boolean result;
+        if (pending.data == null) {
+            result = FileUtils.delFile(cacheFile);
+        } else if (pending.onlyIfExists && !cacheFile.exists()) {
+            result = false;
+        } else {
+            // writeEntityData先写临时文件再重命名
+            boolean written = FileUtils.writeEntityData(pending.data, cacheFile.getAbsolutePath());
+            if (written) {
+                mMemory.put(key, pending.data);
+            }
+            result = written;
+        }
+        for (final Callback<Boolean> callback : pending.callbacks) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.callback(result);
+                }
+            });
+        }
+    }
+
+    private static File getFile(String key) {
+        return new File(DirectoryManager.getDirectory(DirectoryManager.DIR.ENTITY), key);
+    }
+}
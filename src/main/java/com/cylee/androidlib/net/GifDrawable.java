@@ -10,6 +10,7 @@ import android.graphics.drawable.Drawable;
 import android.os.SystemClock;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * A {@link Drawable} which can be used to hold GIF images, especially animations.
@@ -38,6 +39,33 @@ public class GifDrawable extends Drawable implements Animatable
         this.size = bytes.length/1024;
     }
 
+    /**
+     * Creates drawable from a part of a byte array, e.g. a cache file read in one go.
+     * @param bytes array holding the GIF data
+     * @param offset offset of the GIF data
+     * @param length length of the GIF data
+     * @throws IOException if bytes does not contain valid GIF data
+     */
+    public GifDrawable(byte[] bytes, int offset, int length) throws IOException
+    {
+        this.movie = Movie.decodeByteArray(bytes,offset,length);
+        duration = this.movie.duration();
+        this.size = length/1024;
+    }
+
+    /**
+     * Creates drawable from a stream, e.g. over a memory mapped cache file.
+     * @param stream GIF data, must support mark and reset
+     * @param length length of the GIF data, used for {@link #getSize()}
+     * @throws IOException if stream does not contain valid GIF data
+     */
+    public GifDrawable(InputStream stream, int length) throws IOException
+    {
+        this.movie = Movie.decodeStream(stream);
+        duration = this.movie.duration();
+        this.size = length/1024;
+    }
+
     public int getSize() {
         return size;
     }
@@ -7,32 +7,42 @@ import com.android.volley.ErrorCode;
 import com.android.volley.NetworkResponse;
 import com.android.volley.ParseError;
 import com.android.volley.Request;
+import com.android.volley.RequestQueue;
 import com.android.volley.Response;
+import com.android.volley.ResponseDelivery;
 import com.android.volley.ResponseContentError;
+import com.android.volley.toolbox.ByteBufferInputStream;
 import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.RetryPolicyFactory;
 import com.cylee.androidlib.GsonBuilderFactory;
 import com.cylee.androidlib.util.DirectoryManager;
 import com.cylee.androidlib.util.FileUtils;
 import com.cylee.androidlib.util.TextUtil;
-import com.google.jtm.Gson;
 import com.google.jtm.JsonSyntaxException;
+import com.google.jtm.stream.JsonReader;
+import com.google.jtm.stream.MalformedJsonException;
+import com.google.jtm.stream.Utf8JsonReader;
 
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.ByteArrayBody;
-import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
-import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -42,6 +52,8 @@ import java.util.Random;
 
 public class HWRequest<T> extends Request<T> {
     private static Random RANDOM = new Random();
+    //上传进度回调的最小间隔字节数
+    private static final int UPLOAD_PROGRESS_STEP = 8 * 1024;
     private long mRequestID;
     private String mSearchString = null;
     private String mParams;
@@ -50,12 +62,56 @@ public class HWRequest<T> extends Request<T> {
     private final byte[] mFileBytes;
     private final String mFileName;
     private final Response.Listener<T> mListener;
+    private final boolean mStreamResponse;
     private MultipartEntity mEntity;
+    private UploadProgressListener mUploadProgressListener;
+    private ElementListener<?> mElementListener;
+    private String mListField;
+    private int mFirstCount;
     private Map<String, String> mHeaderParams;
     //当前Request携带的Cookie
     private List<String> cookies;
+    //解析线程上生成的实体快照，见EntityListener
+    private volatile byte[] mEntitySnapshot;
+
+    /**
+     * 文件上传进度回调，与{@link com.android.volley.FileDownloadRequest.FileDownloadListener#onProgress(long, long)}对应，
+     * 在主线程回调
+     */
+    public interface UploadProgressListener {
+        /**
+         * @param fileSize 请求体总大小，未知时为-1
+         * @param uploadedSize 已经上传的大小
+         */
+        void onProgress(long fileSize, long uploadedSize);
+    }
+
+    /**
+     * 列表接口的前几个元素解析完成的回调，在主线程回调，早于{@link Response.Listener#onResponse(Object)}，
+     * 完整的结果仍然通过onResponse返回
+     */
+    public interface ElementListener<E> {
+        void onElements(List<E> elements);
+    }
+
+    /**
+     * 需要保存第一页实体缓存的回调。解析成功后在解析线程上把结果序列化成快照，
+     * 主线程不再序列化，同一个响应的保存和替换共用这一份快照
+     */
+    interface EntityListener<T> extends Response.Listener<T> {
+        /**
+         * 在解析线程调用，返回false时不生成快照
+         */
+        boolean needsSnapshot();
+
+        /**
+         * 代替{@link #onResponse(Object)}在主线程回调
+         *
+         * @param snapshot {@link FileUtils#serializeEntity(Object)}的结果，不需要快照或者序列化失败时为null
+         */
+        void onResponse(T response, byte[] snapshot);
+    }
 
-    private static final String ERROR_NO_0_EXPRESSION = "[\\S\\s]*\"err[Nn]o\"\\s*:\\s*0[\\s\\S]*";
     /**
      * 创建一个普通的数据请求
      * @param input
@@ -121,6 +177,7 @@ public class HWRequest<T> extends Request<T> {
         mFile = file;
         mFileBytes = fileBytes;
         mListener = successListener;
+        mStreamResponse = input.streamResponse;
         mRequestID = Math.abs(RANDOM.nextInt()) + 1;
     }
 
@@ -130,58 +187,154 @@ public class HWRequest<T> extends Request<T> {
         Response<T> result;
         try {
             if (response.data != null) {
-                    String json = new String(response.data, HttpHeaderParser.parseCharset(response.headers));
+                    String charset = HttpHeaderParser.parseCharset(response.headers);
                     if (mClazz == String.class) {
-                        return Response.success((T) json, HttpHeaderParser.parseCacheHeaders(response));
+                        String json = new String(response.data, charset);
+                        return success((T) json, response);
                     } else if (mClazz == File.class) {
                         String fileName = TextUtil.md5(getUrl());
                         File outFile = new File(DirectoryManager.getDirectory(DirectoryManager.DIR.DATA), fileName);
                         FileUtils.writeFile(outFile.getAbsolutePath(), response.data);
-                        return Response.success((T) outFile, HttpHeaderParser.parseCacheHeaders(response));
+                        return success((T) outFile, response);
                     } else {
-                        if (json.matches(ERROR_NO_0_EXPRESSION)) {  // errno=0
-                            T data;
-                            JSONObject jsonObject = new JSONObject(json);
-                            json = jsonObject.getString("data");
-                            if (json.trim().startsWith("[")) {
-                                json = "{}";
-                            }
-                            //JELLY_BEAN以下的设备不支持emoji表情，过滤掉，防止一些山寨机crash
-                            if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.JELLY_BEAN) {
-                                json = TextUtil.filterEmoji(json);
-                            }
-                            //其他属于Gson请求，解析对象返回
-                            Gson gson = GsonBuilderFactory.createBuilder();
-                            data = (T) gson.fromJson(json, mClazz);
-                            return Response.success(data, HttpHeaderParser.parseCacheHeaders(response));
-                        } else {
-                            int errNo;
-                            JSONObject jsonObject = new JSONObject(json);
-                            if (jsonObject.has("errno")) {
-                                errNo = jsonObject.getInt("errno");
-                                ErrorCode errorCode;
-                                errorCode = ErrorCode.valueOf(errNo,jsonObject.optString("errstr"));
-                                return Response.error(new ResponseContentError(errorCode));
-                            } else {
-                                return Response.error(new ParseError("Error response format: errNo not found"));
-                            }
+                        if (canParseBytes(charset)) {
+                            return parseEnvelope(new Utf8JsonReader(response.data), response);
                         }
-                }
+                        return parseEnvelope(new InputStreamReader(new ByteArrayInputStream(response.data), charset), response);
+                    }
+            } else if (response.body != null) {
+                return parseBody(response);
             } else {
                 result = Response.error(new ResponseContentError(ErrorCode.NETWORK_ERROR));
             }
-        } catch (UnsupportedEncodingException e) {
+        } catch (IOException e) {
             result = Response.error(new ParseError(e));
-        } catch (JSONException|JsonSyntaxException e) {
+        } catch (IllegalStateException|JsonSyntaxException|NumberFormatException e) {
             result = Response.error(new ParseError(e));
         }
 
         return result;
     }
 
+    /**
+     * 流式解析，直接从网络连接读取并解析，不在内存中保留完整的响应内容
+     */
+    @Override
+    protected Response<T> parseNetworkResponse(NetworkResponse response, InputStream content) throws IOException {
+        try {
+            String charset = HttpHeaderParser.parseCharset(response.headers);
+            if (canParseBytes(charset)) {
+                return parseEnvelope(new Utf8JsonReader(content), response);
+            }
+            return parseEnvelope(new InputStreamReader(content, charset), response);
+        } catch (MalformedJsonException|EOFException e) {
+            // 响应内容格式错误，与缓冲解析一样报ParseError；连接的IOException继续抛出，由BasicNetwork重试
+            return Response.error(new ParseError(e));
+        } catch (IllegalStateException|JsonSyntaxException|NumberFormatException e) {
+            return Response.error(new ParseError(e));
+        }
+    }
+
+    /**
+     * 缓存命中时直接解析缓存文件的内容，不复制一份byte[]，String和File类型需要完整的byte[]
+     */
+    @Override
+    public boolean canParseBody() {
+        return mClazz != String.class && mClazz != File.class;
+    }
+
+    private Response<T> parseBody(NetworkResponse response) throws IOException {
+        String charset = HttpHeaderParser.parseCharset(response.headers);
+        ByteBuffer body = response.body;
+        if (canParseBytes(charset)) {
+            if (body.hasArray()) {
+                return parseEnvelope(new Utf8JsonReader(body.array(), body.arrayOffset() + body.position(), body.remaining()), response);
+            }
+            // 内存映射的大文件
+            return parseEnvelope(new Utf8JsonReader(new ByteBufferInputStream(body)), response);
+        }
+        return parseEnvelope(new InputStreamReader(new ByteBufferInputStream(body), charset), response);
+    }
+
+    @Override
+    public boolean isStreamingResponse() {
+        // String和File类型需要完整的响应内容
+        return mStreamResponse && mClazz != String.class && mClazz != File.class;
+    }
+
+    /**
+     * UTF-8的响应直接按字节解析，不用先解码成字符；
+     * JELLY_BEAN以下需要在字符上过滤emoji，仍然走Reader
+     */
+    private static boolean canParseBytes(String charset) {
+        return "UTF-8".equalsIgnoreCase(charset)
+                && android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.JELLY_BEAN;
+    }
+
+    /**
+     * 解析信封格式的响应
+     */
+    private Response<T> parseEnvelope(Reader reader, NetworkResponse response) throws IOException {
+        //JELLY_BEAN以下的设备不支持emoji表情，过滤掉，防止一些山寨机crash
+        if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.JELLY_BEAN) {
+            reader = TextUtil.filterEmoji(reader);
+        }
+        return parseEnvelope(new JsonReader(reader), response);
+    }
+
+    private Response<T> parseEnvelope(JsonReader jsonReader, NetworkResponse response) throws IOException {
+        //其他属于Gson请求，单次遍历解析信封并直接绑定data对象
+        ResponseEnvelope.ElementsListener elementsListener = null;
+        // 重试时前几个元素已经回调过，不再复制和回调
+        if (mElementListener != null && !hasHadElementsDelivered()) {
+            elementsListener = new ResponseEnvelope.ElementsListener() {
+                @Override
+                public void onElements(List<?> elements) {
+                    RequestQueue queue = getRequestQueue();
+                    if (queue != null && !isCanceled()) {
+                        queue.getDelivery().postElements(HWRequest.this, elements);
+                    }
+                }
+            };
+        }
+        ResponseEnvelope<T> envelope = ResponseEnvelope.parse(jsonReader, mClazz, GsonBuilderFactory.createBuilder(),
+                mListField, mFirstCount, elementsListener);
+        return toResponse(envelope, response);
+    }
+
+    /**
+     * 根据解析出的信封生成Response
+     */
+    private Response<T> toResponse(ResponseEnvelope<T> envelope, NetworkResponse response) {
+        if (envelope.isSuccess()) {  // errno=0
+            if (!envelope.hasData) {
+                return Response.error(new ParseError("Error response format: data not found"));
+            }
+            return success(envelope.data, response);
+        } else if (envelope.hasErrNo) {
+            ErrorCode errorCode = ErrorCode.valueOf(envelope.errNo, envelope.errStr);
+            return Response.error(new ResponseContentError(errorCode));
+        } else {
+            return Response.error(new ParseError("Error response format: errNo not found"));
+        }
+    }
+
+    /**
+     * 解析成功，需要时在当前的解析线程生成实体快照，这时结果还没有交给任何调用方
+     */
+    private Response<T> success(T data, NetworkResponse response) {
+        if (mListener instanceof EntityListener) {
+            mEntitySnapshot = data != null && ((EntityListener<T>) mListener).needsSnapshot()
+                    ? FileUtils.serializeEntity(data) : null;
+        }
+        return Response.success(data, HttpHeaderParser.parseCacheHeaders(response));
+    }
+
     @Override
     protected void deliverResponse(T response) {
-        if (mListener != null) {
+        if (mListener instanceof EntityListener) {
+            ((EntityListener<T>) mListener).onResponse(response, mEntitySnapshot);
+        } else if (mListener != null) {
             mListener.onResponse(response);
         }
     }
@@ -197,7 +350,7 @@ public class HWRequest<T> extends Request<T> {
         else{
             mEntity = new MultipartEntity();
             try {
-                if (mFile != null) { mEntity.addPart(mFileName, new FileBody(mFile)); }
+                if (mFile != null) { mEntity.addPart(mFileName, new ChannelFileBody(mFile)); }
                 if (mFileBytes != null) { mEntity.addPart(mFileName, new ByteArrayBody(mFileBytes, "image.jpg")); }
                 // todo 可以通过net里头进行参数传递来优化
                 List<NameValuePair> queryParams = URLEncodedUtils.parse(URI.create(url), "UTF-8");
@@ -230,6 +383,11 @@ public class HWRequest<T> extends Request<T> {
         return Priority.IMMEDIATE;
     }
 
+    @Override
+    public Lane getLane() {
+        return isUploadFile() ? Lane.UPLOAD : Lane.API;
+    }
+
     @Override
     public String getBodyContentType() {
         if (isUploadFile()) {
@@ -246,6 +404,63 @@ public class HWRequest<T> extends Request<T> {
         return TextUtils.join("; ",cookies);
     }
 
+    /**
+     * 上传文件时请求体直接流式写到连接上，不再整体生成byte数组
+     */
+    @Override
+    public boolean hasStreamingBody() {
+        return isUploadFile() && mEntity != null;
+    }
+
+    @Override
+    public long getBodyLength() {
+        return mEntity != null ? mEntity.getContentLength() : -1;
+    }
+
+    @Override
+    public void writeBody(OutputStream out) throws IOException, AuthFailureError {
+        if (!hasStreamingBody()) {
+            super.writeBody(out);
+            return;
+        }
+        ProgressOutputStream progressOut = new ProgressOutputStream(out, getBodyLength());
+        mEntity.writeTo(progressOut);
+        progressOut.flush();
+        progressOut.postProgress();
+        logLong(Request.LOG_SEND_SIZE, progressOut.mWritten);
+    }
+
+    public void setUploadProgressListener(UploadProgressListener listener) {
+        mUploadProgressListener = listener;
+    }
+
+    /**
+     * 解析data中的列表字段时，读完前firstCount个元素就先回调一次，不用等整个列表解析完
+     *
+     * @param listField data中列表字段的json名字，字段类型必须是List或ArrayList
+     */
+    public void setElementListener(String listField, int firstCount, ElementListener<?> listener) {
+        mListField = listField;
+        mFirstCount = firstCount;
+        mElementListener = listener;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void deliverElements(List<?> elements) {
+        if (mElementListener != null) {
+            ((ElementListener<Object>) mElementListener).onElements((List<Object>) elements);
+        }
+    }
+
+    @Override
+    public void deliverUploadProgress(long fileSize, long uploadedSize) {
+        super.deliverUploadProgress(fileSize, uploadedSize);
+        if (mUploadProgressListener != null) {
+            mUploadProgressListener.onProgress(fileSize, uploadedSize);
+        }
+    }
+
     @Override
     public byte[] getBody() throws AuthFailureError {
         byte[] body = null;
@@ -269,6 +484,50 @@ public class HWRequest<T> extends Request<T> {
     }
 
 
+    /**
+     * 统计写出的字节数，每写出{@link #UPLOAD_PROGRESS_STEP}字节通过ResponseDelivery投递一次上传进度
+     */
+    private class ProgressOutputStream extends FilterOutputStream {
+        private final long mTotal;
+        private final ResponseDelivery mDelivery;
+        private long mWritten;
+        private long mPosted = -1;
+
+        ProgressOutputStream(OutputStream out, long total) {
+            super(out);
+            mTotal = total;
+            RequestQueue queue = getRequestQueue();
+            mDelivery = mUploadProgressListener != null && queue != null ? queue.getDelivery() : null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mWritten++;
+            onWritten();
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int count) throws IOException {
+            out.write(buffer, offset, count);
+            mWritten += count;
+            onWritten();
+        }
+
+        private void onWritten() {
+            if (mWritten - mPosted >= UPLOAD_PROGRESS_STEP) {
+                postProgress();
+            }
+        }
+
+        void postProgress() {
+            if (mDelivery != null && !isCanceled() && mWritten != mPosted) {
+                mPosted = mWritten;
+                mDelivery.postUploadProgress(HWRequest.this, mTotal, mWritten);
+            }
+        }
+    }
+
     /**
      * 获取接口类名称
      * @return
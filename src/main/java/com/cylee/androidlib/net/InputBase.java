@@ -17,6 +17,14 @@ public abstract class InputBase {
     public Class aClass;
     public String url;
     public boolean needCache;
+    /**
+     * 边下载边解析，不在内存中保留完整的响应内容，适合返回数据量较大的接口
+     */
+    public boolean streamResponse;
+
+    //第一页缓存的key，公共参数不变时不需要重复计算md5
+    transient String entityKeySource;
+    transient String entityKey;
 
     protected InputBase() {
         method = Request.Method.GET;
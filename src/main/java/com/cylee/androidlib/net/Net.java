@@ -2,10 +2,10 @@ package com.cylee.androidlib.net;
 
 import android.app.Activity;
 import android.content.Context;
-import android.os.AsyncTask;
 import android.os.Build;
 
 import com.android.volley.ErrorCode;
+import com.android.volley.LaneDispatchEngine;
 import com.android.volley.Network;
 import com.android.volley.NetworkResponse;
 import com.android.volley.Request;
@@ -21,12 +21,13 @@ import com.android.volley.toolbox.FileDownloader;
 import com.android.volley.toolbox.HttpStack;
 import com.android.volley.toolbox.HurlStack;
 import com.android.volley.toolbox.ImageLruCache;
+import com.android.volley.toolbox.PartitionedCache;
 import com.android.volley.toolbox.RetryPolicyFactory;
+import com.android.volley.toolbox.TinyLfuEvictionPolicy;
 import com.cylee.androidlib.base.BaseActivity;
 import com.cylee.androidlib.base.Callback;
 import com.cylee.androidlib.thread.Worker;
 import com.cylee.androidlib.util.DirectoryManager;
-import com.cylee.androidlib.util.FileUtils;
 import com.cylee.androidlib.util.NetUtils;
 import com.cylee.androidlib.util.TaskUtils;
 import com.cylee.androidlib.util.TextUtil;
@@ -35,8 +36,10 @@ import java.io.File;
 import java.lang.ref.WeakReference;
 import java.net.Proxy;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -46,6 +49,10 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class Net {
     private static final String DEFAULT_CACHE_DIR = "volley";
+    /** 图片单独的缓存目录，和API响应分开淘汰 */
+    private static final String IMAGE_CACHE_DIR = "volley-image";
+    private static final int API_CACHE_BYTES = 5 * 1024 * 1024;
+    private static final int IMAGE_CACHE_BYTES = 20 * 1024 * 1024;
     private static AtomicInteger REQUEST_ID = new AtomicInteger(0);
     static RequestQueue requestQueue;
     private static HttpStack stack;
@@ -176,8 +183,10 @@ public class Net {
             return null;
         }
 
-        Response<T> response = request.parseNetworkResponse(networkResponse);
-        if (!response.isSuccess()) {
+        Response<T> response = networkResponse.parsedResponse != null
+                ? (Response<T>) networkResponse.parsedResponse
+                : request.parseNetworkResponse(networkResponse);
+        if (response == null || !response.isSuccess()) {
             return null;
         } else {
             return response.result;
@@ -195,10 +204,29 @@ public class Net {
      * @return
      */
     public static <T> Request<?> post(final Context context, InputBase input, SuccessListener<T> success, ErrorListener error) {
-        return postRequest(context, input, null, null, null, success, error);
+        return postRequest(context, input, null, null, null, null, null, 0, null, success, error);
     }
 
 
+    /**
+     * 发送一个列表请求，data中的列表字段边解析边绑定，前firstCount个元素解析完成后先回调elements，
+     * 不用等整个列表解析完就可以开始展示，完整的结果仍然回调success
+     *
+     * @param context
+     * @param input
+     * @param listField data中列表字段的json名字，字段类型必须是List或ArrayList
+     * @param firstCount 提前回调的元素个数，列表不足这么多个元素时不回调elements
+     * @param elements 在主线程回调，早于success
+     * @param success
+     * @param error
+     * @param <T>
+     * @param <E>
+     * @return
+     */
+    public static <T, E> Request<?> post(final Context context, InputBase input, String listField, int firstCount, HWRequest.ElementListener<E> elements, SuccessListener<T> success, ErrorListener error) {
+        return postRequest(context, input, null, null, null, null, listField, firstCount, elements, success, error);
+    }
+
     /**
      * 发送一个文件上传请求
      *
@@ -212,7 +240,24 @@ public class Net {
      * @return
      */
     public static <T> Request<?> post(final Context context, InputBase input, String filename, File file, SuccessListener<T> success, ErrorListener error) {
-        return postRequest(context, input, filename, file, null, success, error);
+        return postRequest(context, input, filename, file, null, null, null, 0, null, success, error);
+    }
+
+    /**
+     * 发送一个文件上传请求，并回调上传进度
+     *
+     * @param context
+     * @param input
+     * @param filename
+     * @param file
+     * @param progress 上传进度回调
+     * @param success
+     * @param error
+     * @param <T>
+     * @return
+     */
+    public static <T> Request<?> post(final Context context, InputBase input, String filename, File file, HWRequest.UploadProgressListener progress, SuccessListener<T> success, ErrorListener error) {
+        return postRequest(context, input, filename, file, null, progress, null, 0, null, success, error);
     }
 
 
@@ -229,7 +274,7 @@ public class Net {
      * @return
      */
     public static <T> Request<?> post(final Context context, InputBase input, String filename, byte[] fileBytes, SuccessListener<T> success, ErrorListener error) {
-        return postRequest(context, input, filename, null, fileBytes, success, error);
+        return postRequest(context, input, filename, null, fileBytes, null, null, 0, null, success, error);
     }
 
     /**
@@ -255,12 +300,17 @@ public class Net {
      * @param filename
      * @param file
      * @param fileBytes
+     * @param progress
+     * @param listField
+     * @param firstCount
+     * @param elements
      * @param success
      * @param error
      * @param <T>
      * @return
      */
-    private static <T> Request<?> postRequest(final Context context, final InputBase input, String filename, File file, byte[] fileBytes, SuccessListener<T> success, ErrorListener error) {
+    private static <T> Request<?> postRequest(final Context context, final InputBase input, String filename, File file, byte[] fileBytes, HWRequest.UploadProgressListener progress,
+                                              String listField, int firstCount, HWRequest.ElementListener<?> elements, SuccessListener<T> success, ErrorListener error) {
         // 检查URL合法性
         if (!isUrlValid(input)) {
             if (error != null) {
@@ -272,13 +322,18 @@ public class Net {
         final SuccessListener<T> successListener = (SuccessListener<T>) listeners[0];
         final ErrorListener errorListener = (ErrorListener) listeners[1];
 
-        // 有缓存第一个页面，调onCahceResponse
+        // 有缓存第一个页面，调onCahceResponse，内存未命中时在后台读取，网络先返回则不再回调缓存
+        final boolean[] responded = new boolean[1];
         if (input.needCache) {
             Entity<T> entity = new Entity<T>(input);
-            T data = entity.read();
-            if (data != null) {
-                successListener.onCacheResponse(data);
-            }
+            entity.readAsyn(new Callback<T>() {
+                @Override
+                public void callback(T data) {
+                    if (data != null && !responded[0]) {
+                        successListener.onCacheResponse(data);
+                    }
+                }
+            });
         }
 
         // 区分不同的请求类型，创建request
@@ -289,12 +344,24 @@ public class Net {
             request = HWRequest.newByteRequest(input, filename, fileBytes, successListener, errorListener);
         } else {
             // 普通的文本请求，需要考虑第一页缓存
-            request = HWRequest.newRequest(input, new Response.Listener<T>() {
+            request = HWRequest.newRequest(input, new HWRequest.EntityListener<T>() {
+                @Override
+                public boolean needsSnapshot() {
+                    // 不需要缓存的请求，只有已经有第一页缓存时才替换它
+                    return input.needCache || new Entity<T>(input).exists();
+                }
+
                 @Override
                 public void onResponse(T response) {
-                    if (input.needCache) {
-                        Entity<T> entity = new Entity<T>(input);
-                        entity.save(response, null);
+                    onResponse(response, null);
+                }
+
+                @Override
+                public void onResponse(T response, byte[] snapshot) {
+                    responded[0] = true;
+                    if (snapshot != null) {
+                        // 快照在解析线程生成，listener之后修改response不会改到缓存
+                        new Entity<T>(input).saveSnapshot(snapshot, !input.needCache);
                     }
                     if (successListener != null) {
                         successListener.onResponse(response);
@@ -303,6 +370,10 @@ public class Net {
             }, errorListener);
         }
         request.setTag(new WeakReference<Context>(context));
+        request.setUploadProgressListener(progress);
+        if (elements != null) {
+            request.setElementListener(listField, firstCount, createDelegateElementListener(context, elements));
+        }
         // 发送请求前，需要判断AntiSpam是否初始化成功了,另外，获取host配置的接口不需要判断是否成功
         request.setUrl(appendSign(input));
         requestQueue.add(request);
@@ -371,14 +442,6 @@ public class Net {
                     }
                 }
 
-                //网络请求返回后，如果有第一页缓存刚好对应，替换它
-                if (input != null) {//非download才需要缓存
-                    Entity<T> entity = new Entity<T>(input);
-                    if (entity.exists()) {
-                        entity.save(response, null);
-                    }
-                }
-
                 if (context != null && successListener != null) {
                     if (context instanceof Activity && ((Activity) context).isFinishing()) {
                         return;
@@ -434,6 +497,26 @@ public class Net {
         return new Object[]{successListener, errorListener};
     }
 
+    /**
+     * Activity已经finish时不再回调前几个元素，完整结果的回调由createDelegateListener处理
+     */
+    private static <E> HWRequest.ElementListener<E> createDelegateElementListener(Context context, final HWRequest.ElementListener<E> elements) {
+        if (!(context instanceof Activity)) {
+            return elements;
+        }
+        final WeakReference<Context> contextRef = new WeakReference<Context>(context);
+        return new HWRequest.ElementListener<E>() {
+            @Override
+            public void onElements(List<E> list) {
+                Context context = contextRef.get();
+                if (context == null || ((Activity) context).isFinishing()) {
+                    return;
+                }
+                elements.onElements(list);
+            }
+        };
+    }
+
     /**
      * 取消某个请求
      *
@@ -471,11 +554,19 @@ public class Net {
 
     private static RequestQueue getRequestQueue(Context context) {
         Proxy proxy = NetUtils.getProxy();
-        File cacheDir = new File(DirectoryManager.getDirectory(DirectoryManager.DIR.CACHE), DEFAULT_CACHE_DIR);
-        stack = new HurlStack(proxy);
+        HurlStack hurlStack = new HurlStack(proxy);
+        // 复用连接、gzip压缩、请求体流式发送
+        hurlStack.setHighThroughputMode(true);
+        stack = hurlStack;
         network = new BasicNetwork(stack);
 
-        final DiskBasedCache diskCache = new DiskBasedCache(cacheDir);
+        // API响应和图片分区缓存，各自的目录和大小，滑动图片列表不会把API缓存挤掉
+        final DiskBasedCache apiCache = new DiskBasedCache(getCacheDir(DEFAULT_CACHE_DIR), API_CACHE_BYTES);
+        // 图片按访问频率淘汰，滑过一次的缩略图挤不掉反复显示的图片
+        final DiskBasedCache imageCache = new DiskBasedCache(getCacheDir(IMAGE_CACHE_DIR), IMAGE_CACHE_BYTES,
+                new TinyLfuEvictionPolicy());
+        PartitionedCache cache = new PartitionedCache("api", apiCache)
+                .addPartition("image", imageCache, Request.Lane.IMAGE);
         //监听目录的变化，切换cache目录
         DirectoryManager.addSdCardListener(new DirectoryManager.SdcardStatusListener() {
             @Override
@@ -483,17 +574,35 @@ public class Net {
                 TaskUtils.doRapidWork(new Worker() {
                     @Override
                     public void work() {
-                        diskCache.switchCache(new File(DirectoryManager.getDirectory(DirectoryManager.DIR.CACHE), DEFAULT_CACHE_DIR));
+                        apiCache.switchCache(getCacheDir(DEFAULT_CACHE_DIR), API_CACHE_BYTES);
+                        imageCache.switchCache(getCacheDir(IMAGE_CACHE_DIR), IMAGE_CACHE_BYTES);
                     }
                 });
             }
         });
 
-        RequestQueue queue = new RequestQueue(diskCache, network);
+        // 按请求类型分通道调度，下载和上传不会占满API请求的线程；同一个host的并发数也有上限，
+        // 和ElasticDispatchEngine一样。通道的线程数是固定预算，空闲线程超时后退出
+        RequestQueue queue = new RequestQueue(cache, network, new LaneDispatchEngine());
         queue.start();
         return queue;
     }
 
+    private static File getCacheDir(String name) {
+        return new File(DirectoryManager.getDirectory(DirectoryManager.DIR.CACHE), name);
+    }
+
+    /**
+     * 磁盘缓存各分区的命中率，用于调整分区大小，未初始化时返回空列表
+     */
+    public static List<PartitionedCache.Partition> getCachePartitions() {
+        RequestQueue queue = requestQueue;
+        if (queue == null || !(queue.getCache() instanceof PartitionedCache)) {
+            return Collections.emptyList();
+        }
+        return ((PartitionedCache) queue.getCache()).getPartitions();
+    }
+
     public static DrawableLoader getDrawableLoader() {
         return ImageViewUtils.getDrawableLoader();
     }
@@ -525,98 +634,72 @@ public class Net {
         }
 
         /**
-         * 获取实体key
+         * 获取实体key，同一个input在公共参数不变时复用上次的md5
          *
          * @return
          */
         String createKey() {
-            return TextUtil.md5(appendCommonParams(input.toString()));
+            String source = appendCommonParams(input.toString());
+            if (!source.equals(input.entityKeySource)) {
+                input.entityKey = TextUtil.md5(source);
+                input.entityKeySource = source;
+            }
+            return input.entityKey;
         }
 
         /**
-         * 读取当前url的本地实体内容
+         * 读取当前url的本地实体内容，内存未命中时会读取磁盘，不要在主线程调用
          *
          * @return
          */
         public T read() {
-            String key = createKey();
-            String cacheFilePath = new File(DirectoryManager.getDirectory(DirectoryManager.DIR.ENTITY), key).getAbsolutePath();
-            return (T) FileUtils.readEntity(input.aClass, cacheFilePath);
+            return (T) EntityCache.getInstance().read(createKey(), input.aClass);
         }
 
         /**
-         * 异步读取本地实体内容
+         * 异步读取本地实体内容，在后台读取、解析后回调到主线程
          *
          * @return
          */
         public void readAsyn(final Callback<T> callback) {
-            AsyncTask<Object, Object, T> task = new AsyncTask<Object, Object, T>() {
+            EntityCache.getInstance().readAsync(createKey(), (Class<T>) input.aClass, new Callback<T>() {
                 @Override
-                protected T doInBackground(Object... params) {
-                    return (T) read();
-                }
-
-                @Override
-                protected void onPostExecute(T o) {
+                public void callback(T data) {
                     if (null != callback) {
-                        callback.callback(o);
+                        callback.callback(data);
                     }
                 }
-            };
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-            } else {
-                task.execute();
-            }
+            });
         }
 
         /**
-         * 是否有本地缓存实体
+         * 是否有本地缓存实体，内存未命中时会检查磁盘
          *
          * @return
          */
         public boolean exists() {
-            return new File(DirectoryManager.getDirectory(DirectoryManager.DIR.ENTITY), createKey()).exists();
+            return EntityCache.getInstance().exists(createKey());
         }
 
 
         /**
-         * 保存缓存实体到本地文件
+         * 保存缓存实体，调用时就序列化成快照并更新内存，异步写入文件，同一个key连续保存只写最后一次
          *
-         * @param entity
+         * @param entity 为null时删除缓存
          * @param callback
          */
         public void save(final Object entity, final Callback<Boolean> callback) {
-            AsyncTask<Object, Object, Boolean> task = new AsyncTask<Object, Object, Boolean>() {
-                @Override
-                protected Boolean doInBackground(Object... params) {
-                    String entityKey = createKey();
-                    File tmpFile = new File(DirectoryManager.getDirectory(DirectoryManager.DIR.ENTITY), entityKey + ".tmp");
-                    File cacheFile = new File(DirectoryManager.getDirectory(DirectoryManager.DIR.ENTITY), entityKey);
-                    if (entity != null) {
-                        FileUtils.writeEntity(entity, tmpFile.getAbsolutePath());
-                        if (tmpFile.exists()) {
-                            tmpFile.renameTo(cacheFile);
-                        }
-                        FileUtils.delete(tmpFile.getAbsolutePath());
-                    } else {
-                        return FileUtils.delFile(cacheFile);
-                    }
-                    return false;
-                }
+            EntityCache.getInstance().save(createKey(), entity, false, callback);
+        }
 
-                @Override
-                protected void onPostExecute(Boolean o) {
-                    if (null != callback) {
-                        callback.callback(o);
-                    }
-                }
-            };
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-            } else {
-                task.execute();
-            }
+        /**
+         * 保存网络返回时已经序列化好的快照，见{@link HWRequest.EntityListener}
+         *
+         * @param snapshot
+         * @param onlyIfExists 只有已经有缓存时才替换，没有缓存时不保存
+         */
+        void saveSnapshot(byte[] snapshot, boolean onlyIfExists) {
+            EntityCache.getInstance().saveData(createKey(), snapshot, onlyIfExists, null);
         }
     }
 
@@ -0,0 +1,229 @@
+package com.cylee.androidlib.net;
+
+import com.google.jtm.Gson;
+import com.google.jtm.JsonArrayReader;
+import com.google.jtm.JsonElement;
+import com.google.jtm.JsonObject;
+import com.google.jtm.JsonSyntaxException;
+import com.google.jtm.annotations.SerializedName;
+import com.google.jtm.internal.Streams;
+import com.google.jtm.reflect.TypeToken;
+import com.google.jtm.stream.JsonReader;
+import com.google.jtm.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 接口返回的信封结构 {"errno":0,"errstr":"","data":{...}}
+ *
+ * 单次遍历解析，errno/errstr直接读出，data直接通过Gson的TypeAdapter绑定成对象，
+ * 不再先转成String、正则匹配、JSONObject解析再交给Gson
+ */
+public class ResponseEnvelope<T> {
+    /** 是否包含errno字段 */
+    public boolean hasErrNo;
+    public int errNo;
+    public String errStr;
+    /** 是否包含data字段 */
+    public boolean hasData;
+    public T data;
+
+    /**
+     * 是否是errno为0的正常返回
+     */
+    public boolean isSuccess() {
+        return hasErrNo && errNo == 0;
+    }
+
+    /**
+     * 从reader中解析信封，errno为0时将data绑定为type类型的对象
+     *
+     * @param reader 响应内容，调用方负责关闭
+     * @param type data的类型
+     * @param gson 用于绑定data的Gson实例，一般为{@link com.cylee.androidlib.GsonBuilderFactory#createBuilder()}
+     * @throws IOException json格式错误
+     * @throws com.google.jtm.JsonSyntaxException data与type不匹配，或errno不是整数
+     */
+    public static <T> ResponseEnvelope<T> parse(Reader reader, Type type, Gson gson) throws IOException {
+        return parse(new JsonReader(reader), type, gson);
+    }
+
+    /**
+     * 从jsonReader中解析信封，UTF-8的响应可以传入{@link com.google.jtm.stream.Utf8JsonReader}直接解析字节
+     *
+     * @param jsonReader 响应内容，调用方负责关闭
+     * @see #parse(Reader, Type, Gson)
+     */
+    public static <T> ResponseEnvelope<T> parse(JsonReader jsonReader, Type type, Gson gson) throws IOException {
+        return parse(jsonReader, type, gson, null, 0, null);
+    }
+
+    /**
+     * 解析信封，data中名为listField的数组字段逐个元素绑定，读完前firstCount个元素后立即回调listener，
+     * 此时数组剩下的部分还没有解析。data出现在errno之前时无法边解析边回调，只返回完整结果
+     *
+     * @param listField data中列表字段的json名字，为null时与{@link #parse(JsonReader, Type, Gson)}相同
+     * @param firstCount 读到这么多个元素时回调，数组不足这么多个元素时不回调
+     * @param listener 在解析线程回调，参数是前firstCount个元素的拷贝，可以为null
+     */
+    public static <T> ResponseEnvelope<T> parse(JsonReader jsonReader, Type type, Gson gson,
+                                                String listField, int firstCount, ElementsListener listener) throws IOException {
+        ResponseEnvelope<T> envelope = new ResponseEnvelope<T>();
+        jsonReader.setLenient(true);
+        // data在errno之前出现时还不知道是否需要绑定，先读成树，最后再决定
+        JsonElement pendingData = null;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if ("errno".equals(name) || "errNo".equals(name)) {
+                envelope.hasErrNo = true;
+                try {
+                    envelope.errNo = jsonReader.nextInt();
+                } catch (NumberFormatException e) {
+                    // 与原来getInt抛出JSONException一致，按格式错误处理
+                    throw new JsonSyntaxException("errno is not an int", e);
+                }
+            } else if ("errstr".equals(name)) {
+                if (jsonReader.peek() == JsonToken.NULL) {
+                    jsonReader.nextNull();
+                    envelope.errStr = "";
+                } else {
+                    envelope.errStr = jsonReader.nextString();
+                }
+            } else if ("data".equals(name)) {
+                envelope.hasData = true;
+                if (envelope.hasErrNo) {
+                    if (envelope.errNo == 0) {
+                        envelope.data = readData(jsonReader, type, gson, listField, firstCount, listener);
+                    } else {
+                        jsonReader.skipValue();
+                    }
+                } else {
+                    pendingData = Streams.parse(jsonReader);
+                }
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        if (pendingData != null && envelope.isSuccess()) {
+            envelope.data = bindData(pendingData, type, gson);
+        }
+        return envelope;
+    }
+
+    /**
+     * data为数组时按空对象处理，为字符串时把字符串内容当作json解析，与原有的解析逻辑保持一致
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T readData(JsonReader reader, Type type, Gson gson,
+                                  String listField, int firstCount, ElementsListener listener) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_ARRAY:
+                reader.skipValue();
+                return (T) gson.fromJson("{}", type);
+            case STRING:
+                return (T) gson.fromJson(reader.nextString(), type);
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BEGIN_OBJECT:
+                if (listField != null) {
+                    Field field = findListField(TypeToken.get(type).getRawType(), listField);
+                    if (field != null) {
+                        return (T) readDataStreaming(reader, type, gson, field, listField, firstCount, listener);
+                    }
+                }
+                return (T) gson.fromJson(reader, type);
+            default:
+                return (T) gson.fromJson(reader, type);
+        }
+    }
+
+    /**
+     * 列表字段的元素逐个绑定，其他字段先读成树，最后绑定成data对象后再把列表设置进去
+     */
+    @SuppressWarnings("unchecked")
+    private static Object readDataStreaming(JsonReader reader, Type type, Gson gson, Field field, String listField,
+                                            int firstCount, ElementsListener listener) throws IOException {
+        Type elementType = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+        JsonObject others = new JsonObject();
+        List<Object> elements = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (listField.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                elements = new ArrayList<Object>();
+                JsonArrayReader<Object> array =
+                        new JsonArrayReader<Object>(gson, reader, (TypeToken<Object>) TypeToken.get(elementType));
+                while (array.hasNext()) {
+                    elements.add(array.next());
+                    if (elements.size() == firstCount && listener != null) {
+                        listener.onElements(new ArrayList<Object>(elements));
+                    }
+                }
+            } else {
+                others.add(name, Streams.parse(reader));
+            }
+        }
+        reader.endObject();
+        Object data = gson.fromJson(others, type);
+        if (elements != null && data != null) {
+            try {
+                field.set(data, elements);
+            } catch (IllegalAccessException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * 查找json名字为listField、类型可以赋值为ArrayList的泛型列表字段，找不到时返回null
+     */
+    private static Field findListField(Class<?> raw, String listField) {
+        for (Class<?> c = raw; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                String name = serializedName != null ? serializedName.value() : field.getName();
+                if (listField.equals(name)) {
+                    if (!field.getType().isAssignableFrom(ArrayList.class)
+                            || !(field.getGenericType() instanceof ParameterizedType)) {
+                        return null;
+                    }
+                    field.setAccessible(true);
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 列表字段前几个元素的回调，每次解析最多回调一次。请求重试时会重新解析，
+     * 已经回调过的请求应传入null，见{@link com.android.volley.Request#hasHadElementsDelivered()}
+     */
+    public interface ElementsListener {
+        void onElements(List<?> elements);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T bindData(JsonElement element, Type type, Gson gson) {
+        if (element.isJsonArray()) {
+            return (T) gson.fromJson("{}", type);
+        }
+        if (element.isJsonNull()) {
+            return null;
+        }
+        if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+            return (T) gson.fromJson(element.getAsString(), type);
+        }
+        return (T) gson.fromJson(element, type);
+    }
+}
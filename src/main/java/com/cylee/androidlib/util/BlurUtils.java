@@ -1,8 +1,34 @@
 package com.cylee.androidlib.util;
 
 import android.graphics.Bitmap;
-
+import android.support.v4.util.LruCache;
+
+import java.lang.ref.SoftReference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Stack blur，横向、纵向两遍分别按行、按列切成条带，在一个小线程池上并行处理，调用线程自己也处理一个条带。
+ *
+ * 中间结果、像素数组和stack按线程复用，用SoftReference持有，内存紧张时可以被回收；
+ * 除法查找表dv按半径缓存。{@link #blur(int[], int, int, int)}直接处理ARGB数组，不依赖Bitmap
+ */
 public class BlurUtils {
+  private static final int THREADS = Runtime.getRuntime().availableProcessors();
+  /** 每个条带至少的行数或列数，太小的图切条带得不偿失 */
+  private static final int MIN_STRIPE = 64;
+  /** 缓存的dv表个数，半径25时一张表约170KB */
+  private static final int MAX_DIV_TABLES = 4;
+
+  private static final LruCache<Integer, int[]> DIV_TABLES = new LruCache<Integer, int[]>(MAX_DIV_TABLES);
+  private static final ThreadLocal<SoftReference<int[]>> PIXELS = new ThreadLocal<SoftReference<int[]>>();
+  private static final ThreadLocal<SoftReference<int[]>> RGB = new ThreadLocal<SoftReference<int[]>>();
+  private static final ThreadLocal<SoftReference<int[]>> STACK = new ThreadLocal<SoftReference<int[]>>();
+
+  private static ExecutorService sExecutor;
+
   public static Bitmap doBlur(Bitmap sentBitmap, int radius, boolean canReuseInBitmap) {
     Bitmap bitmap;
     if (canReuseInBitmap) {
@@ -18,137 +44,219 @@ public class BlurUtils {
     int w = bitmap.getWidth();
     int h = bitmap.getHeight();
 
-    int[] pix = new int[w * h];
+    int[] pix = scratch(PIXELS, w * h);
     bitmap.getPixels(pix, 0, w, 0, 0, w, h);
+    blur(pix, w, h, radius);
+    bitmap.setPixels(pix, 0, w, 0, 0, w, h);
 
-    int wm = w - 1;
-    int hm = h - 1;
-    int wh = w * h;
-    int div = radius + radius + 1;
+    return (bitmap);
+  }
 
-    int r[] = new int[wh];
-    int g[] = new int[wh];
-    int b[] = new int[wh];
-    int rsum, gsum, bsum, x, y, i, p, yp, yi, yw;
-    int vmin[] = new int[Math.max(w, h)];
+  /**
+   * 原地模糊w*h的ARGB像素，保留alpha通道，结果与原来单线程的实现完全一致
+   *
+   * @param pix 行优先的像素，长度至少为w*h
+   */
+  public static void blur(int[] pix, int w, int h, int radius) {
+    blur(pix, w, h, radius, stripes(h), stripes(w));
+  }
 
-    int divsum = (div + 1) >> 1;
-    divsum *= divsum;
-    int dv[] = new int[256 * divsum];
-    for (i = 0; i < 256 * divsum; i++) {
-      dv[i] = (i / divsum);
+  /**
+   * 横向按rowStripes个条带、纵向按columnStripes个条带模糊，条带数只影响速度不影响结果
+   */
+  static void blur(int[] pix, int w, int h, int radius, int rowStripes, int columnStripes) {
+    if (radius < 1) {
+      throw new IllegalArgumentException("radius < 1: " + radius);
     }
+    if (w < 0 || h < 0 || pix.length < w * h) {
+      throw new IllegalArgumentException("pixels do not fit " + w + "x" + h);
+    }
+    if (w == 0 || h == 0) {
+      return;
+    }
+    int[] dv = getDivTable(radius);
+    // 横向结果按0x00RRGGBB打包，一个数组代替原来的r、g、b三个数组
+    int[] rgb = scratch(RGB, w * h);
+    runPass(pix, rgb, w, h, radius, dv, false, rowStripes);
+    runPass(pix, rgb, w, h, radius, dv, true, columnStripes);
+  }
 
-    yw = yi = 0;
+  /**
+   * size行或列切成的条带数
+   */
+  private static int stripes(int size) {
+    return Math.min(THREADS, size / MIN_STRIPE);
+  }
+
+  private static void runPass(final int[] pix, final int[] rgb, final int w, final int h, final int radius,
+      final int[] dv, final boolean vertical, int stripes) {
+    int size = vertical ? w : h;
+    if (stripes <= 1) {
+      blurStripe(pix, rgb, w, h, radius, dv, vertical, 0, size);
+      return;
+    }
+
+    final CountDownLatch latch = new CountDownLatch(stripes - 1);
+    final RuntimeException[] error = new RuntimeException[1];
+    ExecutorService executor = getExecutor();
+    for (int i = 1; i < stripes; i++) {
+      final int start = size * i / stripes;
+      final int end = size * (i + 1) / stripes;
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            blurStripe(pix, rgb, w, h, radius, dv, vertical, start, end);
+          } catch (RuntimeException e) {
+            synchronized (error) {
+              error[0] = e;
+            }
+          } finally {
+            latch.countDown();
+          }
+        }
+      });
+    }
+    blurStripe(pix, rgb, w, h, radius, dv, vertical, 0, size / stripes);
+
+    // 条带还在使用调用者的缓冲区，被中断也必须等它们结束
+    boolean interrupted = false;
+    while (true) {
+      try {
+        latch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (error) {
+      if (error[0] != null) {
+        throw error[0];
+      }
+    }
+  }
+
+  private static void blurStripe(int[] pix, int[] rgb, int w, int h, int radius, int[] dv, boolean vertical,
+      int start, int end) {
+    int[] stack = scratch(STACK, radius + radius + 1);
+    if (vertical) {
+      blurColumns(pix, rgb, w, h, radius, dv, stack, start, end);
+    } else {
+      blurRows(pix, rgb, w, radius, dv, stack, start, end);
+    }
+  }
 
-    int[][] stack = new int[div][3];
-    int stackpointer;
-    int stackstart;
-    int[] sir;
-    int rbs;
+  /**
+   * 横向模糊[y0, y1)行，从pix读，写入rgb
+   */
+  private static void blurRows(int[] pix, int[] rgb, int w, int radius, int[] dv, int[] stack, int y0, int y1) {
+    int wm = w - 1;
+    int div = radius + radius + 1;
     int r1 = radius + 1;
+    int rsum, gsum, bsum, x, y, i, p, yi, yw;
+    int rbs, stackpointer, stackstart, sir;
     int routsum, goutsum, boutsum;
     int rinsum, ginsum, binsum;
 
-    for (y = 0; y < h; y++) {
+    for (y = y0; y < y1; y++) {
+      yi = yw = y * w;
       rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
       for (i = -radius; i <= radius; i++) {
-        p = pix[yi + Math.min(wm, Math.max(i, 0))];
-        sir = stack[i + radius];
-        sir[0] = (p & 0xff0000) >> 16;
-        sir[1] = (p & 0x00ff00) >> 8;
-        sir[2] = (p & 0x0000ff);
+        p = pix[yi + Math.min(wm, Math.max(i, 0))] & 0xffffff;
+        stack[i + radius] = p;
         rbs = r1 - Math.abs(i);
-        rsum += sir[0] * rbs;
-        gsum += sir[1] * rbs;
-        bsum += sir[2] * rbs;
+        rsum += (p >> 16) * rbs;
+        gsum += ((p >> 8) & 0xff) * rbs;
+        bsum += (p & 0xff) * rbs;
         if (i > 0) {
-          rinsum += sir[0];
-          ginsum += sir[1];
-          binsum += sir[2];
+          rinsum += p >> 16;
+          ginsum += (p >> 8) & 0xff;
+          binsum += p & 0xff;
         } else {
-          routsum += sir[0];
-          goutsum += sir[1];
-          boutsum += sir[2];
+          routsum += p >> 16;
+          goutsum += (p >> 8) & 0xff;
+          boutsum += p & 0xff;
         }
       }
       stackpointer = radius;
 
       for (x = 0; x < w; x++) {
-
-        r[yi] = dv[rsum];
-        g[yi] = dv[gsum];
-        b[yi] = dv[bsum];
+        rgb[yi] = (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
 
         rsum -= routsum;
         gsum -= goutsum;
         bsum -= boutsum;
 
-        stackstart = stackpointer - radius + div;
-        sir = stack[stackstart % div];
-
-        routsum -= sir[0];
-        goutsum -= sir[1];
-        boutsum -= sir[2];
+        stackstart = (stackpointer - radius + div) % div;
+        sir = stack[stackstart];
 
-        if (y == 0) {
-          vmin[x] = Math.min(x + radius + 1, wm);
-        }
-        p = pix[yw + vmin[x]];
+        routsum -= sir >> 16;
+        goutsum -= (sir >> 8) & 0xff;
+        boutsum -= sir & 0xff;
 
-        sir[0] = (p & 0xff0000) >> 16;
-        sir[1] = (p & 0x00ff00) >> 8;
-        sir[2] = (p & 0x0000ff);
+        p = pix[yw + Math.min(x + r1, wm)] & 0xffffff;
+        stack[stackstart] = p;
 
-        rinsum += sir[0];
-        ginsum += sir[1];
-        binsum += sir[2];
+        rinsum += p >> 16;
+        ginsum += (p >> 8) & 0xff;
+        binsum += p & 0xff;
 
         rsum += rinsum;
         gsum += ginsum;
         bsum += binsum;
 
         stackpointer = (stackpointer + 1) % div;
-        sir = stack[(stackpointer) % div];
+        sir = stack[stackpointer];
 
-        routsum += sir[0];
-        goutsum += sir[1];
-        boutsum += sir[2];
+        routsum += sir >> 16;
+        goutsum += (sir >> 8) & 0xff;
+        boutsum += sir & 0xff;
 
-        rinsum -= sir[0];
-        ginsum -= sir[1];
-        binsum -= sir[2];
+        rinsum -= sir >> 16;
+        ginsum -= (sir >> 8) & 0xff;
+        binsum -= sir & 0xff;
 
         yi++;
       }
-      yw += w;
     }
-    for (x = 0; x < w; x++) {
+  }
+
+  /**
+   * 纵向模糊[x0, x1)列，从rgb读，写回pix，保留pix原来的alpha
+   */
+  private static void blurColumns(int[] pix, int[] rgb, int w, int h, int radius, int[] dv, int[] stack,
+      int x0, int x1) {
+    int hm = h - 1;
+    int div = radius + radius + 1;
+    int r1 = radius + 1;
+    int rsum, gsum, bsum, x, y, i, p, yp, yi;
+    int rbs, stackpointer, stackstart, sir;
+    int routsum, goutsum, boutsum;
+    int rinsum, ginsum, binsum;
+
+    for (x = x0; x < x1; x++) {
       rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
       yp = -radius * w;
       for (i = -radius; i <= radius; i++) {
-        yi = Math.max(0, yp) + x;
-
-        sir = stack[i + radius];
-
-        sir[0] = r[yi];
-        sir[1] = g[yi];
-        sir[2] = b[yi];
+        p = rgb[Math.max(0, yp) + x];
+        stack[i + radius] = p;
 
         rbs = r1 - Math.abs(i);
-
-        rsum += r[yi] * rbs;
-        gsum += g[yi] * rbs;
-        bsum += b[yi] * rbs;
+        rsum += (p >> 16) * rbs;
+        gsum += ((p >> 8) & 0xff) * rbs;
+        bsum += (p & 0xff) * rbs;
 
         if (i > 0) {
-          rinsum += sir[0];
-          ginsum += sir[1];
-          binsum += sir[2];
+          rinsum += p >> 16;
+          ginsum += (p >> 8) & 0xff;
+          binsum += p & 0xff;
         } else {
-          routsum += sir[0];
-          goutsum += sir[1];
-          boutsum += sir[2];
+          routsum += p >> 16;
+          goutsum += (p >> 8) & 0xff;
+          boutsum += p & 0xff;
         }
 
         if (i < hm) {
@@ -165,25 +273,19 @@ public class BlurUtils {
         gsum -= goutsum;
         bsum -= boutsum;
 
-        stackstart = stackpointer - radius + div;
-        sir = stack[stackstart % div];
-
-        routsum -= sir[0];
-        goutsum -= sir[1];
-        boutsum -= sir[2];
+        stackstart = (stackpointer - radius + div) % div;
+        sir = stack[stackstart];
 
-        if (x == 0) {
-          vmin[y] = Math.min(y + r1, hm) * w;
-        }
-        p = x + vmin[y];
+        routsum -= sir >> 16;
+        goutsum -= (sir >> 8) & 0xff;
+        boutsum -= sir & 0xff;
 
-        sir[0] = r[p];
-        sir[1] = g[p];
-        sir[2] = b[p];
+        p = rgb[x + Math.min(y + r1, hm) * w];
+        stack[stackstart] = p;
 
-        rinsum += sir[0];
-        ginsum += sir[1];
-        binsum += sir[2];
+        rinsum += p >> 16;
+        ginsum += (p >> 8) & 0xff;
+        binsum += p & 0xff;
 
         rsum += rinsum;
         gsum += ginsum;
@@ -192,20 +294,61 @@ public class BlurUtils {
         stackpointer = (stackpointer + 1) % div;
         sir = stack[stackpointer];
 
-        routsum += sir[0];
-        goutsum += sir[1];
-        boutsum += sir[2];
+        routsum += sir >> 16;
+        goutsum += (sir >> 8) & 0xff;
+        boutsum += sir & 0xff;
 
-        rinsum -= sir[0];
-        ginsum -= sir[1];
-        binsum -= sir[2];
+        rinsum -= sir >> 16;
+        ginsum -= (sir >> 8) & 0xff;
+        binsum -= sir & 0xff;
 
         yi += w;
       }
     }
+  }
 
-    bitmap.setPixels(pix, 0, w, 0, 0, w, h);
+  /**
+   * dv[i] = i / divsum，避免每个像素做除法
+   */
+  private static int[] getDivTable(int radius) {
+    int[] dv = DIV_TABLES.get(radius);
+    if (dv == null) {
+      int divsum = (radius + 1) * (radius + 1);
+      dv = new int[256 * divsum];
+      for (int i = 0; i < dv.length; i++) {
+        dv[i] = (i / divsum);
+      }
+      DIV_TABLES.put(radius, dv);
+    }
+    return dv;
+  }
 
-    return (bitmap);
+  /**
+   * 当前线程的缓冲区，长度不够或已经被回收时重新分配，内容是旧数据
+   */
+  private static int[] scratch(ThreadLocal<SoftReference<int[]>> local, int size) {
+    SoftReference<int[]> ref = local.get();
+    int[] buffer = ref != null ? ref.get() : null;
+    if (buffer == null || buffer.length < size) {
+      buffer = new int[size];
+      local.set(new SoftReference<int[]>(buffer));
+    }
+    return buffer;
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if (sExecutor == null) {
+      sExecutor = Executors.newFixedThreadPool(Math.max(1, THREADS - 1), new ThreadFactory() {
+        private int count;
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "blur-" + count++);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return sExecutor;
   }
 }
@@ -11,13 +11,15 @@ import android.provider.DocumentsContract;
 import android.provider.MediaStore;
 import android.text.TextUtils;
 
-import com.google.jtm.Gson;
+import com.cylee.androidlib.GsonBuilderFactory;
 
 import org.json.JSONObject;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.DataOutputStream;
@@ -29,10 +31,13 @@ import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
@@ -54,6 +59,7 @@ import java.util.zip.ZipOutputStream;
 public class FileUtils {
 
     private static final int BUFFER_SIZE = 8 * 1024; // 8 KB
+    private static final String ENTITY_CHARSET = "UTF-8";
     public static final String APP_FOLDER_NAME = "Eyespage";
     public static final String DOWNLOAD_FOLDER_NAME = "Download";
     public static final String CACHE_FOLDER_NAME = "Cache";
@@ -563,37 +569,153 @@ public class FileUtils {
         return false;
     }
 
+    /**
+     * 把实体序列化为json写入文件，使用共享的{@link GsonBuilderFactory#createEntityGson()}，复用已经生成的TypeAdapter，枚举按名字保存。
+     * 先写入临时文件再重命名，写入中途失败不会破坏原来的文件
+     */
     public static boolean writeEntity(Object entity, String filePath) {
-        Gson gson = new Gson();
+        File file = new File(filePath);
+        File tmpFile = new File(filePath + ".tmp");
+        Writer writer = null;
         try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), ENTITY_CHARSET));
             if (entity instanceof String) {
-                return FileUtils.writeFile(filePath, (String) entity);
+                writer.write((String) entity);
             } else {
-                String json = gson.toJson(entity);
-                return FileUtils.writeFile(filePath, json);
+                GsonBuilderFactory.createEntityGson().toJson(entity, entity.getClass(), writer);
+            }
+            writer.close();
+            writer = null;
+            return tmpFile.renameTo(file);
+        } catch (Exception e) {
+            return false;
+        } finally {
+            IoUtils.closeQuietly(writer);
+            if (tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * 把实体序列化为和{@link #writeEntity(Object, String)}相同格式的json字节，String原样保存
+     *
+     * @return 序列化失败时返回null
+     */
+    public static byte[] serializeEntity(Object entity) {
+        try {
+            if (entity instanceof String) {
+                return ((String) entity).getBytes(ENTITY_CHARSET);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+            Writer writer = new OutputStreamWriter(bytes, ENTITY_CHARSET);
+            GsonBuilderFactory.createEntityGson().toJson(entity, entity.getClass(), writer);
+            writer.close();
+            return bytes.toByteArray();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 从{@link #serializeEntity(Object)}的结果解析出一个新的实体
+     *
+     * @return 解析失败时返回null
+     */
+    public static <T> T parseEntity(Class<T> clazz, byte[] data) {
+        try {
+            if (clazz == String.class) {
+                return (T) new String(data, ENTITY_CHARSET);
             }
+            Reader reader = new InputStreamReader(new ByteArrayInputStream(data), ENTITY_CHARSET);
+            return GsonBuilderFactory.createEntityGson().fromJson(reader, clazz);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 把已经序列化好的实体写入文件，和{@link #writeEntity(Object, String)}一样先写临时文件再重命名
+     */
+    public static boolean writeEntityData(byte[] data, String filePath) {
+        File file = new File(filePath);
+        File tmpFile = new File(filePath + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tmpFile);
+            out.write(data);
+            out.close();
+            out = null;
+            return tmpFile.renameTo(file);
         } catch (Exception e) {
             return false;
+        } finally {
+            IoUtils.closeQuietly(out);
+            if (tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * 读取{@link #writeEntityData(byte[], String)}或{@link #writeEntity(Object, String)}写入的文件
+     *
+     * @return 文件不存在或读取失败时返回null
+     */
+    public static byte[] readEntityData(String filePath) {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int count = in.read(data, offset, data.length - offset);
+                if (count == -1) {
+                    return Arrays.copyOf(data, offset);
+                }
+                offset += count;
+            }
+            return data;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            IoUtils.closeQuietly(in);
         }
     }
 
+    /**
+     * 从文件中流式解析实体，不再先把整个文件读成byte数组和String
+     */
     public static <T> T readEntity(Class<T> clazz, String filePath) {
         File file = new File(filePath);
-        if (file.exists()) {
+        if (!file.exists()) {
+            return null;
+        }
+        Reader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENTITY_CHARSET));
             if (clazz == String.class) {
-                return (T) FileUtils.readFile(file);
-            } else {
-                Gson gson = new Gson();
-                try {
-                    String json = new String(FileUtils.readFile(file));
-                    return gson.fromJson(json, clazz);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    return null;
+                StringBuilder builder = new StringBuilder((int) file.length());
+                char[] buffer = new char[4096];
+                int count;
+                while ((count = reader.read(buffer)) != -1) {
+                    builder.append(buffer, 0, count);
                 }
+                return (T) builder.toString();
             }
-        } else {
+            return GsonBuilderFactory.createEntityGson().fromJson(reader, clazz);
+        } catch (Exception e) {
+            e.printStackTrace();
             return null;
+        } finally {
+            IoUtils.closeQuietly(reader);
         }
     }
 
@@ -1,11 +1,5 @@
 package com.cylee.androidlib.util;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.Date;
-
 /**
  * ClassName:Log
  *
@@ -51,7 +45,6 @@ public class Log {
 
   public static final String BIGLOG_FILE = "sdcard/L/log/api-log-%s.txt";
   private static final String BIGLOG_TAG = "BIGLOG";
-  private static boolean appendLogFile = false;
 
   public Log() {
   }
@@ -288,63 +281,42 @@ public class Log {
     return android.util.Log.println(priority, tag, msg);
   }
 
+  /**
+   * 追加到当天的{@link #BIGLOG_FILE}，文件写入在{@link LogSink}的后台线程完成，不阻塞调用线程
+   */
   public static void BIGLOG(String text) {
+    BIGLOG(INFO, text);
+  }
+
+  /**
+   * @param priority 不低于WARN时立即写入文件，否则最多延迟一秒
+   */
+  public static void BIGLOG(int priority, String text) {
     if (LOG_LEVEL<OFF) {
-      String filename = String.format(BIGLOG_FILE, TimeUtils.format("MM-dd", new Date()));
-      File logFile = new File(filename);
-      if (!logFile.getParentFile().exists()) {
-        logFile.getParentFile().mkdirs();
-      }
-      String time = TimeUtils.format("MM-dd:HH:mm:ss", new Date());
-      if (!logFile.exists()) {
-        try {
-          d(BIGLOG_TAG, "log file not exist");
-          logFile.createNewFile();
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
-      }
-      appendLogFile = true;
-      try {
-        BufferedWriter buf = new BufferedWriter(new FileWriter(logFile, appendLogFile));
-        buf.append(time + "=>" + text);
-        buf.newLine();
-        buf.close();
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
+      LogSink.getInstance().enqueue(null, text, true, priority);
       d(BIGLOG_TAG, text);
     }
   }
 
+  /**
+   * 写入指定文件，文件写入在{@link LogSink}的后台线程完成，不阻塞调用线程
+   *
+   * @param append 为false时先清空文件
+   */
   public static void log2file(String filename, String msg, boolean append) {
     if (LOG_LEVEL<OFF) {
-      File logFile = new File(filename);
-      if (!logFile.getParentFile().exists()) {
-        logFile.getParentFile().mkdirs();
-      }
-      String time = TimeUtils.format("MM-dd:HH:mm:ss", new Date());
-      if (!logFile.exists()) {
-        try {
-          d(BIGLOG_TAG, "log file not exist");
-          logFile.createNewFile();
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
-      }
-      appendLogFile = true;
-      try {
-        BufferedWriter buf = new BufferedWriter(new FileWriter(logFile, appendLogFile));
-        buf.append(time + "=>" + msg);
-        buf.newLine();
-        buf.close();
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
+      LogSink.getInstance().enqueue(filename, msg, append, INFO);
       d(BIGLOG_TAG, msg);
     }
   }
 
+  /**
+   * 因为队列已满而没有写入文件的日志条数
+   */
+  public static long getDroppedFileLogCount() {
+    return LogSink.getInstance().getDroppedCount();
+  }
+
   private static String defaultTag() {
     StackTraceElement caller = Thread.currentThread().getStackTrace()[4];
     String tag = "%s.%s(L:%d)";
@@ -0,0 +1,309 @@
+package com.cylee.androidlib.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 日志文件的后台写入，{@link Log#BIGLOG(String)}和{@link Log#log2file(String, String, boolean)}使用。
+ *
+ * 调用线程只把日志放进一个无锁的环形队列，不做任何磁盘IO，队列满时丢弃并计数；
+ * 单独的写线程每{@link #FLUSH_INTERVAL_MS}毫秒把队列中的日志批量追加到文件，
+ * 遇到WARN及以上级别的日志或队列过半时立即写入。单个文件超过{@link #MAX_FILE_SIZE}时
+ * 重命名为".1"后缀的备份，只保留一个备份
+ */
+public final class LogSink {
+  /** 队列容量，必须是2的幂 */
+  private static final int CAPACITY = 1024;
+  private static final long FLUSH_INTERVAL_MS = 1000;
+  private static final long MAX_FILE_SIZE = 4 * 1024 * 1024;
+  private static final int BUFFER_SIZE = 32 * 1024;
+  /** 不低于这个级别的日志立即写入 */
+  private static final int URGENT_LEVEL = Log.WARN;
+
+  private static final LogSink INSTANCE = new LogSink();
+
+  private final RingBuffer mQueue = new RingBuffer(CAPACITY);
+  private final AtomicLong mDropped = new AtomicLong();
+  private final AtomicLong mFailed = new AtomicLong();
+  private final AtomicLong mWritten = new AtomicLong();
+  private final Thread mWriter;
+
+  // 以下只在写线程访问
+  private final SimpleDateFormat mDayFormat = new SimpleDateFormat("MM-dd", Locale.getDefault());
+  private final SimpleDateFormat mTimeFormat = new SimpleDateFormat("MM-dd:HH:mm:ss", Locale.getDefault());
+  private final Date mDate = new Date();
+  private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private int mBufferedLines;
+  private String mPath;
+  private FileChannel mChannel;
+  private long mFileSize;
+
+  private static class Entry {
+    /** 为null时写入当天的BIGLOG文件 */
+    final String file;
+    final String text;
+    final long time;
+    final boolean append;
+
+    Entry(String file, String text, long time, boolean append) {
+      this.file = file;
+      this.text = text;
+      this.time = time;
+      this.append = append;
+    }
+  }
+
+  public static LogSink getInstance() {
+    return INSTANCE;
+  }
+
+  private LogSink() {
+    mWriter = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        loop();
+      }
+    }, "log-sink");
+    mWriter.setDaemon(true);
+    mWriter.setPriority(Thread.MIN_PRIORITY);
+    mWriter.start();
+  }
+
+  /**
+   * 追加一行日志，不会阻塞
+   *
+   * @param file 日志文件路径，为null时写入{@link Log#BIGLOG_FILE}对应的当天文件
+   * @param append 为false时先清空文件
+   * @param level 日志级别，不低于WARN时立即写入
+   * @return 队列已满被丢弃时返回false
+   */
+  public boolean enqueue(String file, String text, boolean append, int level) {
+    if (!mQueue.offer(new Entry(file, text, System.currentTimeMillis(), append))) {
+      mDropped.incrementAndGet();
+      return false;
+    }
+    if (level >= URGENT_LEVEL || mQueue.size() >= CAPACITY / 2) {
+      LockSupport.unpark(mWriter);
+    }
+    return true;
+  }
+
+  /**
+   * 唤醒写线程立即写入队列中的日志，不等待写入完成
+   */
+  public void flush() {
+    LockSupport.unpark(mWriter);
+  }
+
+  /**
+   * 因为队列已满被丢弃的日志条数
+   */
+  public long getDroppedCount() {
+    return mDropped.get();
+  }
+
+  /**
+   * 因为IO错误没有写入文件的日志条数
+   */
+  public long getFailedCount() {
+    return mFailed.get();
+  }
+
+  /**
+   * 已经写入文件的日志条数
+   */
+  public long getWrittenCount() {
+    return mWritten.get();
+  }
+
+  private void loop() {
+    while (true) {
+      try {
+        drain();
+      } catch (Throwable e) {
+        // 写线程不能退出，否则后面的日志都会堆在队列里被丢弃
+        e.printStackTrace();
+      }
+      if (mQueue.size() == 0) {
+        LockSupport.parkNanos(this, FLUSH_INTERVAL_MS * 1000 * 1000);
+      }
+    }
+  }
+
+  private void drain() {
+    Entry entry;
+    while ((entry = mQueue.poll()) != null) {
+      mDate.setTime(entry.time);
+      String path = entry.file != null ? entry.file : String.format(Log.BIGLOG_FILE, mDayFormat.format(mDate));
+      byte[] line = toBytes(mTimeFormat.format(mDate) + "=>" + entry.text + "\n");
+      if (!path.equals(mPath) || !entry.append) {
+        writeBuffer();
+        open(path, entry.append);
+      } else if (mFileSize + mBuffer.position() + line.length > MAX_FILE_SIZE) {
+        writeBuffer();
+        rotate();
+      }
+      if (mChannel == null) {
+        mFailed.incrementAndGet();
+        continue;
+      }
+      if (line.length > mBuffer.remaining()) {
+        writeBuffer();
+      }
+      if (line.length > mBuffer.remaining()) {
+        write(ByteBuffer.wrap(line), 1);
+      } else {
+        mBuffer.put(line);
+        mBufferedLines++;
+      }
+    }
+    writeBuffer();
+  }
+
+  private void open(String path, boolean append) {
+    close();
+    mPath = path;
+    File file = new File(path);
+    File parent = file.getParentFile();
+    if (parent != null && !parent.exists()) {
+      parent.mkdirs();
+    }
+    try {
+      mChannel = new FileOutputStream(file, append).getChannel();
+      mFileSize = mChannel.size();
+    } catch (IOException e) {
+      e.printStackTrace();
+      mChannel = null;
+    }
+  }
+
+  private void rotate() {
+    String path = mPath;
+    close();
+    File backup = new File(path + ".1");
+    backup.delete();
+    new File(path).renameTo(backup);
+    open(path, true);
+  }
+
+  private void close() {
+    if (mChannel != null) {
+      try {
+        mChannel.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      mChannel = null;
+    }
+    mPath = null;
+    mFileSize = 0;
+  }
+
+  private void writeBuffer() {
+    if (mBuffer.position() == 0) {
+      return;
+    }
+    mBuffer.flip();
+    write(mBuffer, mBufferedLines);
+    mBuffer.clear();
+    mBufferedLines = 0;
+  }
+
+  private void write(ByteBuffer buffer, int lines) {
+    if (mChannel == null) {
+      mFailed.addAndGet(lines);
+      return;
+    }
+    try {
+      int length = buffer.remaining();
+      while (buffer.hasRemaining()) {
+        mChannel.write(buffer);
+      }
+      mFileSize += length;
+      mWritten.addAndGet(lines);
+    } catch (IOException e) {
+      e.printStackTrace();
+      mFailed.addAndGet(lines);
+      // 下一条日志重新打开文件
+      close();
+    }
+  }
+
+  private static byte[] toBytes(String line) {
+    try {
+      return line.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * 有界的多生产者单消费者环形队列，每个槽位有一个序号标记是否可写、可读，生产者之间只竞争一次CAS
+   */
+  private static final class RingBuffer {
+    private final int mMask;
+    private final AtomicReferenceArray<Entry> mSlots;
+    private final AtomicLongArray mSequences;
+    private final AtomicLong mTail = new AtomicLong();
+    /** 只有消费者写入 */
+    private final AtomicLong mHead = new AtomicLong();
+
+    RingBuffer(int capacity) {
+      mMask = capacity - 1;
+      mSlots = new AtomicReferenceArray<Entry>(capacity);
+      mSequences = new AtomicLongArray(capacity);
+      for (int i = 0; i < capacity; i++) {
+        mSequences.set(i, i);
+      }
+    }
+
+    boolean offer(Entry entry) {
+      long pos = mTail.get();
+      while (true) {
+        int index = (int) (pos & mMask);
+        long diff = mSequences.get(index) - pos;
+        if (diff == 0) {
+          if (mTail.compareAndSet(pos, pos + 1)) {
+            mSlots.set(index, entry);
+            mSequences.set(index, pos + 1);
+            return true;
+          }
+          pos = mTail.get();
+        } else if (diff < 0) {
+          // 槽位还没有被消费，队列已满
+          return false;
+        } else {
+          pos = mTail.get();
+        }
+      }
+    }
+
+    Entry poll() {
+      long head = mHead.get();
+      int index = (int) (head & mMask);
+      if (mSequences.get(index) != head + 1) {
+        return null;
+      }
+      Entry entry = mSlots.get(index);
+      mSlots.set(index, null);
+      mSequences.set(index, head + mMask + 1);
+      mHead.lazySet(head + 1);
+      return entry;
+    }
+
+    int size() {
+      return (int) Math.max(0, mTail.get() - mHead.get());
+    }
+  }
+}
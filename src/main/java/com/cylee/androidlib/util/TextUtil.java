@@ -5,8 +5,10 @@ import android.view.View;
 import android.widget.TextView;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
@@ -176,6 +178,33 @@ public abstract class TextUtil {
         return buf.toString();
     }
 
+    /**
+     * 边读边过滤emoji 或者 其他非文字类型的字符，效果同{@link #filterEmoji(String)}
+     *
+     * @param source
+     * @return
+     */
+    public static Reader filterEmoji(Reader source) {
+        return new FilterReader(source) {
+            @Override
+            public int read() throws IOException {
+                int c = super.read();
+                return c == -1 || isNotEmojiCharacter((char) c) ? c : '□';
+            }
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                int count = super.read(cbuf, off, len);
+                for (int i = off; i < off + count; i++) {
+                    if (!isNotEmojiCharacter(cbuf[i])) {
+                        cbuf[i] = '□';
+                    }
+                }
+                return count;
+            }
+        };
+    }
+
     public static String twoBitNumberToChinese(int number) {
         final String[] chineseNum = new String[]{"十", "一", "二", "三", "四", "五", "六", "七", "八", "九"};
         if (number == 10) {
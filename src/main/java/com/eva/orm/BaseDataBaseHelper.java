@@ -9,22 +9,31 @@ import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 import android.util.Log;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by cylee on 15/9/1.
  */
 abstract public class BaseDataBaseHelper extends SQLiteOpenHelper {
   static final String TAG = BaseDataBaseHelper.class.getSimpleName();
+  /** 批量插入时默认每次提交的行数 */
+  public static final int DEFAULT_BATCH_CHUNK_SIZE = 500;
   protected List<Class<? extends BaseTable>> mTableClasses;
+  private final Set<Class<?>> mTableClassSet;
 
   public BaseDataBaseHelper(Context context, String dbName, int version) {
     super(context, dbName, new InnerCursorFactory(), version);
     mTableClasses = getTableClasses();
+    mTableClassSet = new HashSet<Class<?>>(mTableClasses);
   }
 
   public abstract List<Class<? extends BaseTable>> getTableClasses();
@@ -97,43 +106,89 @@ abstract public class BaseDataBaseHelper extends SQLiteOpenHelper {
 
   public <T extends BaseTable> void save(List<T> objects) {
     if (objects != null && objects.size() > 0) {
-      long current = System.currentTimeMillis();
-      SQLiteDatabase db = getWritableDatabase();
-      try {
+      // 保持原来的语义，所有对象在同一个事务里提交
+      saveBatch(objects, objects.size());
+    }
+  }
+
+  /**
+   * 批量插入，每个表只编译一次插入语句，按字段位置绑定参数，每chunkSize行提交一次事务
+   *
+   * @param objects 要插入的对象
+   * @param chunkSize 每个事务提交的行数，出错时只回滚当前这一批，之前的已经提交
+   * @return 每个对象对应的行id，与objects的顺序一致
+   */
+  public <T extends BaseTable> long[] saveBatch(List<T> objects, int chunkSize) {
+    if (objects == null || objects.isEmpty()) {
+      return new long[0];
+    }
+    if (chunkSize <= 0) {
+      chunkSize = DEFAULT_BATCH_CHUNK_SIZE;
+    }
+    long current = System.currentTimeMillis();
+    int size = objects.size();
+    long[] ids = new long[size];
+    SQLiteDatabase db = getWritableDatabase();
+    Map<Class<?>, SQLiteStatement> statements = new HashMap<Class<?>, SQLiteStatement>(4);
+    Class<?> lastClass = null;
+    TableMapper<T> mapper = null;
+    SQLiteStatement statement = null;
+    try {
+      for (int start = 0; start < size; start += chunkSize) {
+        int end = Math.min(start + chunkSize, size);
         db.beginTransaction();
-        for (T t : objects) {
-          save(t);
+        try {
+          for (int i = start; i < end; i++) {
+            T object = objects.get(i);
+            Class iClass = object.getClass();
+            if (iClass != lastClass) {
+              checkTable(iClass);
+              mapper = TableMapper.get((Class<T>) iClass);
+              statement = statements.get(iClass);
+              if (statement == null) {
+                statement = db.compileStatement(mapper.insertSql());
+                statements.put(iClass, statement);
+              }
+              lastClass = iClass;
+            }
+            mapper.bind(statement, object);
+            long id = statement.executeInsert();
+            object._setDataBaseId(id);
+            ids[i] = id;
+          }
+          db.setTransactionSuccessful();
+        } finally {
+          db.endTransaction();
         }
-        db.setTransactionSuccessful();
-      } finally {
-        db.endTransaction();
       }
-      Log.d(TAG, "time = "+String.valueOf(System.currentTimeMillis() - current));
+    } finally {
+      for (SQLiteStatement s : statements.values()) {
+        s.close();
+      }
     }
+    Log.d(TAG, "time = "+String.valueOf(System.currentTimeMillis() - current));
+    return ids;
   }
 
-  public <T extends BaseTable> long save(T object) {
-    Class iClass = object.getClass();
-    if (!mTableClasses.contains(iClass)) {
+  private void checkTable(Class<?> iClass) {
+    if (!mTableClassSet.contains(iClass)) {
       throw new OrmException("No such table error class = " + iClass.getSimpleName());
     }
-    String tableName = OrmUtil.getTableName(iClass);
-    List<Field> columns = OrmUtil.getTableFields(iClass);
-    ContentValues values = new ContentValues(columns.size());
-    for (Field column : columns) {
-      OrmUtil.addFieldValueToColumn(values, column, object);
-    }
-    long id = getWritableDatabase().insertWithOnConflict(tableName, null, values,
-        SQLiteDatabase.CONFLICT_REPLACE);
+  }
+
+  public <T extends BaseTable> long save(T object) {
+    Class iClass = object.getClass();
+    checkTable(iClass);
+    TableMapper<T> mapper = TableMapper.get((Class<T>) iClass);
+    long id = getWritableDatabase().insertWithOnConflict(mapper.tableName, null,
+        mapper.toContentValues(object), SQLiteDatabase.CONFLICT_REPLACE);
     object._setDataBaseId(id);
     return id;
   }
 
   public <T extends BaseTable> boolean delete(T object) {
     Class iClass = object.getClass();
-    if (!mTableClasses.contains(iClass)) {
-      throw new OrmException("No such table error class = " + iClass.getSimpleName());
-    }
+    checkTable(iClass);
     try {
       long id = object._getDataBaseId();
       SQLiteDatabase db = getWritableDatabase();
@@ -150,21 +205,7 @@ abstract public class BaseDataBaseHelper extends SQLiteOpenHelper {
   public <T extends BaseTable> List<T> findWithQuery(Class<T> type, String query,
       String... arguments) {
     SQLiteDatabase sqLiteDatabase = getReadableDatabase();
-    T entity;
-    List<T> toRet = new ArrayList<T>();
-    Cursor c = sqLiteDatabase.rawQuery(query, arguments);
-    try {
-      while (c.moveToNext()) {
-        entity = type.getDeclaredConstructor().newInstance();
-        inflate(c, entity);
-        toRet.add(entity);
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
-    } finally {
-      c.close();
-    }
-    return toRet;
+    return inflateAll(type, sqLiteDatabase.rawQuery(query, arguments));
   }
 
   public <T extends BaseTable> List<T> find(Class<T> type, String whereClause,
@@ -175,15 +216,102 @@ abstract public class BaseDataBaseHelper extends SQLiteOpenHelper {
   public <T extends BaseTable> List<T> find(Class<T> type, String whereClause, String[] whereArgs,
       String groupBy, String orderBy, String limit) {
     SQLiteDatabase sqLiteDatabase = getReadableDatabase();
-    T entity;
-    List<T> toRet = new ArrayList<T>();
     Cursor c =
-        sqLiteDatabase.query(OrmUtil.getTableName(type), null, whereClause, whereArgs, groupBy,
+        sqLiteDatabase.query(TableMapper.get(type).tableName, null, whereClause, whereArgs, groupBy,
             null, orderBy, limit);
+    return inflateAll(type, c);
+  }
+
+  /**
+   * 投影查询，只读取columns中的列，columns为null时读取所有列
+   */
+  public <T extends BaseTable> List<T> find(Class<T> type, String[] columns, String whereClause,
+      String[] whereArgs, String groupBy, String orderBy, String limit) {
+    SQLiteDatabase sqLiteDatabase = getReadableDatabase();
+    Cursor c =
+        sqLiteDatabase.query(TableMapper.get(type).tableName, projection(columns), whereClause,
+            whereArgs, groupBy, null, orderBy, limit);
+    return inflateAll(type, c);
+  }
+
+  public <T extends BaseTable> CursorIterable<T> iterate(Class<T> type, String whereClause,
+      String[] whereArgs) {
+    return iterate(type, null, whereClause, whereArgs, null, false);
+  }
+
+  /**
+   * 懒加载查询，迭代时才逐行读取，遍历完成后自动关闭cursor，中途退出需要调用{@link CursorIterable#close()}
+   *
+   * @param columns 只读取这些列，为null时读取所有列
+   * @param reuse 所有行读到同一个对象上，只适用于只读遍历
+   */
+  public <T extends BaseTable> CursorIterable<T> iterate(Class<T> type, String[] columns,
+      String whereClause, String[] whereArgs, String orderBy, boolean reuse) {
+    TableMapper<T> mapper = TableMapper.get(type);
+    Cursor c = getReadableDatabase().query(mapper.tableName, projection(columns), whereClause,
+        whereArgs, null, null, orderBy, null);
+    return new CursorIterable<T>(c, mapper, reuse);
+  }
+
+  public <T extends BaseTable> CursorIterable<T> iterateWithQuery(Class<T> type, boolean reuse,
+      String query, String... arguments) {
+    return new CursorIterable<T>(getReadableDatabase().rawQuery(query, arguments),
+        TableMapper.get(type), reuse);
+  }
+
+  /**
+   * 按_ID做keyset分页，读取_ID大于afterId的pageSize行，第一页afterId传0
+   *
+   * @param columns 只读取这些列，为null时读取所有列
+   */
+  public <T extends BaseTable> Page<T> findPage(Class<T> type, String[] columns,
+      String whereClause, String[] whereArgs, long afterId, int pageSize) {
+    String where = TextUtils.isEmpty(whereClause) ? "_ID > ?" : "(" + whereClause + ") AND _ID > ?";
+    int argCount = whereArgs == null ? 0 : whereArgs.length;
+    String[] args = new String[argCount + 1];
+    if (argCount > 0) {
+      System.arraycopy(whereArgs, 0, args, 0, argCount);
+    }
+    args[argCount] = String.valueOf(afterId);
+    // 多读一行判断是否还有下一页
+    List<T> items = find(type, columns, where, args, null, "_ID ASC", String.valueOf(pageSize + 1));
+    boolean hasMore = items.size() > pageSize;
+    if (hasMore) {
+      items.remove(items.size() - 1);
+    }
+    long nextAfterId = items.isEmpty() ? afterId : items.get(items.size() - 1)._getDataBaseId();
+    return new Page<T>(items, nextAfterId, hasMore);
+  }
+
+  /**
+   * 投影的列总是包含_ID
+   */
+  private static String[] projection(String[] columns) {
+    if (columns == null) {
+      return null;
+    }
+    for (String column : columns) {
+      if (OrmUtil.isIdColumn(column)) {
+        return columns;
+      }
+    }
+    String[] projection = new String[columns.length + 1];
+    projection[0] = "_ID";
+    System.arraycopy(columns, 0, projection, 1, columns.length);
+    return projection;
+  }
+
+  /**
+   * 读取cursor中的所有行，列的位置只解析一次，读完后关闭cursor
+   */
+  private <T extends BaseTable> List<T> inflateAll(Class<T> type, Cursor c) {
+    List<T> toRet = new ArrayList<T>(Math.max(c.getCount(), 0));
     try {
+      TableMapper<T> mapper = TableMapper.get(type);
+      int[] indices = mapper.columnIndices(c);
       while (c.moveToNext()) {
-        entity = type.getDeclaredConstructor().newInstance();
-        inflate(c, entity);
+        T entity = mapper.newInstance();
+        mapper.inflate(c, indices, entity);
         toRet.add(entity);
       }
     } catch (Exception e) {
@@ -193,18 +321,4 @@ abstract public class BaseDataBaseHelper extends SQLiteOpenHelper {
     }
     return toRet;
   }
-
-  private <T extends BaseTable> void inflate(Cursor cursor, T object) {
-    List<Field> columns = OrmUtil.getTableFields(object.getClass());
-    for (Field field : columns) {
-      field.setAccessible(true);
-      Class<?> fieldType = field.getType();
-      if (OrmUtil.isIdColumn(field)) {
-        long id = cursor.getLong(cursor.getColumnIndex("_ID"));
-        object._setDataBaseId(id);
-      } else {
-        OrmUtil.setFieldValueFromCursor(cursor, field, object);
-      }
-    }
-  }
 }
@@ -9,6 +9,10 @@ public class BaseTable {
     return _ID;
   }
 
+  Long _getDataBaseIdOrNull() {
+    return _ID;
+  }
+
   void _setDataBaseId(long id) {
     _ID = id;
   }
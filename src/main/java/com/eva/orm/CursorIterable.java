@@ -0,0 +1,84 @@
+package com.eva.orm;
+
+import android.database.Cursor;
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 基于cursor的懒加载结果，迭代时才逐行读取，不会一次把整张表读到内存。
+ * 只能迭代一次，遍历完成后自动关闭cursor，中途退出需要调用{@link #close()}。
+ *
+ * 开启reuse后所有行都读到同一个对象上，适用于只读的遍历，不能保存迭代出来的对象
+ */
+public class CursorIterable<T extends BaseTable> implements Iterable<T>, Closeable {
+  private final Cursor mCursor;
+  private final TableMapper<T> mMapper;
+  private final boolean mReuse;
+  private int[] mIndices;
+  private T mReused;
+  private boolean mIterated;
+
+  CursorIterable(Cursor cursor, TableMapper<T> mapper, boolean reuse) {
+    mCursor = cursor;
+    mMapper = mapper;
+    mReuse = reuse;
+  }
+
+  public int getCount() {
+    return mCursor.isClosed() ? 0 : mCursor.getCount();
+  }
+
+  @Override public Iterator<T> iterator() {
+    if (mIterated) {
+      throw new IllegalStateException("CursorIterable can only be iterated once");
+    }
+    mIterated = true;
+    return new Iterator<T>() {
+      private boolean mHasNext;
+      private boolean mMoved;
+
+      @Override public boolean hasNext() {
+        if (!mMoved) {
+          mHasNext = !mCursor.isClosed() && mCursor.moveToNext();
+          mMoved = true;
+          if (!mHasNext) {
+            close();
+          }
+        }
+        return mHasNext;
+      }
+
+      @Override public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        mMoved = false;
+        if (mIndices == null) {
+          mIndices = mMapper.columnIndices(mCursor);
+        }
+        if (!mReuse) {
+          T entity = mMapper.newInstance();
+          mMapper.inflate(mCursor, mIndices, entity);
+          return entity;
+        }
+        boolean reused = mReused != null;
+        if (!reused) {
+          mReused = mMapper.newInstance();
+        }
+        mMapper.inflate(mCursor, mIndices, mReused, reused);
+        return mReused;
+      }
+
+      @Override public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override public void close() {
+    if (!mCursor.isClosed()) {
+      mCursor.close();
+    }
+  }
+}
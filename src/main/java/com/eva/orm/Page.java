@@ -0,0 +1,24 @@
+package com.eva.orm;
+
+import java.util.List;
+
+/**
+ * 按_ID做keyset分页的一页结果，下一页从{@link #nextAfterId}之后开始读取，
+ * 不使用OFFSET，翻页的开销不会随页数增加
+ */
+public class Page<T extends BaseTable> {
+  public final List<T> items;
+  /** 本页最后一行的_ID，作为下一页的afterId */
+  public final long nextAfterId;
+  private final boolean mHasMore;
+
+  Page(List<T> items, long nextAfterId, boolean hasMore) {
+    this.items = items;
+    this.nextAfterId = nextAfterId;
+    mHasMore = hasMore;
+  }
+
+  public boolean hasMore() {
+    return mHasMore;
+  }
+}
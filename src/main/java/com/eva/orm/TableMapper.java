@@ -0,0 +1,498 @@
+package com.eva.orm;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每个表对应一个mapper，表名、列名、字段类型、反射访问器只在第一次使用时解析一次，
+ * 之后的插入和读取都直接使用缓存的结果，不再每行做getDeclaredFields、注解扫描和类型判断
+ */
+final class TableMapper<T extends BaseTable> {
+  private static final String TAG = TableMapper.class.getSimpleName();
+  private static final Map<Class<?>, TableMapper<?>> CACHE =
+      new ConcurrentHashMap<Class<?>, TableMapper<?>>();
+
+  final String tableName;
+  /** 除_ID以外的列 */
+  final ColumnMapping[] columns;
+  private final Constructor<T> mConstructor;
+
+  @SuppressWarnings("unchecked")
+  static <T extends BaseTable> TableMapper<T> get(Class<T> type) {
+    TableMapper<T> mapper = (TableMapper<T>) CACHE.get(type);
+    if (mapper == null) {
+      mapper = new TableMapper<T>(type);
+      CACHE.put(type, mapper);
+    }
+    return mapper;
+  }
+
+  private TableMapper(Class<T> type) {
+    tableName = OrmUtil.getTableName(type);
+    List<Field> fields = OrmUtil.getTableFields(type);
+    ColumnMapping[] columns = new ColumnMapping[fields.size()];
+    int count = 0;
+    for (Field field : fields) {
+      String columnName = OrmUtil.getColumnName(field);
+      if (!OrmUtil.isIdColumn(columnName)) {
+        columns[count++] = new ColumnMapping(field, columnName);
+      }
+    }
+    this.columns = new ColumnMapping[count];
+    System.arraycopy(columns, 0, this.columns, 0, count);
+    Constructor<T> constructor = null;
+    try {
+      constructor = type.getDeclaredConstructor();
+      constructor.setAccessible(true);
+    } catch (NoSuchMethodException e) {
+      Log.e(TAG, type.getName() + " has no default constructor");
+    }
+    mConstructor = constructor;
+  }
+
+  T newInstance() {
+    if (mConstructor == null) {
+      throw new OrmException("No default constructor class = " + tableName);
+    }
+    try {
+      return mConstructor.newInstance();
+    } catch (Exception e) {
+      throw new OrmException("Can not create instance class = " + tableName + " " + e);
+    }
+  }
+
+  ContentValues toContentValues(T object) {
+    ContentValues values = new ContentValues(columns.length + 1);
+    Long id = object._getDataBaseIdOrNull();
+    values.put("_ID", id);
+    for (ColumnMapping column : columns) {
+      column.write(values, object);
+    }
+    return values;
+  }
+
+  /**
+   * 按列的顺序生成的插入语句，_ID在第一个位置，与{@link #bind(SQLiteStatement, BaseTable)}绑定的顺序一致
+   */
+  String insertSql() {
+    StringBuilder sb = new StringBuilder("INSERT OR REPLACE INTO ");
+    sb.append(tableName).append(" (_ID");
+    for (ColumnMapping column : columns) {
+      sb.append(", ").append(column.name);
+    }
+    sb.append(") VALUES (?");
+    for (int i = 0; i < columns.length; i++) {
+      sb.append(", ?");
+    }
+    return sb.append(')').toString();
+  }
+
+  /**
+   * 按位置绑定对象的所有列，绑定前会清空statement上一次的参数
+   */
+  void bind(SQLiteStatement statement, T object) {
+    statement.clearBindings();
+    Long id = object._getDataBaseIdOrNull();
+    if (id == null) {
+      statement.bindNull(1);
+    } else {
+      statement.bindLong(1, id);
+    }
+    for (int i = 0; i < columns.length; i++) {
+      columns[i].bind(statement, i + 2, object);
+    }
+  }
+
+  /**
+   * 解析每一列在cursor中的位置，同一个cursor只需要解析一次，不存在的列为-1
+   */
+  int[] columnIndices(Cursor cursor) {
+    int[] indices = new int[columns.length + 1];
+    indices[0] = cursor.getColumnIndex("_ID");
+    for (int i = 0; i < columns.length; i++) {
+      indices[i + 1] = cursor.getColumnIndex(columns[i].name);
+    }
+    return indices;
+  }
+
+  void inflate(Cursor cursor, int[] indices, T object) {
+    inflate(cursor, indices, object, false);
+  }
+
+  /**
+   * @param reused object是否是上一行复用的对象，是的话值为NULL的列需要恢复成默认值
+   */
+  void inflate(Cursor cursor, int[] indices, T object, boolean reused) {
+    int idIndex = indices[0];
+    if (idIndex >= 0) {
+      object._setDataBaseId(cursor.getLong(idIndex));
+    }
+    for (int i = 0; i < columns.length; i++) {
+      int index = indices[i + 1];
+      if (index >= 0) {
+        if (reused && cursor.isNull(index)) {
+          columns[i].clear(object);
+        } else {
+          columns[i].read(cursor, index, object);
+        }
+      }
+    }
+  }
+
+  /**
+   * 一个字段和列的对应关系，字段类型在创建时归类为一个整数code，读写时直接switch
+   */
+  static final class ColumnMapping {
+    static final int TYPE_LONG = 0;
+    static final int TYPE_LONG_OBJECT = 1;
+    static final int TYPE_INT = 2;
+    static final int TYPE_INT_OBJECT = 3;
+    static final int TYPE_SHORT = 4;
+    static final int TYPE_SHORT_OBJECT = 5;
+    static final int TYPE_DOUBLE = 6;
+    static final int TYPE_DOUBLE_OBJECT = 7;
+    static final int TYPE_FLOAT = 8;
+    static final int TYPE_FLOAT_OBJECT = 9;
+    static final int TYPE_BOOLEAN = 10;
+    static final int TYPE_BOOLEAN_OBJECT = 11;
+    static final int TYPE_STRING = 12;
+    static final int TYPE_BIG_DECIMAL = 13;
+    static final int TYPE_TIMESTAMP = 14;
+    static final int TYPE_DATE = 15;
+    static final int TYPE_CALENDAR = 16;
+    static final int TYPE_BLOB = 17;
+    static final int TYPE_ENUM = 18;
+    static final int TYPE_OTHER = 19;
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    final Field field;
+    final String name;
+    final int type;
+    /** 枚举name到枚举值的映射，只有TYPE_ENUM使用 */
+    private final Map<String, Object> mEnumValues;
+
+    ColumnMapping(Field field, String name) {
+      field.setAccessible(true);
+      this.field = field;
+      this.name = name;
+      this.type = typeOf(field.getType());
+      if (type == TYPE_ENUM) {
+        Object[] constants = field.getType().getEnumConstants();
+        mEnumValues = new HashMap<String, Object>(constants.length * 2);
+        for (Object constant : constants) {
+          mEnumValues.put(((Enum<?>) constant).name(), constant);
+        }
+      } else {
+        mEnumValues = null;
+      }
+    }
+
+    private static int typeOf(Class<?> fieldType) {
+      if (fieldType == long.class) return TYPE_LONG;
+      if (fieldType == Long.class) return TYPE_LONG_OBJECT;
+      if (fieldType == int.class) return TYPE_INT;
+      if (fieldType == Integer.class) return TYPE_INT_OBJECT;
+      if (fieldType == short.class) return TYPE_SHORT;
+      if (fieldType == Short.class) return TYPE_SHORT_OBJECT;
+      if (fieldType == double.class) return TYPE_DOUBLE;
+      if (fieldType == Double.class) return TYPE_DOUBLE_OBJECT;
+      if (fieldType == float.class) return TYPE_FLOAT;
+      if (fieldType == Float.class) return TYPE_FLOAT_OBJECT;
+      if (fieldType == boolean.class) return TYPE_BOOLEAN;
+      if (fieldType == Boolean.class) return TYPE_BOOLEAN_OBJECT;
+      if (fieldType == String.class) return TYPE_STRING;
+      if (fieldType == BigDecimal.class) return TYPE_BIG_DECIMAL;
+      if (fieldType == Timestamp.class) return TYPE_TIMESTAMP;
+      if (fieldType == Date.class) return TYPE_DATE;
+      if (fieldType == Calendar.class) return TYPE_CALENDAR;
+      if (fieldType == byte[].class) return TYPE_BLOB;
+      if (fieldType.isEnum()) return TYPE_ENUM;
+      return TYPE_OTHER;
+    }
+
+    void write(ContentValues values, Object object) {
+      try {
+        switch (type) {
+          case TYPE_LONG:
+            values.put(name, field.getLong(object));
+            break;
+          case TYPE_INT:
+            values.put(name, field.getInt(object));
+            break;
+          case TYPE_SHORT:
+            values.put(name, field.getShort(object));
+            break;
+          case TYPE_DOUBLE:
+            values.put(name, field.getDouble(object));
+            break;
+          case TYPE_FLOAT:
+            values.put(name, field.getFloat(object));
+            break;
+          case TYPE_BOOLEAN:
+            values.put(name, field.getBoolean(object));
+            break;
+          case TYPE_LONG_OBJECT:
+            values.put(name, (Long) field.get(object));
+            break;
+          case TYPE_INT_OBJECT:
+            values.put(name, (Integer) field.get(object));
+            break;
+          case TYPE_SHORT_OBJECT:
+            values.put(name, (Short) field.get(object));
+            break;
+          case TYPE_DOUBLE_OBJECT:
+            values.put(name, (Double) field.get(object));
+            break;
+          case TYPE_FLOAT_OBJECT:
+            values.put(name, (Float) field.get(object));
+            break;
+          case TYPE_BOOLEAN_OBJECT:
+            values.put(name, (Boolean) field.get(object));
+            break;
+          case TYPE_BLOB:
+            byte[] bytes = (byte[]) field.get(object);
+            values.put(name, bytes == null ? EMPTY_BYTES : bytes);
+            break;
+          default:
+            Object value = toStorable(field.get(object));
+            if (value == null) {
+              values.putNull(name);
+            } else if (value instanceof Long) {
+              values.put(name, (Long) value);
+            } else {
+              values.put(name, (String) value);
+            }
+            break;
+        }
+      } catch (IllegalAccessException e) {
+        Log.e(TAG, e.getMessage());
+      }
+    }
+
+    void bind(SQLiteStatement statement, int index, Object object) {
+      try {
+        switch (type) {
+          case TYPE_LONG:
+            statement.bindLong(index, field.getLong(object));
+            break;
+          case TYPE_INT:
+            statement.bindLong(index, field.getInt(object));
+            break;
+          case TYPE_SHORT:
+            statement.bindLong(index, field.getShort(object));
+            break;
+          case TYPE_DOUBLE:
+            statement.bindDouble(index, field.getDouble(object));
+            break;
+          case TYPE_FLOAT:
+            statement.bindDouble(index, field.getFloat(object));
+            break;
+          case TYPE_BOOLEAN:
+            statement.bindLong(index, field.getBoolean(object) ? 1 : 0);
+            break;
+          case TYPE_LONG_OBJECT:
+          case TYPE_INT_OBJECT:
+          case TYPE_SHORT_OBJECT:
+            Number number = (Number) field.get(object);
+            if (number == null) {
+              statement.bindNull(index);
+            } else {
+              statement.bindLong(index, number.longValue());
+            }
+            break;
+          case TYPE_DOUBLE_OBJECT:
+          case TYPE_FLOAT_OBJECT:
+            Number real = (Number) field.get(object);
+            if (real == null) {
+              statement.bindNull(index);
+            } else {
+              statement.bindDouble(index, real.doubleValue());
+            }
+            break;
+          case TYPE_BOOLEAN_OBJECT:
+            Boolean bool = (Boolean) field.get(object);
+            if (bool == null) {
+              statement.bindNull(index);
+            } else {
+              statement.bindLong(index, bool ? 1 : 0);
+            }
+            break;
+          case TYPE_BLOB:
+            byte[] bytes = (byte[]) field.get(object);
+            statement.bindBlob(index, bytes == null ? EMPTY_BYTES : bytes);
+            break;
+          default:
+            Object value = toStorable(field.get(object));
+            if (value == null) {
+              statement.bindNull(index);
+            } else if (value instanceof Long) {
+              statement.bindLong(index, (Long) value);
+            } else {
+              statement.bindString(index, (String) value);
+            }
+            break;
+        }
+      } catch (IllegalAccessException e) {
+        Log.e(TAG, e.getMessage());
+      }
+    }
+
+    /**
+     * 非基本类型的字段转换成存储的值，日期类型转换为Long，其他转换为String
+     */
+    Object toStorable(Object value) {
+      if (value == null) {
+        return null;
+      }
+      switch (type) {
+        case TYPE_TIMESTAMP:
+        case TYPE_DATE:
+          return ((Date) value).getTime();
+        case TYPE_CALENDAR:
+          return ((Calendar) value).getTimeInMillis();
+        case TYPE_ENUM:
+          return ((Enum<?>) value).name();
+        default:
+          return String.valueOf(value);
+      }
+    }
+
+    /**
+     * 恢复成字段的默认值，基本类型为0或false，其他为null
+     */
+    void clear(Object object) {
+      try {
+        switch (type) {
+          case TYPE_LONG:
+            field.setLong(object, 0L);
+            break;
+          case TYPE_INT:
+            field.setInt(object, 0);
+            break;
+          case TYPE_SHORT:
+            field.setShort(object, (short) 0);
+            break;
+          case TYPE_DOUBLE:
+            field.setDouble(object, 0d);
+            break;
+          case TYPE_FLOAT:
+            field.setFloat(object, 0f);
+            break;
+          case TYPE_BOOLEAN:
+            field.setBoolean(object, false);
+            break;
+          default:
+            if (!field.getType().isPrimitive()) {
+              field.set(object, null);
+            }
+            break;
+        }
+      } catch (IllegalAccessException e) {
+        Log.e("field set error", e.getMessage());
+      }
+    }
+
+    void read(Cursor cursor, int index, Object object) {
+      if (cursor.isNull(index)) {
+        return;
+      }
+      try {
+        switch (type) {
+          case TYPE_LONG:
+            field.setLong(object, cursor.getLong(index));
+            break;
+          case TYPE_LONG_OBJECT:
+            field.set(object, cursor.getLong(index));
+            break;
+          case TYPE_INT:
+            field.setInt(object, cursor.getInt(index));
+            break;
+          case TYPE_INT_OBJECT:
+            field.set(object, cursor.getInt(index));
+            break;
+          case TYPE_SHORT:
+            field.setShort(object, cursor.getShort(index));
+            break;
+          case TYPE_SHORT_OBJECT:
+            field.set(object, cursor.getShort(index));
+            break;
+          case TYPE_DOUBLE:
+            field.setDouble(object, cursor.getDouble(index));
+            break;
+          case TYPE_DOUBLE_OBJECT:
+            field.set(object, cursor.getDouble(index));
+            break;
+          case TYPE_FLOAT:
+            field.setFloat(object, cursor.getFloat(index));
+            break;
+          case TYPE_FLOAT_OBJECT:
+            field.set(object, cursor.getFloat(index));
+            break;
+          case TYPE_BOOLEAN:
+            field.setBoolean(object, cursor.getInt(index) == 1);
+            break;
+          case TYPE_BOOLEAN_OBJECT:
+            field.set(object, cursor.getInt(index) == 1);
+            break;
+          case TYPE_STRING:
+            String val = cursor.getString(index);
+            field.set(object, "null".equals(val) ? null : val);
+            break;
+          case TYPE_BIG_DECIMAL:
+            String decimal = cursor.getString(index);
+            field.set(object, "null".equals(decimal) ? null : new BigDecimal(decimal));
+            break;
+          case TYPE_TIMESTAMP:
+            field.set(object, new Timestamp(cursor.getLong(index)));
+            break;
+          case TYPE_DATE:
+            field.set(object, new Date(cursor.getLong(index)));
+            break;
+          case TYPE_CALENDAR:
+            Calendar c = Calendar.getInstance();
+            c.setTimeInMillis(cursor.getLong(index));
+            field.set(object, c);
+            break;
+          case TYPE_BLOB:
+            byte[] bytes = cursor.getBlob(index);
+            field.set(object, bytes == null ? EMPTY_BYTES : bytes);
+            break;
+          case TYPE_ENUM:
+            Object enumVal = mEnumValues.get(cursor.getString(index));
+            if (enumVal != null) {
+              field.set(object, enumVal);
+            } else {
+              Log.e(TAG,
+                  "Enum cannot be read from Sqlite3 database. Please check the type of field "
+                      + field.getName());
+            }
+            break;
+          default:
+            Log.e(TAG, "Class cannot be read from Sqlite3 database. Please check the type of field "
+                + field.getName()
+                + "("
+                + field.getType().getName()
+                + ")");
+            break;
+        }
+      } catch (IllegalArgumentException e) {
+        Log.e("field set error", e.getMessage());
+      } catch (IllegalAccessException e) {
+        Log.e("field set error", e.getMessage());
+      }
+    }
+  }
+}
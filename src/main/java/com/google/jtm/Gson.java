@@ -23,6 +23,8 @@ import com.google.jtm.internal.Streams;
 import com.google.jtm.internal.bind.ArrayTypeAdapter;
 import com.google.jtm.internal.bind.CollectionTypeAdapterFactory;
 import com.google.jtm.internal.bind.DateTypeAdapter;
+import com.google.jtm.internal.bind.GeneratedTypeAdapterFactory;
+import com.google.jtm.internal.bind.JsonAdapterAnnotationTypeAdapterFactory;
 import com.google.jtm.internal.bind.JsonTreeReader;
 import com.google.jtm.internal.bind.JsonTreeWriter;
 import com.google.jtm.internal.bind.MapTypeAdapterFactory;
@@ -36,8 +38,10 @@ import com.google.jtm.stream.JsonReader;
 import com.google.jtm.stream.JsonToken;
 import com.google.jtm.stream.JsonWriter;
 import com.google.jtm.stream.MalformedJsonException;
+import com.google.jtm.stream.Utf8JsonReader;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -50,6 +54,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This is the main class for using Gson. Gson is typically used by first constructing a
@@ -109,8 +115,13 @@ public final class Gson {
   private final ThreadLocal<Map<TypeToken<?>, FutureTypeAdapter<?>>> calls
       = new ThreadLocal<Map<TypeToken<?>, FutureTypeAdapter<?>>>();
 
-  private final Map<TypeToken<?>, TypeAdapter<?>> typeTokenCache
-      = Collections.synchronizedMap(new HashMap<TypeToken<?>, TypeAdapter<?>>());
+  /**
+   * Adapters are looked up on every call to toJson/fromJson from any thread, so
+   * cache hits must not contend on a lock. Two threads may race to build the
+   * same adapter; the first one published wins and the other is discarded.
+   */
+  private final ConcurrentMap<TypeToken<?>, TypeAdapter<?>> typeTokenCache
+      = new ConcurrentHashMap<TypeToken<?>, TypeAdapter<?>>();
 
   private final List<TypeAdapterFactory> factories;
   private final ConstructorConstructor constructorConstructor;
@@ -173,7 +184,7 @@ public final class Gson {
   public Gson() {
     this(Excluder.DEFAULT, FieldNamingPolicy.IDENTITY,
         Collections.<Type, InstanceCreator<?>>emptyMap(), false, false, DEFAULT_JSON_NON_EXECUTABLE,
-        true, false, false, LongSerializationPolicy.DEFAULT,
+        true, false, false, LongSerializationPolicy.DEFAULT, true,
         Collections.<TypeAdapterFactory>emptyList());
   }
 
@@ -181,7 +192,7 @@ public final class Gson {
       final Map<Type, InstanceCreator<?>> instanceCreators, boolean serializeNulls,
       boolean complexMapKeySerialization, boolean generateNonExecutableGson, boolean htmlSafe,
       boolean prettyPrinting, boolean serializeSpecialFloatingPointValues,
-      LongSerializationPolicy longSerializationPolicy,
+      LongSerializationPolicy longSerializationPolicy, boolean generatedTypeAdapters,
       List<TypeAdapterFactory> typeAdapterFactories) {
     this.constructorConstructor = new ConstructorConstructor(instanceCreators);
     this.serializeNulls = serializeNulls;
@@ -237,34 +248,19 @@ public final class Gson {
     // type adapters for composite and user-defined types
     factories.add(new CollectionTypeAdapterFactory(constructorConstructor));
     factories.add(new MapTypeAdapterFactory(constructorConstructor, complexMapKeySerialization));
-    factories.add(new ReflectiveTypeAdapterFactory(
-        constructorConstructor, fieldNamingPolicy, excluder));
+    factories.add(new JsonAdapterAnnotationTypeAdapterFactory(constructorConstructor));
+    ReflectiveTypeAdapterFactory reflective = new ReflectiveTypeAdapterFactory(
+        constructorConstructor, fieldNamingPolicy, excluder);
+    if (generatedTypeAdapters) {
+      factories.add(new GeneratedTypeAdapterFactory(reflective));
+    }
+    factories.add(reflective);
 
     this.factories = Collections.unmodifiableList(factories);
   }
 
   private TypeAdapter<Number> doubleAdapter(boolean serializeSpecialFloatingPointValues) {
-    if (serializeSpecialFloatingPointValues) {
-      return TypeAdapters.DOUBLE;
-    }
-    return new TypeAdapter<Number>() {
-      @Override public Double read(JsonReader in) throws IOException {
-        if (in.peek() == JsonToken.NULL) {
-          in.nextNull();
-          return null;
-        }
-        return in.nextDouble();
-      }
-      @Override public void write(JsonWriter out, Number value) throws IOException {
-        if (value == null) {
-          out.nullValue();
-          return;
-        }
-        double doubleValue = value.doubleValue();
-        checkValidFloatingPoint(doubleValue);
-        out.value(value);
-      }
-    };
+    return serializeSpecialFloatingPointValues ? TypeAdapters.DOUBLE : TypeAdapters.FINITE_DOUBLE;
   }
 
   private TypeAdapter<Number> floatAdapter(boolean serializeSpecialFloatingPointValues) {
@@ -292,11 +288,7 @@ public final class Gson {
   }
 
   void checkValidFloatingPoint(double value) {
-    if (Double.isNaN(value) || Double.isInfinite(value)) {
-      throw new IllegalArgumentException(value
-          + " is not a valid double value as per JSON specification. To override this"
-          + " behavior, use GsonBuilder.serializeSpecialFloatingPointValues() method.");
-    }
+    TypeAdapters.checkValidFloatingPoint(value);
   }
 
   private TypeAdapter<Number> longAdapter(LongSerializationPolicy longSerializationPolicy) {
@@ -355,8 +347,11 @@ public final class Gson {
       for (TypeAdapterFactory factory : factories) {
         TypeAdapter<T> candidate = factory.create(this, type);
         if (candidate != null) {
+          TypeAdapter<T> published = (TypeAdapter<T>) typeTokenCache.putIfAbsent(type, candidate);
+          if (published != null) {
+            candidate = published;
+          }
           call.setDelegate(candidate);
-          typeTokenCache.put(type, candidate);
           return candidate;
         }
       }
@@ -370,6 +365,23 @@ public final class Gson {
     }
   }
 
+  /**
+   * Builds and caches the type adapter for {@code type} ahead of its first use, so
+   * that the reflective work is not done on the thread that parses the first response.
+   * This is typically called for model classes on a background thread at startup.
+   *
+   * @return the nanoseconds spent building the adapter, or 0 if it was already cached.
+   * @throws IllegalArgumentException if this GSON cannot serialize and deserialize {@code type}.
+   */
+  public long prewarm(TypeToken<?> type) {
+    if (typeTokenCache.containsKey(type)) {
+      return 0;
+    }
+    long start = System.nanoTime();
+    getAdapter(type);
+    return System.nanoTime() - start;
+  }
+
   /**
    * This method is used to get an alternate type adapter for the specified type. This is used
    * to access a type adapter that is overridden by a {@link TypeAdapterFactory} that you
@@ -770,6 +782,81 @@ public final class Gson {
     return object;
   }
 
+  /**
+   * This method deserializes the UTF-8 encoded Json in the specified byte array into an object
+   * of the specified class. The bytes are tokenized directly by a {@link Utf8JsonReader}, so
+   * unlike {@link #fromJson(String, Class)} they never need to be decoded into a String first.
+   *
+   * @param <T> the type of the desired object
+   * @param json the UTF-8 encoded Json from which the object is to be deserialized
+   * @param classOfT the class of T
+   * @return an object of type T from the json. Returns {@code null} if {@code json} is {@code null}.
+   * @throws JsonSyntaxException if json is not a valid representation for an object of type
+   */
+  public <T> T fromJson(byte[] json, Class<T> classOfT) throws JsonSyntaxException {
+    Object object = fromJson(json, (Type) classOfT);
+    return Primitives.wrap(classOfT).cast(object);
+  }
+
+  /**
+   * This method deserializes the UTF-8 encoded Json in the specified byte array into an object
+   * of the specified type. This method is useful if the specified object is a generic type.
+   *
+   * @param <T> the type of the desired object
+   * @param json the UTF-8 encoded Json from which the object is to be deserialized
+   * @param typeOfT The specific genericized type of src.
+   * @return an object of type T from the json. Returns {@code null} if {@code json} is {@code null}.
+   * @throws JsonSyntaxException if json is not a valid representation for an object of type
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T fromJson(byte[] json, Type typeOfT) throws JsonSyntaxException {
+    if (json == null) {
+      return null;
+    }
+    JsonReader jsonReader = new Utf8JsonReader(json);
+    T object = (T) fromJson(jsonReader, typeOfT);
+    assertFullConsumption(object, jsonReader);
+    return object;
+  }
+
+  /**
+   * This method deserializes the UTF-8 encoded Json read from the specified stream into an
+   * object of the specified class, tokenizing the bytes directly with a {@link Utf8JsonReader}.
+   * The stream is not closed.
+   *
+   * @param <T> the type of the desired object
+   * @param json the stream producing UTF-8 encoded Json
+   * @param classOfT the class of T
+   * @return an object of type T from the json
+   * @throws JsonIOException if there was a problem reading from the stream
+   * @throws JsonSyntaxException if json is not a valid representation for an object of type
+   */
+  public <T> T fromJson(InputStream json, Class<T> classOfT)
+      throws JsonSyntaxException, JsonIOException {
+    Object object = fromJson(json, (Type) classOfT);
+    return Primitives.wrap(classOfT).cast(object);
+  }
+
+  /**
+   * This method deserializes the UTF-8 encoded Json read from the specified stream into an
+   * object of the specified type. This method is useful if the specified object is a generic
+   * type. The stream is not closed.
+   *
+   * @param <T> the type of the desired object
+   * @param json the stream producing UTF-8 encoded Json
+   * @param typeOfT The specific genericized type of src.
+   * @return an object of type T from the json
+   * @throws JsonIOException if there was a problem reading from the stream
+   * @throws JsonSyntaxException if json is not a valid representation for an object of type
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T fromJson(InputStream json, Type typeOfT) throws JsonIOException, JsonSyntaxException {
+    JsonReader jsonReader = new Utf8JsonReader(json);
+    T object = (T) fromJson(jsonReader, typeOfT);
+    assertFullConsumption(object, jsonReader);
+    return object;
+  }
+
   private static void assertFullConsumption(Object obj, JsonReader reader) {
     try {
       if (obj != null && reader.peek() != JsonToken.END_DOCUMENT) {
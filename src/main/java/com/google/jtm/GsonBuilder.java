@@ -83,6 +83,7 @@ public final class GsonBuilder {
   private boolean escapeHtmlChars = true;
   private boolean prettyPrinting;
   private boolean generateNonExecutableJson;
+  private boolean generatedTypeAdapters = true;
 
   /**
    * Creates a GsonBuilder instance that can be used to build Gson with various configuration
@@ -250,6 +251,18 @@ public final class GsonBuilder {
     return this;
   }
 
+  /**
+   * Configures Gson to bind classes annotated with
+   * {@link com.google.jtm.annotations.GenerateAdapter} by reflection, ignoring the adapters
+   * generated for them. Useful to compare both bindings.
+   *
+   * @return a reference to this {@code GsonBuilder} object to fulfill the "Builder" pattern
+   */
+  public GsonBuilder disableGeneratedTypeAdapters() {
+    generatedTypeAdapters = false;
+    return this;
+  }
+
   /**
    * Configures Gson to apply a specific serialization policy for {@code Long} and {@code long}
    * objects.
@@ -545,7 +558,8 @@ public final class GsonBuilder {
     return new Gson(excluder, fieldNamingPolicy, instanceCreators,
         serializeNulls, complexMapKeySerialization,
         generateNonExecutableJson, escapeHtmlChars, prettyPrinting,
-        serializeSpecialFloatingPointValues, longSerializationPolicy, factories);
+        serializeSpecialFloatingPointValues, longSerializationPolicy, generatedTypeAdapters,
+        factories);
   }
 
   private void addTypeAdaptersForDate(String datePattern, int dateStyle, int timeStyle,
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jtm;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.jtm.reflect.TypeToken;
+import com.google.jtm.stream.JsonReader;
+import com.google.jtm.stream.MalformedJsonException;
+
+/**
+ * Reads the elements of a JSON array one at a time, binding each one with the type adapter of
+ * the element type as soon as it has been parsed. Unlike deserializing the array to a
+ * {@code List<T>}, the caller sees the first elements before the rest of the array has been
+ * read, and never needs to keep elements it is done with.
+ *
+ * <p>The array is the next value of the reader. Iteration may be stopped early; call
+ * {@link #skipRemaining()} to consume the rest of the array so that the reader can go on with
+ * the enclosing document.
+ *
+ * <pre>
+ * JsonArrayReader&lt;Message&gt; messages = new JsonArrayReader&lt;Message&gt;(
+ *     gson, reader, TypeToken.get(Message.class));
+ * while (messages.hasNext()) {
+ *   Message message = messages.next();
+ *   ...
+ * }
+ * </pre>
+ *
+ * <p>This class is not thread safe.
+ */
+public final class JsonArrayReader<T> implements Iterator<T> {
+  private final JsonReader reader;
+  private final TypeAdapter<T> elementAdapter;
+  private boolean begun;
+  private boolean ended;
+  private int index;
+
+  /**
+   * @param gson the Gson used to bind each element.
+   * @param reader the reader whose next value is the array to read.
+   * @param elementType the type of the array elements.
+   */
+  public JsonArrayReader(Gson gson, JsonReader reader, TypeToken<T> elementType) {
+    this.reader = reader;
+    this.elementAdapter = gson.getAdapter(elementType);
+  }
+
+  /**
+   * Returns true if the array has another element. The first call consumes the beginning of
+   * the array, and the call that returns false consumes its end.
+   *
+   * @throws JsonSyntaxException if the next value is not an array or is malformed.
+   * @throws JsonIOException if there was a problem reading from the reader.
+   */
+  public boolean hasNext() {
+    if (ended) {
+      return false;
+    }
+    try {
+      if (!begun) {
+        reader.beginArray();
+        begun = true;
+      }
+      if (reader.hasNext()) {
+        return true;
+      }
+      reader.endArray();
+      ended = true;
+      return false;
+    } catch (MalformedJsonException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IllegalStateException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  /**
+   * Binds and returns the next element of the array.
+   *
+   * @throws JsonSyntaxException if the element is not a valid representation of the element
+   *     type.
+   * @throws JsonIOException if there was a problem reading from the reader.
+   */
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    try {
+      T element = elementAdapter.read(reader);
+      index++;
+      return element;
+    } catch (MalformedJsonException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IllegalStateException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  /**
+   * Returns the number of elements returned by {@link #next()} so far.
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * Skips the elements that have not been read yet and consumes the end of the array, without
+   * binding them.
+   */
+  public void skipRemaining() {
+    try {
+      if (!begun) {
+        reader.skipValue();
+        begun = true;
+      } else if (!ended) {
+        while (reader.hasNext()) {
+          reader.skipValue();
+        }
+        reader.endArray();
+      }
+      ended = true;
+    } catch (MalformedJsonException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IllegalStateException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jtm.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * An annotation that asks the {@code jtm-compiler} annotation processor to generate a
+ * straight-line {@link com.google.jtm.TypeAdapter} for the class at build time. Gson finds the
+ * generated adapter by name and uses it instead of the reflective binding, nothing has to be
+ * registered on the {@link com.google.jtm.GsonBuilder}.
+ *
+ * <p>Here is an example of how this annotation is used:</p>
+ * <pre>
+ * &#64GenerateAdapter
+ * public class Feed {
+ *   &#64SerializedName("has_more") boolean hasMore;
+ *   List&lt;Item&gt; list;
+ * }
+ * </pre>
+ * <p>The processor writes {@code Feed_TypeAdapter} next to {@code Feed}; a nested class
+ * {@code Outer.Inner} gets {@code Outer_Inner_TypeAdapter}.</p>
+ *
+ * <p>The generated adapter reads and writes the same JSON as the reflective binding of the same
+ * {@link com.google.jtm.Gson}: field names come from {@link SerializedName} or the field naming
+ * policy, {@link Expose}, {@link Since}, {@link Until} and the excluded modifiers are applied by
+ * the Gson's excluder, and every field type is bound through {@code gson.getAdapter}, so type
+ * adapters registered on the builder (such as booleans encoded as ints or enums as ordinals)
+ * still apply. Only the field lookup by name, {@code Field.get}/{@code Field.set} and the boxing
+ * of built-in primitives and strings are replaced by plain code.</p>
+ *
+ * <p>The class must not be generic, abstract or private, must have a non-private no-args
+ * constructor, and its fields and those of its superclasses must be accessible from its package
+ * and not final. The processor reports an error otherwise. If the generated class is missing at
+ * runtime, for example because the processor did not run, Gson falls back to reflection.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GenerateAdapter {
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jtm.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * An annotation that indicates the Gson {@link com.google.jtm.TypeAdapter} to use with a class.
+ * This is how hand written straight-line adapters replace the reflective binding for hot model
+ * classes: the annotated adapter is picked up automatically, ahead of the reflection based
+ * fallback, without registering it on a {@link com.google.jtm.GsonBuilder}. To have such an
+ * adapter generated at build time instead, use {@link GenerateAdapter}.
+ *
+ * <p>Here is an example of how this annotation is used:</p>
+ * <pre>
+ * &#64JsonAdapter(UserJsonAdapter.class)
+ * public class User {
+ *   public final String firstName, lastName;
+ *   private User(String firstName, String lastName) {
+ *     this.firstName = firstName;
+ *     this.lastName = lastName;
+ *   }
+ * }
+ * public class UserJsonAdapter extends TypeAdapter&lt;User&gt; {
+ *   &#64Override public void write(JsonWriter out, User user) throws IOException {
+ *     out.beginObject();
+ *     out.name("name");
+ *     out.value(user.firstName + " " + user.lastName);
+ *     out.endObject();
+ *   }
+ *   &#64Override public User read(JsonReader in) throws IOException {
+ *     in.beginObject();
+ *     in.nextName();
+ *     String[] nameParts = in.nextString().split(" ");
+ *     in.endObject();
+ *     return new User(nameParts[0], nameParts[1]);
+ *   }
+ * }
+ * </pre>
+ *
+ * <p>The value must be a {@link com.google.jtm.TypeAdapter} or a
+ * {@link com.google.jtm.TypeAdapterFactory} with a no-args constructor. Use a factory when the
+ * adapter needs the {@link com.google.jtm.Gson} instance, for example to read fields through
+ * {@code gson.getAdapter(boolean.class)} so that the type adapters registered on the builder
+ * (such as booleans encoded as ints) still apply.</p>
+ *
+ * <p>Adapters registered on the {@link com.google.jtm.GsonBuilder} take precedence over this
+ * annotation. The annotated adapter is responsible for the fields it reads and writes, so
+ * field level {@link SerializedName}, {@link Expose}, {@link Since} and {@link Until} must be
+ * honored by the adapter itself.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface JsonAdapter {
+
+  /** Either a {@link com.google.jtm.TypeAdapter} or {@link com.google.jtm.TypeAdapterFactory}. */
+  Class<?> value();
+}
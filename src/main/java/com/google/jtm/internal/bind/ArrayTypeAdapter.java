@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.google.jtm.Gson;
+import com.google.jtm.JsonSyntaxException;
 import com.google.jtm.TypeAdapter;
 import com.google.jtm.TypeAdapterFactory;
 import com.google.jtm.internal.$Gson$Types;
@@ -46,6 +47,16 @@ public final class ArrayTypeAdapter<E> extends TypeAdapter<Object> {
 
       Type componentType = $Gson$Types.getArrayComponentType(type);
       TypeAdapter<?> componentTypeAdapter = gson.getAdapter(TypeToken.get(componentType));
+      // arrays of primitives bound by the built-in adapters skip boxing and Array.set()
+      if (componentType == int.class && componentTypeAdapter == TypeAdapters.INTEGER) {
+        return (TypeAdapter<T>) new IntArrayTypeAdapter();
+      } else if (componentType == long.class && componentTypeAdapter == TypeAdapters.LONG) {
+        return (TypeAdapter<T>) new LongArrayTypeAdapter();
+      } else if (componentType == double.class && (componentTypeAdapter == TypeAdapters.DOUBLE
+          || componentTypeAdapter == TypeAdapters.FINITE_DOUBLE)) {
+        return (TypeAdapter<T>) new DoubleArrayTypeAdapter(
+            componentTypeAdapter == TypeAdapters.FINITE_DOUBLE);
+      }
       return new ArrayTypeAdapter(
               gson, componentTypeAdapter, $Gson$Types.getRawType(componentType));
     }
@@ -94,4 +105,148 @@ public final class ArrayTypeAdapter<E> extends TypeAdapter<Object> {
     }
     out.endArray();
   }
+
+  private static final class IntArrayTypeAdapter extends TypeAdapter<int[]> {
+    @Override public int[] read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+
+      int[] array = new int[16];
+      int size = 0;
+      in.beginArray();
+      try {
+        while (in.hasNext()) {
+          if (size == array.length) {
+            int[] newArray = new int[size * 2];
+            System.arraycopy(array, 0, newArray, 0, size);
+            array = newArray;
+          }
+          array[size++] = in.nextInt();
+        }
+      } catch (NumberFormatException e) {
+        throw new JsonSyntaxException(e);
+      }
+      in.endArray();
+      if (size == array.length) {
+        return array;
+      }
+      int[] result = new int[size];
+      System.arraycopy(array, 0, result, 0, size);
+      return result;
+    }
+
+    @Override public void write(JsonWriter out, int[] array) throws IOException {
+      if (array == null) {
+        out.nullValue();
+        return;
+      }
+
+      out.beginArray();
+      for (int value : array) {
+        out.value(value);
+      }
+      out.endArray();
+    }
+  }
+
+  private static final class LongArrayTypeAdapter extends TypeAdapter<long[]> {
+    @Override public long[] read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+
+      long[] array = new long[16];
+      int size = 0;
+      in.beginArray();
+      try {
+        while (in.hasNext()) {
+          if (size == array.length) {
+            long[] newArray = new long[size * 2];
+            System.arraycopy(array, 0, newArray, 0, size);
+            array = newArray;
+          }
+          array[size++] = in.nextLong();
+        }
+      } catch (NumberFormatException e) {
+        throw new JsonSyntaxException(e);
+      }
+      in.endArray();
+      if (size == array.length) {
+        return array;
+      }
+      long[] result = new long[size];
+      System.arraycopy(array, 0, result, 0, size);
+      return result;
+    }
+
+    @Override public void write(JsonWriter out, long[] array) throws IOException {
+      if (array == null) {
+        out.nullValue();
+        return;
+      }
+
+      out.beginArray();
+      for (long value : array) {
+        out.value(value);
+      }
+      out.endArray();
+    }
+  }
+
+  private static final class DoubleArrayTypeAdapter extends TypeAdapter<double[]> {
+    private final boolean finite;
+
+    DoubleArrayTypeAdapter(boolean finite) {
+      this.finite = finite;
+    }
+
+    @Override public double[] read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+
+      double[] array = new double[16];
+      int size = 0;
+      in.beginArray();
+      while (in.hasNext()) {
+        if (size == array.length) {
+          double[] newArray = new double[size * 2];
+          System.arraycopy(array, 0, newArray, 0, size);
+          array = newArray;
+        }
+        array[size++] = in.nextDouble();
+      }
+      in.endArray();
+      if (size == array.length) {
+        return array;
+      }
+      double[] result = new double[size];
+      System.arraycopy(array, 0, result, 0, size);
+      return result;
+    }
+
+    @Override public void write(JsonWriter out, double[] array) throws IOException {
+      if (array == null) {
+        out.nullValue();
+        return;
+      }
+
+      out.beginArray();
+      for (double value : array) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+          if (finite) {
+            TypeAdapters.checkValidFloatingPoint(value);
+          }
+          out.value((Number) value); // leniency is checked by the writer
+        } else {
+          out.value(value);
+        }
+      }
+      out.endArray();
+    }
+  }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jtm.internal.bind;
+
+import com.google.jtm.Gson;
+import com.google.jtm.JsonSyntaxException;
+import com.google.jtm.TypeAdapter;
+import com.google.jtm.stream.JsonReader;
+import com.google.jtm.stream.JsonToken;
+import com.google.jtm.stream.JsonWriter;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class of the adapters that {@code jtm-compiler} generates for classes annotated with
+ * {@link com.google.jtm.annotations.GenerateAdapter}. Only generated code should extend it.
+ *
+ * <p>A generated adapter declares the fields it binds in two public static arrays,
+ * {@code FIELD_CLASSES} and {@code FIELD_NAMES}, holding the declaring class and the Java name
+ * of every field in binding order: the fields of the class first, then those of its superclasses,
+ * like {@link ReflectiveTypeAdapterFactory}. {@link GeneratedTypeAdapterFactory} resolves the
+ * JSON names and exclusions of these fields for a {@link Gson} into a {@link Binding} and passes
+ * it to the public {@code (Gson, Binding)} constructor of the generated adapter, which refers to
+ * the fields by their index.</p>
+ */
+public abstract class GeneratedTypeAdapter<T> extends TypeAdapter<T> {
+  /** JSON name of every field, by index. */
+  protected final String[] names;
+  /** Whether the field at an index is written. */
+  protected final boolean[] serialized;
+  private final boolean[] deserialized;
+  /** Index of every field that is read, by JSON name. */
+  private final Map<String, Integer> indices;
+
+  protected GeneratedTypeAdapter(Binding binding) {
+    this.names = binding.names;
+    this.serialized = binding.serialized;
+    this.deserialized = binding.deserialized;
+    this.indices = binding.indices;
+  }
+
+  /**
+   * Returns the index of the field read from the JSON name, or -1 if there is none and the value
+   * must be skipped. Servers send the fields in the same order almost every time, so the field
+   * after the previous one, {@code hint}, is tried before the map.
+   */
+  protected final int fieldIndex(String name, int hint) {
+    if (hint < names.length && deserialized[hint] && names[hint].equals(name)) {
+      return hint;
+    }
+    Integer index = indices.get(name);
+    return index != null ? index : -1;
+  }
+
+  /**
+   * Wraps the adapter of a field the way {@link ReflectiveTypeAdapterFactory} writes fields, so a
+   * subclass value is written with the adapter of its runtime type.
+   */
+  protected static <F> TypeAdapter<F> runtimeTypeAdapter(Gson gson, TypeAdapter<F> delegate,
+      Type type) {
+    return new TypeAdapterRuntimeTypeWrapper<F>(gson, delegate, type);
+  }
+
+  /**
+   * Returns whether the adapter is the built-in one for the primitive or string type, which the
+   * generated code then replaces by direct calls on the reader and writer.
+   */
+  protected static boolean isBuiltIn(TypeAdapter<?> adapter, Class<?> type) {
+    if (type == int.class) {
+      return adapter == TypeAdapters.INTEGER;
+    } else if (type == long.class) {
+      return adapter == TypeAdapters.LONG;
+    } else if (type == double.class) {
+      return adapter == TypeAdapters.DOUBLE || adapter == TypeAdapters.FINITE_DOUBLE;
+    } else if (type == boolean.class) {
+      return adapter == TypeAdapters.BOOLEAN;
+    } else if (type == String.class) {
+      return adapter == TypeAdapters.STRING;
+    }
+    return false;
+  }
+
+  /** Returns whether a built-in double adapter rejects NaN and infinities. */
+  protected static boolean isFinite(TypeAdapter<?> adapter) {
+    return adapter == TypeAdapters.FINITE_DOUBLE;
+  }
+
+  // The readers below mirror the built-in adapters; a JSON null is handled by the caller.
+
+  protected static int nextInt(JsonReader in) throws IOException {
+    try {
+      return in.nextInt();
+    } catch (NumberFormatException e) {
+      throw new JsonSyntaxException(e);
+    }
+  }
+
+  protected static long nextLong(JsonReader in) throws IOException {
+    try {
+      return in.nextLong();
+    } catch (NumberFormatException e) {
+      throw new JsonSyntaxException(e);
+    }
+  }
+
+  protected static boolean nextBoolean(JsonReader in) throws IOException {
+    // support strings for compatibility with GSON 1.7
+    return in.peek() == JsonToken.STRING
+        ? Boolean.parseBoolean(in.nextString()) : in.nextBoolean();
+  }
+
+  /** Reads a string like {@link TypeAdapters#STRING}, including a JSON null. */
+  protected static String nextString(JsonReader in) throws IOException {
+    JsonToken peek = in.peek();
+    if (peek == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    /* coerce booleans to strings for backwards compatibility */
+    if (peek == JsonToken.BOOLEAN) {
+      return Boolean.toString(in.nextBoolean());
+    }
+    return in.nextString();
+  }
+
+  protected static void writeDouble(JsonWriter out, double value, boolean finite)
+      throws IOException {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      if (finite) {
+        TypeAdapters.checkValidFloatingPoint(value);
+      }
+      out.value((Number) value); // leniency is checked by the writer
+    } else {
+      out.value(value);
+    }
+  }
+
+  /**
+   * The JSON names and exclusions of the fields of a generated adapter for one {@link Gson}.
+   */
+  public static final class Binding {
+    final String[] names;
+    final boolean[] serialized;
+    final boolean[] deserialized;
+    final Map<String, Integer> indices;
+
+    Binding(String[] names, boolean[] serialized, boolean[] deserialized) {
+      this.names = names;
+      this.serialized = serialized;
+      this.deserialized = deserialized;
+      this.indices = new HashMap<String, Integer>();
+      for (int i = 0; i < names.length; i++) {
+        if (deserialized[i]) {
+          indices.put(names[i], i);
+        }
+      }
+    }
+  }
+}
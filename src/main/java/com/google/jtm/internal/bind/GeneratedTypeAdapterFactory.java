@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jtm.internal.bind;
+
+import com.google.jtm.Gson;
+import com.google.jtm.TypeAdapter;
+import com.google.jtm.TypeAdapterFactory;
+import com.google.jtm.annotations.GenerateAdapter;
+import com.google.jtm.reflect.TypeToken;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Uses the adapter generated at build time for classes annotated with {@link GenerateAdapter}.
+ * This must be registered right before the {@link ReflectiveTypeAdapterFactory}, which it falls
+ * back to when the generated class is missing, and whose naming and exclusion rules it applies
+ * to the generated fields.
+ */
+public final class GeneratedTypeAdapterFactory implements TypeAdapterFactory {
+  /** Appended to the class name, with nested class separators replaced by '_'. */
+  public static final String ADAPTER_SUFFIX = "_TypeAdapter";
+
+  private final ReflectiveTypeAdapterFactory reflective;
+
+  public GeneratedTypeAdapterFactory(ReflectiveTypeAdapterFactory reflective) {
+    this.reflective = reflective;
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+    Class<? super T> raw = type.getRawType();
+    if (!raw.isAnnotationPresent(GenerateAdapter.class)) {
+      return null;
+    }
+    Class<?> adapterClass;
+    try {
+      adapterClass = Class.forName(getAdapterName(raw), true, raw.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      return null; // the processor did not run, bind by reflection
+    }
+    try {
+      Class<?>[] fieldClasses = (Class<?>[]) adapterClass.getField("FIELD_CLASSES").get(null);
+      String[] fieldNames = (String[]) adapterClass.getField("FIELD_NAMES").get(null);
+      GeneratedTypeAdapter.Binding binding = bind(type, fieldClasses, fieldNames);
+      return (TypeAdapter<T>) adapterClass
+          .getConstructor(Gson.class, GeneratedTypeAdapter.Binding.class)
+          .newInstance(gson, binding);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException("Failed to create " + adapterClass.getName(), cause);
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to create " + adapterClass.getName(), e);
+    }
+  }
+
+  /** Returns the name of the adapter generated for the class. */
+  static String getAdapterName(Class<?> raw) {
+    String name = raw.getName();
+    int simpleStart = name.lastIndexOf('.') + 1;
+    return name.substring(0, simpleStart) + name.substring(simpleStart).replace('$', '_')
+        + ADAPTER_SUFFIX;
+  }
+
+  private GeneratedTypeAdapter.Binding bind(TypeToken<?> type, Class<?>[] fieldClasses,
+      String[] fieldNames) throws NoSuchFieldException {
+    int count = fieldNames.length;
+    String[] names = new String[count];
+    boolean[] serialized = new boolean[count];
+    boolean[] deserialized = new boolean[count];
+    Set<String> bound = new HashSet<String>();
+    for (int i = 0; i < count; i++) {
+      Field field = fieldClasses[i].getDeclaredField(fieldNames[i]);
+      serialized[i] = reflective.excludeField(field, true);
+      deserialized[i] = reflective.excludeField(field, false);
+      names[i] = reflective.getFieldName(field);
+      if ((serialized[i] || deserialized[i]) && !bound.add(names[i])) {
+        throw new IllegalArgumentException(type.getType()
+            + " declares multiple JSON fields named " + names[i]);
+      }
+    }
+    return new GeneratedTypeAdapter.Binding(names, serialized, deserialized);
+  }
+}
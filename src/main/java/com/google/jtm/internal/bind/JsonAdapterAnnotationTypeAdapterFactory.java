@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.jtm.internal.bind;
+
+import com.google.jtm.Gson;
+import com.google.jtm.TypeAdapter;
+import com.google.jtm.TypeAdapterFactory;
+import com.google.jtm.annotations.JsonAdapter;
+import com.google.jtm.internal.ConstructorConstructor;
+import com.google.jtm.reflect.TypeToken;
+
+/**
+ * Given a type T, looks for the annotation {@link JsonAdapter} and uses an instance of the
+ * specified class as the default type adapter. This must be registered before the reflective
+ * type adapter factory, which is the fallback for classes without an adapter.
+ */
+public final class JsonAdapterAnnotationTypeAdapterFactory implements TypeAdapterFactory {
+  private final ConstructorConstructor constructorConstructor;
+
+  public JsonAdapterAnnotationTypeAdapterFactory(ConstructorConstructor constructorConstructor) {
+    this.constructorConstructor = constructorConstructor;
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> targetType) {
+    JsonAdapter annotation = targetType.getRawType().getAnnotation(JsonAdapter.class);
+    if (annotation == null) {
+      return null;
+    }
+    return (TypeAdapter<T>) getTypeAdapter(constructorConstructor, gson, targetType, annotation);
+  }
+
+  static TypeAdapter<?> getTypeAdapter(ConstructorConstructor constructorConstructor, Gson gson,
+      TypeToken<?> type, JsonAdapter annotation) {
+    Class<?> value = annotation.value();
+    Object instance = constructorConstructor.get(TypeToken.get(value)).construct();
+
+    if (instance instanceof TypeAdapter) {
+      return ((TypeAdapter<?>) instance).nullSafe();
+    } else if (instance instanceof TypeAdapterFactory) {
+      TypeAdapter<?> adapter = ((TypeAdapterFactory) instance).create(gson, type);
+      if (adapter == null) {
+        throw new IllegalArgumentException(value.getName()
+            + " cannot create an adapter for " + type);
+      }
+      return adapter;
+    } else {
+      throw new IllegalArgumentException(
+          "@JsonAdapter value must be TypeAdapter or TypeAdapterFactory reference.");
+    }
+  }
+}
@@ -56,7 +56,7 @@ public final class ReflectiveTypeAdapterFactory implements TypeAdapterFactory {
     return !excluder.excludeClass(f.getType(), serialize) && !excluder.excludeField(f, serialize);
   }
 
-  private String getFieldName(Field f) {
+  String getFieldName(Field f) {
     SerializedName serializedName = f.getAnnotation(SerializedName.class);
     return serializedName == null ? fieldNamingPolicy.translateName(f) : serializedName.value();
   }
@@ -76,10 +76,20 @@ public final class ReflectiveTypeAdapterFactory implements TypeAdapterFactory {
       final Gson context, final Field field, final String name,
       final TypeToken<?> fieldType, boolean serialize, boolean deserialize) {
     final boolean isPrimitive = Primitives.isPrimitive(fieldType.getRawType());
+    final TypeAdapter<?> fieldAdapter = context.getAdapter(fieldType);
+
+    // primitives bound by the built-in adapters are read and written without boxing
+    if (isPrimitive) {
+      BoundField primitiveField = createPrimitiveBoundField(
+          field, name, fieldType.getRawType(), fieldAdapter, serialize, deserialize);
+      if (primitiveField != null) {
+        return primitiveField;
+      }
+    }
 
     // special casing primitives here saves ~5% on Android...
     return new BoundField(name, serialize, deserialize) {
-      final TypeAdapter<?> typeAdapter = context.getAdapter(fieldType);
+      final TypeAdapter<?> typeAdapter = fieldAdapter;
       @SuppressWarnings({"unchecked", "rawtypes"}) // the type adapter and field type always agree
       @Override void write(JsonWriter writer, Object value)
           throws IOException, IllegalAccessException {
@@ -98,6 +108,98 @@ public final class ReflectiveTypeAdapterFactory implements TypeAdapterFactory {
     };
   }
 
+  /**
+   * Returns a bound field that reads and writes {@code field} through the
+   * primitive accessors of {@link Field} and {@link JsonReader}, or null if
+   * the field's type adapter has been replaced and must be used instead.
+   */
+  private BoundField createPrimitiveBoundField(final Field field, String name, Class<?> type,
+      TypeAdapter<?> typeAdapter, boolean serialize, boolean deserialize) {
+    if (type == int.class && typeAdapter == TypeAdapters.INTEGER) {
+      return new BoundField(name, serialize, deserialize) {
+        @Override void write(JsonWriter writer, Object value)
+            throws IOException, IllegalAccessException {
+          writer.value(field.getInt(value));
+        }
+        @Override void read(JsonReader reader, Object value)
+            throws IOException, IllegalAccessException {
+          if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+          }
+          try {
+            field.setInt(value, reader.nextInt());
+          } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+          }
+        }
+      };
+    } else if (type == long.class && typeAdapter == TypeAdapters.LONG) {
+      return new BoundField(name, serialize, deserialize) {
+        @Override void write(JsonWriter writer, Object value)
+            throws IOException, IllegalAccessException {
+          writer.value(field.getLong(value));
+        }
+        @Override void read(JsonReader reader, Object value)
+            throws IOException, IllegalAccessException {
+          if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+          }
+          try {
+            field.setLong(value, reader.nextLong());
+          } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+          }
+        }
+      };
+    } else if (type == double.class
+        && (typeAdapter == TypeAdapters.DOUBLE || typeAdapter == TypeAdapters.FINITE_DOUBLE)) {
+      final boolean finite = typeAdapter == TypeAdapters.FINITE_DOUBLE;
+      return new BoundField(name, serialize, deserialize) {
+        @Override void write(JsonWriter writer, Object value)
+            throws IOException, IllegalAccessException {
+          double fieldValue = field.getDouble(value);
+          if (Double.isNaN(fieldValue) || Double.isInfinite(fieldValue)) {
+            if (finite) {
+              TypeAdapters.checkValidFloatingPoint(fieldValue);
+            }
+            writer.value((Number) fieldValue); // leniency is checked by the writer
+          } else {
+            writer.value(fieldValue);
+          }
+        }
+        @Override void read(JsonReader reader, Object value)
+            throws IOException, IllegalAccessException {
+          if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+          }
+          field.setDouble(value, reader.nextDouble());
+        }
+      };
+    } else if (type == boolean.class && typeAdapter == TypeAdapters.BOOLEAN) {
+      return new BoundField(name, serialize, deserialize) {
+        @Override void write(JsonWriter writer, Object value)
+            throws IOException, IllegalAccessException {
+          writer.value(field.getBoolean(value));
+        }
+        @Override void read(JsonReader reader, Object value)
+            throws IOException, IllegalAccessException {
+          JsonToken token = reader.peek();
+          if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+          }
+          // support strings for compatibility with GSON 1.7
+          field.setBoolean(value, token == JsonToken.STRING
+              ? Boolean.parseBoolean(reader.nextString()) : reader.nextBoolean());
+        }
+      };
+    }
+    return null;
+  }
+
   private Map<String, BoundField> getBoundFields(Gson context, TypeToken<?> type, Class<?> raw) {
     Map<String, BoundField> result = new LinkedHashMap<String, BoundField>();
     if (raw.isInterface()) {
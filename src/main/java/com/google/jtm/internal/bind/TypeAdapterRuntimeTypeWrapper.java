@@ -53,10 +53,10 @@ final class TypeAdapterRuntimeTypeWrapper<T> extends TypeAdapter<T> {
     Type runtimeType = getRuntimeTypeIfMoreSpecific(type, value);
     if (runtimeType != type) {
       TypeAdapter runtimeTypeAdapter = context.getAdapter(TypeToken.get(runtimeType));
-      if (!(runtimeTypeAdapter instanceof ReflectiveTypeAdapterFactory.Adapter)) {
+      if (!isFieldBinding(runtimeTypeAdapter)) {
         // The user registered a type adapter for the runtime type, so we will use that
         chosen = runtimeTypeAdapter;
-      } else if (!(delegate instanceof ReflectiveTypeAdapterFactory.Adapter)) {
+      } else if (!isFieldBinding(delegate)) {
         // The user registered a type adapter for Base class, so we prefer it over the
         // reflective type adapter for the runtime type
         chosen = delegate;
@@ -68,6 +68,15 @@ final class TypeAdapterRuntimeTypeWrapper<T> extends TypeAdapter<T> {
     chosen.write(out, value);
   }
 
+  /**
+   * Returns whether the adapter binds the fields of a class, by reflection or by generated code,
+   * rather than being registered by the user.
+   */
+  private static boolean isFieldBinding(TypeAdapter<?> adapter) {
+    return adapter instanceof ReflectiveTypeAdapterFactory.Adapter
+        || adapter instanceof GeneratedTypeAdapter;
+  }
+
   /**
    * Finds a compatible runtime type if it is more specific
    */
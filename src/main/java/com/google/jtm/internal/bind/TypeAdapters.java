@@ -299,6 +299,38 @@ public final class TypeAdapters {
     }
   };
 
+  /**
+   * Like {@link #DOUBLE}, but refuses to write NaN and infinities. This is the default
+   * unless special floating point values are enabled on the GsonBuilder.
+   */
+  public static final TypeAdapter<Number> FINITE_DOUBLE = new TypeAdapter<Number>() {
+    @Override
+    public Number read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      return in.nextDouble();
+    }
+    @Override
+    public void write(JsonWriter out, Number value) throws IOException {
+      if (value == null) {
+        out.nullValue();
+        return;
+      }
+      checkValidFloatingPoint(value.doubleValue());
+      out.value(value);
+    }
+  };
+
+  public static void checkValidFloatingPoint(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new IllegalArgumentException(value
+          + " is not a valid double value as per JSON specification. To override this"
+          + " behavior, use GsonBuilder.serializeSpecialFloatingPointValues() method.");
+    }
+  }
+
   public static final TypeAdapter<Number> NUMBER = new TypeAdapter<Number>() {
     @Override
     public Number read(JsonReader in) throws IOException {
@@ -192,26 +192,26 @@ public class JsonReader implements Closeable {
   private static final char[] NON_EXECUTE_PREFIX = ")]}'\n".toCharArray();
   private static final long MIN_INCOMPLETE_INTEGER = Long.MIN_VALUE / 10;
 
-  private static final int PEEKED_NONE = 0;
-  private static final int PEEKED_BEGIN_OBJECT = 1;
-  private static final int PEEKED_END_OBJECT = 2;
-  private static final int PEEKED_BEGIN_ARRAY = 3;
-  private static final int PEEKED_END_ARRAY = 4;
-  private static final int PEEKED_TRUE = 5;
-  private static final int PEEKED_FALSE = 6;
-  private static final int PEEKED_NULL = 7;
-  private static final int PEEKED_SINGLE_QUOTED = 8;
-  private static final int PEEKED_DOUBLE_QUOTED = 9;
-  private static final int PEEKED_UNQUOTED = 10;
+  static final int PEEKED_NONE = 0;
+  static final int PEEKED_BEGIN_OBJECT = 1;
+  static final int PEEKED_END_OBJECT = 2;
+  static final int PEEKED_BEGIN_ARRAY = 3;
+  static final int PEEKED_END_ARRAY = 4;
+  static final int PEEKED_TRUE = 5;
+  static final int PEEKED_FALSE = 6;
+  static final int PEEKED_NULL = 7;
+  static final int PEEKED_SINGLE_QUOTED = 8;
+  static final int PEEKED_DOUBLE_QUOTED = 9;
+  static final int PEEKED_UNQUOTED = 10;
   /** When this is returned, the string value is stored in peekedString. */
-  private static final int PEEKED_BUFFERED = 11;
-  private static final int PEEKED_SINGLE_QUOTED_NAME = 12;
-  private static final int PEEKED_DOUBLE_QUOTED_NAME = 13;
-  private static final int PEEKED_UNQUOTED_NAME = 14;
+  static final int PEEKED_BUFFERED = 11;
+  static final int PEEKED_SINGLE_QUOTED_NAME = 12;
+  static final int PEEKED_DOUBLE_QUOTED_NAME = 13;
+  static final int PEEKED_UNQUOTED_NAME = 14;
   /** When this is returned, the integer value is stored in peekedLong. */
-  private static final int PEEKED_LONG = 15;
-  private static final int PEEKED_NUMBER = 16;
-  private static final int PEEKED_EOF = 17;
+  static final int PEEKED_LONG = 15;
+  static final int PEEKED_NUMBER = 16;
+  static final int PEEKED_EOF = 17;
 
   /* State machine when parsing numbers */
   private static final int NUMBER_CHAR_NONE = 0;
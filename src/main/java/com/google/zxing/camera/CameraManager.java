@@ -17,6 +17,7 @@
 package com.google.zxing.camera;
 
 import android.content.Context;
+import android.graphics.ImageFormat;
 import android.graphics.PixelFormat;
 import android.graphics.Point;
 import android.graphics.Rect;
@@ -46,6 +47,11 @@ public final class CameraManager {
   private static final int MIN_FRAME_HEIGHT = 240;
   private static final int MAX_FRAME_WIDTH = 480;
   private static final int MAX_FRAME_HEIGHT = 360;
+  /**
+   * Number of preview buffers handed to the camera: one being decoded, one holding the newest
+   * frame for the next decode, and one being filled.
+   */
+  private static final int PREVIEW_BUFFER_COUNT = 3;
 
   private static CameraManager cameraManager;
 
@@ -69,6 +75,8 @@ public final class CameraManager {
   private boolean initialized;
   private boolean previewing;
   private final boolean useOneShotPreviewCallback;
+  /** Preview frames are written into buffers we recycle through Camera.addCallbackBuffer. */
+  private final boolean useBufferedPreviewCallback;
   /**
    * Preview frames are delivered here, which we pass on to the registered handler. Make sure to
    * clear the handler so it will only receive one message.
@@ -108,8 +116,10 @@ public final class CameraManager {
     // to run out of memory. We can't use SDK_INT because it was introduced in the Donut SDK.
     //useOneShotPreviewCallback = Integer.parseInt(Build.VERSION.SDK) > Build.VERSION_CODES.CUPCAKE;
     useOneShotPreviewCallback = Integer.parseInt(Build.VERSION.SDK) > 3; // 3 = Cupcake
+    useBufferedPreviewCallback = SDK_INT >= Build.VERSION_CODES.FROYO;
 
-    previewCallback = new PreviewCallback(configManager, useOneShotPreviewCallback);
+    previewCallback = new PreviewCallback(configManager, useOneShotPreviewCallback,
+        useBufferedPreviewCallback);
     autoFocusCallback = new AutoFocusCallback();
   }
 
@@ -161,6 +171,38 @@ public final class CameraManager {
     if (camera != null && !previewing) {
       camera.startPreview();
       previewing = true;
+      if (useBufferedPreviewCallback) {
+        addPreviewBuffers();
+      }
+    }
+  }
+
+  private void addPreviewBuffers() {
+    Point cameraResolution = configManager.getCameraResolution();
+    int bitsPerPixel = ImageFormat.getBitsPerPixel(configManager.getPreviewFormat());
+    if (bitsPerPixel <= 0) {
+      bitsPerPixel = 12; // NV21
+    }
+    int size = cameraResolution.x * cameraResolution.y * bitsPerPixel / 8;
+    for (int i = 0; i < PREVIEW_BUFFER_COUNT; i++) {
+      camera.addCallbackBuffer(new byte[size]);
+    }
+  }
+
+  /**
+   * Gives a preview frame received through the handler back to the camera once it has been
+   * decoded, so it is filled again instead of allocating a new one for every frame. The frame
+   * must not be used after this call.
+   */
+  public void releasePreviewFrame(byte[] data) {
+    Camera theCamera = camera;
+    if (theCamera != null && useBufferedPreviewCallback) {
+      try {
+        theCamera.addCallbackBuffer(data);
+      } catch (RuntimeException e) {
+        // The camera was released meanwhile, the buffer is simply dropped.
+        Log.w(TAG, "Can not recycle preview buffer", e);
+      }
     }
   }
 
@@ -169,7 +211,10 @@ public final class CameraManager {
    */
   public void stopPreview() {
     if (camera != null && previewing) {
-      if (!useOneShotPreviewCallback) {
+      if (useBufferedPreviewCallback) {
+        // Also drops the buffers queued with addCallbackBuffer.
+        camera.setPreviewCallbackWithBuffer(null);
+      } else if (!useOneShotPreviewCallback) {
         camera.setPreviewCallback(null);
       }
       camera.stopPreview();
@@ -190,7 +235,9 @@ public final class CameraManager {
   public void requestPreviewFrame(Handler handler, int message) {
     if (camera != null && previewing) {
       previewCallback.setHandler(handler, message);
-      if (useOneShotPreviewCallback) {
+      if (useBufferedPreviewCallback) {
+        camera.setPreviewCallbackWithBuffer(previewCallback);
+      } else if (useOneShotPreviewCallback) {
         camera.setOneShotPreviewCallback(previewCallback);
       } else {
         camera.setPreviewCallback(previewCallback);
@@ -327,6 +374,36 @@ public final class CameraManager {
         previewFormat + '/' + previewFormatString);
   }
 
+  /**
+   * Like {@link #buildLuminanceSource} but for a frame that is shown rotated 90 degrees
+   * clockwise (portrait). The data is not rotated; the source reads the framing rectangle with
+   * rotated indexing.
+   *
+   * @param data A preview frame, as delivered by the camera.
+   * @param width The width of the frame as delivered by the camera.
+   * @param height The height of the frame as delivered by the camera.
+   * @return A RotatedPlanarYUVLuminanceSource instance.
+   */
+  public RotatedPlanarYUVLuminanceSource buildRotatedLuminanceSource(byte[] data, int width,
+      int height) {
+    Rect rect = getFramingRectInPreview();
+    int previewFormat = configManager.getPreviewFormat();
+    String previewFormatString = configManager.getPreviewFormatString();
+    switch (previewFormat) {
+      case PixelFormat.YCbCr_420_SP:
+      case PixelFormat.YCbCr_422_SP:
+        return new RotatedPlanarYUVLuminanceSource(data, width, height, rect.left, rect.top,
+            rect.width(), rect.height());
+      default:
+        if ("yuv420p".equals(previewFormatString)) {
+          return new RotatedPlanarYUVLuminanceSource(data, width, height, rect.left, rect.top,
+              rect.width(), rect.height());
+        }
+    }
+    throw new IllegalArgumentException("Unsupported picture format: " +
+        previewFormat + '/' + previewFormatString);
+  }
+
 	public Context getContext() {
 		return context;
 	}
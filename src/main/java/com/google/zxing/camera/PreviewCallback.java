@@ -28,29 +28,56 @@ final class PreviewCallback implements Camera.PreviewCallback {
 
   private final CameraConfigurationManager configManager;
   private final boolean useOneShotPreviewCallback;
+  private final boolean useBufferedPreviewCallback;
   private Handler previewHandler;
   private int previewMessage;
+  /**
+   * With buffered callbacks, the newest frame that arrived while nobody was waiting. It is
+   * handed out on the next request, so decoding always starts from the newest frame instead of
+   * waiting for the next one.
+   */
+  private byte[] latestFrame;
 
-  PreviewCallback(CameraConfigurationManager configManager, boolean useOneShotPreviewCallback) {
+  PreviewCallback(CameraConfigurationManager configManager, boolean useOneShotPreviewCallback,
+      boolean useBufferedPreviewCallback) {
     this.configManager = configManager;
     this.useOneShotPreviewCallback = useOneShotPreviewCallback;
+    this.useBufferedPreviewCallback = useBufferedPreviewCallback;
   }
 
   void setHandler(Handler previewHandler, int previewMessage) {
+    if (previewHandler == null) {
+      // Preview stopped, the camera dropped its buffers and so do we.
+      latestFrame = null;
+    } else if (latestFrame != null) {
+      byte[] frame = latestFrame;
+      latestFrame = null;
+      sendFrame(previewHandler, previewMessage, frame);
+      return;
+    }
     this.previewHandler = previewHandler;
     this.previewMessage = previewMessage;
   }
 
-  public void onPreviewFrame(byte[] data, Camera camera) {
+  private void sendFrame(Handler handler, int what, byte[] data) {
     Point cameraResolution = configManager.getCameraResolution();
-    if (!useOneShotPreviewCallback) {
+    Message message = handler.obtainMessage(what, cameraResolution.x, cameraResolution.y, data);
+    message.sendToTarget();
+  }
+
+  public void onPreviewFrame(byte[] data, Camera camera) {
+    if (!useOneShotPreviewCallback && !useBufferedPreviewCallback) {
       camera.setPreviewCallback(null);
     }
     if (previewHandler != null) {
-      Message message = previewHandler.obtainMessage(previewMessage, cameraResolution.x,
-          cameraResolution.y, data);
-      message.sendToTarget();
+      sendFrame(previewHandler, previewMessage, data);
       previewHandler = null;
+    } else if (useBufferedPreviewCallback) {
+      // The buffered callback stays installed: keep the newest frame, the older one goes back.
+      if (latestFrame != null) {
+        camera.addCallbackBuffer(latestFrame);
+      }
+      latestFrame = data;
     } else {
       Log.d(TAG, "Got preview callback, but no handler for it");
     }
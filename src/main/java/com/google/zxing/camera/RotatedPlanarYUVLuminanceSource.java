@@ -0,0 +1,139 @@
+/*
+ * Copyright 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.camera;
+
+import com.google.zxing.LuminanceSource;
+
+import android.graphics.Bitmap;
+
+/**
+ * A {@link PlanarYUVLuminanceSource} for portrait scanning: it presents the camera frame rotated
+ * 90 degrees clockwise and cropped to a rectangle given in rotated coordinates, reading the Y
+ * channel straight from the unrotated camera buffer. Only the cropped pixels are ever touched,
+ * so neither a rotated copy of the frame nor a second crop copy is made.
+ *
+ * The rotated image is dataHeight wide and dataWidth tall; rotated pixel (x, y) is
+ * yuvData[y + (dataHeight - 1 - x) * dataWidth].
+ */
+public final class RotatedPlanarYUVLuminanceSource extends LuminanceSource {
+  private final byte[] yuvData;
+  private final int dataWidth;
+  private final int dataHeight;
+  private final int left;
+  private final int top;
+  private byte[] matrix;
+
+  /**
+   * @param yuvData The unrotated camera frame.
+   * @param dataWidth The width of the unrotated frame.
+   * @param dataHeight The height of the unrotated frame.
+   * @param left The crop rectangle in rotated coordinates.
+   */
+  public RotatedPlanarYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int left,
+      int top, int width, int height) {
+    super(width, height);
+
+    if (left < 0 || top < 0 || left + width > dataHeight || top + height > dataWidth) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+
+    this.yuvData = yuvData;
+    this.dataWidth = dataWidth;
+    this.dataHeight = dataHeight;
+    this.left = left;
+    this.top = top;
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      row = new byte[width];
+    }
+    if (matrix != null) {
+      System.arraycopy(matrix, y * width, row, 0, width);
+      return row;
+    }
+    // Rotated row y is unrotated column (top + y), walked from the bottom of the frame up.
+    int inputOffset = (dataHeight - 1 - left) * dataWidth + top + y;
+    byte[] yuv = yuvData;
+    for (int x = 0; x < width; x++) {
+      row[x] = yuv[inputOffset];
+      inputOffset -= dataWidth;
+    }
+    return row;
+  }
+
+  @Override
+  public byte[] getMatrix() {
+    if (matrix != null) {
+      return matrix;
+    }
+    int width = getWidth();
+    int height = getHeight();
+    byte[] result = new byte[width * height];
+    byte[] yuv = yuvData;
+    // Walk the unrotated rows so reads stay sequential; each one fills a rotated column.
+    for (int x = 0; x < width; x++) {
+      int inputOffset = (dataHeight - 1 - left - x) * dataWidth + top;
+      int outputOffset = x;
+      for (int y = 0; y < height; y++) {
+        result[outputOffset] = yuv[inputOffset + y];
+        outputOffset += width;
+      }
+    }
+    matrix = result;
+    return result;
+  }
+
+  @Override
+  public boolean isCropSupported() {
+    return true;
+  }
+
+  @Override
+  public LuminanceSource crop(int left, int top, int width, int height) {
+    return new RotatedPlanarYUVLuminanceSource(yuvData, dataWidth, dataHeight, this.left + left,
+        this.top + top, width, height);
+  }
+
+  public int getDataWidth() {
+    return dataWidth;
+  }
+
+  public int getDataHeight() {
+    return dataHeight;
+  }
+
+  public Bitmap renderCroppedGreyscaleBitmap() {
+    int width = getWidth();
+    int height = getHeight();
+    int[] pixels = new int[width * height];
+    byte[] cropped = getMatrix();
+    for (int i = 0; i < pixels.length; i++) {
+      int grey = cropped[i] & 0xff;
+      pixels[i] = 0xFF000000 | (grey * 0x00010101);
+    }
+
+    Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+    return bitmap;
+  }
+}
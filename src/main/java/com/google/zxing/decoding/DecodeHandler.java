@@ -25,26 +25,28 @@ import android.os.Message;
 import android.util.Log;
 
 import com.cylee.lib.R;
-import com.google.zxing.BinaryBitmap;
+import com.google.zxing.BarcodeFormat;
 import com.google.zxing.CaptureActivity;
 import com.google.zxing.DecodeHintType;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
 import com.google.zxing.camera.CameraManager;
-import com.google.zxing.camera.PlanarYUVLuminanceSource;
-import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.camera.RotatedPlanarYUVLuminanceSource;
 
 final class DecodeHandler extends Handler {
 
     private static final String TAG = DecodeHandler.class.getSimpleName();
 
+    /** The same barcode found again within this time is not reported a second time. */
+    private static final long DUPLICATE_RESULT_WINDOW_MS = 3000L;
+
     private final CaptureActivity activity;
-    private final MultiFormatReader multiFormatReader;
+    private final ParallelDecoder decoder;
+    private String lastResultText;
+    private BarcodeFormat lastResultFormat;
+    private long lastResultTime;
 
     DecodeHandler(CaptureActivity activity, Hashtable<DecodeHintType, Object> hints) {
-        multiFormatReader = new MultiFormatReader();
-        multiFormatReader.setHints(hints);
+        decoder = new ParallelDecoder(hints);
         this.activity = activity;
     }
 
@@ -53,14 +55,15 @@ final class DecodeHandler extends Handler {
         if (message.what == R.id.decode) {
             decode((byte[]) message.obj, message.arg1, message.arg2);
         } else if (message.what == R.id.quit) {
+            decoder.shutdown();
             Looper.myLooper().quit();
         }
     }
 
     /**
      * Decode the data within the viewfinder rectangle, and time how long it
-     * took. For efficiency, reuse the same reader objects from one decode to
-     * the next.
+     * took. The formats and binarizers are tried in parallel by the
+     * {@link ParallelDecoder}.
      * 
      * @param data The YUV preview frame.
      * @param width The width of the preview frame.
@@ -70,25 +73,17 @@ final class DecodeHandler extends Handler {
         long start = System.currentTimeMillis();
         Result rawResult = null;
 
-        // modify here
-        byte[] rotatedData = new byte[data.length];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++)
-                rotatedData[x * height + height - y - 1] = data[x + y * width];
-        }
-        int tmp = width; // Here we are swapping, that's the difference to #11
-        width = height;
-        height = tmp;
-
-        PlanarYUVLuminanceSource source = CameraManager.get().buildLuminanceSource(rotatedData,
-                width, height);
-        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+        // The frame is shown rotated to portrait, the source reads the framing rect with rotated
+        // indexing instead of rotating the whole frame first.
+        RotatedPlanarYUVLuminanceSource source = CameraManager.get().buildRotatedLuminanceSource(
+                data, width, height);
         try {
-            rawResult = multiFormatReader.decodeWithState(bitmap);
-        } catch (ReaderException re) {
-            // continue
-        } finally {
-            multiFormatReader.reset();
+            rawResult = decoder.decode(source);
+        } catch (InterruptedException ie) {
+            // quitting, report it as not found
+        }
+        if (rawResult != null && isDuplicate(rawResult)) {
+            rawResult = null;
         }
 
         if (rawResult != null) {
@@ -100,11 +95,30 @@ final class DecodeHandler extends Handler {
             bundle.putParcelable(DecodeThread.BARCODE_BITMAP, source.renderCroppedGreyscaleBitmap());
             message.setData(bundle);
             // Log.d(TAG, "Sending decode succeeded message...");
+            CameraManager.get().releasePreviewFrame(data);
             message.sendToTarget();
         } else {
+            CameraManager.get().releasePreviewFrame(data);
             Message message = Message.obtain(activity.getHandler(), R.id.decode_failed);
             message.sendToTarget();
         }
     }
 
+    /**
+     * Returns true if the result is the barcode reported last, within
+     * {@link #DUPLICATE_RESULT_WINDOW_MS}; otherwise remembers it.
+     */
+    private boolean isDuplicate(Result result) {
+        long now = System.currentTimeMillis();
+        if (result.getBarcodeFormat() == lastResultFormat && result.getText() != null
+                && result.getText().equals(lastResultText)
+                && now - lastResultTime < DUPLICATE_RESULT_WINDOW_MS) {
+            return true;
+        }
+        lastResultText = result.getText();
+        lastResultFormat = result.getBarcodeFormat();
+        lastResultTime = now;
+        return false;
+    }
+
 }
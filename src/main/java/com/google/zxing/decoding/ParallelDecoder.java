@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.decoding;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * Decodes a frame by running one strategy per format family (1D, QR Code, Data Matrix, others)
+ * on a small worker pool. The {@link HybridBinarizer} strategies run first, in parallel; the
+ * {@link GlobalHistogramBinarizer} ones only start if none of those found a barcode. The first
+ * strategy that finds a barcode wins and strategies not started yet are skipped.
+ *
+ * The zxing readers never check for interruption, so strategies already running when another one
+ * wins keep running to their end. While any of them is still busy, {@link #decode} skips new
+ * frames instead of queueing them behind that stale work.
+ *
+ * Every strategy run uses its own reader and {@link BinaryBitmap}, none of them are thread safe.
+ * The {@link LuminanceSource} is shared, so its matrix is computed before the strategies start;
+ * after that the source no longer reads the camera buffer, which may then be recycled.
+ */
+final class ParallelDecoder {
+
+  private static final String TAG = ParallelDecoder.class.getSimpleName();
+
+  private static final int BINARIZER_HYBRID = 0;
+  private static final int BINARIZER_GLOBAL_HISTOGRAM = 1;
+
+  /** Strategies per binarizer, indexed by BINARIZER_*. */
+  private final List<List<Strategy>> phases = new ArrayList<List<Strategy>>(2);
+  private final ThreadPoolExecutor executor;
+  /** Number of strategy runs executing right now, of this frame or of an earlier one. */
+  private final AtomicInteger running = new AtomicInteger();
+
+  ParallelDecoder(Hashtable<DecodeHintType, Object> hints) {
+    Vector<BarcodeFormat> formats = getFormats(hints);
+    List<Vector<BarcodeFormat>> families = new ArrayList<Vector<BarcodeFormat>>(4);
+    Vector<BarcodeFormat> others = new Vector<BarcodeFormat>(formats);
+    addFamily(families, others, DecodeFormatManager.QR_CODE_FORMATS);
+    addFamily(families, others, DecodeFormatManager.ONE_D_FORMATS);
+    addFamily(families, others, DecodeFormatManager.DATA_MATRIX_FORMATS);
+    if (!others.isEmpty()) {
+      families.add(others);
+    }
+
+    // The results point callback ends in the viewfinder, which is not thread safe.
+    Object callback = hints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+    ResultPointCallback pointCallback = callback instanceof ResultPointCallback
+        ? new SynchronizedResultPointCallback((ResultPointCallback) callback) : null;
+
+    for (int binarizer = BINARIZER_HYBRID; binarizer <= BINARIZER_GLOBAL_HISTOGRAM; binarizer++) {
+      List<Strategy> strategies = new ArrayList<Strategy>(families.size());
+      for (Vector<BarcodeFormat> family : families) {
+        Hashtable<DecodeHintType, Object> familyHints = new Hashtable<DecodeHintType, Object>(hints);
+        familyHints.put(DecodeHintType.POSSIBLE_FORMATS, family);
+        if (pointCallback != null) {
+          familyHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, pointCallback);
+        }
+        strategies.add(new Strategy(familyHints, binarizer));
+      }
+      phases.add(strategies);
+    }
+
+    int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), families.size()));
+    executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          private int count;
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "zxing-decode-" + count++);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Vector<BarcodeFormat> getFormats(Hashtable<DecodeHintType, Object> hints) {
+    Object formats = hints.get(DecodeHintType.POSSIBLE_FORMATS);
+    if (formats instanceof Vector && !((Vector<BarcodeFormat>) formats).isEmpty()) {
+      return (Vector<BarcodeFormat>) formats;
+    }
+    Vector<BarcodeFormat> all = new Vector<BarcodeFormat>();
+    all.addAll(DecodeFormatManager.ONE_D_FORMATS);
+    all.addAll(DecodeFormatManager.QR_CODE_FORMATS);
+    all.addAll(DecodeFormatManager.DATA_MATRIX_FORMATS);
+    return all;
+  }
+
+  private static void addFamily(List<Vector<BarcodeFormat>> families, Vector<BarcodeFormat> remaining,
+      Vector<BarcodeFormat> family) {
+    Vector<BarcodeFormat> found = new Vector<BarcodeFormat>(family.size());
+    for (BarcodeFormat format : family) {
+      if (remaining.remove(format)) {
+        found.add(format);
+      }
+    }
+    if (!found.isEmpty()) {
+      families.add(found);
+    }
+  }
+
+  /**
+   * Decodes the source with the {@link HybridBinarizer} strategies in parallel, then with the
+   * {@link GlobalHistogramBinarizer} ones if those all missed, and returns the first result.
+   *
+   * @return The first barcode found, or null if no strategy found one or the frame was skipped
+   *         because strategies of an earlier frame are still running.
+   */
+  Result decode(LuminanceSource source) throws InterruptedException {
+    if (running.get() > 0) {
+      return null;
+    }
+    // Shared by all strategies, compute it once here instead of racing in every worker.
+    source.getMatrix();
+
+    Result result = null;
+    for (int i = 0; i < phases.size() && result == null; i++) {
+      result = decode(source, phases.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Runs the strategies in parallel and waits for the first result. When it returns null every
+   * strategy has finished; when it returns a result, the losers that already started may still
+   * be running.
+   */
+  private Result decode(LuminanceSource source, List<Strategy> strategies)
+      throws InterruptedException {
+    final AtomicBoolean found = new AtomicBoolean();
+    CompletionService<Result> completionService = new ExecutorCompletionService<Result>(executor);
+    List<Future<Result>> futures = new ArrayList<Future<Result>>(strategies.size());
+    for (Strategy strategy : strategies) {
+      futures.add(completionService.submit(new StrategyTask(strategy, source, found, running)));
+    }
+    Result result = null;
+    try {
+      for (int i = 0; i < futures.size() && result == null; i++) {
+        try {
+          result = completionService.take().get();
+        } catch (ExecutionException e) {
+          Log.w(TAG, "Decode strategy failed", e.getCause());
+        }
+      }
+    } finally {
+      found.set(true);
+      // Drops the strategies still queued; interrupting the running ones would be pointless.
+      for (Future<Result> future : futures) {
+        future.cancel(false);
+      }
+    }
+    return result;
+  }
+
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private static final class Strategy {
+    final Hashtable<DecodeHintType, Object> hints;
+    final int binarizer;
+
+    Strategy(Hashtable<DecodeHintType, Object> hints, int binarizer) {
+      this.hints = hints;
+      this.binarizer = binarizer;
+    }
+  }
+
+  private static final class StrategyTask implements Callable<Result> {
+    private final Strategy strategy;
+    private final LuminanceSource source;
+    private final AtomicBoolean found;
+    private final AtomicInteger running;
+
+    StrategyTask(Strategy strategy, LuminanceSource source, AtomicBoolean found,
+        AtomicInteger running) {
+      this.strategy = strategy;
+      this.source = source;
+      this.found = found;
+      this.running = running;
+    }
+
+    @Override
+    public Result call() {
+      running.incrementAndGet();
+      try {
+        if (found.get()) {
+          return null;
+        }
+        Binarizer binarizer = strategy.binarizer == BINARIZER_HYBRID
+            ? new HybridBinarizer(source) : new GlobalHistogramBinarizer(source);
+        MultiFormatReader reader = new MultiFormatReader();
+        reader.setHints(strategy.hints);
+        try {
+          Result result = reader.decodeWithState(new BinaryBitmap(binarizer));
+          return found.compareAndSet(false, true) ? result : null;
+        } catch (ReaderException re) {
+          return null;
+        }
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+  }
+
+  private static final class SynchronizedResultPointCallback implements ResultPointCallback {
+    private final ResultPointCallback delegate;
+
+    SynchronizedResultPointCallback(ResultPointCallback delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public synchronized void foundPossibleResultPoint(ResultPoint point) {
+      delegate.foundPossibleResultPoint(point);
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+import com.android.volley.ElasticDispatchEngineTest.TestRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * Latency of {@link FixedDispatchEngine} (the 4 threads of the default RequestQueue),
+ * {@link ElasticDispatchEngine} and {@link LaneDispatchEngine} with their defaults, on a
+ * simulated network where every request just sleeps:
+ * <ul>
+ *     <li>8 downloads of 400 ms from one CDN host, all queued at the start</li>
+ *     <li>240 API calls of 20 ms and image loads of 40 ms, one every 5 ms over two hosts,
+ *     every 20th API call IMMEDIATE</li>
+ * </ul>
+ * The latency of a request is from being queued to being finished.
+ *
+ * <p>Not a unit test, run main() from the IDE or with the test classpath.</p>
+ */
+@SuppressWarnings("rawtypes")
+public final class DispatchEngineBenchmark {
+    private static final int DOWNLOADS = 8;
+    private static final long DOWNLOAD_MS = 400;
+    private static final int CALLS = 240;
+    private static final long CALL_INTERVAL_MS = 5;
+    private static final long API_MS = 20;
+    private static final long IMAGE_MS = 40;
+
+    private interface EngineFactory {
+        DispatchEngine create();
+    }
+
+    private static final EngineFactory FIXED = new EngineFactory() {
+        @Override
+        public DispatchEngine create() {
+            return new FixedDispatchEngine(4);
+        }
+    };
+
+    private static final EngineFactory ELASTIC = new EngineFactory() {
+        @Override
+        public DispatchEngine create() {
+            return new ElasticDispatchEngine() {
+                @Override
+                protected String getHostKey(Request request) {
+                    return ElasticDispatchEngineTest.urlHost(request);
+                }
+            };
+        }
+    };
+
+    private static final EngineFactory LANE = new EngineFactory() {
+        @Override
+        public DispatchEngine create() {
+            return new LaneDispatchEngine() {
+                @Override
+                protected String getHostKey(Request request) {
+                    return ElasticDispatchEngineTest.urlHost(request);
+                }
+            };
+        }
+    };
+
+    private static long sSink;
+
+    private DispatchEngineBenchmark() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Object[][] engines = {{"fixed(4)", FIXED}, {"elastic", ELASTIC}, {"lane", LANE}};
+        // once to warm up the JIT and the thread pools, then measured
+        for (Object[] engine : engines) {
+            run((EngineFactory) engine[1]);
+        }
+        for (Object[] engine : engines) {
+            Map<Request, Long> latencies = run((EngineFactory) engine[1]);
+            System.out.printf("%-9s api p50 %4d p95 %4d  immediate max %4d  image p95 %4d"
+                    + "  download max %5d  (ms)%n", engine[0],
+                    percentile(latencies, Request.Lane.API, null, 50),
+                    percentile(latencies, Request.Lane.API, null, 95),
+                    percentile(latencies, Request.Lane.API, Request.Priority.IMMEDIATE, 100),
+                    percentile(latencies, Request.Lane.IMAGE, null, 95),
+                    percentile(latencies, Request.Lane.DOWNLOAD, null, 100));
+        }
+        if (sSink == Long.MIN_VALUE) {
+            System.out.println(sSink);
+        }
+    }
+
+    /** Returns the latency of every request. */
+    private static Map<Request, Long> run(EngineFactory factory) throws InterruptedException {
+        final Map<Request, Long> queued = new ConcurrentHashMap<Request, Long>();
+        final Map<Request, Long> latencies = new ConcurrentHashMap<Request, Long>();
+        final CountDownLatch done = new CountDownLatch(DOWNLOADS + CALLS);
+        NetworkProcessor processor = new NetworkProcessor(null, null, null, null) {
+            @Override
+            public void process(Request request) {
+                Request.Lane lane = request.getLane();
+                try {
+                    Thread.sleep(lane == Request.Lane.DOWNLOAD ? DOWNLOAD_MS
+                            : lane == Request.Lane.IMAGE ? IMAGE_MS : API_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                latencies.put(request, (System.nanoTime() - queued.get(request)) / 1000000);
+                done.countDown();
+            }
+        };
+        BlockingQueue<Request> queue = new PriorityBlockingQueue<Request>();
+        DispatchEngine engine = factory.create();
+        engine.start(queue, processor);
+        try {
+            int sequence = 0;
+            for (int i = 0; i < DOWNLOADS; i++) {
+                Request request = new TestRequest("http://cdn.example.com/file" + i,
+                        Request.Priority.NORMAL, Request.Lane.DOWNLOAD, sequence++);
+                queued.put(request, System.nanoTime());
+                queue.add(request);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                long due = start + i * CALL_INTERVAL_MS * 1000000;
+                long wait = (due - System.nanoTime()) / 1000000;
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+                Request request;
+                if (i % 2 == 0) {
+                    request = new TestRequest("http://api.example.com/call" + i,
+                            i % 40 == 0 ? Request.Priority.IMMEDIATE : Request.Priority.NORMAL,
+                            Request.Lane.API, sequence++);
+                } else {
+                    request = new TestRequest("http://img.example.com/image" + i,
+                            Request.Priority.NORMAL, Request.Lane.IMAGE, sequence++);
+                }
+                queued.put(request, System.nanoTime());
+                queue.add(request);
+            }
+            done.await();
+        } finally {
+            engine.stop();
+        }
+        return latencies;
+    }
+
+    private static long percentile(Map<Request, Long> latencies, Request.Lane lane,
+            Request.Priority priority, int percentile) {
+        List<Long> values = new ArrayList<Long>();
+        for (Map.Entry<Request, Long> entry : latencies.entrySet()) {
+            Request request = entry.getKey();
+            if (request.getLane() == lane
+                    && (priority == null || request.getPriority() == priority)) {
+                values.add(entry.getValue());
+            }
+        }
+        Long[] sorted = values.toArray(new Long[values.size()]);
+        Arrays.sort(sorted);
+        long value = sorted[Math.max(0, (sorted.length * percentile + 99) / 100 - 1)];
+        sSink += value;
+        return value;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("rawtypes")
+public class ElasticDispatchEngineTest {
+    private static final long TIMEOUT_MS = 10 * 1000;
+
+    private final BlockingQueue<Request> mQueue = new PriorityBlockingQueue<Request>();
+    private DispatchEngine mEngine;
+
+    @After
+    public void tearDown() {
+        if (mEngine != null) {
+            mEngine.stop();
+        }
+    }
+
+    /** The host is taken from the URL with java.net, Uri only returns defaults here. */
+    static String urlHost(Request request) {
+        String host = URI.create(request.getUrl()).getHost();
+        return host == null ? "" : host;
+    }
+
+    /** A request with a fixed priority, lane and sequence that counts how often it parks. */
+    static final class TestRequest extends Request<Object> {
+        private final Priority mPriority;
+        private final Lane mLane;
+        final AtomicInteger mParked = new AtomicInteger();
+
+        TestRequest(String url, Priority priority, Lane lane, int sequence) {
+            super(Method.GET, url, null);
+            mPriority = priority;
+            mLane = lane;
+            setSequence(sequence);
+        }
+
+        @Override
+        public Priority getPriority() {
+            return mPriority;
+        }
+
+        @Override
+        public Lane getLane() {
+            return mLane;
+        }
+
+        @Override
+        public void addMarker(String tag) {
+            if ("network-host-parked".equals(tag)) {
+                mParked.incrementAndGet();
+            }
+            super.addMarker(tag);
+        }
+
+        @Override
+        protected Response<Object> parseNetworkResponse(NetworkResponse response) {
+            return null;
+        }
+
+        @Override
+        protected void deliverResponse(Object response) {
+        }
+    }
+
+    /**
+     * Stands in for the network: records the order requests start in and the concurrency per
+     * host, and holds every request until the gate opens.
+     */
+    static class GatedProcessor extends NetworkProcessor {
+        final CountDownLatch mGate = new CountDownLatch(1);
+        private final long mWorkMs;
+        private final List<Request> mStarted = new ArrayList<Request>();
+        private final Map<String, Integer> mActivePerHost = new HashMap<String, Integer>();
+        private int mActive;
+        private int mMaxActive;
+        private int mMaxActivePerHost;
+        private int mFinished;
+
+        /**
+         * @param workMs How long each request takes once the gate is open
+         */
+        GatedProcessor(long workMs) {
+            super(null, null, null, null);
+            mWorkMs = workMs;
+        }
+
+        @Override
+        public void process(Request request) {
+            String host = urlHost(request);
+            synchronized (this) {
+                mStarted.add(request);
+                Integer active = mActivePerHost.get(host);
+                int count = active == null ? 1 : active + 1;
+                mActivePerHost.put(host, count);
+                mMaxActivePerHost = Math.max(mMaxActivePerHost, count);
+                mMaxActive = Math.max(mMaxActive, ++mActive);
+                notifyAll();
+            }
+            try {
+                mGate.await();
+                if (mWorkMs > 0) {
+                    Thread.sleep(mWorkMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                synchronized (this) {
+                    mActivePerHost.put(host, mActivePerHost.get(host) - 1);
+                    mActive--;
+                    mFinished++;
+                    notifyAll();
+                }
+            }
+        }
+
+        void open() {
+            mGate.countDown();
+        }
+
+        synchronized List<Request> started() {
+            return new ArrayList<Request>(mStarted);
+        }
+
+        synchronized int maxActive() {
+            return mMaxActive;
+        }
+
+        synchronized int maxActivePerHost() {
+            return mMaxActivePerHost;
+        }
+
+        synchronized void awaitStarted(int count) throws InterruptedException {
+            long end = System.currentTimeMillis() + TIMEOUT_MS;
+            while (mStarted.size() < count && System.currentTimeMillis() < end) {
+                wait(end - System.currentTimeMillis());
+            }
+            assertTrue("started " + mStarted.size() + " of " + count, mStarted.size() >= count);
+        }
+
+        synchronized void awaitFinished(int count) throws InterruptedException {
+            long end = System.currentTimeMillis() + TIMEOUT_MS;
+            while (mFinished < count && System.currentTimeMillis() < end) {
+                wait(end - System.currentTimeMillis());
+            }
+            assertEquals(count, mFinished);
+        }
+    }
+
+    static void awaitParked(TestRequest... requests) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        for (TestRequest request : requests) {
+            while (request.mParked.get() == 0 && System.currentTimeMillis() < end) {
+                Thread.sleep(5);
+            }
+            assertTrue(request.getUrl(), request.mParked.get() > 0);
+        }
+    }
+
+    /** The order a host at its limit of one runs the parked requests in. */
+    static final String[] PARKED_ORDER = {"i1", "h1", "h2", "n1", "l1", "l2"};
+
+    /** Parks six requests in a scrambled order behind a running one for the same host. */
+    static TestRequest[] parkBehind(BlockingQueue<Request> queue, GatedProcessor processor,
+            Request.Lane... lanes) throws InterruptedException {
+        queue.add(new TestRequest("http://a.example.com/first", Request.Priority.NORMAL,
+                lanes[0], 0));
+        processor.awaitStarted(1);
+        String[] names = {"l1", "h1", "n1", "h2", "l2", "i1"};
+        Request.Priority[] priorities = {Request.Priority.LOW, Request.Priority.HIGH,
+                Request.Priority.NORMAL, Request.Priority.HIGH, Request.Priority.LOW,
+                Request.Priority.IMMEDIATE};
+        TestRequest[] requests = new TestRequest[names.length];
+        for (int i = 0; i < names.length; i++) {
+            requests[i] = new TestRequest("http://a.example.com/" + names[i], priorities[i],
+                    lanes[i % lanes.length], i + 1);
+            queue.add(requests[i]);
+        }
+        awaitParked(requests);
+        return requests;
+    }
+
+    static List<String> startedNames(GatedProcessor processor) {
+        List<String> names = new ArrayList<String>();
+        for (Request request : processor.started()) {
+            String url = request.getUrl();
+            names.add(url.substring(url.lastIndexOf('/') + 1));
+        }
+        return names;
+    }
+
+    private ElasticDispatchEngine startEngine(int maxThreads, int maxPerHost,
+            NetworkProcessor processor) {
+        ElasticDispatchEngine engine = new ElasticDispatchEngine(maxThreads, maxPerHost,
+                ElasticDispatchEngine.DEFAULT_KEEP_ALIVE_MS) {
+            @Override
+            protected String getHostKey(Request request) {
+                return urlHost(request);
+            }
+        };
+        engine.start(mQueue, processor);
+        mEngine = engine;
+        return engine;
+    }
+
+    @Test
+    public void neverExceedsHostLimit() throws InterruptedException {
+        GatedProcessor processor = new GatedProcessor(10);
+        startEngine(6, 2, processor);
+        // most requests go to one host, which would otherwise take every thread
+        String[] hosts = {"a.example.com", "a.example.com", "a.example.com", "b.example.com",
+                "c.example.com"};
+        for (int i = 0; i < 30; i++) {
+            mQueue.add(new TestRequest("http://" + hosts[i % hosts.length] + "/" + i,
+                    Request.Priority.NORMAL, Request.Lane.API, i));
+        }
+        processor.open();
+        processor.awaitFinished(30);
+        assertEquals(2, processor.maxActivePerHost());
+        assertTrue(processor.maxActive() <= 6);
+    }
+
+    @Test
+    public void parkedRequestsKeepTheirOrder() throws InterruptedException {
+        GatedProcessor processor = new GatedProcessor(0);
+        startEngine(4, 1, processor);
+        parkBehind(mQueue, processor, Request.Lane.API);
+        processor.open();
+        processor.awaitFinished(7);
+        List<String> expected = new ArrayList<String>();
+        expected.add("first");
+        expected.addAll(Arrays.asList(PARKED_ORDER));
+        assertEquals(expected, startedNames(processor));
+    }
+
+    @Test
+    public void otherHostsPassParkedRequests() throws InterruptedException {
+        GatedProcessor processor = new GatedProcessor(0);
+        startEngine(4, 1, processor);
+        parkBehind(mQueue, processor, Request.Lane.API);
+        mQueue.add(new TestRequest("http://b.example.com/other", Request.Priority.LOW,
+                Request.Lane.API, 10));
+        processor.awaitStarted(2);
+        assertEquals("other", startedNames(processor).get(1));
+        processor.open();
+        processor.awaitFinished(8);
+    }
+
+    @Test
+    public void stopHandsBackParkedRequests() throws InterruptedException {
+        GatedProcessor processor = new GatedProcessor(0);
+        ElasticDispatchEngine engine = startEngine(2, 1, processor);
+        mQueue.add(new TestRequest("http://a.example.com/first", Request.Priority.NORMAL,
+                Request.Lane.API, 0));
+        processor.awaitStarted(1);
+        TestRequest parked = new TestRequest("http://a.example.com/parked",
+                Request.Priority.NORMAL, Request.Lane.API, 1);
+        mQueue.add(parked);
+        awaitParked(parked);
+        mQueue.add(new TestRequest("http://b.example.com/second", Request.Priority.NORMAL,
+                Request.Lane.API, 2));
+        processor.awaitStarted(2);
+        // both worker slots are taken, so this one stays in the queue
+        TestRequest queued = new TestRequest("http://c.example.com/queued",
+                Request.Priority.NORMAL, Request.Lane.API, 3);
+        mQueue.add(queued);
+
+        engine.stop();
+        assertEquals(2, mQueue.size());
+        assertTrue(mQueue.contains(parked));
+        assertTrue(mQueue.contains(queued));
+        // the requests in flight still finish
+        processor.open();
+        processor.awaitFinished(2);
+
+        engine.start(mQueue, processor);
+        processor.awaitFinished(4);
+        // both run at once on the restarted engine, in either order
+        assertEquals(new HashSet<String>(Arrays.asList("parked", "queued")),
+                new HashSet<String>(startedNames(processor).subList(2, 4)));
+        assertFalse(mQueue.contains(parked));
+    }
+}
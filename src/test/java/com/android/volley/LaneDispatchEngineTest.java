@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+import com.android.volley.ElasticDispatchEngineTest.GatedProcessor;
+import com.android.volley.ElasticDispatchEngineTest.TestRequest;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("rawtypes")
+public class LaneDispatchEngineTest {
+    private final BlockingQueue<Request> mQueue = new PriorityBlockingQueue<Request>();
+    private DispatchEngine mEngine;
+
+    @After
+    public void tearDown() {
+        if (mEngine != null) {
+            mEngine.stop();
+        }
+    }
+
+    private LaneDispatchEngine startEngine(int api, int image, int download, int upload,
+            int reservedImmediate, int maxPerHost, NetworkProcessor processor) {
+        LaneDispatchEngine engine = new LaneDispatchEngine(api, image, download, upload,
+                reservedImmediate, maxPerHost) {
+            @Override
+            protected String getHostKey(Request request) {
+                return ElasticDispatchEngineTest.urlHost(request);
+            }
+        };
+        engine.start(mQueue, processor);
+        mEngine = engine;
+        return engine;
+    }
+
+    private static void awaitQueueDepth(LaneDispatchEngine engine, Request.Lane lane, int depth)
+            throws InterruptedException {
+        long end = System.currentTimeMillis() + 10 * 1000;
+        while (engine.getQueueDepth(lane) != depth && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        assertEquals(depth, engine.getQueueDepth(lane));
+    }
+
+    @Test
+    public void immediateRequestsPassSaturatedLanes() throws InterruptedException {
+        GatedProcessor processor = new GatedProcessor(0);
+        LaneDispatchEngine engine = startEngine(1, 1, 1, 1, 1, 0, processor);
+        Request.Lane[] lanes = Request.Lane.values();
+        for (int i = 0; i < lanes.length; i++) {
+            mQueue.add(new TestRequest("http://h" + i + ".example.com/busy",
+                    Request.Priority.NORMAL, lanes[i], i));
+        }
+        processor.awaitStarted(lanes.length);
+
+        mQueue.add(new TestRequest("http://a.example.com/normal", Request.Priority.NORMAL,
+                Request.Lane.API, 10));
+        // the reserved slots are not for downloads, however urgent
+        mQueue.add(new TestRequest("http://b.example.com/download", Request.Priority.IMMEDIATE,
+                Request.Lane.DOWNLOAD, 11));
+        mQueue.add(new TestRequest("http://c.example.com/urgent", Request.Priority.IMMEDIATE,
+                Request.Lane.API, 12));
+        processor.awaitStarted(lanes.length + 1);
+        List<String> started = ElasticDispatchEngineTest.startedNames(processor);
+        assertEquals("urgent", started.get(lanes.length));
+        assertEquals(1, engine.getReservedActiveCount());
+        assertEquals(1, engine.getActiveCount(Request.Lane.API));
+        assertEquals(1, engine.getQueueDepth(Request.Lane.DOWNLOAD));
+
+        processor.open();
+        processor.awaitFinished(lanes.length + 3);
+        assertEquals(0, engine.getReservedActiveCount());
+    }
+
+    @Test
+    public void busyLaneDoesNotDelayOtherLanes() throws InterruptedException {
+        GatedProcessor processor = new GatedProcessor(0);
+        LaneDispatchEngine engine = startEngine(4, 3, 1, 1, 0, 0, processor);
+        for (int i = 0; i < 3; i++) {
+            mQueue.add(new TestRequest("http://cdn.example.com/file" + i,
+                    Request.Priority.NORMAL, Request.Lane.DOWNLOAD, i));
+        }
+        processor.awaitStarted(1);
+        awaitQueueDepth(engine, Request.Lane.DOWNLOAD, 2);
+        mQueue.add(new TestRequest("http://api.example.com/feed", Request.Priority.LOW,
+                Request.Lane.API, 3));
+        processor.awaitStarted(2);
+        assertEquals("feed", ElasticDispatchEngineTest.startedNames(processor).get(1));
+        processor.open();
+        processor.awaitFinished(4);
+    }
+
+    @Test
+    public void neverExceedsHostLimitAcrossLanes() throws InterruptedException {
+        GatedProcessor processor = new GatedProcessor(10);
+        startEngine(4, 3, 2, 1, 2, 2, processor);
+        String[] hosts = {"a.example.com", "a.example.com", "a.example.com", "b.example.com",
+                "c.example.com"};
+        Request.Lane[] lanes = Request.Lane.values();
+        Request.Priority[] priorities = Request.Priority.values();
+        for (int i = 0; i < 40; i++) {
+            mQueue.add(new TestRequest("http://" + hosts[i % hosts.length] + "/" + i,
+                    priorities[i % priorities.length], lanes[i % lanes.length], i));
+        }
+        processor.open();
+        processor.awaitFinished(40);
+        assertEquals(2, processor.maxActivePerHost());
+        assertTrue(processor.maxActive() <= 12);
+    }
+
+    @Test
+    public void parkedRequestsKeepTheirOrder() throws InterruptedException {
+        GatedProcessor processor = new GatedProcessor(0);
+        startEngine(4, 3, 2, 1, 0, 1, processor);
+        ElasticDispatchEngineTest.parkBehind(mQueue, processor, Request.Lane.API,
+                Request.Lane.IMAGE);
+        processor.open();
+        processor.awaitFinished(7);
+        List<String> expected = new ArrayList<String>();
+        expected.add("first");
+        expected.addAll(Arrays.asList(ElasticDispatchEngineTest.PARKED_ORDER));
+        assertEquals(expected, ElasticDispatchEngineTest.startedNames(processor));
+    }
+
+    @Test
+    public void stopHandsBackQueuedAndParkedRequests() throws InterruptedException {
+        GatedProcessor processor = new GatedProcessor(0);
+        LaneDispatchEngine engine = startEngine(2, 1, 1, 1, 0, 1, processor);
+        mQueue.add(new TestRequest("http://a.example.com/first", Request.Priority.NORMAL,
+                Request.Lane.API, 0));
+        processor.awaitStarted(1);
+        TestRequest parked = new TestRequest("http://a.example.com/parked",
+                Request.Priority.NORMAL, Request.Lane.API, 1);
+        mQueue.add(parked);
+        ElasticDispatchEngineTest.awaitParked(parked);
+        mQueue.add(new TestRequest("http://b.example.com/second", Request.Priority.NORMAL,
+                Request.Lane.API, 2));
+        processor.awaitStarted(2);
+        // the API lane is full, so this one waits in the lane queue
+        TestRequest queued = new TestRequest("http://c.example.com/queued",
+                Request.Priority.NORMAL, Request.Lane.API, 3);
+        mQueue.add(queued);
+        awaitQueueDepth(engine, Request.Lane.API, 1);
+
+        engine.stop();
+        assertEquals(2, mQueue.size());
+        assertTrue(mQueue.contains(parked));
+        assertTrue(mQueue.contains(queued));
+        assertEquals(0, engine.getQueueDepth(Request.Lane.API));
+        // the requests in flight still finish
+        processor.open();
+        processor.awaitFinished(2);
+
+        engine.start(mQueue, processor);
+        processor.awaitFinished(4);
+        assertEquals(new HashSet<String>(Arrays.asList("parked", "queued")),
+                new HashSet<String>(ElasticDispatchEngineTest.startedNames(processor)
+                        .subList(2, 4)));
+        assertFalse(mQueue.contains(parked));
+    }
+}
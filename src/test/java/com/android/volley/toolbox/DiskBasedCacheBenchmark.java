@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import com.android.volley.Cache;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Latency and allocation of a {@link DiskBasedCache} hit: get(), getBody() and the stream
+ * path get() used before, which decoded the header with {@link
+ * DiskBasedCache.CacheHeader#readHeader(InputStream)} through a BufferedInputStream and then
+ * copied the rest of the file into a new array.
+ *
+ * <p>The new paths include the index lookup and the READ journal record; the old path only
+ * reads the file, so the comparison favours it. Allocations are per call as reported by the
+ * HotSpot thread MXBean, and are not printed on other VMs.</p>
+ *
+ * <p>Not a unit test, run main() from the IDE or with the test classpath.</p>
+ */
+public final class DiskBasedCacheBenchmark {
+    private static final int WARMUP_MS = 2000;
+    private static final int MEASURE_MS = 3000;
+
+    private static final int[] BODY_SIZES = {2 * 1024, 32 * 1024, 512 * 1024};
+
+    private interface Hit {
+        int run(DiskBasedCache cache, String key) throws IOException;
+    }
+
+    private static final Hit OLD_STREAM = new Hit() {
+        @Override
+        public int run(DiskBasedCache cache, String key) throws IOException {
+            File file = cache.getFileForKey(key);
+            CountingInputStream cis =
+                    new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                DiskBasedCache.CacheHeader.readHeader(cis);
+                return streamToBytes(cis, (int) (file.length() - cis.bytesRead)).length;
+            } finally {
+                cis.close();
+            }
+        }
+    };
+
+    private static final Hit GET = new Hit() {
+        @Override
+        public int run(DiskBasedCache cache, String key) {
+            return cache.get(key).data.length;
+        }
+    };
+
+    private static final Hit GET_BODY = new Hit() {
+        @Override
+        public int run(DiskBasedCache cache, String key) {
+            ByteBuffer body = cache.getBody(key).body;
+            // touch the last byte so a mapped body is actually paged in
+            return body.remaining() + (body.remaining() > 0 ? body.get(body.limit() - 1) : 0);
+        }
+    };
+
+    private static int sSink;
+
+    private DiskBasedCacheBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir = File.createTempFile("volley-bench", "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        try {
+            DiskBasedCache cache = new DiskBasedCache(dir, 64 * 1024 * 1024);
+            cache.initialize();
+            Random random = new Random(22);
+            for (int size : BODY_SIZES) {
+                String key = "http://example.com/api/feed?page=" + size;
+                cache.put(key, createEntry(random, size));
+                System.out.printf("%d KB body%n", size / 1024);
+                Result old = measure(OLD_STREAM, cache, key);
+                report("stream, readHeader", old, old);
+                report("get()", old, measure(GET, cache, key));
+                report("getBody()", old, measure(GET_BODY, cache, key));
+            }
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+        if (sSink == Integer.MIN_VALUE) {
+            System.out.println(sSink);
+        }
+    }
+
+    private static Cache.Entry createEntry(Random random, int size) {
+        Cache.Entry entry = new Cache.Entry();
+        entry.data = new byte[size];
+        random.nextBytes(entry.data);
+        entry.etag = "\"5a1b2c3d4e5f\"";
+        entry.serverDate = System.currentTimeMillis();
+        entry.ttl = Long.MAX_VALUE;
+        entry.softTtl = Long.MAX_VALUE;
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", "application/json; charset=utf-8");
+        headers.put("Cache-Control", "max-age=600");
+        headers.put("Date", "Sun, 18 Oct 2026 03:08:06 GMT");
+        headers.put("ETag", entry.etag);
+        headers.put("Server", "nginx");
+        headers.put("Vary", "Accept-Encoding");
+        entry.responseHeaders = headers;
+        return entry;
+    }
+
+    private static final class Result {
+        final double us;
+        final long bytes;
+
+        Result(double us, long bytes) {
+            this.us = us;
+            this.bytes = bytes;
+        }
+    }
+
+    private static void report(String name, Result baseline, Result result) {
+        if (result.bytes < 0) {
+            System.out.printf("  %-20s %9.1f us/call  x%.2f%n", name, result.us,
+                    baseline.us / result.us);
+        } else {
+            System.out.printf("  %-20s %9.1f us/call  x%.2f  %9d B/call%n", name, result.us,
+                    baseline.us / result.us, result.bytes);
+        }
+    }
+
+    private static Result measure(Hit hit, DiskBasedCache cache, String key) throws IOException {
+        run(hit, cache, key, WARMUP_MS);
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        int count = run(hit, cache, key, MEASURE_MS);
+        double us = (System.nanoTime() - start) / 1000.0 / count;
+        return new Result(us, allocated < 0 ? -1 : (allocatedBytes() - allocated) / count);
+    }
+
+    private static int run(Hit hit, DiskBasedCache cache, String key, long durationMs)
+            throws IOException {
+        long end = System.nanoTime() + durationMs * 1000000L;
+        int count = 0;
+        while (System.nanoTime() < end) {
+            sSink += hit.run(cache, key);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Bytes allocated by this thread so far, or -1 if the VM does not report it. Looked up
+     * reflectively, the management classes are not in android.jar.
+     */
+    private static long allocatedBytes() {
+        try {
+            Object bean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            Method method = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) method.invoke(bean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /** The stream the old get() counted the header bytes with. */
+    private static class CountingInputStream extends FilterInputStream {
+        int bytesRead = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1) {
+                bytesRead++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int result = super.read(buffer, offset, count);
+            if (result != -1) {
+                bytesRead += result;
+            }
+            return result;
+        }
+    }
+
+    private static byte[] streamToBytes(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int count;
+        int pos = 0;
+        while (pos < length && ((count = in.read(bytes, pos, length - pos)) != -1)) {
+            pos += count;
+        }
+        if (pos != length) {
+            throw new IOException("Expected " + length + " bytes, read " + pos + " bytes");
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import com.android.volley.Cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskBasedCacheTest {
+
+    private static final int MAX_SIZE = 16 * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    static Cache.Entry createEntry(byte[] data, String etag) {
+        Cache.Entry entry = new Cache.Entry();
+        entry.data = data;
+        entry.etag = etag;
+        entry.serverDate = 1234L;
+        entry.ttl = Long.MAX_VALUE;
+        entry.softTtl = Long.MAX_VALUE;
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", "application/json");
+        entry.responseHeaders = headers;
+        return entry;
+    }
+
+    /** Body sizes around the 8 KB first read and the 128 KB mapping threshold. */
+    private static final int[] BODY_SIZES = {
+            0, 1, 100, 8 * 1024 - 200, 8 * 1024, 20000, 128 * 1024 - 300, 128 * 1024, 300000
+    };
+
+    static byte[] randomData(Random random, int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Reads grow the journal until it is compacted on the prune executor, while other
+     * threads keep reading and writing. Whatever was appended during the compaction must
+     * survive into the new journal.
+     */
+    @Test
+    public void compactionKeepsConcurrentRecords() throws Exception {
+        File dir = folder.newFolder("cache");
+        final DiskBasedCache cache = new DiskBasedCache(dir, MAX_SIZE);
+        cache.initialize();
+        final int keys = 20;
+        final Map<String, String> expected = new HashMap<String, String>();
+        Random random = new Random(21);
+        for (int i = 0; i < keys; i++) {
+            byte[] data = randomData(random, 100 + random.nextInt(2000));
+            cache.put("key" + i, createEntry(data, "v0"));
+            expected.put("key" + i, "v0");
+        }
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Map<String, String>[] written = newMaps(4);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random(thread);
+                        for (int i = 0; i < 3000; i++) {
+                            // every thread owns its own keys, so the last write is known
+                            String key = "key" + (thread + 4 * random.nextInt(keys / 4));
+                            if (i % 50 == 0) {
+                                byte[] data = randomData(random, 100 + random.nextInt(2000));
+                                cache.put(key, createEntry(data, "v" + i));
+                                written[thread].put(key, "v" + i);
+                            } else {
+                                assertNotNull(key, cache.get(key));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        for (Map<String, String> map : written) {
+            expected.putAll(map);
+        }
+
+        // Rebuilds the index from the journal; waits for a running compaction, and one that
+        // is still queued finds nothing left to do.
+        cache.initialize();
+        for (Map.Entry<String, String> e : expected.entrySet()) {
+            Cache.Entry entry = cache.get(e.getKey());
+            assertNotNull(e.getKey(), entry);
+            // the etag comes from the journal, the data from the file
+            assertEquals(e.getKey(), e.getValue(), entry.etag);
+        }
+    }
+
+    /** READ records alone schedule a compaction, which keeps the entry. */
+    @Test
+    public void readsCompactJournal() throws Exception {
+        File dir = folder.newFolder("cache");
+        DiskBasedCache cache = new DiskBasedCache(dir, MAX_SIZE);
+        cache.initialize();
+        // about 2100 * 200 bytes of READ records before the compaction
+        String key = "http://example.com/" + new String(new char[180]).replace('\0', 'k');
+        cache.put(key, createEntry(new byte[] {1, 2, 3}, "e"));
+        File journal = new File(dir, "journal");
+        for (int i = 0; i < 2100; i++) {
+            assertNotNull(cache.get(key));
+        }
+        // reads that came after the compaction stay in the journal, far fewer than 2100
+        long compacted = 1000L * key.length();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (journal.length() > compacted && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("journal was not compacted: " + journal.length(),
+                journal.length() <= compacted);
+        DiskBasedCache reopened = new DiskBasedCache(dir, MAX_SIZE);
+        reopened.initialize();
+        Cache.Entry entry = reopened.get(key);
+        assertArrayEquals(new byte[] {1, 2, 3}, entry.data);
+        assertEquals("e", entry.etag);
+    }
+
+    /**
+     * get() and getBody() skip the header in the file without decoding it; the body they
+     * return must be exactly what the old decoder finds after the header. Covers the heap
+     * and mapped views, and headers that do not fit in the first read.
+     */
+    @Test
+    public void skipHeaderRoundTrip() throws Exception {
+        File dir = folder.newFolder("cache");
+        DiskBasedCache cache = new DiskBasedCache(dir, MAX_SIZE);
+        cache.initialize();
+        Random random = new Random(22);
+        Map<String, Cache.Entry> entries = new HashMap<String, Cache.Entry>();
+        for (int size : BODY_SIZES) {
+            for (int headerBytes : new int[] {0, 100, 10000}) {
+                String key = "http://example.com/" + size + "/" + headerBytes;
+                Cache.Entry entry = createEntry(randomData(random, size),
+                        headerBytes == 100 ? null : "\u00e9tag-" + size);
+                Map<String, String> headers = new HashMap<String, String>(entry.responseHeaders);
+                if (headerBytes > 0) {
+                    char[] value = new char[headerBytes];
+                    for (int i = 0; i < value.length; i++) {
+                        value[i] = (char) (i % 3 == 0 ? '\u4e2d' : 'a' + i % 26);
+                    }
+                    headers.put("X-Long", new String(value));
+                }
+                entry.responseHeaders = headers;
+                cache.put(key, entry);
+                entries.put(key, entry);
+            }
+        }
+        assertEntries(cache, entries);
+        DiskBasedCache reopened = new DiskBasedCache(dir, MAX_SIZE);
+        reopened.initialize();
+        assertEntries(reopened, entries);
+
+        for (Map.Entry<String, Cache.Entry> e : entries.entrySet()) {
+            InputStream in = new BufferedInputStream(
+                    new FileInputStream(cache.getFileForKey(e.getKey())));
+            try {
+                DiskBasedCache.CacheHeader header = DiskBasedCache.CacheHeader.readHeader(in);
+                assertEquals(e.getKey(), header.key);
+                byte[] data = new byte[e.getValue().data.length];
+                int read = 0;
+                while (read < data.length) {
+                    read += in.read(data, read, data.length - read);
+                }
+                assertArrayEquals(e.getKey(), e.getValue().data, data);
+                assertEquals(e.getKey(), -1, in.read());
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /** A file cut off inside its header is a miss, and the entry is dropped. */
+    @Test
+    public void truncatedHeaderIsRemoved() throws Exception {
+        DiskBasedCache cache = new DiskBasedCache(folder.newFolder("cache"), MAX_SIZE);
+        cache.initialize();
+        Cache.Entry entry = createEntry(randomData(new Random(22), 1000), "etag");
+        Map<String, String> headers = new HashMap<String, String>(entry.responseHeaders);
+        char[] value = new char[10000];
+        Arrays.fill(value, 'a');
+        headers.put("X-Long", new String(value));
+        entry.responseHeaders = headers;
+        // inside the magic, the key, and the long header before and after the first 8 KB
+        for (int length : new int[] {2, 40, 5000, 9000}) {
+            String key = "http://example.com/truncated/" + length;
+            cache.put(key, entry);
+            File file = cache.getFileForKey(key);
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+            assertNull(key, cache.getBody(key));
+            assertFalse(key, file.exists());
+            assertNull(key, cache.get(key));
+        }
+    }
+
+    private static void assertEntries(DiskBasedCache cache, Map<String, Cache.Entry> entries) {
+        for (Map.Entry<String, Cache.Entry> e : entries.entrySet()) {
+            String key = e.getKey();
+            Cache.Entry expected = e.getValue();
+
+            Cache.Entry entry = cache.get(key);
+            assertArrayEquals(key, expected.data, entry.data);
+            assertNull(key, entry.body);
+            assertEquals(key, expected.etag, entry.etag);
+            assertEquals(key, expected.responseHeaders, entry.responseHeaders);
+
+            Cache.Entry view = cache.getBody(key);
+            assertNull(key, view.data);
+            assertEquals(key, expected.etag, view.etag);
+            assertEquals(key, expected.responseHeaders, view.responseHeaders);
+            // files of 128 KB or more, header included, are mapped, the rest read to an array
+            boolean mapped = cache.getFileForKey(key).length() >= 128 * 1024;
+            assertEquals(key, mapped, view.body.isDirect());
+            assertFalse(key, view.body.isDirect() && view.body.hasArray());
+            assertEquals(key, 0, view.body.position());
+            ByteBuffer body = view.body.duplicate();
+            byte[] data = new byte[body.remaining()];
+            body.get(data);
+            assertArrayEquals(key, expected.data, data);
+            assertArrayEquals(key, expected.data, view.ensureData());
+        }
+    }
+
+    /**
+     * A scan of one-off entries mixed into reads of a small hot set: W-TinyLFU keeps the
+     * hot set where LRU loses part of it, and either way the journal restores an index
+     * that matches the files.
+     */
+    @Test
+    public void evictionPolicyAcrossRestart() throws Exception {
+        int lruHits = replayScan(folder.newFolder("lru"), new LruEvictionPolicy(),
+                new LruEvictionPolicy());
+        int tinyLfuHits = replayScan(folder.newFolder("tinylfu"), new TinyLfuEvictionPolicy(),
+                new TinyLfuEvictionPolicy());
+        assertTrue(lruHits + " vs " + tinyLfuHits, tinyLfuHits > lruHits);
+    }
+
+    private static int replayScan(File dir, EvictionPolicy policy, EvictionPolicy reopenedPolicy)
+            throws Exception {
+        DiskBasedCache cache = new DiskBasedCache(dir, 200000, policy);
+        cache.initialize();
+        Random random = new Random(25);
+        Map<String, Integer> sizes = new HashMap<String, Integer>();
+        int hits = 0;
+        for (int i = 0; i < 3000; i++) {
+            String key = i % 100 < 30 ? "scan" + i : "hot" + random.nextInt(20);
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                byte[] data = randomData(random, 5000 + random.nextInt(5000));
+                cache.put(key, createEntry(data, null));
+                sizes.put(key, data.length);
+            }
+        }
+
+        DiskBasedCache reopened = new DiskBasedCache(dir, 200000, reopenedPolicy);
+        reopened.initialize();
+        int hot = 0;
+        for (Map.Entry<String, Integer> e : sizes.entrySet()) {
+            Cache.Entry entry = reopened.get(e.getKey());
+            if (entry != null) {
+                assertEquals(e.getKey(), (int) e.getValue(), entry.data.length);
+                hot += e.getKey().startsWith("hot") ? 1 : 0;
+            }
+        }
+        if (policy instanceof TinyLfuEvictionPolicy) {
+            assertEquals(20, hot);
+        }
+        return hits;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String>[] newMaps(int count) {
+        Map<String, String>[] maps = new Map[count];
+        for (int i = 0; i < count; i++) {
+            maps[i] = new HashMap<String, String>();
+        }
+        return maps;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Hit ratio and time per request of {@link LruEvictionPolicy} and
+ * {@link TinyLfuEvictionPolicy}, replaying synthetic traces through the put-on-miss,
+ * prune-to-90% accounting of {@link DiskBasedCache} (see
+ * {@link TinyLfuEvictionPolicyTest.Replay}). The traces:
+ * <ul>
+ *     <li>zipf+scans: 2000 keys of 2-20 KB drawn with a zipf(0.9) popularity, and a scan
+ *     of 300 one-off 30 KB keys every 2000 requests, like a thumbnail list</li>
+ *     <li>zipf: the same keys without scans</li>
+ *     <li>sliding: 200 keys of 5-15 KB in a window that moves on every 50 requests, where
+ *     recency is all that matters</li>
+ * </ul>
+ *
+ * <p>Not a unit test, run main() from the IDE or with the test classpath.</p>
+ */
+public final class EvictionPolicyBenchmark {
+    private static final int REQUESTS = 200000;
+    private static final long[] CAPACITIES = {2 * 1024 * 1024, 5 * 1024 * 1024};
+
+    private interface PolicyFactory {
+        EvictionPolicy create();
+    }
+
+    private static final PolicyFactory LRU = new PolicyFactory() {
+        @Override
+        public EvictionPolicy create() {
+            return new LruEvictionPolicy();
+        }
+    };
+
+    private static final PolicyFactory TINY_LFU = new PolicyFactory() {
+        @Override
+        public EvictionPolicy create() {
+            return new TinyLfuEvictionPolicy();
+        }
+    };
+
+    private static int sSink;
+
+    private EvictionPolicyBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        Map<String, Integer> sizes = new HashMap<String, Integer>();
+        double[] popularity = zipf(2000, 0.9);
+        String[] zipfScans = new String[REQUESTS];
+        String[] zipf = new String[REQUESTS];
+        String[] sliding = new String[REQUESTS];
+        int scanned = 0;
+        for (int i = 0, n = 0; n < REQUESTS; i++) {
+            if (i % 2000 == 0) {
+                for (int j = 0; j < 300 && n < REQUESTS; j++) {
+                    String key = "scan" + scanned++;
+                    sizes.put(key, 30000);
+                    zipfScans[n++] = key;
+                }
+            }
+            if (n < REQUESTS) {
+                String key = "hot" + sample(popularity, random);
+                if (!sizes.containsKey(key)) {
+                    sizes.put(key, 2000 + random.nextInt(18000));
+                }
+                zipfScans[n++] = key;
+            }
+        }
+        for (int i = 0; i < REQUESTS; i++) {
+            String key = "hot" + sample(popularity, random);
+            if (!sizes.containsKey(key)) {
+                sizes.put(key, 2000 + random.nextInt(18000));
+            }
+            zipf[i] = key;
+        }
+        for (int i = 0; i < REQUESTS; i++) {
+            String key = "window" + (i / 50 + random.nextInt(200));
+            if (!sizes.containsKey(key)) {
+                sizes.put(key, 5000 + random.nextInt(10000));
+            }
+            sliding[i] = key;
+        }
+
+        Object[][] traces = {{"zipf+scans", zipfScans}, {"zipf", zipf}, {"sliding", sliding}};
+        for (long capacity : CAPACITIES) {
+            for (Object[] trace : traces) {
+                String[] keys = (String[]) trace[1];
+                // once to warm up the JIT, then measured
+                replay(LRU, capacity, keys, sizes);
+                replay(TINY_LFU, capacity, keys, sizes);
+                long start = System.nanoTime();
+                double lru = replay(LRU, capacity, keys, sizes);
+                double lruUs = (System.nanoTime() - start) / 1000.0 / keys.length;
+                start = System.nanoTime();
+                double tinyLfu = replay(TINY_LFU, capacity, keys, sizes);
+                double tinyLfuUs = (System.nanoTime() - start) / 1000.0 / keys.length;
+                System.out.printf("%-10s %d MB  LRU %.3f (%.2f us/req)  W-TinyLFU %.3f"
+                        + " (%.2f us/req)%n", trace[0], capacity / (1024 * 1024), lru, lruUs,
+                        tinyLfu, tinyLfuUs);
+            }
+        }
+        if (sSink == Integer.MIN_VALUE) {
+            System.out.println(sSink);
+        }
+    }
+
+    /** Returns the hit ratio. */
+    private static double replay(PolicyFactory factory, long capacity, String[] keys,
+            Map<String, Integer> sizes) {
+        TinyLfuEvictionPolicyTest.Replay replay =
+                new TinyLfuEvictionPolicyTest.Replay(factory.create(), capacity);
+        int hits = 0;
+        for (String key : keys) {
+            if (replay.request(key, sizes.get(key))) {
+                hits++;
+            }
+        }
+        sSink += hits;
+        return (double) hits / keys.length;
+    }
+
+    private static double[] zipf(int keys, double exponent) {
+        double[] cumulative = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int sample(double[] cumulative, Random random) {
+        int i = Arrays.binarySearch(cumulative, random.nextDouble());
+        return i < 0 ? -i - 1 : i;
+    }
+}
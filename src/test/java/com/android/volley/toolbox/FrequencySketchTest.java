@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void countsUpToFifteen() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.ensureCapacity(1000);
+        assertEquals(0, sketch.frequency("a"));
+        for (int i = 1; i <= 20; i++) {
+            sketch.increment("a");
+            assertEquals(Math.min(i, 15), sketch.frequency("a"));
+        }
+    }
+
+    /** A count-min sketch may overestimate through collisions, but never underestimates. */
+    @Test
+    public void neverUnderestimates() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.ensureCapacity(512);
+        for (int i = 0; i < 512; i++) {
+            for (int j = 0; j < i % 8; j++) {
+                sketch.increment("http://example.com/" + i);
+            }
+        }
+        for (int i = 0; i < 512; i++) {
+            assertTrue(sketch.frequency("http://example.com/" + i) >= i % 8);
+        }
+    }
+
+    @Test
+    public void halvesAfterSample() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.ensureCapacity(16);
+        for (int i = 0; i < 12; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(12, sketch.frequency("hot"));
+        // the sample is ten times the width, 148 more increments reach it
+        for (int i = 0; i < 148; i++) {
+            sketch.increment("cold" + i);
+        }
+        // collisions may have raised the estimate up to 15 before it was halved
+        int frequency = sketch.frequency("hot");
+        assertTrue("frequency " + frequency, frequency >= 6 && frequency <= 7);
+    }
+
+    /** Growing the table must not forget the counts, the policy grows it on every add. */
+    @Test
+    public void growingKeepsCounts() {
+        FrequencySketch sketch = new FrequencySketch();
+        int[] expected = new int[200];
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < i % 10; j++) {
+                sketch.increment("key" + i);
+            }
+        }
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = sketch.frequency("key" + i);
+        }
+        for (int capacity = 32; capacity <= 1 << 16; capacity <<= 1) {
+            sketch.ensureCapacity(capacity);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals("key" + i + " at " + capacity, expected[i],
+                        sketch.frequency("key" + i));
+            }
+        }
+    }
+
+    @Test
+    public void clearForgetsCounts() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.increment("a");
+        sketch.increment("a");
+        sketch.clear();
+        assertEquals(0, sketch.frequency("a"));
+    }
+}
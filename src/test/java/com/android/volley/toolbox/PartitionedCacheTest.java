@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import com.android.volley.Cache;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PartitionedCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** A plain {@link Cache}: no body views and no metadata-only updates. */
+    static class MapCache implements Cache {
+        final Map<String, Entry> mEntries = new HashMap<String, Entry>();
+        int mPuts;
+
+        @Override
+        public Entry get(String key) {
+            return mEntries.get(key);
+        }
+
+        @Override
+        public void put(String key, Entry entry) {
+            mPuts++;
+            mEntries.put(key, entry);
+        }
+
+        @Override
+        public void initialize() {
+        }
+
+        @Override
+        public void invalidate(String key, boolean fullExpire) {
+            Entry entry = mEntries.get(key);
+            if (entry != null) {
+                entry.softTtl = 0;
+                if (fullExpire) {
+                    entry.ttl = 0;
+                }
+            }
+        }
+
+        @Override
+        public void remove(String key) {
+            mEntries.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            mEntries.clear();
+        }
+    }
+
+    static final class LaneRequest extends Request<Object> {
+        private final Lane mLane;
+
+        LaneRequest(Lane lane) {
+            super(Method.GET, "http://example.com/" + lane, null);
+            mLane = lane;
+        }
+
+        @Override
+        public Lane getLane() {
+            return mLane;
+        }
+
+        @Override
+        protected Response<Object> parseNetworkResponse(NetworkResponse response) {
+            return null;
+        }
+
+        @Override
+        protected void deliverResponse(Object response) {
+        }
+    }
+
+    private static Cache.Entry createEntry(String data, String etag) throws Exception {
+        return DiskBasedCacheTest.createEntry(data.getBytes("UTF-8"), etag);
+    }
+
+    private static PartitionedCache.Partition partitionOf(PartitionedCache cache,
+            Request.Lane lane) {
+        return (PartitionedCache.Partition) cache.getPartition(new LaneRequest(lane));
+    }
+
+    @Test
+    public void routesRequestsByLane() throws Exception {
+        MapCache api = new MapCache();
+        MapCache images = new MapCache();
+        MapCache transfers = new MapCache();
+        PartitionedCache cache = new PartitionedCache("api", api)
+                .addPartition("image", images, Request.Lane.IMAGE)
+                .addPartition("transfer", transfers, Request.Lane.DOWNLOAD, Request.Lane.UPLOAD);
+
+        assertSame(api, partitionOf(cache, Request.Lane.API).getCache());
+        assertSame(images, partitionOf(cache, Request.Lane.IMAGE).getCache());
+        assertSame(transfers, partitionOf(cache, Request.Lane.DOWNLOAD).getCache());
+        assertSame(transfers, partitionOf(cache, Request.Lane.UPLOAD).getCache());
+
+        List<PartitionedCache.Partition> partitions = cache.getPartitions();
+        assertEquals(3, partitions.size());
+        assertEquals("api", partitions.get(0).getName());
+        assertEquals("image", partitions.get(1).getName());
+        assertEquals("transfer", partitions.get(2).getName());
+
+        // writes of a routed request stay in its partition
+        partitionOf(cache, Request.Lane.IMAGE).put("logo", createEntry("png", "1"));
+        assertNotNull(images.get("logo"));
+        assertNull(api.get("logo"));
+        assertNull(transfers.get("logo"));
+    }
+
+    @Test
+    public void countsHitsAndMissesPerPartition() throws Exception {
+        MapCache api = new MapCache();
+        MapCache images = new MapCache();
+        PartitionedCache cache = new PartitionedCache("api", api)
+                .addPartition("image", images, Request.Lane.IMAGE);
+        api.put("feed", createEntry("{}", "1"));
+        images.put("logo", createEntry("png", "1"));
+        PartitionedCache.Partition apiPartition = partitionOf(cache, Request.Lane.API);
+        PartitionedCache.Partition imagePartition = partitionOf(cache, Request.Lane.IMAGE);
+
+        assertNotNull(apiPartition.get("feed"));
+        // a key held by another partition is a miss for this one
+        assertNull(apiPartition.get("logo"));
+        assertNull(apiPartition.get("missing"));
+        // a plain backing cache answers getBody with a copy, counted all the same
+        Cache.Entry logo = imagePartition.getBody("logo");
+        assertArrayEquals("png".getBytes("UTF-8"), logo.data);
+
+        assertEquals(1, apiPartition.getHitCount());
+        assertEquals(2, apiPartition.getMissCount());
+        assertEquals(1 / 3f, apiPartition.getHitRate(), 0.0001f);
+        assertEquals(1, imagePartition.getHitCount());
+        assertEquals(0, imagePartition.getMissCount());
+        assertEquals(1f, imagePartition.getHitRate(), 0f);
+
+        // key-only lookups on the cache itself are not counted
+        assertNotNull(cache.get("logo"));
+        assertNotNull(cache.getBody("feed"));
+        assertNull(cache.get("missing"));
+        assertEquals(1, apiPartition.getHitCount());
+        assertEquals(2, apiPartition.getMissCount());
+        assertEquals(1, imagePartition.getHitCount());
+        assertEquals(0, imagePartition.getMissCount());
+
+        apiPartition.resetStats();
+        assertEquals(0, apiPartition.getHitCount());
+        assertEquals(0, apiPartition.getMissCount());
+        assertEquals(0f, apiPartition.getHitRate(), 0f);
+        assertEquals(1, imagePartition.getHitCount());
+    }
+
+    @Test
+    public void keyOnlyOperationsSpanPartitions() throws Exception {
+        MapCache api = new MapCache();
+        MapCache images = new MapCache();
+        PartitionedCache cache = new PartitionedCache("api", api)
+                .addPartition("image", images, Request.Lane.IMAGE);
+        images.put("logo", createEntry("png", "1"));
+
+        cache.put("feed", createEntry("{}", "1"));
+        assertNotNull(api.get("feed"));
+        assertNull(images.get("feed"));
+        assertArrayEquals("png".getBytes("UTF-8"), cache.get("logo").data);
+
+        cache.invalidate("logo", true);
+        assertEquals(0, images.get("logo").ttl);
+        cache.remove("logo");
+        assertNull(images.get("logo"));
+        cache.clear();
+        assertNull(api.get("feed"));
+    }
+
+    /**
+     * Partitions update the metadata in place when their cache can, and otherwise put the
+     * cached data back with the new metadata.
+     */
+    @Test
+    public void updateMetadataKeepsData() throws Exception {
+        MapCache api = new MapCache();
+        DiskBasedCache images = new DiskBasedCache(folder.newFolder("images"), 1024 * 1024);
+        images.initialize();
+        PartitionedCache cache = new PartitionedCache("api", api)
+                .addPartition("image", images, Request.Lane.IMAGE);
+        api.put("feed", createEntry("{\"list\":[]}", "1"));
+        images.put("logo", createEntry("png", "1"));
+        assertEquals(1, api.mPuts);
+
+        Cache.Entry metadata = createEntry("ignored", "2");
+        metadata.data = null;
+        metadata.serverDate = 5678L;
+        partitionOf(cache, Request.Lane.API).updateMetadata("feed", metadata);
+        partitionOf(cache, Request.Lane.IMAGE).updateMetadata("logo", metadata);
+        // nothing is cached under this key, so nothing is written
+        partitionOf(cache, Request.Lane.API).updateMetadata("missing", metadata);
+
+        assertEquals(2, api.mPuts);
+        assertNull(api.get("missing"));
+        Cache.Entry feed = api.get("feed");
+        assertArrayEquals("{\"list\":[]}".getBytes("UTF-8"), feed.data);
+        assertEquals("2", feed.etag);
+        assertEquals(5678L, feed.serverDate);
+
+        Cache.Entry logo = images.getBody("logo");
+        assertEquals("2", logo.etag);
+        assertEquals(5678L, logo.serverDate);
+        ByteBuffer body = logo.body.duplicate();
+        byte[] data = new byte[body.remaining()];
+        body.get(data);
+        assertArrayEquals("png".getBytes("UTF-8"), data);
+        assertNull(metadata.data);
+    }
+}
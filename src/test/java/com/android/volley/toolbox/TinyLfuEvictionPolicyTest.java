@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TinyLfuEvictionPolicyTest {
+
+    /**
+     * Replays requests through a policy with the accounting of {@link DiskBasedCache}:
+     * every request is a lookup, a miss is put, and a put that reaches the capacity prunes
+     * down to 90% of it.
+     */
+    static final class Replay {
+        private final EvictionPolicy mPolicy;
+        private final long mCapacity;
+        private final Map<String, Long> mEntries = new HashMap<String, Long>();
+        private long mTotalSize;
+
+        Replay(EvictionPolicy policy, long capacity) {
+            mPolicy = policy;
+            mCapacity = capacity;
+            policy.setCapacity(capacity);
+        }
+
+        /** @return True on a hit */
+        boolean request(String key, long size) {
+            mPolicy.onAccess(key);
+            if (mEntries.containsKey(key)) {
+                return true;
+            }
+            mEntries.put(key, size);
+            mTotalSize += size;
+            mPolicy.onAdd(key, size);
+            if (mTotalSize >= mCapacity) {
+                while (mTotalSize >= mCapacity * 0.9f) {
+                    String victim = mPolicy.evict();
+                    if (victim == null) {
+                        break;
+                    }
+                    if (victim.equals(key) && mEntries.size() == 1) {
+                        mPolicy.onAdd(key, size);
+                        break;
+                    }
+                    Long removed = mEntries.remove(victim);
+                    if (removed != null) {
+                        mTotalSize -= removed;
+                    }
+                }
+            }
+            return false;
+        }
+
+        boolean contains(String key) {
+            return mEntries.containsKey(key);
+        }
+
+        long totalSize() {
+            return mTotalSize;
+        }
+    }
+
+    /** Entries read again and again survive a scan that LRU lets flush them. */
+    @Test
+    public void scanDoesNotFlushFrequentEntries() {
+        assertTrue(hotHitRatio(new TinyLfuEvictionPolicy()) > 0.9);
+        assertTrue(hotHitRatio(new LruEvictionPolicy()) < 0.1);
+    }
+
+    private static double hotHitRatio(EvictionPolicy policy) {
+        Replay replay = new Replay(policy, 100);
+        int hits = 0;
+        int requests = 0;
+        int scan = 0;
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 40; i++) {
+                boolean hit = replay.request("hot" + i, 1);
+                if (round >= 5) {
+                    hits += hit ? 1 : 0;
+                    requests++;
+                }
+            }
+            for (int i = 0; i < 150; i++) {
+                replay.request("scan" + scan++, 1);
+            }
+        }
+        return (double) hits / requests;
+    }
+
+    /**
+     * Lookups counted while the policy tracks few entries must still count once it tracks
+     * many; the sketch used to forget them whenever it grew.
+     */
+    @Test
+    public void countsSurviveGrowth() {
+        Replay replay = new Replay(new TinyLfuEvictionPolicy(), 100);
+        for (int i = 0; i < 6; i++) {
+            replay.request("frequent", 1);
+        }
+        // grows the sketch from 16 to 128 keys, then ages the frequent entry to the front
+        // of probation, where it is a victim whenever its count is lower than a newcomer's
+        for (int i = 0; i < 200; i++) {
+            replay.request("once" + i, 1);
+        }
+        assertTrue(replay.contains("frequent"));
+    }
+
+    @Test
+    public void evictsEveryEntryOnce() {
+        TinyLfuEvictionPolicy policy = new TinyLfuEvictionPolicy();
+        policy.setCapacity(1000);
+        Set<String> keys = new HashSet<String>();
+        for (int i = 0; i < 100; i++) {
+            policy.onAdd("key" + i, 10 + i % 7);
+            keys.add("key" + i);
+            if (i % 3 == 0) {
+                policy.onAccess("key" + (i / 2));
+            }
+        }
+        policy.onAdd("key5", 500);
+        policy.onRemove("key7");
+        keys.remove("key7");
+        Set<String> evicted = new HashSet<String>();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = policy.evict();
+            assertTrue(key, keys.contains(key));
+            assertTrue(key, evicted.add(key));
+        }
+        assertNull(policy.evict());
+    }
+
+    /** A candidate that loses the admission contest is evicted itself. */
+    @Test
+    public void rejectsEntryLargerThanCache() {
+        Replay replay = new Replay(new TinyLfuEvictionPolicy(), 100);
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 3; j++) {
+                replay.request("small" + i, 4);
+            }
+        }
+        replay.request("huge", 500);
+        assertFalse(replay.contains("huge"));
+        assertEquals(80, replay.totalSize());
+    }
+
+    @Test
+    public void clearForgetsEntries() {
+        TinyLfuEvictionPolicy policy = new TinyLfuEvictionPolicy();
+        policy.setCapacity(100);
+        policy.onAdd("a", 10);
+        policy.onAccess("a");
+        policy.clear();
+        assertNull(policy.evict());
+    }
+}
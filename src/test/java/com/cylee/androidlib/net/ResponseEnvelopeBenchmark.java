@@ -0,0 +1,124 @@
+package com.cylee.androidlib.net;
+
+import com.cylee.androidlib.GsonBuilderFactory;
+import com.google.jtm.Gson;
+import com.google.jtm.stream.Utf8JsonReader;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+
+/**
+ * HWRequest解析errno=0的信封的单次耗时，对比以前的实现：整个body转成String，用正则匹配errno，
+ * JSONObject解析后取出data字符串，再交给Gson解析一遍。新的实现分别从InputStreamReader和
+ * Utf8JsonReader(HWRequest现在的用法)单次遍历解析。
+ *
+ * 以前的实现需要真正的org.json，android.jar里只有桩，见build.gradle的testCompile。
+ *
+ * 不是单元测试，从IDE或者用测试classpath运行main
+ */
+public final class ResponseEnvelopeBenchmark {
+    private static final int WARMUP_MS = 2000;
+    private static final int MEASURE_MS = 3000;
+
+    /** 以前HWRequest里的errno=0判断 */
+    private static final String ERROR_NO_0_EXPRESSION = "[\\S\\s]*\"err[Nn]o\"\\s*:\\s*0[\\s\\S]*";
+
+    private static final Gson GSON = GsonBuilderFactory.createBuilder();
+
+    private interface Call {
+        ResponseEnvelopeTest.Page run(byte[] body) throws Exception;
+    }
+
+    private static final Call OLD = new Call() {
+        @Override
+        public ResponseEnvelopeTest.Page run(byte[] body) throws Exception {
+            String json = new String(body, "UTF-8");
+            if (!json.matches(ERROR_NO_0_EXPRESSION)) {
+                throw new IllegalStateException("errno is not 0");
+            }
+            JSONObject jsonObject = new JSONObject(json);
+            json = jsonObject.getString("data");
+            if (json.trim().startsWith("[")) {
+                json = "{}";
+            }
+            return GSON.fromJson(json, ResponseEnvelopeTest.Page.class);
+        }
+    };
+
+    private static final Call READER = new Call() {
+        @Override
+        public ResponseEnvelopeTest.Page run(byte[] body) throws Exception {
+            return ResponseEnvelope.<ResponseEnvelopeTest.Page>parse(
+                    new InputStreamReader(new ByteArrayInputStream(body), "UTF-8"),
+                    ResponseEnvelopeTest.Page.class, GSON).data;
+        }
+    };
+
+    private static final Call UTF8 = new Call() {
+        @Override
+        public ResponseEnvelopeTest.Page run(byte[] body) throws Exception {
+            return ResponseEnvelope.<ResponseEnvelopeTest.Page>parse(new Utf8JsonReader(body),
+                    ResponseEnvelopeTest.Page.class, GSON).data;
+        }
+    };
+
+    private static int sSink;
+
+    private ResponseEnvelopeBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int items : new int[]{1, 20, 200}) {
+            for (boolean errnoFirst : new boolean[]{true, false}) {
+                byte[] body = createBody(items, errnoFirst);
+                System.out.printf("%d items, errno %s data, %d bytes%n", items,
+                        errnoFirst ? "before" : "after", body.length);
+                double old = measure(OLD, body);
+                report("String+regex+JSONObject", old, old);
+                report("envelope, InputStreamReader", old, measure(READER, body));
+                report("envelope, Utf8JsonReader", old, measure(UTF8, body));
+            }
+        }
+        if (sSink == Integer.MIN_VALUE) {
+            System.out.println(sSink);
+        }
+    }
+
+    private static byte[] createBody(int items, boolean errnoFirst) throws Exception {
+        StringBuilder data = new StringBuilder("{\"pn\":20,\"hasMore\":1,\"list\":[");
+        for (int i = 0; i < items; i++) {
+            data.append(i == 0 ? "" : ",")
+                    .append("{\"id\":").append(1000000L + i)
+                    .append(",\"title\":\"第").append(i).append("条 item title \\\"quoted\\\"\"}");
+        }
+        data.append("]}");
+        String json = errnoFirst
+                ? "{\"errno\":0,\"errstr\":\"success\",\"data\":" + data + "}"
+                : "{\"data\":" + data + ",\"errstr\":\"success\",\"errno\":0}";
+        return json.getBytes("UTF-8");
+    }
+
+    private static void report(String name, double baselineUs, double us) {
+        System.out.printf("  %-28s %9.1f us/call  x%.2f%n", name, us, baselineUs / us);
+    }
+
+    /** 返回平均每次调用的微秒数 */
+    private static double measure(Call call, byte[] body) throws Exception {
+        run(call, body, WARMUP_MS);
+        long start = System.nanoTime();
+        int count = run(call, body, MEASURE_MS);
+        return (System.nanoTime() - start) / 1000.0 / count;
+    }
+
+    private static int run(Call call, byte[] body, long durationMs) throws Exception {
+        long end = System.nanoTime() + durationMs * 1000000L;
+        int count = 0;
+        while (System.nanoTime() < end) {
+            sSink += call.run(body).list.size();
+            count++;
+        }
+        return count;
+    }
+}
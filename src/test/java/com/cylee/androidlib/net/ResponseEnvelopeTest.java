@@ -0,0 +1,153 @@
+package com.cylee.androidlib.net;
+
+import com.cylee.androidlib.GsonBuilderFactory;
+import com.google.jtm.Gson;
+import com.google.jtm.JsonSyntaxException;
+import com.google.jtm.stream.Utf8JsonReader;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 信封解析：errno和data的先后顺序、errNo写法、data的各种类型，结果要和以前正则+JSONObject的解析一致
+ */
+public class ResponseEnvelopeTest {
+    private static final Gson GSON = GsonBuilderFactory.createBuilder();
+
+    static class Item {
+        long id;
+        String title;
+    }
+
+    /** 和接口返回的data结构类似，hasMore是0/1 */
+    static class Page {
+        int pn;
+        boolean hasMore;
+        List<Item> list;
+    }
+
+    static final String PAGE = "{\"pn\":2,\"hasMore\":1,\"list\":[{\"id\":1,\"title\":\"a\"},{\"id\":2,\"title\":\"b\"}]}";
+
+    private static ResponseEnvelope<Page> parse(String json) throws IOException {
+        ResponseEnvelope<Page> envelope = ResponseEnvelope.parse(new StringReader(json), Page.class, GSON);
+        // 直接解析字节的结果要和Reader一样
+        ResponseEnvelope<Page> bytes = ResponseEnvelope.parse(new Utf8JsonReader(json.getBytes("UTF-8")),
+                Page.class, GSON);
+        assertEquals(envelope.hasErrNo, bytes.hasErrNo);
+        assertEquals(envelope.errNo, bytes.errNo);
+        assertEquals(envelope.errStr, bytes.errStr);
+        assertEquals(envelope.hasData, bytes.hasData);
+        assertEquals(envelope.data == null, bytes.data == null);
+        return envelope;
+    }
+
+    private static void assertPage(Page page) {
+        assertNotNull(page);
+        assertEquals(2, page.pn);
+        assertTrue(page.hasMore);
+        assertEquals(2, page.list.size());
+        assertEquals(2, page.list.get(1).id);
+        assertEquals("b", page.list.get(1).title);
+    }
+
+    @Test
+    public void errnoBeforeData() throws IOException {
+        ResponseEnvelope<Page> envelope = parse("{\"errno\":0,\"errstr\":\"success\",\"data\":" + PAGE + "}");
+        assertTrue(envelope.isSuccess());
+        assertEquals("success", envelope.errStr);
+        assertTrue(envelope.hasData);
+        assertPage(envelope.data);
+    }
+
+    @Test
+    public void errnoAfterData() throws IOException {
+        ResponseEnvelope<Page> envelope = parse("{\"data\":" + PAGE + ",\"errstr\":\"\",\"errno\":0}");
+        assertTrue(envelope.isSuccess());
+        assertPage(envelope.data);
+    }
+
+    @Test
+    public void errorSkipsData() throws IOException {
+        for (String json : new String[]{
+                "{\"errno\":3,\"errstr\":\"login\",\"data\":" + PAGE + "}",
+                "{\"data\":" + PAGE + ",\"errno\":3,\"errstr\":\"login\"}"}) {
+            ResponseEnvelope<Page> envelope = parse(json);
+            assertFalse(json, envelope.isSuccess());
+            assertTrue(json, envelope.hasErrNo);
+            assertEquals(json, 3, envelope.errNo);
+            assertEquals(json, "login", envelope.errStr);
+            assertNull(json, envelope.data);
+        }
+    }
+
+    @Test
+    public void errNoSpelling() throws IOException {
+        assertPage(parse("{\"errNo\":0,\"data\":" + PAGE + "}").data);
+        assertPage(parse("{\"data\":" + PAGE + ",\"errNo\":0}").data);
+        ResponseEnvelope<Page> envelope = parse("{\"errNo\":5,\"errstr\":null}");
+        assertEquals(5, envelope.errNo);
+        assertEquals("", envelope.errStr);
+    }
+
+    /** 以前data是数组时当作{}解析 */
+    @Test
+    public void arrayDataIsEmptyObject() throws IOException {
+        for (String json : new String[]{
+                "{\"errno\":0,\"data\":[1,2,3]}",
+                "{\"data\":[{\"pn\":2}],\"errno\":0}"}) {
+            Page page = parse(json).data;
+            assertNotNull(json, page);
+            assertEquals(json, 0, page.pn);
+            assertNull(json, page.list);
+        }
+    }
+
+    /** 以前getString("data")拿到字符串后直接交给Gson，所以字符串的内容按json解析 */
+    @Test
+    public void stringDataIsParsedAsJson() throws IOException {
+        String quoted = "\"" + PAGE.replace("\"", "\\\"") + "\"";
+        assertPage(parse("{\"errno\":0,\"data\":" + quoted + "}").data);
+        assertPage(parse("{\"data\":" + quoted + ",\"errno\":0}").data);
+    }
+
+    @Test
+    public void nullData() throws IOException {
+        for (String json : new String[]{"{\"errno\":0,\"data\":null}", "{\"data\":null,\"errno\":0}"}) {
+            ResponseEnvelope<Page> envelope = parse(json);
+            assertTrue(json, envelope.isSuccess());
+            assertTrue(json, envelope.hasData);
+            assertNull(json, envelope.data);
+        }
+        assertFalse(parse("{\"errno\":0}").hasData);
+    }
+
+    @Test
+    public void missingErrno() throws IOException {
+        ResponseEnvelope<Page> envelope = parse("{\"errstr\":\"\",\"data\":" + PAGE + "}");
+        assertFalse(envelope.hasErrNo);
+        assertFalse(envelope.isSuccess());
+        assertNull(envelope.data);
+    }
+
+    /** 以前getInt抛出JSONException按格式错误处理，现在是JsonSyntaxException */
+    @Test
+    public void nonIntegerErrno() throws IOException {
+        for (String json : new String[]{"{\"errno\":\"abc\",\"data\":{}}", "{\"data\":{},\"errno\":1.5}"}) {
+            try {
+                ResponseEnvelope.parse(new StringReader(json), Page.class, GSON);
+                fail(json);
+            } catch (JsonSyntaxException expected) {
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.cylee.androidlib.util;
+
+/**
+ * BlurUtils.blur单次耗时，对比原来单线程、每次分配r/g/b数组和dv表的实现{@link BlurUtilsTest#oldBlur}
+ *
+ * 不是单元测试，从IDE或者用测试classpath运行main
+ */
+public final class BlurUtilsBenchmark {
+  private static final int WARMUP_MS = 2000;
+  private static final int MEASURE_MS = 3000;
+
+  private static final int[][] SIZES = {{360, 640}, {720, 1280}, {1080, 1920}};
+  private static final int[] RADII = {8, 25};
+
+  private static int sSink;
+
+  private BlurUtilsBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    System.out.printf("%d cpus%n", Runtime.getRuntime().availableProcessors());
+    for (int[] size : SIZES) {
+      int w = size[0];
+      int h = size[1];
+      int[] original = BlurUtilsTest.randomPixels(w, h, 1);
+      int[] pix = new int[w * h];
+      for (int radius : RADII) {
+        double oldMs = measure(false, original, pix, w, h, radius);
+        double newMs = measure(true, original, pix, w, h, radius);
+        System.out.printf("%dx%d r%-2d  old %7.2f ms  new %7.2f ms  x%.2f%n", w, h, radius, oldMs,
+            newMs, oldMs / newMs);
+      }
+    }
+    if (sSink == Integer.MIN_VALUE) {
+      System.out.println(sSink);
+    }
+  }
+
+  /** 返回平均每次调用的毫秒数，包括把原图复制到pix的时间 */
+  private static double measure(boolean striped, int[] original, int[] pix, int w, int h,
+      int radius) {
+    run(striped, original, pix, w, h, radius, WARMUP_MS);
+    long start = System.nanoTime();
+    int count = run(striped, original, pix, w, h, radius, MEASURE_MS);
+    return (System.nanoTime() - start) / 1000000.0 / count;
+  }
+
+  private static int run(boolean striped, int[] original, int[] pix, int w, int h, int radius,
+      long durationMs) {
+    long end = System.nanoTime() + durationMs * 1000000L;
+    int count = 0;
+    while (System.nanoTime() < end) {
+      System.arraycopy(original, 0, pix, 0, pix.length);
+      if (striped) {
+        BlurUtils.blur(pix, w, h, radius);
+      } else {
+        BlurUtilsTest.oldBlur(pix, w, h, radius);
+      }
+      sSink += pix[count % pix.length];
+      count++;
+    }
+    return count;
+  }
+}
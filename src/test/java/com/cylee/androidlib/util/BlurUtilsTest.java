@@ -0,0 +1,294 @@
+package com.cylee.androidlib.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * 分条带并行的{@link BlurUtils#blur(int[], int, int, int)}必须和原来单线程的实现逐像素一致
+ */
+public class BlurUtilsTest {
+
+  private static final int[][] SIZES = {
+      {1, 1}, {1, 9}, {9, 1}, {2, 2}, {3, 5}, {17, 13}, {64, 64}, {100, 37}, {37, 100}, {257, 129}
+  };
+  private static final int[] RADII = {1, 2, 3, 5, 10, 25, 40};
+  private static final int[] STRIPES = {1, 2, 3, 4, 7, 16};
+
+  /**
+   * 原来的doBlur去掉Bitmap读写后的部分，原样保留，作为对照
+   */
+  static void oldBlur(int[] pix, int w, int h, int radius) {
+    int wm = w - 1;
+    int hm = h - 1;
+    int wh = w * h;
+    int div = radius + radius + 1;
+
+    int r[] = new int[wh];
+    int g[] = new int[wh];
+    int b[] = new int[wh];
+    int rsum, gsum, bsum, x, y, i, p, yp, yi, yw;
+    int vmin[] = new int[Math.max(w, h)];
+
+    int divsum = (div + 1) >> 1;
+    divsum *= divsum;
+    int dv[] = new int[256 * divsum];
+    for (i = 0; i < 256 * divsum; i++) {
+      dv[i] = (i / divsum);
+    }
+
+    yw = yi = 0;
+
+    int[][] stack = new int[div][3];
+    int stackpointer;
+    int stackstart;
+    int[] sir;
+    int rbs;
+    int r1 = radius + 1;
+    int routsum, goutsum, boutsum;
+    int rinsum, ginsum, binsum;
+
+    for (y = 0; y < h; y++) {
+      rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
+      for (i = -radius; i <= radius; i++) {
+        p = pix[yi + Math.min(wm, Math.max(i, 0))];
+        sir = stack[i + radius];
+        sir[0] = (p & 0xff0000) >> 16;
+        sir[1] = (p & 0x00ff00) >> 8;
+        sir[2] = (p & 0x0000ff);
+        rbs = r1 - Math.abs(i);
+        rsum += sir[0] * rbs;
+        gsum += sir[1] * rbs;
+        bsum += sir[2] * rbs;
+        if (i > 0) {
+          rinsum += sir[0];
+          ginsum += sir[1];
+          binsum += sir[2];
+        } else {
+          routsum += sir[0];
+          goutsum += sir[1];
+          boutsum += sir[2];
+        }
+      }
+      stackpointer = radius;
+
+      for (x = 0; x < w; x++) {
+
+        r[yi] = dv[rsum];
+        g[yi] = dv[gsum];
+        b[yi] = dv[bsum];
+
+        rsum -= routsum;
+        gsum -= goutsum;
+        bsum -= boutsum;
+
+        stackstart = stackpointer - radius + div;
+        sir = stack[stackstart % div];
+
+        routsum -= sir[0];
+        goutsum -= sir[1];
+        boutsum -= sir[2];
+
+        if (y == 0) {
+          vmin[x] = Math.min(x + radius + 1, wm);
+        }
+        p = pix[yw + vmin[x]];
+
+        sir[0] = (p & 0xff0000) >> 16;
+        sir[1] = (p & 0x00ff00) >> 8;
+        sir[2] = (p & 0x0000ff);
+
+        rinsum += sir[0];
+        ginsum += sir[1];
+        binsum += sir[2];
+
+        rsum += rinsum;
+        gsum += ginsum;
+        bsum += binsum;
+
+        stackpointer = (stackpointer + 1) % div;
+        sir = stack[(stackpointer) % div];
+
+        routsum += sir[0];
+        goutsum += sir[1];
+        boutsum += sir[2];
+
+        rinsum -= sir[0];
+        ginsum -= sir[1];
+        binsum -= sir[2];
+
+        yi++;
+      }
+      yw += w;
+    }
+    for (x = 0; x < w; x++) {
+      rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
+      yp = -radius * w;
+      for (i = -radius; i <= radius; i++) {
+        yi = Math.max(0, yp) + x;
+
+        sir = stack[i + radius];
+
+        sir[0] = r[yi];
+        sir[1] = g[yi];
+        sir[2] = b[yi];
+
+        rbs = r1 - Math.abs(i);
+
+        rsum += r[yi] * rbs;
+        gsum += g[yi] * rbs;
+        bsum += b[yi] * rbs;
+
+        if (i > 0) {
+          rinsum += sir[0];
+          ginsum += sir[1];
+          binsum += sir[2];
+        } else {
+          routsum += sir[0];
+          goutsum += sir[1];
+          boutsum += sir[2];
+        }
+
+        if (i < hm) {
+          yp += w;
+        }
+      }
+      yi = x;
+      stackpointer = radius;
+      for (y = 0; y < h; y++) {
+        // Preserve alpha channel: ( 0xff000000 & pix[yi] )
+        pix[yi] = (0xff000000 & pix[yi]) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
+
+        rsum -= routsum;
+        gsum -= goutsum;
+        bsum -= boutsum;
+
+        stackstart = stackpointer - radius + div;
+        sir = stack[stackstart % div];
+
+        routsum -= sir[0];
+        goutsum -= sir[1];
+        boutsum -= sir[2];
+
+        if (x == 0) {
+          vmin[y] = Math.min(y + r1, hm) * w;
+        }
+        p = x + vmin[y];
+
+        sir[0] = r[p];
+        sir[1] = g[p];
+        sir[2] = b[p];
+
+        rinsum += sir[0];
+        ginsum += sir[1];
+        binsum += sir[2];
+
+        rsum += rinsum;
+        gsum += ginsum;
+        bsum += binsum;
+
+        stackpointer = (stackpointer + 1) % div;
+        sir = stack[stackpointer];
+
+        routsum += sir[0];
+        goutsum += sir[1];
+        boutsum += sir[2];
+
+        rinsum -= sir[0];
+        ginsum -= sir[1];
+        binsum -= sir[2];
+
+        yi += w;
+      }
+    }
+  }
+
+  static int[] randomPixels(int w, int h, long seed) {
+    Random random = new Random(seed);
+    int[] pix = new int[w * h];
+    for (int i = 0; i < pix.length; i++) {
+      pix[i] = random.nextInt();
+    }
+    return pix;
+  }
+
+  @Test
+  public void sameAsSingleThreaded() {
+    for (int[] size : SIZES) {
+      int w = size[0];
+      int h = size[1];
+      for (int radius : RADII) {
+        int[] expected = randomPixels(w, h, w * 31 + h * 7 + radius);
+        int[] pix = expected.clone();
+        oldBlur(expected, w, h, radius);
+        BlurUtils.blur(pix, w, h, radius);
+        assertArrayEquals(w + "x" + h + " r" + radius, expected, pix);
+      }
+    }
+  }
+
+  @Test
+  public void sameForEveryStripeCount() {
+    for (int[] size : SIZES) {
+      int w = size[0];
+      int h = size[1];
+      for (int radius : RADII) {
+        int[] original = randomPixels(w, h, radius);
+        int[] expected = original.clone();
+        oldBlur(expected, w, h, radius);
+        for (int rowStripes : STRIPES) {
+          for (int columnStripes : STRIPES) {
+            int[] pix = original.clone();
+            BlurUtils.blur(pix, w, h, radius, rowStripes, columnStripes);
+            assertArrayEquals(w + "x" + h + " r" + radius + " stripes " + rowStripes + "/"
+                + columnStripes, expected, pix);
+          }
+        }
+      }
+    }
+  }
+
+  /** 比默认切条带的阈值大的图，走默认的条带数 */
+  @Test
+  public void largeImage() {
+    int w = 720;
+    int h = 1280;
+    for (int radius : new int[] {8, 25}) {
+      int[] expected = randomPixels(w, h, radius);
+      int[] pix = expected.clone();
+      oldBlur(expected, w, h, radius);
+      BlurUtils.blur(pix, w, h, radius);
+      assertArrayEquals("r" + radius, expected, pix);
+    }
+  }
+
+  /** 缓冲区按线程复用，里面是上一次的数据，不能影响结果 */
+  @Test
+  public void reusedBuffers() {
+    int[] small = randomPixels(40, 30, 1);
+    int[] expectedSmall = small.clone();
+    oldBlur(expectedSmall, 40, 30, 3);
+    BlurUtils.blur(randomPixels(300, 200, 2), 300, 200, 12, 4, 4);
+    BlurUtils.blur(small, 40, 30, 3, 4, 4);
+    assertArrayEquals(expectedSmall, small);
+  }
+
+  /** 数组比w*h长时只处理前w*h个像素 */
+  @Test
+  public void longerArray() {
+    int[] pix = randomPixels(20, 10, 3);
+    int[] padded = new int[pix.length + 5];
+    System.arraycopy(pix, 0, padded, 0, pix.length);
+    padded[pix.length] = 0x12345678;
+    oldBlur(pix, 20, 10, 4);
+    BlurUtils.blur(padded, 20, 10, 4);
+    int[] head = new int[pix.length];
+    System.arraycopy(padded, 0, head, 0, head.length);
+    assertArrayEquals(pix, head);
+    assertArrayEquals(new int[] {0x12345678, 0, 0, 0, 0},
+        Arrays.copyOfRange(padded, pix.length, padded.length));
+  }
+}
@@ -0,0 +1,105 @@
+package com.cylee.androidlib.util;
+
+import com.google.jtm.Gson;
+
+import java.io.File;
+
+/**
+ * FileUtils.writeEntity/readEntity单次调用耗时，对比以前的实现：每次new Gson()，
+ * 写入时先生成整个json字符串，读取时先把整个文件读成byte数组再转成String。
+ *
+ * 不是单元测试，从IDE或者用测试classpath运行main
+ */
+public final class FileUtilsEntityBenchmark {
+    private static final int WARMUP_MS = 2000;
+    private static final int MEASURE_MS = 3000;
+
+    private interface Call {
+        void run(FileUtilsEntityTest.Page page, String path);
+    }
+
+    private static final Call OLD_WRITE = new Call() {
+        @Override
+        public void run(FileUtilsEntityTest.Page page, String path) {
+            Gson gson = new Gson();
+            FileUtils.writeFile(path, gson.toJson(page));
+        }
+    };
+
+    private static final Call OLD_READ = new Call() {
+        @Override
+        public void run(FileUtilsEntityTest.Page page, String path) {
+            Gson gson = new Gson();
+            String json = new String(FileUtils.readFile(new File(path)));
+            sink(gson.fromJson(json, FileUtilsEntityTest.Page.class));
+        }
+    };
+
+    private static final Call WRITE = new Call() {
+        @Override
+        public void run(FileUtilsEntityTest.Page page, String path) {
+            FileUtils.writeEntity(page, path);
+        }
+    };
+
+    private static final Call READ = new Call() {
+        @Override
+        public void run(FileUtilsEntityTest.Page page, String path) {
+            sink(FileUtils.readEntity(FileUtilsEntityTest.Page.class, path));
+        }
+    };
+
+    private static int sSink;
+
+    private FileUtilsEntityBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        File dir = File.createTempFile("entity", "bench");
+        dir.delete();
+        dir.mkdirs();
+        String path = new File(dir, "page").getAbsolutePath();
+        try {
+            for (int items : new int[]{1, 20, 200}) {
+                FileUtilsEntityTest.Page page = FileUtilsEntityTest.createPage(items);
+                FileUtils.writeEntity(page, path);
+                long size = new File(path).length();
+                System.out.printf("%d items, %d bytes%n", items, size);
+                report("write", measure(OLD_WRITE, page, path), measure(WRITE, page, path));
+                report("read", measure(OLD_READ, page, path), measure(READ, page, path));
+            }
+        } finally {
+            FileUtils.deleteDir(dir);
+        }
+        if (sSink == Integer.MIN_VALUE) {
+            System.out.println(sSink);
+        }
+    }
+
+    private static void report(String name, double oldUs, double newUs) {
+        System.out.printf("  %-5s old %8.1f us/call  new %8.1f us/call  x%.2f%n", name, oldUs, newUs,
+                oldUs / newUs);
+    }
+
+    /** 返回平均每次调用的微秒数 */
+    private static double measure(Call call, FileUtilsEntityTest.Page page, String path) {
+        run(call, page, path, WARMUP_MS);
+        long start = System.nanoTime();
+        int count = run(call, page, path, MEASURE_MS);
+        return (System.nanoTime() - start) / 1000.0 / count;
+    }
+
+    private static int run(Call call, FileUtilsEntityTest.Page page, String path, long durationMs) {
+        long end = System.nanoTime() + durationMs * 1000000L;
+        int count = 0;
+        while (System.nanoTime() < end) {
+            call.run(page, path);
+            count++;
+        }
+        return count;
+    }
+
+    private static void sink(FileUtilsEntityTest.Page page) {
+        sSink += page.list.size();
+    }
+}
@@ -0,0 +1,149 @@
+package com.cylee.androidlib.util;
+
+import com.google.jtm.Gson;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FileUtils实体读写：格式要和以前每次new Gson()写出的文件兼容，枚举按名字保存
+ */
+public class FileUtilsEntityTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    enum State {
+        NEW, RUNNING, DONE
+    }
+
+    /** 和接口返回的实体结构类似，嵌套列表、枚举和boolean */
+    static class Item {
+        long id;
+        String title;
+        boolean read;
+        State state;
+
+        Item() {
+        }
+
+        Item(long id, String title, boolean read, State state) {
+            this.id = id;
+            this.title = title;
+            this.read = read;
+            this.state = state;
+        }
+    }
+
+    static class Page {
+        int pn;
+        boolean hasMore;
+        State state;
+        List<Item> list = new ArrayList<Item>();
+    }
+
+    static Page createPage(int items) {
+        Page page = new Page();
+        page.pn = 20;
+        page.hasMore = true;
+        page.state = State.RUNNING;
+        for (int i = 0; i < items; i++) {
+            page.list.add(new Item(1000000L + i, "第" + i + "条 item title \"quoted\"", i % 3 == 0,
+                    State.values()[i % 3]));
+        }
+        return page;
+    }
+
+    private static void assertPageEquals(Page expected, Page actual) {
+        assertEquals(expected.pn, actual.pn);
+        assertEquals(expected.hasMore, actual.hasMore);
+        assertEquals(expected.state, actual.state);
+        assertEquals(expected.list.size(), actual.list.size());
+        for (int i = 0; i < expected.list.size(); i++) {
+            Item e = expected.list.get(i);
+            Item a = actual.list.get(i);
+            assertEquals(e.id, a.id);
+            assertEquals(e.title, a.title);
+            assertEquals(e.read, a.read);
+            assertEquals(e.state, a.state);
+        }
+    }
+
+    @Test
+    public void persistsEnumsByName() throws Exception {
+        String path = new File(folder.getRoot(), "page").getAbsolutePath();
+        Page page = createPage(3);
+        assertTrue(FileUtils.writeEntity(page, path));
+
+        String json = new String(FileUtils.readEntityData(path), "UTF-8");
+        assertTrue(json, json.contains("\"state\":\"RUNNING\""));
+        assertTrue(json, json.contains("\"state\":\"DONE\""));
+        assertPageEquals(page, FileUtils.readEntity(Page.class, path));
+    }
+
+    @Test
+    public void readsFilesOfThePlainGsonFormat() throws Exception {
+        String path = new File(folder.getRoot(), "old").getAbsolutePath();
+        Page page = createPage(5);
+        // 以前的writeEntity每次new Gson()，按默认编码写入，Android上是UTF-8
+        assertTrue(FileUtils.writeFile(path, new Gson().toJson(page).getBytes("UTF-8")));
+        assertPageEquals(page, FileUtils.readEntity(Page.class, path));
+    }
+
+    @Test
+    public void writesWhatPlainGsonReads() throws Exception {
+        String path = new File(folder.getRoot(), "new").getAbsolutePath();
+        Page page = createPage(5);
+        assertTrue(FileUtils.writeEntity(page, path));
+        String json = new String(FileUtils.readEntityData(path), "UTF-8");
+        assertPageEquals(page, new Gson().fromJson(json, Page.class));
+    }
+
+    @Test
+    public void readsBooleansSavedAsInts() throws Exception {
+        String path = new File(folder.getRoot(), "ints").getAbsolutePath();
+        assertTrue(FileUtils.writeFile(path, "{\"pn\":1,\"hasMore\":1,\"list\":[{\"read\":0}]}"));
+        Page page = FileUtils.readEntity(Page.class, path);
+        assertTrue(page.hasMore);
+        assertEquals(false, page.list.get(0).read);
+    }
+
+    @Test
+    public void serializedEntityMatchesFile() throws Exception {
+        String path = new File(folder.getRoot(), "data").getAbsolutePath();
+        Page page = createPage(4);
+        byte[] data = FileUtils.serializeEntity(page);
+        assertTrue(FileUtils.writeEntity(page, path));
+        assertArrayEquals(data, FileUtils.readEntityData(path));
+        assertPageEquals(page, FileUtils.parseEntity(Page.class, data));
+
+        String dataPath = new File(folder.getRoot(), "data2").getAbsolutePath();
+        assertTrue(FileUtils.writeEntityData(data, dataPath));
+        assertPageEquals(page, FileUtils.readEntity(Page.class, dataPath));
+    }
+
+    @Test
+    public void stringEntityRoundTrip() throws Exception {
+        String path = new File(folder.getRoot(), "string").getAbsolutePath();
+        String value = "{\"raw\":\"不解析\"}";
+        assertTrue(FileUtils.writeEntity(value, path));
+        assertEquals(value, FileUtils.readEntity(String.class, path));
+        assertEquals(value, FileUtils.parseEntity(String.class, FileUtils.serializeEntity(value)));
+    }
+
+    @Test
+    public void missingFileReadsAsNull() {
+        String path = new File(folder.getRoot(), "missing").getAbsolutePath();
+        assertNull(FileUtils.readEntity(Page.class, path));
+        assertNull(FileUtils.readEntityData(path));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jtm;
+
+import com.google.jtm.internal.bind.GeneratedTypeAdapter;
+
+/**
+ * Time per toJson/fromJson call of the {@link GeneratedTypeAdapterTest} models, through the
+ * adapters generated by {@code jtm-compiler} and through the reflective binding, plus the time to
+ * create a Gson and the Feed adapter, as on the first parse of a process.
+ *
+ * <p>Not a unit test, run main() from the IDE or with the test classpath.</p>
+ */
+public final class GeneratedTypeAdapterBenchmark {
+  private static final int WARMUP_MS = 2000;
+  private static final int MEASURE_MS = 3000;
+
+  private interface Call {
+    void run(Gson gson, GeneratedTypeAdapterTest.Feed feed, String json);
+  }
+
+  private static final Call WRITE = new Call() {
+    @Override public void run(Gson gson, GeneratedTypeAdapterTest.Feed feed, String json) {
+      sSink += gson.toJson(feed).length();
+    }
+  };
+
+  private static final Call READ = new Call() {
+    @Override public void run(Gson gson, GeneratedTypeAdapterTest.Feed feed, String json) {
+      sSink += gson.fromJson(json, GeneratedTypeAdapterTest.Feed.class).list.size();
+    }
+  };
+
+  private static final Call FIRST_USE = new Call() {
+    @Override public void run(Gson gson, GeneratedTypeAdapterTest.Feed feed, String json) {
+      Gson fresh = gson.getAdapter(GeneratedTypeAdapterTest.Feed.class)
+          instanceof GeneratedTypeAdapter
+          ? new Gson() : new GsonBuilder().disableGeneratedTypeAdapters().create();
+      sSink += fresh.getAdapter(GeneratedTypeAdapterTest.Feed.class).hashCode();
+    }
+  };
+
+  private static int sSink;
+
+  private GeneratedTypeAdapterBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    Gson generated = new Gson();
+    Gson reflective = new GsonBuilder().disableGeneratedTypeAdapters().create();
+    for (int items : new int[] {1, 20, 200}) {
+      GeneratedTypeAdapterTest.Feed feed = GeneratedTypeAdapterTest.createFeed(items);
+      String json = generated.toJson(feed);
+      System.out.printf("%d items, %d chars%n", items, json.length());
+      report("write", measure(WRITE, reflective, feed, json),
+          measure(WRITE, generated, feed, json));
+      report("read", measure(READ, reflective, feed, json), measure(READ, generated, feed, json));
+    }
+    report("first use", measure(FIRST_USE, reflective, null, null),
+        measure(FIRST_USE, generated, null, null));
+    if (sSink == Integer.MIN_VALUE) {
+      System.out.println(sSink);
+    }
+  }
+
+  private static void report(String name, double reflectiveUs, double generatedUs) {
+    System.out.printf("  %-9s reflective %8.2f us/call  generated %8.2f us/call  x%.2f%n", name,
+        reflectiveUs, generatedUs, reflectiveUs / generatedUs);
+  }
+
+  /** Returns the average microseconds per call. */
+  private static double measure(Call call, Gson gson, GeneratedTypeAdapterTest.Feed feed,
+      String json) {
+    run(call, gson, feed, json, WARMUP_MS);
+    long start = System.nanoTime();
+    int count = run(call, gson, feed, json, MEASURE_MS);
+    return (System.nanoTime() - start) / 1000.0 / count;
+  }
+
+  private static int run(Call call, Gson gson, GeneratedTypeAdapterTest.Feed feed, String json,
+      long durationMs) {
+    long end = System.nanoTime() + durationMs * 1000000L;
+    int count = 0;
+    while (System.nanoTime() < end) {
+      call.run(gson, feed, json);
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jtm;
+
+import com.google.jtm.annotations.Expose;
+import com.google.jtm.annotations.GenerateAdapter;
+import com.google.jtm.annotations.SerializedName;
+import com.google.jtm.annotations.Since;
+import com.google.jtm.annotations.Until;
+import com.google.jtm.internal.bind.GeneratedTypeAdapter;
+import com.google.jtm.stream.JsonReader;
+import com.google.jtm.stream.JsonToken;
+import com.google.jtm.stream.JsonWriter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the adapters generated by {@code jtm-compiler} against the reflective binding of a Gson
+ * configured the same way: both must write the same JSON and read the same values.
+ */
+public class GeneratedTypeAdapterTest {
+
+  enum State { NEW, READ, DELETED }
+
+  static class Base {
+    long id;
+    String title;
+  }
+
+  @GenerateAdapter
+  static class Feed extends Base {
+    @SerializedName("has_more") boolean hasMore;
+    int count;
+    double score;
+    Boolean flag;
+    Integer boxed;
+    char grade;
+    float ratio;
+    transient int cache;
+    State state;
+    List<Item> list;
+    Map<String, Integer> counts;
+  }
+
+  @GenerateAdapter
+  static class Item {
+    String name;
+    @Expose int exposed;
+    @Expose @Since(2.0) String since;
+    @Expose @Until(1.5) String until;
+  }
+
+  static class Holder<T> {
+    T value;
+    List<T> values;
+  }
+
+  @GenerateAdapter
+  static class StringHolder extends Holder<String> {
+  }
+
+  static Feed createFeed(int items) {
+    Feed feed = new Feed();
+    feed.id = 1L << 40;
+    feed.title = "tést \"quoted\"";
+    feed.hasMore = true;
+    feed.count = -7;
+    feed.score = 0.125;
+    feed.flag = false;
+    feed.grade = 'b';
+    feed.ratio = 1.5f;
+    feed.cache = 42;
+    feed.state = State.READ;
+    feed.list = new ArrayList<Item>();
+    for (int i = 0; i < items; i++) {
+      Item item = new Item();
+      item.name = "item" + i;
+      item.exposed = i;
+      item.since = "s" + i;
+      item.until = i % 2 == 0 ? null : "u" + i;
+      feed.list.add(item);
+    }
+    feed.counts = new LinkedHashMap<String, Integer>();
+    feed.counts.put("a", 1);
+    feed.counts.put("b", null);
+    return feed;
+  }
+
+  @Test
+  public void usesGeneratedAdapter() {
+    assertTrue(new Gson().getAdapter(Feed.class) instanceof GeneratedTypeAdapter);
+    assertTrue(new Gson().getAdapter(StringHolder.class) instanceof GeneratedTypeAdapter);
+    assertFalse(new GsonBuilder().disableGeneratedTypeAdapters().create()
+        .getAdapter(Feed.class) instanceof GeneratedTypeAdapter);
+  }
+
+  @Test
+  public void defaultGson() {
+    assertSameJson(new GsonBuilder(), createFeed(3));
+    assertSameJson(new GsonBuilder(), new Feed());
+    assertSameJson(new GsonBuilder().serializeNulls(), createFeed(3));
+    assertSameJson(new GsonBuilder().serializeNulls(), new Feed());
+  }
+
+  @Test
+  public void read() {
+    assertSameRead(new GsonBuilder(), "{\"count\":3,\"id\":5,\"has_more\":true}");
+    assertSameRead(new GsonBuilder(), "{\"unknown\":{\"a\":[1,2]},\"count\":3,\"other\":null}");
+    assertSameRead(new GsonBuilder(), "{\"count\":null,\"score\":null,\"has_more\":null,"
+        + "\"title\":null,\"flag\":null,\"grade\":null,\"ratio\":null,\"list\":null}");
+    assertSameRead(new GsonBuilder(), "{\"has_more\":\"true\",\"count\":\"12\",\"score\":\"2.5\","
+        + "\"title\":false,\"cache\":9,\"hasMore\":false}");
+    assertSameRead(new GsonBuilder(), "{\"list\":[{\"name\":\"x\",\"exposed\":1},null],"
+        + "\"counts\":{\"k\":2},\"state\":\"DELETED\"}");
+    assertNull(generated(new GsonBuilder()).fromJson("null", Feed.class));
+  }
+
+  @Test
+  public void readGenericSuperclass() {
+    Gson gson = generated(new GsonBuilder());
+    StringHolder holder = gson.fromJson("{\"value\":\"v\",\"values\":[\"a\",null]}",
+        StringHolder.class);
+    assertEquals("v", holder.value);
+    assertEquals(2, holder.values.size());
+    assertEquals("a", holder.values.get(0));
+    assertSameJson(new GsonBuilder(), holder);
+  }
+
+  @Test
+  public void exclusions() {
+    Item item = createFeed(2).list.get(1);
+    assertSameJson(new GsonBuilder().excludeFieldsWithoutExposeAnnotation(), item);
+    assertSameJson(new GsonBuilder().setVersion(1.0), item);
+    assertSameJson(new GsonBuilder().setVersion(2.0), item);
+    assertSameRead(new GsonBuilder().excludeFieldsWithoutExposeAnnotation(),
+        "{\"name\":\"n\",\"exposed\":3,\"since\":\"s\",\"until\":\"u\"}", Item.class);
+    assertSameRead(new GsonBuilder().setVersion(2.0),
+        "{\"name\":\"n\",\"exposed\":3,\"since\":\"s\",\"until\":\"u\"}", Item.class);
+    // transient fields are bound too, the excluder decides at runtime
+    assertSameJson(new GsonBuilder().excludeFieldsWithModifiers(), createFeed(1));
+    assertTrue(generated(new GsonBuilder().excludeFieldsWithModifiers()).toJson(createFeed(1))
+        .contains("\"cache\":42"));
+  }
+
+  @Test
+  public void namingPolicy() {
+    assertSameJson(new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE),
+        createFeed(1));
+    assertSameRead(new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE),
+        "{\"Count\":3,\"Id\":5,\"has_more\":true,\"Title\":\"x\"}");
+  }
+
+  /** Booleans as 0/1 and enums as ordinals, like GsonBuilderFactory.createBuilder(). */
+  @Test
+  public void registeredAdapters() {
+    Feed feed = createFeed(2);
+    assertSameJson(withRegisteredAdapters(), feed);
+    String json = generated(withRegisteredAdapters()).toJson(feed);
+    assertTrue(json, json.contains("\"has_more\":1"));
+    assertTrue(json, json.contains("\"state\":1"));
+    assertSameRead(withRegisteredAdapters(), "{\"has_more\":1,\"flag\":0,\"state\":2}");
+  }
+
+  private static GsonBuilder withRegisteredAdapters() {
+    return new GsonBuilder()
+        .registerTypeAdapter(boolean.class, BOOLEAN_AS_INT)
+        .registerTypeAdapter(Boolean.class, BOOLEAN_AS_INT)
+        .registerTypeAdapter(State.class, STATE_AS_ORDINAL);
+  }
+
+  @Test
+  public void syntaxErrors() {
+    assertSameFailure("{\"count\":\"abc\"}", JsonSyntaxException.class);
+    assertSameFailure("{\"id\":1.5}", JsonSyntaxException.class);
+    assertSameFailure("{\"count\":[1]}", JsonSyntaxException.class);
+    assertSameFailure("{\"title\":{}}", JsonSyntaxException.class);
+    assertSameFailure("[]", JsonSyntaxException.class);
+  }
+
+  @Test
+  public void nonFiniteDoubles() {
+    Feed feed = new Feed();
+    feed.score = Double.NaN;
+    try {
+      generated(new GsonBuilder()).toJson(feed);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    assertSameJson(new GsonBuilder().serializeSpecialFloatingPointValues(), feed);
+  }
+
+  private static Gson generated(GsonBuilder builder) {
+    return builder.create();
+  }
+
+  /** Disables the generated adapters of the builder, so it must be called after generated(). */
+  private static Gson reflective(GsonBuilder builder) {
+    return builder.disableGeneratedTypeAdapters().create();
+  }
+
+  private static void assertSameJson(GsonBuilder builder, Object value) {
+    Gson generated = generated(builder);
+    Gson reflective = reflective(builder);
+    String json = reflective.toJson(value);
+    assertEquals(json, generated.toJson(value));
+    // read back with both and write again
+    assertEquals(json, reflective.toJson(generated.fromJson(json, value.getClass())));
+    assertEquals(json, generated.toJson(reflective.fromJson(json, value.getClass())));
+  }
+
+  private static void assertSameRead(GsonBuilder builder, String json) {
+    assertSameRead(builder, json, Feed.class);
+  }
+
+  private static void assertSameRead(GsonBuilder builder, String json, Class<?> type) {
+    // Compares what was read through a Gson writing every field, including transient ones
+    Gson all = new GsonBuilder().disableGeneratedTypeAdapters().serializeNulls()
+        .excludeFieldsWithModifiers().create();
+    Gson generated = generated(builder);
+    Gson reflective = reflective(builder);
+    assertEquals(all.toJson(reflective.fromJson(json, type)),
+        all.toJson(generated.fromJson(json, type)));
+  }
+
+  private static void assertSameFailure(String json, Class<? extends Exception> expected) {
+    for (Gson gson : new Gson[] {
+        generated(new GsonBuilder()), reflective(new GsonBuilder())}) {
+      try {
+        gson.fromJson(json, Feed.class);
+        fail(json);
+      } catch (Exception e) {
+        assertEquals(json, expected, e.getClass());
+      }
+    }
+  }
+
+  private static final TypeAdapter<Boolean> BOOLEAN_AS_INT = new TypeAdapter<Boolean>() {
+    @Override public void write(JsonWriter out, Boolean value) throws IOException {
+      if (value == null) {
+        out.nullValue();
+      } else {
+        out.value(value ? 1 : 0);
+      }
+    }
+
+    @Override public Boolean read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      return in.nextInt() != 0;
+    }
+  };
+
+  private static final TypeAdapter<State> STATE_AS_ORDINAL = new TypeAdapter<State>() {
+    @Override public void write(JsonWriter out, State value) throws IOException {
+      if (value == null) {
+        out.nullValue();
+      } else {
+        out.value(value.ordinal());
+      }
+    }
+
+    @Override public State read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      return State.values()[in.nextInt()];
+    }
+  };
+}
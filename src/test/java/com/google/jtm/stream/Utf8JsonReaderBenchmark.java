@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jtm.stream;
+
+import com.google.jtm.Gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+/**
+ * Time to read a UTF-8 response body with {@link Utf8JsonReader}, from the byte array and from a
+ * stream, against the paths it replaces: decoding the body to a String first, or reading it
+ * through an InputStreamReader. Measured for the bare token walk and for binding a feed with
+ * {@link Gson}.
+ *
+ * <p>Not a unit test, run main() from the IDE or with the test classpath.</p>
+ */
+public final class Utf8JsonReaderBenchmark {
+  private static final int WARMUP_MS = 2000;
+  private static final int MEASURE_MS = 3000;
+
+  static class Item {
+    long id;
+    String name;
+    String summary;
+    double score;
+    boolean read;
+    List<String> tags;
+  }
+
+  static class Feed {
+    boolean hasMore;
+    List<Item> list;
+  }
+
+  private interface Call {
+    int run(byte[] json) throws IOException;
+  }
+
+  private static final Gson GSON = new Gson();
+
+  private static final Call TOKENS_STRING = new Call() {
+    @Override public int run(byte[] json) throws IOException {
+      return walk(new JsonReader(new StringReader(new String(json, "UTF-8"))));
+    }
+  };
+
+  private static final Call TOKENS_READER = new Call() {
+    @Override public int run(byte[] json) throws IOException {
+      return walk(new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), "UTF-8")));
+    }
+  };
+
+  private static final Call TOKENS_BYTES = new Call() {
+    @Override public int run(byte[] json) throws IOException {
+      return walk(new Utf8JsonReader(json));
+    }
+  };
+
+  private static final Call TOKENS_STREAM = new Call() {
+    @Override public int run(byte[] json) throws IOException {
+      return walk(new Utf8JsonReader(new ByteArrayInputStream(json)));
+    }
+  };
+
+  private static final Call GSON_STRING = new Call() {
+    @Override public int run(byte[] json) throws IOException {
+      return GSON.fromJson(new String(json, "UTF-8"), Feed.class).list.size();
+    }
+  };
+
+  private static final Call GSON_BYTES = new Call() {
+    @Override public int run(byte[] json) throws IOException {
+      return GSON.fromJson(json, Feed.class).list.size();
+    }
+  };
+
+  private static int sSink;
+
+  private Utf8JsonReaderBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    for (int items : new int[] {20, 2000}) {
+      for (boolean ascii : new boolean[] {true, false}) {
+        byte[] json = createFeed(items, ascii);
+        System.out.printf("%d items, %s, %d bytes%n", items, ascii ? "ascii" : "mixed CJK",
+            json.length);
+        double string = measure(TOKENS_STRING, json);
+        report("tokens, String", string, string);
+        report("tokens, InputStreamReader", string, measure(TOKENS_READER, json));
+        report("tokens, Utf8JsonReader bytes", string, measure(TOKENS_BYTES, json));
+        report("tokens, Utf8JsonReader stream", string, measure(TOKENS_STREAM, json));
+        double gsonString = measure(GSON_STRING, json);
+        report("gson, String", gsonString, gsonString);
+        report("gson, bytes", gsonString, measure(GSON_BYTES, json));
+      }
+    }
+    if (sSink == Integer.MIN_VALUE) {
+      System.out.println(sSink);
+    }
+  }
+
+  private static byte[] createFeed(int items, boolean ascii) throws UnsupportedEncodingException {
+    StringBuilder json = new StringBuilder("{\"hasMore\":true,\"list\":[");
+    for (int i = 0; i < items; i++) {
+      json.append(i == 0 ? "" : ",")
+          .append("{\"id\":").append(1000000000L + i)
+          .append(",\"name\":\"").append(ascii ? "user" + i : "\u7528\u6237" + i)
+          .append("\",\"summary\":\"").append(ascii
+              ? "a fairly ordinary summary line, item " + i
+              : "\u4e00\u6bb5\u666e\u901a\u7684\u6458\u8981 item " + i + " \ud83d\ude00")
+          .append("\",\"score\":").append(i * 0.25)
+          .append(",\"read\":").append(i % 2 == 0)
+          .append(",\"tags\":[\"news\",\"").append(ascii ? "tech" : "\u79d1\u6280")
+          .append("\"]}");
+    }
+    return json.append("]}").toString().getBytes("UTF-8");
+  }
+
+  /** Reads every token and value, returns a count the JIT cannot drop. */
+  private static int walk(JsonReader reader) throws IOException {
+    int count = 0;
+    while (true) {
+      switch (reader.peek()) {
+        case BEGIN_ARRAY:
+          reader.beginArray();
+          break;
+        case END_ARRAY:
+          reader.endArray();
+          break;
+        case BEGIN_OBJECT:
+          reader.beginObject();
+          break;
+        case END_OBJECT:
+          reader.endObject();
+          break;
+        case NAME:
+          count += reader.nextName().length();
+          break;
+        case STRING:
+        case NUMBER:
+          count += reader.nextString().length();
+          break;
+        case BOOLEAN:
+          reader.nextBoolean();
+          break;
+        case NULL:
+          reader.nextNull();
+          break;
+        case END_DOCUMENT:
+          reader.close();
+          return count;
+      }
+      count++;
+    }
+  }
+
+  private static void report(String name, double baselineUs, double us) {
+    System.out.printf("  %-30s %10.1f us/call  x%.2f%n", name, us, baselineUs / us);
+  }
+
+  /** Returns the average microseconds per call. */
+  private static double measure(Call call, byte[] json) throws IOException {
+    run(call, json, WARMUP_MS);
+    long start = System.nanoTime();
+    int count = run(call, json, MEASURE_MS);
+    return (System.nanoTime() - start) / 1000.0 / count;
+  }
+
+  private static int run(Call call, byte[] json, long durationMs) throws IOException {
+    long end = System.nanoTime() + durationMs * 1000000L;
+    int count = 0;
+    while (System.nanoTime() < end) {
+      sSink += call.run(json);
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jtm.stream;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reads the same documents with {@link Utf8JsonReader}, from a byte array and from streams that
+ * deliver a few bytes per read, and with {@link JsonReader} over the decoded text. All readers
+ * must return the same tokens and values and fail at the same token with the same exception.
+ */
+public class Utf8JsonReaderTest {
+
+  private static final String BOM = "\ufeff";
+
+  private static final String[] DOCUMENTS = {
+      "{}",
+      "[]",
+      "1",
+      "\"\"",
+      "null",
+      "true",
+      "{\"a\":1,\"b\":[true,false,null],\"c\":{\"d\":\"e\"}}",
+      "[0, -0, 1.5, -1.5e10, 1E-3, 9223372036854775807, -9223372036854775808,"
+          + " 9223372036854775808, 2147483648, 1.0, 12345678901234567890123, 0.1e1]",
+      "[\"\\u0041\\u00e9\\u4e2d\\ud83d\\ude00\", \"\\\"\\\\\\/\\b\\f\\n\\r\\t\"]",
+      "[\"A\u00e9\u4e2d\ud83d\ude00\u20ac\","
+          + " {\"\u00e9\u4e2d\ud83d\ude00\":\"\u0080\u07ff\u0800\uffff\"}]",
+      "{\"list\":[{\"id\":1,\"name\":\"a\"},{\"id\":2,\"name\":\"b\"},{\"name\":\"c\",\"id\":3}]}",
+      " \n\t[ 1 ,\n 2 ]\r\n ",
+      "[1,]",
+      "[1 2]",
+      "{\"a\" 1}",
+      "{\"a\":}",
+      "[\"unterminated",
+      "[\"\\x\"]",
+      "[\"\\u12\"]",
+      "[tru]",
+      "[01]",
+      "[1e]",
+      "[-]",
+      "{'single':'quotes'}",
+      "{unquoted:value}",
+      "[NaN, Infinity, -Infinity]",
+      "// comment\n[1] # more",
+      "/* block */ [1]",
+      ")]}'\n[1]",
+      "[1] [2]",
+      "{\"a\":1,}",
+      "[\"\\u0000\"]",
+  };
+
+  @Test
+  public void documents() throws IOException {
+    for (String document : DOCUMENTS) {
+      assertSameTokens(document, false);
+      assertSameTokens(document, true);
+      assertSameTokens(BOM + document, false);
+      assertSameTokens(BOM + document, true);
+    }
+  }
+
+  /** The stream used to be checked for a BOM only when the first read returned 3 bytes. */
+  @Test
+  public void byteOrderMarkSplitAcrossReads() throws IOException {
+    for (String document : new String[] {"1", "[1]", "{\"a\":true}", "\"\u00e9\""}) {
+      byte[] bytes = utf8(BOM + document);
+      for (int chunk = 1; chunk <= 4; chunk++) {
+        assertEquals(document + " chunk " + chunk, tokens(new JsonReader(
+            new StringReader(document)), false),
+            tokens(new Utf8JsonReader(new ChunkedInputStream(bytes, chunk, null)), false));
+      }
+    }
+  }
+
+  @Test
+  public void longValuesAcrossBuffers() throws IOException {
+    StringBuilder name = new StringBuilder();
+    StringBuilder value = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      name.append((char) ('a' + i % 26));
+      value.append(i % 7 == 0 ? "\u4e2d"
+          : i % 11 == 0 ? "\ud83d\ude00" : i % 13 == 0 ? "\\n" : "x");
+    }
+    StringBuilder number = new StringBuilder("1");
+    for (int i = 0; i < 10000; i++) {
+      number.append('0');
+    }
+    String document = "{\"" + name + "\":\"" + value + "\",\"n\":" + number + ",\"w\":[" + spaces()
+        + "1]}";
+    assertSameTokens(document, false);
+    assertSameTokens(document, true);
+  }
+
+  @Test
+  public void deepNesting() throws IOException {
+    StringBuilder document = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      document.append(i % 2 == 0 ? "[" : "{\"k\":");
+    }
+    document.append("1");
+    for (int i = 199; i >= 0; i--) {
+      document.append(i % 2 == 0 ? "]" : "}");
+    }
+    assertSameTokens(document.toString(), false);
+  }
+
+  @Test
+  public void randomDocuments() throws IOException {
+    Random random = new Random(16);
+    for (int i = 0; i < 500; i++) {
+      StringBuilder document = new StringBuilder();
+      randomValue(random, document, 0);
+      assertSameTokens(document.toString(), false);
+      // a random mutation is mostly malformed, both readers must agree where
+      char[] chars = document.toString().toCharArray();
+      chars[random.nextInt(chars.length)] = MUTATIONS.charAt(random.nextInt(MUTATIONS.length()));
+      assertSameTokens(new String(chars), false);
+      assertSameTokens(new String(chars), true);
+    }
+  }
+
+  private static void assertSameTokens(String document, boolean lenient) throws IOException {
+    byte[] bytes = utf8(document);
+    // decoded again so that a lone surrogate reads as the replacement the bytes hold
+    String expected = tokens(new JsonReader(new StringReader(new String(bytes, "UTF-8"))),
+        lenient);
+    assertEquals(document, expected, tokens(new Utf8JsonReader(bytes), lenient));
+    byte[] padded = new byte[bytes.length + 6];
+    Arrays.fill(padded, (byte) '[');
+    System.arraycopy(bytes, 0, padded, 3, bytes.length);
+    assertEquals(document, expected,
+        tokens(new Utf8JsonReader(padded, 3, bytes.length), lenient));
+    Random random = new Random(document.hashCode());
+    for (int chunk : new int[] {1, 2, 3, 7, 8192}) {
+      assertEquals(document + " chunk " + chunk, expected,
+          tokens(new Utf8JsonReader(new ChunkedInputStream(bytes, chunk, null)), lenient));
+    }
+    assertEquals(document + " random chunks", expected,
+        tokens(new Utf8JsonReader(new ChunkedInputStream(bytes, 16, random)), lenient));
+  }
+
+  /**
+   * Returns every token of the document and its value, or the exception that stopped reading.
+   * Numbers are read with nextLong, nextInt and nextDouble where they fit, like the adapters do.
+   */
+  private static String tokens(JsonReader reader, boolean lenient) {
+    reader.setLenient(lenient);
+    List<String> tokens = new ArrayList<String>();
+    try {
+      int number = 0;
+      while (true) {
+        JsonToken token = reader.peek();
+        switch (token) {
+          case BEGIN_ARRAY:
+            reader.beginArray();
+            break;
+          case END_ARRAY:
+            reader.endArray();
+            break;
+          case BEGIN_OBJECT:
+            reader.beginObject();
+            break;
+          case END_OBJECT:
+            reader.endObject();
+            break;
+          case NAME:
+            tokens.add("name " + reader.nextName());
+            continue;
+          case STRING:
+            tokens.add("string " + reader.nextString());
+            continue;
+          case BOOLEAN:
+            tokens.add("boolean " + reader.nextBoolean());
+            continue;
+          case NULL:
+            reader.nextNull();
+            break;
+          case NUMBER:
+            tokens.add("number " + nextNumber(reader, number++));
+            continue;
+          case END_DOCUMENT:
+            tokens.add("end");
+            return join(tokens);
+          default:
+            throw new AssertionError(token);
+        }
+        tokens.add("" + token);
+      }
+    } catch (Exception e) {
+      tokens.add(e.getClass().getSimpleName());
+      return join(tokens);
+    }
+  }
+
+  private static String nextNumber(JsonReader reader, int number) throws IOException {
+    try {
+      switch (number % 4) {
+        case 0:
+          return "long " + reader.nextLong();
+        case 1:
+          return "int " + reader.nextInt();
+        case 2:
+          return "double " + reader.nextDouble();
+        default:
+          return "string " + reader.nextString();
+      }
+    } catch (NumberFormatException e) {
+      // the value stays buffered and can be read as a string
+      return e.getClass().getSimpleName() + " " + reader.nextString();
+    }
+  }
+
+  private static void randomValue(Random random, StringBuilder out, int depth) {
+    int kind = random.nextInt(depth > 4 ? 5 : 7);
+    switch (kind) {
+      case 0:
+        out.append(random.nextBoolean() ? "true" : random.nextBoolean() ? "false" : "null");
+        break;
+      case 1:
+        out.append(random.nextBoolean() ? random.nextLong() : random.nextInt(1000));
+        break;
+      case 2:
+        out.append(random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20));
+        break;
+      case 3:
+      case 4:
+        out.append('"');
+        randomString(random, out);
+        out.append('"');
+        break;
+      case 5:
+        out.append('[');
+        for (int i = random.nextInt(5); i >= 0; i--) {
+          randomValue(random, out, depth + 1);
+          out.append(i > 0 ? "," : "");
+        }
+        out.append(']');
+        break;
+      default:
+        out.append('{');
+        for (int i = random.nextInt(5); i >= 0; i--) {
+          out.append('"');
+          randomString(random, out);
+          out.append("\":");
+          randomValue(random, out, depth + 1);
+          out.append(i > 0 ? "," : "");
+        }
+        out.append('}');
+        break;
+    }
+  }
+
+  private static final String MUTATIONS = "[]{}:,\"\\ 1an";
+
+  private static final String[] STRING_PARTS = {
+      "a", "id", "name", " ", "\u00e9", "\u4e2d", "\ud83d\ude00", "\\n", "\\\"", "\\u00e9",
+      "\\ud83d\\ude00", "\u0080", "\u07ff", "\u0800", "\uffff"
+  };
+
+  private static void randomString(Random random, StringBuilder out) {
+    for (int i = random.nextInt(8); i > 0; i--) {
+      out.append(STRING_PARTS[random.nextInt(STRING_PARTS.length)]);
+    }
+  }
+
+  private static String spaces() {
+    char[] spaces = new char[9000];
+    Arrays.fill(spaces, ' ');
+    return new String(spaces);
+  }
+
+  private static String join(List<String> tokens) {
+    StringBuilder result = new StringBuilder();
+    for (String token : tokens) {
+      result.append(token).append('\n');
+    }
+    return result.toString();
+  }
+
+  private static byte[] utf8(String s) {
+    try {
+      return s.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Delivers at most {@code chunk} bytes per read, or a random count up to it, like a network
+   * stream.
+   */
+  static final class ChunkedInputStream extends InputStream {
+    private final InputStream in;
+    private final int chunk;
+    private final Random random;
+
+    ChunkedInputStream(byte[] bytes, int chunk, Random random) {
+      this.in = new ByteArrayInputStream(bytes);
+      this.chunk = chunk;
+      this.random = random;
+    }
+
+    @Override public int read() throws IOException {
+      return in.read();
+    }
+
+    @Override public int read(byte[] buffer, int offset, int count) throws IOException {
+      int max = random != null ? 1 + random.nextInt(chunk) : chunk;
+      return in.read(buffer, offset, Math.min(count, max));
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.camera;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.util.Random;
+
+/**
+ * Frames per second of preparing a portrait preview frame for decoding, the old way (rotate the
+ * whole frame, then crop it with {@link PlanarYUVLuminanceSource}) against
+ * {@link RotatedPlanarYUVLuminanceSource}. Each frame is binarized with {@link HybridBinarizer},
+ * which is what DecodeHandler feeds the readers with.
+ *
+ * Run the main method from the IDE or with the test classpath; it is not a unit test.
+ */
+public final class RotatedPlanarYUVLuminanceSourceBenchmark {
+
+  private static final int WARMUP_MS = 2000;
+  private static final int MEASURE_MS = 3000;
+
+  private interface FrameSource {
+    LuminanceSource build(byte[] data, int width, int height, int left, int top, int cropWidth,
+        int cropHeight);
+  }
+
+  private static final FrameSource ROTATE_THEN_CROP = new FrameSource() {
+    @Override
+    public LuminanceSource build(byte[] data, int width, int height, int left, int top,
+        int cropWidth, int cropHeight) {
+      byte[] rotated = RotatedPlanarYUVLuminanceSourceTest.rotateClockwise(data, width, height);
+      return new PlanarYUVLuminanceSource(rotated, height, width, left, top, cropWidth,
+          cropHeight);
+    }
+  };
+
+  private static final FrameSource ROTATED = new FrameSource() {
+    @Override
+    public LuminanceSource build(byte[] data, int width, int height, int left, int top,
+        int cropWidth, int cropHeight) {
+      return new RotatedPlanarYUVLuminanceSource(data, width, height, left, top, cropWidth,
+          cropHeight);
+    }
+  };
+
+  private RotatedPlanarYUVLuminanceSourceBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    int[][] previews = {{640, 480}, {1280, 720}, {1920, 1080}};
+    Random random = new Random(1);
+    for (int[] preview : previews) {
+      int width = preview[0];
+      int height = preview[1];
+      byte[][] frames = new byte[2][];
+      for (int i = 0; i < frames.length; i++) {
+        frames[i] = RotatedPlanarYUVLuminanceSourceTest.randomFrame(random, width, height);
+      }
+      // A square framing rect of 3/4 of the short side, like CameraManager's, in rotated space.
+      int side = height * 3 / 4;
+      int left = (height - side) / 2;
+      int top = (width - side) / 2;
+      for (boolean binarize : new boolean[] {false, true}) {
+        double old = measure(ROTATE_THEN_CROP, frames, width, height, left, top, side, binarize);
+        double rotated = measure(ROTATED, frames, width, height, left, top, side, binarize);
+        System.out.printf("%dx%d crop %d %-12s rotate+crop %8.1f fps  rotated %8.1f fps  x%.2f%n",
+            width, height, side, binarize ? "binarized" : "luminance", old, rotated,
+            rotated / old);
+      }
+    }
+  }
+
+  private static double measure(FrameSource source, byte[][] frames, int width, int height,
+      int left, int top, int side, boolean binarize) {
+    run(source, frames, width, height, left, top, side, binarize, WARMUP_MS);
+    long start = System.nanoTime();
+    int count = run(source, frames, width, height, left, top, side, binarize, MEASURE_MS);
+    return count * 1e9 / (System.nanoTime() - start);
+  }
+
+  private static int run(FrameSource source, byte[][] frames, int width, int height, int left,
+      int top, int side, boolean binarize, long durationMs) {
+    long end = System.nanoTime() + durationMs * 1000000L;
+    int count = 0;
+    int sink = 0;
+    while (System.nanoTime() < end) {
+      byte[] data = frames[count % frames.length];
+      LuminanceSource luminance = source.build(data, width, height, left, top, side, side);
+      if (binarize) {
+        try {
+          sink += new BinaryBitmap(new HybridBinarizer(luminance)).getBlackMatrix().getWidth();
+        } catch (NotFoundException e) {
+          sink--;
+        }
+      } else {
+        sink += luminance.getMatrix()[side];
+      }
+      count++;
+    }
+    if (sink == Integer.MIN_VALUE) {
+      System.out.println(sink);
+    }
+    return count;
+  }
+}
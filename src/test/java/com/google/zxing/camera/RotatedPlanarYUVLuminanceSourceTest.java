@@ -0,0 +1,146 @@
+/*
+ * Copyright 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.camera;
+
+import com.google.zxing.LuminanceSource;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks {@link RotatedPlanarYUVLuminanceSource} against the path it replaced: rotating the
+ * whole frame 90 degrees clockwise, then cropping it with a {@link PlanarYUVLuminanceSource}.
+ */
+public class RotatedPlanarYUVLuminanceSourceTest {
+
+  private static final int[][] FRAME_SIZES = {
+      {1, 1}, {2, 3}, {17, 5}, {64, 48}, {176, 144}, {320, 240}, {640, 480}
+  };
+
+  /** The rotation DecodeHandler did before decoding, copied verbatim. */
+  static byte[] rotateClockwise(byte[] data, int width, int height) {
+    byte[] rotatedData = new byte[data.length];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++)
+        rotatedData[x * height + height - y - 1] = data[x + y * width];
+    }
+    return rotatedData;
+  }
+
+  static byte[] randomFrame(Random random, int width, int height) {
+    // A real NV21 frame also carries the chroma planes behind the Y plane.
+    byte[] frame = new byte[width * height * 3 / 2 + 1];
+    random.nextBytes(frame);
+    return frame;
+  }
+
+  @Test
+  public void matchesRotateThenCrop() {
+    Random random = new Random(42);
+    for (int[] size : FRAME_SIZES) {
+      int dataWidth = size[0];
+      int dataHeight = size[1];
+      for (int frame = 0; frame < 8; frame++) {
+        byte[] data = randomFrame(random, dataWidth, dataHeight);
+        byte[] rotated = rotateClockwise(data, dataWidth, dataHeight);
+        // The rotated frame is dataHeight wide and dataWidth tall.
+        int width = 1 + random.nextInt(dataHeight);
+        int height = 1 + random.nextInt(dataWidth);
+        int left = random.nextInt(dataHeight - width + 1);
+        int top = random.nextInt(dataWidth - height + 1);
+
+        PlanarYUVLuminanceSource expected = new PlanarYUVLuminanceSource(rotated, dataHeight,
+            dataWidth, left, top, width, height);
+        assertSameLuminance(expected, new RotatedPlanarYUVLuminanceSource(data, dataWidth,
+            dataHeight, left, top, width, height));
+      }
+    }
+  }
+
+  @Test
+  public void matchesFullFrame() {
+    Random random = new Random(7);
+    for (int[] size : FRAME_SIZES) {
+      int dataWidth = size[0];
+      int dataHeight = size[1];
+      byte[] data = randomFrame(random, dataWidth, dataHeight);
+      byte[] rotated = rotateClockwise(data, dataWidth, dataHeight);
+      assertSameLuminance(
+          new PlanarYUVLuminanceSource(rotated, dataHeight, dataWidth, 0, 0, dataHeight, dataWidth),
+          new RotatedPlanarYUVLuminanceSource(data, dataWidth, dataHeight, 0, 0, dataHeight,
+              dataWidth));
+    }
+  }
+
+  @Test
+  public void cropMatchesRotateThenCrop() {
+    Random random = new Random(3);
+    int dataWidth = 320;
+    int dataHeight = 240;
+    byte[] data = randomFrame(random, dataWidth, dataHeight);
+    byte[] rotated = rotateClockwise(data, dataWidth, dataHeight);
+    LuminanceSource source = new RotatedPlanarYUVLuminanceSource(data, dataWidth, dataHeight, 20,
+        30, 200, 250);
+    LuminanceSource cropped = source.crop(15, 25, 100, 120);
+    assertSameLuminance(new PlanarYUVLuminanceSource(rotated, dataHeight, dataWidth, 35, 55, 100,
+        120), cropped);
+  }
+
+  @Test
+  public void rowsMatchMatrixOnceCached() {
+    Random random = new Random(11);
+    byte[] data = randomFrame(random, 176, 144);
+    RotatedPlanarYUVLuminanceSource source = new RotatedPlanarYUVLuminanceSource(data, 176, 144,
+        10, 20, 100, 90);
+    byte[][] rows = new byte[source.getHeight()][];
+    for (int y = 0; y < rows.length; y++) {
+      rows[y] = source.getRow(y, null);
+    }
+    byte[] matrix = source.getMatrix();
+    byte[] row = new byte[source.getWidth()];
+    for (int y = 0; y < rows.length; y++) {
+      assertArrayEquals(rows[y], source.getRow(y, row));
+      byte[] expected = new byte[source.getWidth()];
+      System.arraycopy(matrix, y * expected.length, expected, 0, expected.length);
+      assertArrayEquals(expected, rows[y]);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsCropOutsideRotatedFrame() {
+    // 320x240 frame rotated is 240 wide, so a 241 wide crop does not fit.
+    new RotatedPlanarYUVLuminanceSource(new byte[320 * 240], 320, 240, 0, 0, 241, 10);
+  }
+
+  private static void assertSameLuminance(LuminanceSource expected, LuminanceSource actual) {
+    int width = expected.getWidth();
+    int height = expected.getHeight();
+    assertArrayEquals(new int[] {width, height}, new int[] {actual.getWidth(), actual.getHeight()});
+    // Rows first, before getMatrix caches the crop.
+    byte[] row = new byte[width];
+    for (int y = 0; y < height; y++) {
+      assertArrayEquals("row " + y, expected.getRow(y, null), actual.getRow(y, row));
+    }
+    // A full frame PlanarYUVLuminanceSource hands out the whole buffer, chroma included.
+    byte[] expectedMatrix = new byte[width * height];
+    System.arraycopy(expected.getMatrix(), 0, expectedMatrix, 0, expectedMatrix.length);
+    assertArrayEquals(expectedMatrix, actual.getMatrix());
+  }
+}